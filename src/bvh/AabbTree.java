@@ -0,0 +1,639 @@
+package bvh;
+
+import java.util.Arrays;
+
+/**
+ * Bounding volume hierarchy of axis-aligned boxes over a triangle mesh, kept in
+ * flat arrays so that it needs neither native code nor objects per node.
+ * Supports segment, point proximity and triangle-triangle queries; none of
+ * them allocates once the caller's Hit has grown its traversal stack.
+ *
+ * The tree is built top-down by median splits along the longest axis of the
+ * triangle centroids, with up to LEAF_SIZE triangles per leaf. Deforming
+ * meshes call refit(), which moves the triangles and recomputes the boxes
+ * bottom-up without changing the tree.
+ *
+ * Queries only read the tree, so any number of threads may query it at once,
+ * each with its own Hit; refit() must not run concurrently with queries.
+ */
+public class AabbTree {
+
+  /** Maximum number of triangles in a leaf. */
+  public static final int LEAF_SIZE = 4;
+
+  /** Determinant below which a segment counts as parallel to a triangle. */
+  private static final double PARALLEL_EPS = 1e-14;
+
+  private final int numTriangles;
+  private final int[] faces;
+
+  /** Tree position -> triangle index (index into faces / 3). */
+  private final int[] order;
+
+  /** Vertex coordinates of the triangles in tree order, 9 per triangle. */
+  private final double[] tri;
+
+  /** Per node: min x, y, z, max x, y, z. */
+  private final double[] bounds;
+
+  /**
+   * Per node: for inner nodes, the index of the first child (the second
+   * follows it) and 0; for leaves, -(first tree position + 1) and the number
+   * of triangles.
+   */
+  private final int[] nodes;
+  private int numNodes = 0;
+
+  /**
+   * Margin of setLeafMargin(), or -1. Per node, leafNeighbors[neighborStart[n]
+   * to neighborStart[n + 1]] lists, for leaves n, n itself and the other
+   * leaves overlapping its box grown by leafMargin.
+   */
+  private double leafMargin = -1;
+  private int[] neighborStart;
+  private int[] leafNeighbors = new int[0];
+  private int[] neighborStack = new int[64];
+
+  /**
+   * Per-query result and traversal stack. Reuse one Hit per thread to keep
+   * queries free of allocation.
+   */
+  public static final class Hit {
+    /** Index of the triangle found, or -1. */
+    public int triangle = -1;
+    /** Segment queries: parameter of the crossing along the segment, in [0, 1]. */
+    public double s;
+    /** Segment queries: leaf node of the triangle found, or of the cached leaf, or -1. */
+    public int leaf = -1;
+    /** Proximity queries: distance to the triangle. */
+    public double distance;
+    /** Proximity queries: closest point on the triangle. */
+    public double x, y, z;
+
+    private int[] stack = new int[64];
+    private final double[] closest = new double[3];
+
+    private int[] stack(int size) {
+      if (stack.length < size) {
+        int[] newStack = new int[Math.max(size, 2 * stack.length)];
+        System.arraycopy(stack, 0, newStack, 0, stack.length);
+        stack = newStack;
+      }
+      return stack;
+    }
+  }
+
+  /**
+   * Builds the tree.
+   *
+   * @param x
+   *          three coordinates per vertex
+   * @param faces
+   *          three vertex indices per triangle; copied
+   */
+  public AabbTree(double[] x, int[] faces) {
+    if (faces.length == 0 || faces.length % 3 != 0) {
+      throw new IllegalArgumentException("faces must hold three indices per triangle");
+    }
+    this.faces = faces.clone();
+    numTriangles = faces.length / 3;
+    order = new int[numTriangles];
+    tri = new double[9 * numTriangles];
+    bounds = new double[6 * (2 * numTriangles - 1)];
+    nodes = new int[2 * (2 * numTriangles - 1)];
+
+    double[] centroids = new double[3 * numTriangles];
+    for (int t = 0; t < numTriangles; t++) {
+      order[t] = t;
+      for (int k = 0; k < 3; k++) {
+        centroids[3 * t + k] = (x[3 * faces[3 * t] + k] + x[3 * faces[3 * t + 1] + k] + x[3 * faces[3 * t + 2] + k])
+            / 3;
+      }
+    }
+    numNodes = 1;
+    build(0, 0, numTriangles, centroids);
+    refit(x);
+  }
+
+  public int numTriangles() {
+    return numTriangles;
+  }
+
+  public int numNodes() {
+    return numNodes;
+  }
+
+  /** Moves the triangles to the positions x and recomputes all boxes. */
+  public void refit(double[] x) {
+    for (int p = 0; p < numTriangles; p++) {
+      int f = 3 * order[p];
+      for (int v = 0; v < 3; v++) {
+        int i = 3 * faces[f + v];
+        tri[9 * p + 3 * v] = x[i];
+        tri[9 * p + 3 * v + 1] = x[i + 1];
+        tri[9 * p + 3 * v + 2] = x[i + 2];
+      }
+    }
+    // children are stored after their parents
+    for (int n = numNodes - 1; n >= 0; n--) {
+      int b = 6 * n;
+      if (nodes[2 * n] < 0) {
+        int first = -nodes[2 * n] - 1;
+        bounds[b] = bounds[b + 1] = bounds[b + 2] = Double.POSITIVE_INFINITY;
+        bounds[b + 3] = bounds[b + 4] = bounds[b + 5] = Double.NEGATIVE_INFINITY;
+        for (int k = 9 * first; k < 9 * (first + nodes[2 * n + 1]); k += 3) {
+          for (int a = 0; a < 3; a++) {
+            bounds[b + a] = Math.min(bounds[b + a], tri[k + a]);
+            bounds[b + 3 + a] = Math.max(bounds[b + 3 + a], tri[k + a]);
+          }
+        }
+      } else {
+        int c0 = 6 * nodes[2 * n], c1 = c0 + 6;
+        for (int a = 0; a < 3; a++) {
+          bounds[b + a] = Math.min(bounds[c0 + a], bounds[c1 + a]);
+          bounds[b + 3 + a] = Math.max(bounds[c0 + 3 + a], bounds[c1 + 3 + a]);
+        }
+      }
+    }
+    if (leafMargin >= 0) {
+      updateLeafNeighbors();
+    }
+  }
+
+  private void updateLeafNeighbors() {
+    if (neighborStart == null) {
+      neighborStart = new int[numNodes + 1];
+    }
+    int count = 0;
+    for (int n = 0; n < numNodes; n++) {
+      neighborStart[n] = count;
+      if (nodes[2 * n] >= 0) {
+        continue;
+      }
+      count = addNeighbor(count, n);
+      int top = 0;
+      neighborStack[top++] = 0;
+      while (top > 0) {
+        int m = neighborStack[--top];
+        if (!overlapsGrown(6 * n, 6 * m)) {
+          continue;
+        }
+        int child = nodes[2 * m];
+        if (child < 0) {
+          if (m != n) {
+            count = addNeighbor(count, m);
+          }
+        } else {
+          if (top + 2 > neighborStack.length) {
+            neighborStack = Arrays.copyOf(neighborStack, 2 * neighborStack.length);
+          }
+          neighborStack[top++] = child + 1;
+          neighborStack[top++] = child;
+        }
+      }
+    }
+    neighborStart[numNodes] = count;
+  }
+
+  private int addNeighbor(int count, int leaf) {
+    if (count == leafNeighbors.length) {
+      leafNeighbors = Arrays.copyOf(leafNeighbors, Math.max(64, 2 * count));
+    }
+    leafNeighbors[count] = leaf;
+    return count + 1;
+  }
+
+  /**
+   * Finds the first triangle crossed by the segment from p to q.
+   *
+   * @return true iff the segment crosses a triangle; then hit.triangle and
+   *         hit.s describe the crossing nearest to p
+   */
+  public boolean intersectSegment(double px, double py, double pz, double qx, double qy, double qz, Hit hit) {
+    hit.triangle = -1;
+    hit.s = 1;
+    hit.leaf = -1;
+    double dx = qx - px, dy = qy - py, dz = qz - pz;
+    int[] stack = hit.stack(64);
+    int top = 0;
+    stack[top++] = 0;
+    while (top > 0) {
+      int n = stack[--top];
+      if (!segmentOverlapsBox(6 * n, px, py, pz, dx, dy, dz, hit.s)) {
+        continue;
+      }
+      int child = nodes[2 * n];
+      if (child < 0) {
+        int first = -child - 1;
+        for (int p = first; p < first + nodes[2 * n + 1]; p++) {
+          double s = segmentTriangle(9 * p, px, py, pz, dx, dy, dz);
+          if (s >= 0 && (hit.triangle < 0 || s < hit.s)) {
+            hit.triangle = order[p];
+            hit.s = s;
+            hit.leaf = n;
+          }
+        }
+      } else {
+        stack = hit.stack(top + 2);
+        stack[top++] = child + 1;
+        stack[top++] = child;
+      }
+    }
+    return hit.triangle >= 0;
+  }
+
+  /**
+   * Keeps, for every leaf, the leaves whose boxes overlap its box grown by
+   * margin, up to date from now on; refit() updates them. They make the
+   * coherent intersectSegment() possible. A negative margin stops keeping
+   * them.
+   */
+  public void setLeafMargin(double margin) {
+    leafMargin = margin;
+    if (margin >= 0) {
+      updateLeafNeighbors();
+    }
+  }
+
+  /** @return the margin of setLeafMargin(), or a negative value if none */
+  public double getLeafMargin() {
+    return leafMargin;
+  }
+
+  /**
+   * As intersectSegment(), but for segments that move coherently, such as the
+   * path of a particle over a few steps: leaf is the hit.leaf of an earlier
+   * query. If the segment lies within the box of that leaf grown by the leaf
+   * margin, only the triangles of the leaves overlapping that grown box are
+   * tested, which are all the triangles the segment can cross, and hit.leaf
+   * keeps leaf if it crosses none. Otherwise, or if leaf is -1 or no leaf
+   * margin is set, the whole tree is traversed.
+   */
+  public boolean intersectSegment(double px, double py, double pz, double qx, double qy, double qz, int leaf,
+      Hit hit) {
+    if (leafMargin < 0 || leaf < 0 || leaf >= numNodes || nodes[2 * leaf] >= 0
+        || !contains(6 * leaf, leafMargin, px, py, pz) || !contains(6 * leaf, leafMargin, qx, qy, qz)) {
+      return intersectSegment(px, py, pz, qx, qy, qz, hit);
+    }
+    hit.triangle = -1;
+    hit.s = 1;
+    hit.leaf = leaf;
+    double dx = qx - px, dy = qy - py, dz = qz - pz;
+    for (int k = neighborStart[leaf]; k < neighborStart[leaf + 1]; k++) {
+      int n = leafNeighbors[k];
+      if (!segmentOverlapsBox(6 * n, px, py, pz, dx, dy, dz, hit.s)) {
+        continue;
+      }
+      int first = -nodes[2 * n] - 1;
+      for (int p = first; p < first + nodes[2 * n + 1]; p++) {
+        double s = segmentTriangle(9 * p, px, py, pz, dx, dy, dz);
+        if (s >= 0 && (hit.triangle < 0 || s < hit.s)) {
+          hit.triangle = order[p];
+          hit.s = s;
+          hit.leaf = n;
+        }
+      }
+    }
+    return hit.triangle >= 0;
+  }
+
+  /**
+   * Finds the triangle closest to the point p, if it is within maxDistance.
+   *
+   * @return true iff a triangle is within maxDistance; then hit.triangle,
+   *         hit.distance and hit.x, y, z describe the closest one
+   */
+  public boolean closestTriangle(double px, double py, double pz, double maxDistance, Hit hit) {
+    hit.triangle = -1;
+    double best = maxDistance * maxDistance;
+    int[] stack = hit.stack(64);
+    int top = 0;
+    stack[top++] = 0;
+    double[] closest = hit.closest;
+    while (top > 0) {
+      int n = stack[--top];
+      if (boxDistanceSquared(6 * n, px, py, pz) > best) {
+        continue;
+      }
+      int child = nodes[2 * n];
+      if (child < 0) {
+        int first = -child - 1;
+        for (int p = first; p < first + nodes[2 * n + 1]; p++) {
+          closestPointOnTriangle(9 * p, px, py, pz, closest);
+          double ex = closest[0] - px, ey = closest[1] - py, ez = closest[2] - pz;
+          double d2 = ex * ex + ey * ey + ez * ez;
+          if (d2 <= best) {
+            best = d2;
+            hit.triangle = order[p];
+            hit.x = closest[0];
+            hit.y = closest[1];
+            hit.z = closest[2];
+          }
+        }
+      } else {
+        // visit the nearer child first, so that it can prune the other
+        int near = child, far = child + 1;
+        if (boxDistanceSquared(6 * far, px, py, pz) < boxDistanceSquared(6 * near, px, py, pz)) {
+          near = far;
+          far = child;
+        }
+        stack = hit.stack(top + 2);
+        stack[top++] = far;
+        stack[top++] = near;
+      }
+    }
+    hit.distance = Math.sqrt(best);
+    return hit.triangle >= 0;
+  }
+
+  /**
+   * Finds the pairs of intersecting triangles of this tree and other. Pairs
+   * whose triangles only touch within a common plane are not reported.
+   *
+   * @param pairs
+   *          receives (triangle of this, triangle of other) pairs, two ints
+   *          each, as far as it has room
+   * @return the number of intersecting pairs, which may exceed
+   *         pairs.length / 2
+   */
+  public int collide(AabbTree other, int[] pairs, Hit hit) {
+    int count = 0;
+    int[] stack = hit.stack(64);
+    int top = 0;
+    stack[top++] = 0;
+    stack[top++] = 0;
+    while (top > 0) {
+      int m = stack[--top];
+      int n = stack[--top];
+      if (!boxesOverlap(bounds, 6 * n, other.bounds, 6 * m)) {
+        continue;
+      }
+      int a = nodes[2 * n], b = other.nodes[2 * m];
+      if (a < 0 && b < 0) {
+        for (int p = -a - 1; p < -a - 1 + nodes[2 * n + 1]; p++) {
+          for (int q = -b - 1; q < -b - 1 + other.nodes[2 * m + 1]; q++) {
+            if (trianglesIntersect(tri, 9 * p, other.tri, 9 * q)) {
+              if (2 * count + 1 < pairs.length) {
+                pairs[2 * count] = order[p];
+                pairs[2 * count + 1] = other.order[q];
+              }
+              count++;
+            }
+          }
+        }
+        continue;
+      }
+      stack = hit.stack(top + 4);
+      // descend into the larger box, or the one that is not a leaf
+      if (b < 0 || (a >= 0 && size(bounds, 6 * n) >= size(other.bounds, 6 * m))) {
+        stack[top++] = a;
+        stack[top++] = m;
+        stack[top++] = a + 1;
+        stack[top++] = m;
+      } else {
+        stack[top++] = n;
+        stack[top++] = b;
+        stack[top++] = n;
+        stack[top++] = b + 1;
+      }
+    }
+    return count;
+  }
+
+  private void build(int n, int first, int count, double[] centroids) {
+    if (count <= LEAF_SIZE) {
+      nodes[2 * n] = -(first + 1);
+      nodes[2 * n + 1] = count;
+      return;
+    }
+    double[] lo = { Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY };
+    double[] hi = { Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY };
+    for (int p = first; p < first + count; p++) {
+      for (int a = 0; a < 3; a++) {
+        lo[a] = Math.min(lo[a], centroids[3 * order[p] + a]);
+        hi[a] = Math.max(hi[a], centroids[3 * order[p] + a]);
+      }
+    }
+    int axis = 0;
+    for (int a = 1; a < 3; a++) {
+      if (hi[a] - lo[a] > hi[axis] - lo[axis]) {
+        axis = a;
+      }
+    }
+    int half = count / 2;
+    select(first, first + count - 1, first + half, axis, centroids);
+
+    int child = numNodes;
+    numNodes += 2;
+    nodes[2 * n] = child;
+    nodes[2 * n + 1] = 0;
+    build(child, first, half, centroids);
+    build(child + 1, first + half, count - half, centroids);
+  }
+
+  /** Quickselect: reorders order[lo..hi] so that position k holds the median along axis. */
+  private void select(int lo, int hi, int k, int axis, double[] centroids) {
+    while (lo < hi) {
+      double pivot = centroids[3 * order[(lo + hi) >>> 1] + axis];
+      int i = lo, j = hi;
+      while (i <= j) {
+        while (centroids[3 * order[i] + axis] < pivot) {
+          i++;
+        }
+        while (centroids[3 * order[j] + axis] > pivot) {
+          j--;
+        }
+        if (i <= j) {
+          int t = order[i];
+          order[i] = order[j];
+          order[j] = t;
+          i++;
+          j--;
+        }
+      }
+      if (k <= j) {
+        hi = j;
+      } else if (k >= i) {
+        lo = i;
+      } else {
+        return;
+      }
+    }
+  }
+
+  /** Whether the box at bounds[m] overlaps the box at bounds[b] grown by leafMargin. */
+  private boolean overlapsGrown(int b, int m) {
+    for (int a = 0; a < 3; a++) {
+      if (bounds[m + a] > bounds[b + 3 + a] + leafMargin || bounds[b + a] - leafMargin > bounds[m + 3 + a]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Whether p lies within the box at bounds[b] grown by margin. */
+  private boolean contains(int b, double margin, double px, double py, double pz) {
+    return px >= bounds[b] - margin && py >= bounds[b + 1] - margin && pz >= bounds[b + 2] - margin
+        && px <= bounds[b + 3] + margin && py <= bounds[b + 4] + margin && pz <= bounds[b + 5] + margin;
+  }
+
+  /** Slab test of p + s d, s in [0, sMax], against the box at bounds[b]. */
+  private boolean segmentOverlapsBox(int b, double px, double py, double pz, double dx, double dy, double dz,
+      double sMax) {
+    double lo = 0, hi = sMax;
+    for (int a = 0; a < 3; a++) {
+      double o = a == 0 ? px : a == 1 ? py : pz;
+      double d = a == 0 ? dx : a == 1 ? dy : dz;
+      double min = bounds[b + a], max = bounds[b + 3 + a];
+      if (d == 0) {
+        if (o < min || o > max) {
+          return false;
+        }
+        continue;
+      }
+      double s0 = (min - o) / d, s1 = (max - o) / d;
+      if (s0 > s1) {
+        double t = s0;
+        s0 = s1;
+        s1 = t;
+      }
+      lo = Math.max(lo, s0);
+      hi = Math.min(hi, s1);
+      if (lo > hi) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Moller-Trumbore test of p + s d, s in [0, 1], against the triangle at
+   * tri[t].
+   *
+   * @return s of the crossing, or -1 if there is none
+   */
+  private double segmentTriangle(int t, double px, double py, double pz, double dx, double dy, double dz) {
+    return segmentTriangle(tri, t, px, py, pz, dx, dy, dz);
+  }
+
+  private static double segmentTriangle(double[] tri, int t, double px, double py, double pz, double dx, double dy,
+      double dz) {
+    double e1x = tri[t + 3] - tri[t], e1y = tri[t + 4] - tri[t + 1], e1z = tri[t + 5] - tri[t + 2];
+    double e2x = tri[t + 6] - tri[t], e2y = tri[t + 7] - tri[t + 1], e2z = tri[t + 8] - tri[t + 2];
+    double hx = dy * e2z - dz * e2y, hy = dz * e2x - dx * e2z, hz = dx * e2y - dy * e2x;
+    double det = e1x * hx + e1y * hy + e1z * hz;
+    if (det > -PARALLEL_EPS && det < PARALLEL_EPS) {
+      return -1;
+    }
+    double inv = 1 / det;
+    double wx = px - tri[t], wy = py - tri[t + 1], wz = pz - tri[t + 2];
+    double u = (wx * hx + wy * hy + wz * hz) * inv;
+    if (u < 0 || u > 1) {
+      return -1;
+    }
+    double gx = wy * e1z - wz * e1y, gy = wz * e1x - wx * e1z, gz = wx * e1y - wy * e1x;
+    double v = (dx * gx + dy * gy + dz * gz) * inv;
+    if (v < 0 || u + v > 1) {
+      return -1;
+    }
+    double s = (e2x * gx + e2y * gy + e2z * gz) * inv;
+    return s < 0 || s > 1 ? -1 : s;
+  }
+
+  /**
+   * Two triangles that are not coplanar intersect iff an edge of one crosses
+   * the other.
+   */
+  private static boolean trianglesIntersect(double[] a, int s, double[] b, int t) {
+    for (int e = 0; e < 3; e++) {
+      int i = s + 3 * e, j = s + 3 * ((e + 1) % 3);
+      if (segmentTriangle(b, t, a[i], a[i + 1], a[i + 2], a[j] - a[i], a[j + 1] - a[i + 1], a[j + 2] - a[i + 2]) >= 0) {
+        return true;
+      }
+      i = t + 3 * e;
+      j = t + 3 * ((e + 1) % 3);
+      if (segmentTriangle(a, s, b[i], b[i + 1], b[i + 2], b[j] - b[i], b[j + 1] - b[i + 1], b[j + 2] - b[i + 2]) >= 0) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** Closest point on the triangle at tri[t] to p (Ericson, Real-Time Collision Detection 5.1.5). */
+  private void closestPointOnTriangle(int t, double px, double py, double pz, double[] out) {
+    double ax = tri[t], ay = tri[t + 1], az = tri[t + 2];
+    double abx = tri[t + 3] - ax, aby = tri[t + 4] - ay, abz = tri[t + 5] - az;
+    double acx = tri[t + 6] - ax, acy = tri[t + 7] - ay, acz = tri[t + 8] - az;
+    double apx = px - ax, apy = py - ay, apz = pz - az;
+    double d1 = abx * apx + aby * apy + abz * apz;
+    double d2 = acx * apx + acy * apy + acz * apz;
+    if (d1 <= 0 && d2 <= 0) {
+      set(out, ax, ay, az);
+      return;
+    }
+    double bpx = px - tri[t + 3], bpy = py - tri[t + 4], bpz = pz - tri[t + 5];
+    double d3 = abx * bpx + aby * bpy + abz * bpz;
+    double d4 = acx * bpx + acy * bpy + acz * bpz;
+    if (d3 >= 0 && d4 <= d3) {
+      set(out, tri[t + 3], tri[t + 4], tri[t + 5]);
+      return;
+    }
+    double vc = d1 * d4 - d3 * d2;
+    if (vc <= 0 && d1 >= 0 && d3 <= 0) {
+      double v = d1 / (d1 - d3);
+      set(out, ax + v * abx, ay + v * aby, az + v * abz);
+      return;
+    }
+    double cpx = px - tri[t + 6], cpy = py - tri[t + 7], cpz = pz - tri[t + 8];
+    double d5 = abx * cpx + aby * cpy + abz * cpz;
+    double d6 = acx * cpx + acy * cpy + acz * cpz;
+    if (d6 >= 0 && d5 <= d6) {
+      set(out, tri[t + 6], tri[t + 7], tri[t + 8]);
+      return;
+    }
+    double vb = d5 * d2 - d1 * d6;
+    if (vb <= 0 && d2 >= 0 && d6 <= 0) {
+      double w = d2 / (d2 - d6);
+      set(out, ax + w * acx, ay + w * acy, az + w * acz);
+      return;
+    }
+    double va = d3 * d6 - d5 * d4;
+    if (va <= 0 && d4 - d3 >= 0 && d5 - d6 >= 0) {
+      double w = (d4 - d3) / (d4 - d3 + d5 - d6);
+      double bx = tri[t + 3], by = tri[t + 4], bz = tri[t + 5];
+      set(out, bx + w * (tri[t + 6] - bx), by + w * (tri[t + 7] - by), bz + w * (tri[t + 8] - bz));
+      return;
+    }
+    double denom = 1 / (va + vb + vc);
+    double v = vb * denom, w = vc * denom;
+    set(out, ax + abx * v + acx * w, ay + aby * v + acy * w, az + abz * v + acz * w);
+  }
+
+  private static void set(double[] out, double x, double y, double z) {
+    out[0] = x;
+    out[1] = y;
+    out[2] = z;
+  }
+
+  private double boxDistanceSquared(int b, double px, double py, double pz) {
+    double d2 = 0;
+    for (int a = 0; a < 3; a++) {
+      double o = a == 0 ? px : a == 1 ? py : pz;
+      double d = Math.max(bounds[b + a] - o, o - bounds[b + 3 + a]);
+      if (d > 0) {
+        d2 += d * d;
+      }
+    }
+    return d2;
+  }
+
+  private static boolean boxesOverlap(double[] a, int i, double[] b, int j) {
+    return a[i] <= b[j + 3] && b[j] <= a[i + 3] && a[i + 1] <= b[j + 4] && b[j + 1] <= a[i + 4]
+        && a[i + 2] <= b[j + 5] && b[j + 2] <= a[i + 5];
+  }
+
+  /** Sum of the extents of the box at bounds[b]. */
+  private static double size(double[] bounds, int b) {
+    return bounds[b + 3] - bounds[b] + bounds[b + 4] - bounds[b + 1] + bounds[b + 5] - bounds[b + 2];
+  }
+}
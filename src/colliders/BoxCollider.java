@@ -0,0 +1,79 @@
+package colliders;
+
+import javax.vecmath.Point3d;
+
+/**
+ * An axis-aligned box: either a solid block (outward), or a closed room
+ * whose walls are everything outside the box (inward), as the world box of
+ * particles.Mesh.CubeMesh().
+ */
+public class BoxCollider implements Collider {
+
+  private final double cx, cy, cz;
+  /** Half extents. */
+  private final double hx, hy, hz;
+  private final boolean inward;
+
+  /**
+   * @param inward
+   *          whether the free space is inside the box rather than outside
+   */
+  public BoxCollider(Point3d low, Point3d high, boolean inward) {
+    if (high.x < low.x || high.y < low.y || high.z < low.z) {
+      throw new IllegalArgumentException("high must not be below low");
+    }
+    cx = 0.5 * (low.x + high.x);
+    cy = 0.5 * (low.y + high.y);
+    cz = 0.5 * (low.z + high.z);
+    hx = 0.5 * (high.x - low.x);
+    hy = 0.5 * (high.y - low.y);
+    hz = 0.5 * (high.z - low.z);
+    this.inward = inward;
+  }
+
+  public boolean isInward() {
+    return inward;
+  }
+
+  @Override
+  public double distance(double x, double y, double z, double[] gradient) {
+    double px = x - cx, py = y - cy, pz = z - cz;
+    // per axis, the distance outside the slab (negative inside)
+    double qx = Math.abs(px) - hx, qy = Math.abs(py) - hy, qz = Math.abs(pz) - hz;
+    double d;
+    double gx, gy, gz;
+    if (qx > 0 || qy > 0 || qz > 0) {
+      // outside: to the nearest point of the box
+      double ex = Math.max(qx, 0), ey = Math.max(qy, 0), ez = Math.max(qz, 0);
+      d = Math.sqrt(ex * ex + ey * ey + ez * ez);
+      gx = Math.copySign(ex / d, px);
+      gy = Math.copySign(ey / d, py);
+      gz = Math.copySign(ez / d, pz);
+    } else {
+      // inside: to the nearest face
+      gx = gy = gz = 0;
+      if (qx >= qy && qx >= qz) {
+        d = qx;
+        gx = Math.copySign(1, px);
+      } else if (qy >= qz) {
+        d = qy;
+        gy = Math.copySign(1, py);
+      } else {
+        d = qz;
+        gz = Math.copySign(1, pz);
+      }
+    }
+    if (inward) {
+      d = -d;
+      gx = -gx;
+      gy = -gy;
+      gz = -gz;
+    }
+    if (gradient != null) {
+      gradient[0] = gx;
+      gradient[1] = gy;
+      gradient[2] = gz;
+    }
+    return d;
+  }
+}
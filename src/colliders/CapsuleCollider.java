@@ -0,0 +1,42 @@
+package colliders;
+
+import javax.vecmath.Point3d;
+
+/** The points within a radius of a segment: a cylinder with round caps. */
+public class CapsuleCollider implements Collider {
+
+  private final double ax, ay, az;
+  private final double dx, dy, dz;
+  /** |b - a|^2 */
+  private final double lengthSquared;
+  private final double radius;
+
+  /**
+   * @param a
+   *          the center of one cap
+   * @param b
+   *          the center of the other cap; may equal a, for a sphere
+   */
+  public CapsuleCollider(Point3d a, Point3d b, double radius) {
+    if (radius <= 0) {
+      throw new IllegalArgumentException("radius must be positive");
+    }
+    ax = a.x;
+    ay = a.y;
+    az = a.z;
+    dx = b.x - a.x;
+    dy = b.y - a.y;
+    dz = b.z - a.z;
+    lengthSquared = dx * dx + dy * dy + dz * dz;
+    this.radius = radius;
+  }
+
+  @Override
+  public double distance(double x, double y, double z, double[] gradient) {
+    double px = x - ax, py = y - ay, pz = z - az;
+    // parameter of the closest point of the segment
+    double s = lengthSquared > 0 ? (px * dx + py * dy + pz * dz) / lengthSquared : 0;
+    s = Math.max(0, Math.min(1, s));
+    return SphereCollider.pointDistance(px - s * dx, py - s * dy, pz - s * dz, radius, gradient);
+  }
+}
@@ -0,0 +1,23 @@
+package colliders;
+
+/**
+ * A solid that particles collide with, described by its signed distance:
+ * negative inside the solid, positive in the free space, and zero on the
+ * surface. Contacts with a collider need no triangles and no hierarchy: a
+ * particle closer than its thickness gets a contact against the tangent plane
+ * of the nearest surface point, which is p - distance(p) n for the unit
+ * normal n, see particles.Mesh.colliderContact().
+ *
+ * Implementations are immutable, so any number of threads may query them.
+ */
+public interface Collider {
+
+  /**
+   * @param gradient
+   *          if not null, receives the gradient of the distance at p, i.e.
+   *          the outward unit normal of the nearest surface point; zero where
+   *          it is undefined, e.g. at the center of a sphere
+   * @return the signed distance of p from the surface, negative inside
+   */
+  double distance(double x, double y, double z, double[] gradient);
+}
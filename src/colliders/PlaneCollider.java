@@ -0,0 +1,41 @@
+package colliders;
+
+import javax.vecmath.Point3d;
+import javax.vecmath.Vector3d;
+
+/** The half-space below an infinite plane, e.g. a floor. */
+public class PlaneCollider implements Collider {
+
+  private final double px, py, pz;
+  private final double nx, ny, nz;
+
+  /**
+   * @param point
+   *          any point of the plane
+   * @param normal
+   *          the normal of the plane, pointing into the free space; need not
+   *          be unit
+   */
+  public PlaneCollider(Point3d point, Vector3d normal) {
+    double length = normal.length();
+    if (length == 0) {
+      throw new IllegalArgumentException("normal must not be zero");
+    }
+    px = point.x;
+    py = point.y;
+    pz = point.z;
+    nx = normal.x / length;
+    ny = normal.y / length;
+    nz = normal.z / length;
+  }
+
+  @Override
+  public double distance(double x, double y, double z, double[] gradient) {
+    if (gradient != null) {
+      gradient[0] = nx;
+      gradient[1] = ny;
+      gradient[2] = nz;
+    }
+    return (x - px) * nx + (y - py) * ny + (z - pz) * nz;
+  }
+}
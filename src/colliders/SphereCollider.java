@@ -0,0 +1,40 @@
+package colliders;
+
+import javax.vecmath.Point3d;
+
+/** A solid ball. */
+public class SphereCollider implements Collider {
+
+  private final double cx, cy, cz;
+  private final double radius;
+
+  public SphereCollider(Point3d center, double radius) {
+    if (radius <= 0) {
+      throw new IllegalArgumentException("radius must be positive");
+    }
+    cx = center.x;
+    cy = center.y;
+    cz = center.z;
+    this.radius = radius;
+  }
+
+  @Override
+  public double distance(double x, double y, double z, double[] gradient) {
+    return pointDistance(x - cx, y - cy, z - cz, radius, gradient);
+  }
+
+  /** Signed distance of d from a ball of radius r around the origin. */
+  static double pointDistance(double dx, double dy, double dz, double r, double[] gradient) {
+    double length = Math.sqrt(dx * dx + dy * dy + dz * dz);
+    if (gradient != null) {
+      if (length > 0) {
+        gradient[0] = dx / length;
+        gradient[1] = dy / length;
+        gradient[2] = dz / length;
+      } else {
+        gradient[0] = gradient[1] = gradient[2] = 0;
+      }
+    }
+    return length - r;
+  }
+}
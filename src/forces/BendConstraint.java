@@ -1,144 +1,234 @@
 package forces;
 
-import javax.vecmath.Point3d;
+import java.util.Arrays;
+
 import javax.vecmath.Vector3d;
 
 import com.jogamp.opengl.GL2;
 
-import particles.Edge;
-import particles.Mesh;
+import particles.BendBatch;
 import particles.ParticleSystem;
-import particles.Vertex;
 
-public class BendConstraint implements Force {
+/**
+ * Dihedral angle constraint across every interior edge of the meshes, towards
+ * the rest angles of ps.getBendBatch() (flat by default). By default the
+ * stiffness is scaled by the iteration count (PBD); after setCompliance() the
+ * constraint is solved with XPBD instead.
+ */
+public class BendConstraint implements JacobiConstraint, CompliantConstraint, ResidualConstraint {
 
   private static final double EPS = 1e-7;
-  /** Default rest bending angle is pi/2: planar constraint. */
-  private static final double PHI0 = Math.PI;
-  private ParticleSystem ps;
+  protected ParticleSystem ps;
   private double k;
   private double kIter;
+  private final Scratch scratch = new Scratch();
+
+  /** XPBD state: compliance, compliance / dt^2, and one multiplier per batch constraint. */
+  private boolean compliant = false;
+  private double compliance;
+  private double alphaTilde;
+  private double[] lambda = new double[0];
 
+  /** Angle violation, in radians, measured while projecting. */
+  protected final Residual residual = new Residual();
 
   public BendConstraint(ParticleSystem ps, double stiffness, int numIter) {
     this.ps = ps;
+    setStiffness(stiffness, numIter);
+  }
+
+  /** Switches to PBD with the given stiffness in [0, 1], reached after numIter iterations. */
+  public void setStiffness(double stiffness, int numIter) {
     this.k = stiffness;
     this.kIter = 1 - Math.pow((1 - k), 1.0 / numIter);
+    compliant = false;
+  }
+
+  /** Switches to XPBD with the given compliance (inverse stiffness); 0 is rigid. */
+  public void setCompliance(double compliance) {
+    this.compliance = compliance;
+    compliant = true;
+  }
+
+  @Override
+  public void beginStep(double dt) {
+    alphaTilde = compliance / (dt * dt);
+    int n = numElements();
+    if (lambda.length < n) {
+      lambda = new double[n];
+    } else {
+      Arrays.fill(lambda, 0, n, 0);
+    }
   }
 
   @Override
   public void applyForce() {
-    for (Mesh mesh : ps.M) {
-      for (Edge edge : mesh.edges) {
-        if (edge.t0 == null || edge.t1 == null) {
-          continue;
-        }
-        Vector3d n2 = edge.t0.getNormal();
-        Vector3d n1 = edge.t1.getNormal();
-        //n2.negate();
-        double d = n1.dot(n2);
-
-        // vertex positions and inverse masses
-        Vertex particle1 = edge.v0;
-        Vertex particle2 = edge.v1;
-        Vertex particle3 = edge.t1.getDiffVertex(particle1, particle2);
-        Vertex particle4 = edge.t0.getDiffVertex(particle1, particle2);
-
-        Point3d p1 = particle1.x;
-        double w1 = particle1.getPositionUpdateInvMass();
-        Vector3d p2 = new Vector3d(particle2.x);
-        p2.sub(p1);
-        double w2 = particle2.getPositionUpdateInvMass();
-        Vector3d p3 = new Vector3d(particle3.x);
-        p3.sub(p1);
-        double w3 = particle3.getPositionUpdateInvMass();
-        Vector3d p4 = new Vector3d(particle4.x);
-        p4.sub(p1);
-        double w4 = particle4.getPositionUpdateInvMass();
-        
-        n1.cross(p2, p3);
-        n1.normalize();
-        n2.cross(p2, p4);
-        n2.normalize();
-        d = n1.dot(n2);
-
-        Vector3d p2Cp3 = new Vector3d();
-        p2Cp3.cross(p2, p3);
-        Vector3d p2Cp4 = new Vector3d();
-        p2Cp4.cross(p2, p4);
-
-        Vector3d q3 = new Vector3d();
-        q3.cross(p2, n2);
-        Vector3d n1Cp2 = new Vector3d();
-        n1Cp2.cross(n1, p2);
-        n1Cp2.scale(d);
-        q3.add(n1Cp2);
-        q3.scale(1 / p2Cp3.length());
-
-        Vector3d q4 = new Vector3d();
-        q4.cross(p2, n1);
-        Vector3d n2Cp2 = new Vector3d();
-        n2Cp2.cross(n2, p2);
-        n2Cp2.scale(d);
-        q4.add(n2Cp2);
-        q4.scale(1 / p2Cp4.length());
-
-        Vector3d q21 = new Vector3d();
-        q21.cross(p3, n2);
-        Vector3d n1Cp3 = new Vector3d();
-        n1Cp3.cross(n1, p3);
-        n1Cp3.scale(d);
-        q21.add(n1Cp3);
-        q21.scale(1 / p2Cp3.length());
-        Vector3d q22 = new Vector3d();
-        q22.cross(p4, n1);
-        Vector3d n2Cp4 = new Vector3d();
-        n2Cp4.cross(n2, p4);
-        n2Cp4.scale(d);
-        q22.add(n2Cp4);
-        q22.scale(1 / p2Cp4.length());
-        Vector3d q2 = new Vector3d();
-        q2.add(q21, q22);
-        q2.negate();
-
-        Vector3d q1 = new Vector3d(q2);
-        q1.negate();
-        q1.sub(q3);
-        q1.sub(q4);
-
-        double c = Math.acos(d) - PHI0;
-        double s = -Math.sqrt(1 - d * d) * c;
-        double denominator = w1 * q1.lengthSquared() + w2 * q2.lengthSquared() + w3 * q3.lengthSquared()
-            + w4 * q4.lengthSquared();
-        if (denominator < EPS) {
-          continue;
-        }
-
-        Vector3d dp1 = new Vector3d(q1);
-        dp1.scale(w1 * s / denominator * kIter);
-        Vector3d dp2 = new Vector3d(q2);
-        dp2.scale(w2 * s / denominator * kIter);
-        Vector3d dp3 = new Vector3d(q3);
-        dp3.scale(w3 * s / denominator * kIter);
-        Vector3d dp4 = new Vector3d(q4);
-        dp4.scale(w4 * s / denominator * kIter);
-        /*
-        if (edge.v0.getHighlight()) {
-          
-          System.out.println(dp1);
-          System.out.println(dp2);
-          System.out.println(dp3);
-          System.out.println(dp4);
-        }
-        */
-
-        particle1.x.add(dp1);
-        particle2.x.add(dp2);
-        particle3.x.add(dp3);
-        particle4.x.add(dp4);
-
-      }
+    double[] x = ps.store.x;
+    double[] w = ps.store.w;
+    BendBatch batch = ps.getBendBatch();
+    for (int e = 0; e < batch.size; e++) {
+      project(x, w, batch, e, x, null, scratch, residual);
+    }
+  }
+
+  @Override
+  public int numElements() {
+    return ps.getBendBatch().size;
+  }
+
+  /** Elements are the constraints of ps.getBendBatch(). */
+  @Override
+  public void accumulate(int from, int to, double[] x, double[] w, double[] dx, int[] count, Object scratch,
+      Residual r) {
+    BendBatch batch = ps.getBendBatch();
+    Scratch t = (Scratch) scratch;
+    for (int e = from; e < to; e++) {
+      project(x, w, batch, e, dx, count, t, r);
+    }
+  }
+
+  @Override
+  public Object newScratch() {
+    return new Scratch();
+  }
+
+  @Override
+  public Residual getResidual() {
+    return residual;
+  }
+
+  /**
+   * Projects constraint e of batch, reading positions from x and adding the
+   * corrections to out. If count is not null, the number of corrections per
+   * particle is incremented. The violation is recorded in r.
+   */
+  protected final void project(double[] x, double[] w, BendBatch batch, int e, double[] out, int[] count,
+      Scratch t, Residual r) {
+    project(x, w, batch.i[e], batch.j[e], batch.k[e], batch.l[e], batch.restAngle[e], e, out, count, t, r);
+  }
+
+  /**
+   * Projects the bend constraint between the triangles (p1, p2, p3) and (p1, p2,
+   * p4) sharing the edge (p1, p2), using only the given scratch vectors.
+   */
+  private void project(double[] x, double[] w, int i1, int i2, int i3, int i4, double restAngle, int element,
+      double[] out, int[] count, Scratch t, Residual r) {
+    // vertex positions (relative to p1) and inverse masses
+    double w1 = w[i1];
+    relative(x, i2, i1, t.p2);
+    double w2 = w[i2];
+    relative(x, i3, i1, t.p3);
+    double w3 = w[i3];
+    relative(x, i4, i1, t.p4);
+    double w4 = w[i4];
+
+    Vector3d p2 = t.p2, p3 = t.p3, p4 = t.p4;
+    Vector3d n1 = t.n1, n2 = t.n2, tmp = t.tmp;
+    n1.cross(p2, p3);
+    double p2Cp3Length = n1.length();
+    n1.normalize();
+    n2.cross(p2, p4);
+    double p2Cp4Length = n2.length();
+    n2.normalize();
+    double d = n1.dot(n2);
+
+    Vector3d q3 = t.q3;
+    q3.cross(p2, n2);
+    tmp.cross(n1, p2);
+    tmp.scale(d);
+    q3.add(tmp);
+    q3.scale(1 / p2Cp3Length);
+
+    Vector3d q4 = t.q4;
+    q4.cross(p2, n1);
+    tmp.cross(n2, p2);
+    tmp.scale(d);
+    q4.add(tmp);
+    q4.scale(1 / p2Cp4Length);
+
+    // q2 = -(q21 + q22)
+    Vector3d q2 = t.q2;
+    q2.cross(p3, n2);
+    tmp.cross(n1, p3);
+    tmp.scale(d);
+    q2.add(tmp);
+    q2.scale(1 / p2Cp3Length);
+    Vector3d q22 = t.q1;
+    q22.cross(p4, n1);
+    tmp.cross(n2, p4);
+    tmp.scale(d);
+    q22.add(tmp);
+    q22.scale(1 / p2Cp4Length);
+    q2.add(q22);
+    q2.negate();
+
+    Vector3d q1 = t.q1;
+    q1.negate(q2);
+    q1.sub(q3);
+    q1.sub(q4);
+
+    double c = Math.acos(d) - restAngle;
+    double sinPhi = Math.sqrt(1 - d * d);
+    double denominator = w1 * q1.lengthSquared() + w2 * q2.lengthSquared() + w3 * q3.lengthSquared()
+        + w4 * q4.lengthSquared();
+    r.add(compliant ? c + alphaTilde * lambda[element] : c);
+    if (denominator < EPS) {
+      return;
     }
+
+    double scale;
+    if (compliant) {
+      // grad_i C = q_i / sinPhi; multiplied through by sinPhi^2 so that flat
+      // configurations (sinPhi = 0) do not divide by zero
+      double numerator = -c - alphaTilde * lambda[element];
+      double sinPhi2 = sinPhi * sinPhi;
+      lambda[element] += sinPhi2 * numerator / (denominator + alphaTilde * sinPhi2);
+      scale = sinPhi * numerator / (denominator + alphaTilde * sinPhi2);
+    } else {
+      scale = -sinPhi * c / denominator * kIter;
+    }
+
+    add(out, i1, q1, w1 * scale);
+    add(out, i2, q2, w2 * scale);
+    add(out, i3, q3, w3 * scale);
+    add(out, i4, q4, w4 * scale);
+    if (count != null) {
+      count[i1]++;
+      count[i2]++;
+      count[i3]++;
+      count[i4]++;
+    }
+  }
+
+  /** out = x[i] - x[origin] */
+  private static void relative(double[] x, int i, int origin, Vector3d out) {
+    out.x = x[3 * i] - x[3 * origin];
+    out.y = x[3 * i + 1] - x[3 * origin + 1];
+    out.z = x[3 * i + 2] - x[3 * origin + 2];
+  }
+
+  /** x[i] += scale * d */
+  private static void add(double[] x, int i, Vector3d d, double scale) {
+    x[3 * i] += d.x * scale;
+    x[3 * i + 1] += d.y * scale;
+    x[3 * i + 2] += d.z * scale;
+  }
+
+  /**
+   * Preallocated vectors for one projection, so that applyForce() does not
+   * allocate. Each thread projecting concurrently needs its own.
+   */
+  protected static class Scratch {
+    final Vector3d p2 = new Vector3d();
+    final Vector3d p3 = new Vector3d();
+    final Vector3d p4 = new Vector3d();
+    final Vector3d n1 = new Vector3d();
+    final Vector3d n2 = new Vector3d();
+    final Vector3d q1 = new Vector3d();
+    final Vector3d q2 = new Vector3d();
+    final Vector3d q3 = new Vector3d();
+    final Vector3d q4 = new Vector3d();
+    final Vector3d tmp = new Vector3d();
   }
 
   @Override
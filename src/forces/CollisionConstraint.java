@@ -6,6 +6,7 @@ import javax.vecmath.Vector3d;
 import com.jogamp.opengl.GL2;
 
 import particles.Particle;
+import particles.ParticleStore;
 import particles.ParticleSystem;
 import particles.Triangle;
 
@@ -13,6 +14,11 @@ import particles.Triangle;
  * Inequality constraint:
  * C(p) = (p - qc) \dot nc
  * 
+ * For contacts with a thickness h, qc is the closest point of the triangle
+ * and nc its normal on the particle's side, and C(p) = (p - qc) \dot nc - h.
+ * Contacts with colliders (colliders.Collider) have no triangle and give nc
+ * as contactNormal instead.
+ * 
  * @author rex
  *
  */
@@ -22,28 +28,106 @@ public class CollisionConstraint implements Force {
   private static final double k = 1.0;
   
   public Particle particle;
-  public Point3d entryPoint;
+  /** Where the particle's path entered the triangle's plane; valid iff hasEntryPoint. */
+  public final Point3d entryPoint = new Point3d();
+  public boolean hasEntryPoint;
   public Triangle triangle;
+  /**
+   * Distance the particle keeps from the triangle's plane through entryPoint,
+   * for contacts found by proximity; 0 for contacts of paths through the
+   * triangle, which only stop the particle's motion across it.
+   */
+  public double thickness;
+  /** Outward unit normal of the surface at entryPoint, for contacts without a triangle. */
+  public final Vector3d contactNormal = new Vector3d();
+
+  /** Scratch normal, so that applyForce() does not allocate. */
+  private final Vector3d normal = new Vector3d();
+  
+  /** Creates an empty constraint slot, to be filled with set(). */
+  public CollisionConstraint() {
+  }
   
   public CollisionConstraint(Particle particle, Point3d entryPoint, Triangle triangle) {
+    set(particle, entryPoint, triangle);
+  }
+
+  /** Reuses this constraint for a new contact. entryPoint may be null. */
+  public void set(Particle particle, Point3d entryPoint, Triangle triangle) {
     this.particle = particle;
-    this.entryPoint = entryPoint;
     this.triangle = triangle;
+    thickness = 0;
+    hasEntryPoint = entryPoint != null;
+    if (hasEntryPoint) {
+      this.entryPoint.set(entryPoint);
+    }
   }
 
   @Override
   public void applyForce() {
-    Vector3d grad = triangle.getNormal();
-    Vector3d diff = new Vector3d();
-    //diff.sub(particle.x, entryPoint);
-    diff.sub(particle.x, particle.xPrev);
-    double c = diff.dot(triangle.getNormal());
+    ParticleStore s = particle.getStore();
+    project(s.x, s.x, null, null);
+  }
+
+  /**
+   * Projects this contact and records its penetration, in scene units, in r.
+   */
+  public void applyForce(Residual r) {
+    ParticleStore s = particle.getStore();
+    project(s.x, s.x, null, r);
+  }
+
+  /**
+   * Jacobi variant of applyForce(): adds the correction to dx instead of moving
+   * the particle, and counts it in count. The penetration is recorded in r.
+   */
+  public void accumulate(double[] dx, int[] count, Residual r) {
+    project(particle.getStore().x, dx, count, r);
+  }
+
+  private void project(double[] x, double[] out, int[] count, Residual r) {
+    Vector3d grad = normal;
+    ParticleStore s = particle.getStore();
+    int i = 3 * particle.getIndex();
+    double c;
+    if (triangle == null) {
+      // c = (x - entryPoint) . n - thickness
+      grad.set(contactNormal);
+      Point3d q = entryPoint;
+      c = (x[i] - q.x) * grad.x + (x[i + 1] - q.y) * grad.y + (x[i + 2] - q.z) * grad.z - thickness;
+    } else if (thickness > 0) {
+      triangle.getNormal(grad);
+      // c = (x - entryPoint) . n - thickness, n on the side of xPrev
+      Point3d q = entryPoint;
+      if ((s.xPrev[i] - q.x) * grad.x + (s.xPrev[i + 1] - q.y) * grad.y + (s.xPrev[i + 2] - q.z) * grad.z < 0) {
+        grad.negate();
+      }
+      c = (x[i] - q.x) * grad.x + (x[i + 1] - q.y) * grad.y + (x[i + 2] - q.z) * grad.z - thickness;
+    } else {
+      triangle.getNormal(grad);
+      // c = (x - xPrev) . n
+      //diff.sub(particle.x, entryPoint);
+      c = (x[i] - s.xPrev[i]) * grad.x + (x[i + 1] - s.xPrev[i + 1]) * grad.y
+          + (x[i + 2] - s.xPrev[i + 2]) * grad.z;
+    }
     if (c >= 0) {
+      if (r != null) {
+        r.add(0);
+      }
       return;
     }
-    Vector3d dp = new Vector3d(grad);
-    dp.scale(-c / grad.lengthSquared() * k * 1.6);
-    particle.x.add(dp);
+    if (r != null) {
+      r.add(c);
+    }
+    // paths through triangles are over-relaxed; planes of colliders are exact,
+    // so that particles resting on them stay in the plane
+    double scale = -c / grad.lengthSquared() * k * (triangle == null ? 1 : 1.6);
+    out[i] += grad.x * scale;
+    out[i + 1] += grad.y * scale;
+    out[i + 2] += grad.z * scale;
+    if (count != null) {
+      count[particle.getIndex()]++;
+    }
   }
 
   @Override
@@ -0,0 +1,14 @@
+package forces;
+
+/**
+ * A constraint that can be solved with XPBD: each element keeps a Lagrange
+ * multiplier that is accumulated over the solver iterations of a step, and its
+ * stiffness is given as a compliance (inverse stiffness) scaled by 1 / dt^2.
+ * The converged result then depends on neither the iteration count nor the
+ * time step.
+ */
+public interface CompliantConstraint extends Force {
+
+  /** Called once per time step, before the first iteration; resets the multipliers. */
+  public void beginStep(double dt);
+}
@@ -1,11 +1,8 @@
 package forces;
 
-import javax.vecmath.Vector3d;
-
 import com.jogamp.opengl.GL2;
 
-import particles.Constants;
-import particles.Particle;
+import particles.ParticleStore;
 import particles.ParticleSystem;
 
 public class Gravity implements Force {
@@ -20,11 +17,12 @@ public class Gravity implements Force {
 
   @Override
   public void applyForce() {
-    for (Particle p : ps.P) {
-      if (p.getHighlight()) {
+    ParticleStore s = ps.store;
+    for (int i = 0; i < s.size(); i++) {
+      if (s.pinned[i]) {
         continue;
       }
-      p.addForce(new Vector3d(0, -GRAV_CONST * p.m, 0));
+      s.df[3 * i + 1] -= GRAV_CONST * s.m[i];
     }
   }
 
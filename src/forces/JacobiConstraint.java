@@ -0,0 +1,45 @@
+package forces;
+
+/**
+ * A constraint made of independent elements (e.g. one per edge) that can be
+ * projected in Jacobi fashion: instead of moving particles, each element adds
+ * its position correction to a delta buffer and counts itself for every
+ * particle it touches. Since positions are only read, any partition of the
+ * elements can be accumulated concurrently; see particles.JacobiSolver.
+ * The solver keeps a Residual and any scratch per chunk of elements, and
+ * merges the residuals into getResidual() once all chunks are done.
+ *
+ * @see Force#applyForce() for the sequential Gauss-Seidel projection.
+ */
+public interface JacobiConstraint extends ResidualConstraint {
+
+  /** @return the number of elements of this constraint. */
+  public int numElements();
+
+  /**
+   * Accumulates the position corrections of elements [from, to).
+   *
+   * @param x
+   *          particle positions, read only.
+   * @param w
+   *          particle inverse masses.
+   * @param dx
+   *          position corrections, three per particle, added to.
+   * @param count
+   *          number of corrections added to each particle, incremented.
+   * @param scratch
+   *          what newScratch() returned for the chunk of the calling thread.
+   * @param r
+   *          the violations of the chunk, recorded into.
+   */
+  public void accumulate(int from, int to, double[] x, double[] w, double[] dx, int[] count, Object scratch,
+      Residual r);
+
+  /**
+   * @return scratch for one chunk of accumulate(), which the solver keeps
+   *         from pass to pass; null if none is needed.
+   */
+  public default Object newScratch() {
+    return null;
+  }
+}
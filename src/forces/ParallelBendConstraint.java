@@ -0,0 +1,81 @@
+package forces;
+
+import particles.BendBatch;
+import particles.ParallelRange;
+import particles.ParticleStore;
+import particles.ParticleSystem;
+
+/**
+ * BendConstraint projected in parallel. Each bend touches four particles: the
+ * edge vertices and the opposite vertices of both adjacent triangles. The
+ * bends are coloured by these stencils (see BendBatch.colors), so bends of one
+ * colour are independent and project concurrently, while the colours run in
+ * order.
+ *
+ * The loop body, and the scratch vectors and Residual of every chunk, are
+ * kept from pass to pass, so a pass does not allocate.
+ */
+public class ParallelBendConstraint extends BendConstraint {
+
+  /** Bends are about ten times as expensive as stretches; split ranges finer. */
+  private static final int GRAIN = 64;
+
+  private final ParallelRange range = new ParallelRange();
+  private Scratch[] chunkScratch = new Scratch[0];
+  private Residual[] chunkResiduals = new Residual[0];
+
+  /** State of the current colour, read by the loop body. */
+  private double[] x, w;
+  private BendBatch batch;
+  private int[] color;
+
+  private final ParallelRange.Body projectColor = new ParallelRange.Body() {
+    @Override
+    public void apply(int from, int to) {
+      int chunk = from / GRAIN;
+      Scratch t = chunkScratch[chunk];
+      Residual r = chunkResiduals[chunk];
+      for (int k = from; k < to; k++) {
+        project(x, w, batch, color[k], x, null, t, r);
+      }
+    }
+  };
+
+  public ParallelBendConstraint(ParticleSystem ps, double stiffness, int numIter) {
+    super(ps, stiffness, numIter);
+  }
+
+  @Override
+  public void applyForce() {
+    ParticleStore s = ps.store;
+    x = s.x;
+    w = s.w;
+    batch = ps.getBendBatch();
+    for (int c = 0; c < batch.colors.length; c++) {
+      color = batch.colors[c];
+      int numChunks = ParallelRange.numChunks(color.length, GRAIN);
+      ensureChunks(numChunks);
+      range.forEach(color.length, GRAIN, projectColor);
+      for (int k = 0; k < numChunks; k++) {
+        residual.merge(chunkResiduals[k]);
+        chunkResiduals[k].reset();
+      }
+    }
+    x = null;
+    w = null;
+    color = null;
+  }
+
+  private void ensureChunks(int numChunks) {
+    if (chunkScratch.length < numChunks) {
+      Scratch[] scratch = new Scratch[numChunks];
+      Residual[] residuals = new Residual[numChunks];
+      for (int k = 0; k < numChunks; k++) {
+        scratch[k] = k < chunkScratch.length ? chunkScratch[k] : new Scratch();
+        residuals[k] = k < chunkResiduals.length ? chunkResiduals[k] : new Residual();
+      }
+      chunkScratch = scratch;
+      chunkResiduals = residuals;
+    }
+  }
+}
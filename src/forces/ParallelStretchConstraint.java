@@ -0,0 +1,81 @@
+package forces;
+
+import particles.ParallelRange;
+import particles.ParticleStore;
+import particles.ParticleSystem;
+import particles.SimdKernels;
+import particles.StretchBatch;
+
+/**
+ * StretchConstraint projected in parallel. The constraints are coloured so
+ * that no two constraints of a colour share a particle (see
+ * StretchBatch.colors); colours are processed one after another and the
+ * constraints within a colour concurrently, which keeps Gauss-Seidel semantics
+ * without data races. If the particle system uses SIMD kernels, each range of
+ * a colour is projected with SimdKernels.projectStretch().
+ *
+ * The loop body and one Residual per chunk are kept from pass to pass, so a
+ * pass does not allocate.
+ */
+public class ParallelStretchConstraint extends StretchConstraint {
+
+  private final ParallelRange range = new ParallelRange();
+  private Residual[] chunkResiduals = new Residual[0];
+
+  /** State of the current colour, read by the loop body. */
+  private double[] x, w;
+  private StretchBatch batch;
+  private SimdKernels simd;
+  private int colorIndex;
+
+  private final ParallelRange.Body projectColor = new ParallelRange.Body() {
+    @Override
+    public void apply(int from, int to) {
+      Residual r = chunkResiduals[from / ParallelRange.DEFAULT_GRAIN];
+      if (simd != null) {
+        simd.projectStretch(x, w, batch, colorIndex, from, to, kIter, alphaTilde, compliant ? lambda : null, r);
+      } else {
+        int[] color = batch.colors[colorIndex];
+        for (int k = from; k < to; k++) {
+          project(x, w, batch, color[k], x, null, r);
+        }
+      }
+    }
+  };
+
+  public ParallelStretchConstraint(ParticleSystem ps, double distance, double stiffness, int numIter) {
+    super(ps, distance, stiffness, numIter);
+  }
+
+  @Override
+  public void applyForce() {
+    ParticleStore s = ps.store;
+    x = s.x;
+    w = s.w;
+    batch = ps.getStretchBatch();
+    simd = ps.getSimdKernels();
+    for (int c = 0; c < batch.colors.length; c++) {
+      int n = batch.colors[c].length;
+      int numChunks = ParallelRange.numChunks(n, ParallelRange.DEFAULT_GRAIN);
+      ensureResiduals(numChunks);
+      colorIndex = c;
+      range.forEach(n, ParallelRange.DEFAULT_GRAIN, projectColor);
+      for (int k = 0; k < numChunks; k++) {
+        residual.merge(chunkResiduals[k]);
+        chunkResiduals[k].reset();
+      }
+    }
+    x = null;
+    w = null;
+  }
+
+  private void ensureResiduals(int numChunks) {
+    if (chunkResiduals.length < numChunks) {
+      Residual[] grown = new Residual[numChunks];
+      for (int k = 0; k < numChunks; k++) {
+        grown[k] = k < chunkResiduals.length ? chunkResiduals[k] : new Residual();
+      }
+      chunkResiduals = grown;
+    }
+  }
+}
@@ -31,19 +31,19 @@ public class PressureConstraint implements Force {
     Map<Vertex, Vector3d> dCdpi = new HashMap<>();
     for (Triangle triangle : mesh.triangles) {
       Vector3d c1 = new Vector3d();
-      c1.cross(new Vector3d(triangle.v1.x), new Vector3d(triangle.v2.x));
+      c1.cross(new Vector3d(triangle.v1.getX()), new Vector3d(triangle.v2.getX()));
       Vector3d tmp1 = new Vector3d(dCdpi.get(triangle.v0));
       tmp1.add(c1);
       dCdpi.put(triangle.v0, tmp1);
       
       Vector3d c2 = new Vector3d();
-      c2.cross(new Vector3d(triangle.v2.x), new Vector3d(triangle.v0.x));
+      c2.cross(new Vector3d(triangle.v2.getX()), new Vector3d(triangle.v0.getX()));
       Vector3d tmp2 = new Vector3d(dCdpi.get(triangle.v0));
       tmp2.add(c2);
       dCdpi.put(triangle.v1, tmp2);
       
       Vector3d c3 = new Vector3d();
-      c1.cross(new Vector3d(triangle.v0.x), new Vector3d(triangle.v1.x));
+      c1.cross(new Vector3d(triangle.v0.getX()), new Vector3d(triangle.v1.getX()));
       Vector3d tmp3 = new Vector3d(dCdpi.get(triangle.v0));
       tmp3.add(c3);
       dCdpi.put(triangle.v2, tmp3);
@@ -52,15 +52,15 @@ public class PressureConstraint implements Force {
     double c = -pressureCoeff * v0;
     for (Triangle triangle : mesh.triangles) {
       Vector3d tmp = new Vector3d();
-      tmp.cross(new Vector3d(triangle.v0.x), new Vector3d(triangle.v1.x));
-      c += tmp.dot(new Vector3d(triangle.v2.x));
+      tmp.cross(new Vector3d(triangle.v0.getX()), new Vector3d(triangle.v1.getX()));
+      c += tmp.dot(new Vector3d(triangle.v2.getX()));
     }
     
     for (Vertex vertex : mesh.vertices) {
       Vector3d dp = dCdpi.get(vertex);
       dp.scale(c / dp.lengthSquared() * vertex.getPositionUpdateInvMass());
       dp.negate();
-      vertex.x.add(dp);
+      vertex.addX(dp);
     }
     
   }
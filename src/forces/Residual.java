@@ -0,0 +1,59 @@
+package forces;
+
+/**
+ * Maximum and RMS of the constraint violations seen during one projection
+ * pass. Each thread projecting concurrently records into its own Residual and
+ * merges it into the constraint's when done.
+ */
+public class Residual {
+
+  private double max;
+  private double sumSquares;
+  private int count;
+
+  public void reset() {
+    max = 0;
+    sumSquares = 0;
+    count = 0;
+  }
+
+  /** Records the violation c of one constraint element. */
+  public void add(double c) {
+    c = Math.abs(c);
+    if (c > max) {
+      max = c;
+    }
+    sumSquares += c * c;
+    count++;
+  }
+
+  /** Records count violations, of which max is the largest in magnitude and sumSquares the sum of squares. */
+  public void add(double max, double sumSquares, int count) {
+    this.max = Math.max(this.max, max);
+    this.sumSquares += sumSquares;
+    this.count += count;
+  }
+
+  public synchronized void merge(Residual other) {
+    max = Math.max(max, other.max);
+    sumSquares += other.sumSquares;
+    count += other.count;
+  }
+
+  public double getMax() {
+    return max;
+  }
+
+  public double getRms() {
+    return count == 0 ? 0 : Math.sqrt(sumSquares / count);
+  }
+
+  public int getCount() {
+    return count;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("max %.3e, rms %.3e over %d", max, getRms(), count);
+  }
+}
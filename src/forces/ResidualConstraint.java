@@ -0,0 +1,14 @@
+package forces;
+
+/**
+ * A constraint that measures its violation while projecting, so that the
+ * solver can stop iterating once it has converged.
+ */
+public interface ResidualConstraint extends Force {
+
+  /**
+   * @return the violations recorded since the last reset, i.e. those measured
+   *         before each element's correction in the current pass.
+   */
+  public Residual getResidual();
+}
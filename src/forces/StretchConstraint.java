@@ -1,57 +1,142 @@
 package forces;
 
-import javax.vecmath.Vector3d;
+import java.util.Arrays;
 
 import com.jogamp.opengl.GL2;
 
-import particles.Edge;
-import particles.Mesh;
+import particles.ParticleStore;
 import particles.ParticleSystem;
+import particles.StretchBatch;
 
 /**
  * C(p1, p2) = |p1 - p2| - d.
  * Applied to all points in mesh
+ * 
+ * By default the stiffness is scaled by the iteration count (PBD); after
+ * setCompliance() the constraint is solved with XPBD instead.
  * @author rex
  *
  */
-public class StretchConstraint implements Force {
+public class StretchConstraint implements JacobiConstraint, CompliantConstraint, ResidualConstraint {
   
-  private ParticleSystem ps;
+  protected ParticleSystem ps;
   private double d;
   private double k;
-  private double kIter;
+  protected double kIter;
+
+  /** XPBD state: compliance, compliance / dt^2, and one multiplier per batch constraint. */
+  protected boolean compliant = false;
+  private double compliance;
+  protected double alphaTilde;
+  protected double[] lambda = new double[0];
+
+  /** Strain (violation relative to the rest length) measured while projecting. */
+  protected final Residual residual = new Residual();
   
   public StretchConstraint(ParticleSystem ps, double distance, double stiffness, int numIter) {
     this.ps = ps;
     this.d = distance;
+    setStiffness(stiffness, numIter);
+  }
+
+  /** Switches to PBD with the given stiffness in [0, 1], reached after numIter iterations. */
+  public void setStiffness(double stiffness, int numIter) {
     this.k = stiffness;
     this.kIter = 1 - Math.pow((1 - k), 1.0 / numIter);
+    compliant = false;
+  }
+
+  /** Switches to XPBD with the given compliance (inverse stiffness); 0 is rigid. */
+  public void setCompliance(double compliance) {
+    this.compliance = compliance;
+    compliant = true;
+  }
+
+  @Override
+  public void beginStep(double dt) {
+    alphaTilde = compliance / (dt * dt);
+    int n = numElements();
+    if (lambda.length < n) {
+      lambda = new double[n];
+    } else {
+      Arrays.fill(lambda, 0, n, 0);
+    }
   }
 
   @Override
   public void applyForce() {
-    for (Mesh mesh : ps.M) {
-      for (Edge edge : mesh.edges) {
-        Vector3d diff = new Vector3d();
-        diff.sub(edge.v0.x, edge.v1.x);
-        Vector3d dp = new Vector3d(diff);
-        dp.scale((Math.abs(diff.length()) - edge.restLength) / diff.length());
-        double w0 = edge.v0.getPositionUpdateInvMass();
-        double w1 = edge.v1.getPositionUpdateInvMass();
-        Vector3d dp0 = new Vector3d(dp);
-        Vector3d dp1 = new Vector3d(dp);
-        dp0.scale(-w0 / (w0 + w1) * kIter);
-        dp1.scale(w1 / (w0 + w1) * kIter);
-        //edge.v0.addPos(dp0);
-        //edge.v1.addPos(dp1);
-        edge.v0.x.add(dp0);
-        edge.v1.x.add(dp1);
-        /*if (edge.v0.getHighlight()) {
-          System.out.println(diff);
-          System.out.println(dp0);
-          System.out.println(edge.v0.x);
-        }*/
-      }
+    ParticleStore s = ps.store;
+    double[] x = s.x;
+    double[] w = s.w;
+    StretchBatch batch = ps.getStretchBatch();
+    for (int e = 0; e < batch.size; e++) {
+      project(x, w, batch, e, x, null, residual);
+    }
+  }
+
+  @Override
+  public int numElements() {
+    return ps.getStretchBatch().size;
+  }
+
+  /** Elements are the constraints of ps.getStretchBatch(). */
+  @Override
+  public void accumulate(int from, int to, double[] x, double[] w, double[] dx, int[] count, Object scratch,
+      Residual r) {
+    StretchBatch batch = ps.getStretchBatch();
+    for (int e = from; e < to; e++) {
+      project(x, w, batch, e, dx, count, r);
+    }
+  }
+
+  @Override
+  public Residual getResidual() {
+    return residual;
+  }
+
+  /**
+   * Projects constraint e of batch, reading positions from x and adding the
+   * corrections to out. If count is not null, the number of corrections per
+   * particle is incremented. The violation is recorded in r.
+   */
+  protected final void project(double[] x, double[] w, StretchBatch batch, int e, double[] out, int[] count,
+      Residual r) {
+    int a = batch.i[e];
+    int b = batch.j[e];
+    double restLength = batch.restLength[e];
+    double w0 = w[a];
+    double w1 = w[b];
+    int i = 3 * a;
+    int j = 3 * b;
+    double dx = x[i] - x[j];
+    double dy = x[i + 1] - x[j + 1];
+    double dz = x[i + 2] - x[j + 2];
+    double length = Math.sqrt(dx * dx + dy * dy + dz * dz);
+    double c = length - restLength;
+    double s0, s1;
+    if (compliant) {
+      // dLambda = (-C - alpha~ lambda) / (w0 + w1 + alpha~), dp = +-w dLambda diff / |diff|
+      r.add((c + alphaTilde * lambda[e]) / restLength);
+      double dLambda = (-c - alphaTilde * lambda[e]) / (w0 + w1 + alphaTilde);
+      lambda[e] += dLambda;
+      s0 = w0 * dLambda / length;
+      s1 = -w1 * dLambda / length;
+    } else {
+      r.add(c / restLength);
+      // dp = diff * (|diff| - restLength) / |diff|
+      double scale = c / length;
+      s0 = -w0 / (w0 + w1) * kIter * scale;
+      s1 = w1 / (w0 + w1) * kIter * scale;
+    }
+    out[i] += s0 * dx;
+    out[i + 1] += s0 * dy;
+    out[i + 2] += s0 * dz;
+    out[j] += s1 * dx;
+    out[j + 1] += s1 * dy;
+    out[j + 2] += s1 * dz;
+    if (count != null) {
+      count[a]++;
+      count[b]++;
     }
   }
 
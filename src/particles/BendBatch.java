@@ -0,0 +1,73 @@
+package particles;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The bend constraints of all meshes, one per interior edge, compiled into
+ * flat arrays: constraint e bends the triangles (i, j, k) and (i, j, l) about
+ * their shared edge (i[e], j[e]) towards the dihedral angle restAngle[e].
+ * Boundary edges have no bend constraint and are left out. Stencils are the
+ * four particles, so constraints of one colour share none of them.
+ *
+ * @see ParticleSystem#getBendBatch()
+ */
+public class BendBatch {
+
+  /** Rest dihedral angle of every bend: pi, i.e. flat. */
+  public static final double FLAT = Math.PI;
+
+  public final int size;
+  public final int[] i;
+  public final int[] j;
+  public final int[] k;
+  public final int[] l;
+  public final double[] restAngle;
+
+  /** For each colour, the constraints of that colour; see GraphColoring. */
+  public final int[][] colors;
+
+  private BendBatch(int[] i, int[] j, int[] k, int[] l, double[] restAngle, int[][] colors) {
+    this.size = i.length;
+    this.i = i;
+    this.j = j;
+    this.k = k;
+    this.l = l;
+    this.restAngle = restAngle;
+    this.colors = colors;
+  }
+
+  /** Compiles the interior edges of meshes, in mesh and edge order. */
+  public static BendBatch compile(List<Mesh> meshes) {
+    int size = 0;
+    for (Mesh mesh : meshes) {
+      for (Edge edge : mesh.edges) {
+        if (edge.t0 != null && edge.t1 != null) {
+          size++;
+        }
+      }
+    }
+    int[] i = new int[size];
+    int[] j = new int[size];
+    int[] k = new int[size];
+    int[] l = new int[size];
+    double[] restAngle = new double[size];
+    List<int[]> stencils = new ArrayList<>(size);
+    int e = 0;
+    for (Mesh mesh : meshes) {
+      for (Edge edge : mesh.edges) {
+        if (edge.t0 == null || edge.t1 == null) {
+          continue;
+        }
+        i[e] = edge.v0.getIndex();
+        j[e] = edge.v1.getIndex();
+        k[e] = edge.t1.getDiffVertex(edge.v0, edge.v1).getIndex();
+        l[e] = edge.t0.getDiffVertex(edge.v0, edge.v1).getIndex();
+        restAngle[e] = FLAT;
+        stencils.add(new int[] { i[e], j[e], k[e], l[e] });
+        e++;
+      }
+    }
+    return new BendBatch(i, j, k, l, restAngle, GraphColoring.color(stencils));
+  }
+}
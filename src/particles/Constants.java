@@ -16,6 +16,15 @@ public interface Constants
     public static final double CAM_COS_THETA     = Math.cos(0.2);
     
     public static final double NUM_SOLVER_ITERATIONS = 10;
+
+    /** Slack of the per-frame collision broad phase, in scene units. */
+    public static final double BROAD_PHASE_MARGIN = 0.05;
+
+    /** Slack of the cached leaf boxes of ParticleSystem.setContactCache(). */
+    public static final double CONTACT_CACHE_MARGIN = 0.002;
+
+    /** Width, in cells, of the exact band of static mesh distance fields. */
+    public static final int SDF_BAND_CELLS       = 4;
     
     public static final double CLOTH_DENSITY     = 10;
     
@@ -23,6 +32,9 @@ public interface Constants
     public static final double STRETCH_DIST      = 0.1;
     public static final double STRETCH_STIFF     = 0.8;
     public static final double BEND_STIFF        = 0.2;
+    /** XPBD compliances (inverse stiffnesses), used instead of the stiffnesses above. */
+    public static final double STRETCH_COMPLIANCE = 1e-7;
+    public static final double BEND_COMPLIANCE   = 1e-3;
     public static final double DAMP_COEFF        = 0.1;
     public static final double PRESSURE_COEFF    = 0.6;
 }
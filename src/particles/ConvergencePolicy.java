@@ -0,0 +1,34 @@
+package particles;
+
+import forces.Residual;
+
+/**
+ * When to stop the solver iterations of a step: after at least minIterations,
+ * as soon as every constraint's residual is within both tolerances, and in any
+ * case after maxIterations. Tolerances are in the constraints' own units
+ * (strain for stretch, radians for bend, scene units for collisions).
+ *
+ * PBD stiffness is tuned for a fixed iteration count, so stopping early also
+ * softens PBD constraints; compliant (XPBD) constraints are not affected.
+ */
+public class ConvergencePolicy {
+
+  public final double maxTolerance;
+  public final double rmsTolerance;
+  public final int minIterations;
+  public final int maxIterations;
+
+  public ConvergencePolicy(double maxTolerance, double rmsTolerance, int minIterations, int maxIterations) {
+    if (minIterations < 1 || maxIterations < minIterations) {
+      throw new IllegalArgumentException("need 1 <= minIterations <= maxIterations");
+    }
+    this.maxTolerance = maxTolerance;
+    this.rmsTolerance = rmsTolerance;
+    this.minIterations = minIterations;
+    this.maxIterations = maxIterations;
+  }
+
+  public boolean isConverged(Residual r) {
+    return r.getMax() <= maxTolerance && r.getRms() <= rmsTolerance;
+  }
+}
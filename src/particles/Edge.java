@@ -52,14 +52,14 @@ public class Edge {
     v1.edges.add(this);
 
     Vector3d edge = new Vector3d();
-    edge.sub(v1.x0, v0.x0);
+    edge.sub(v1.getX0(), v0.getX0());
     restLength = edge.length();
   }
 
   /** Returns the current length of this edge. */
   public double length() {
     Vector3d edge = new Vector3d();
-    edge.sub(v1.x, v0.x);
+    edge.sub(v1.getX(), v0.getX());
     return edge.length();
   }
 
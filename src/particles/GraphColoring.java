@@ -0,0 +1,65 @@
+package particles;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Greedy colouring of constraint stencils. A stencil is the set of particle
+ * indices one constraint reads and writes; two stencils conflict if they share
+ * a particle. Stencils of the same colour never conflict, so each colour can be
+ * projected in parallel while the colours themselves are processed in order,
+ * which keeps Gauss-Seidel semantics without data races.
+ */
+public class GraphColoring {
+
+  /**
+   * @param stencils
+   *          the particle indices touched by each constraint.
+   * @return for each colour, the indices (into stencils) of its constraints, in
+   *         increasing order.
+   */
+  public static int[][] color(List<int[]> stencils) {
+    int maxIndex = -1;
+    for (int[] stencil : stencils) {
+      for (int i : stencil) {
+        maxIndex = Math.max(maxIndex, i);
+      }
+    }
+
+    // colours already used by constraints touching each particle
+    BitSet[] used = new BitSet[maxIndex + 1];
+    BitSet forbidden = new BitSet();
+    List<List<Integer>> colors = new ArrayList<>();
+    for (int c = 0; c < stencils.size(); c++) {
+      int[] stencil = stencils.get(c);
+      forbidden.clear();
+      for (int i : stencil) {
+        if (used[i] != null) {
+          forbidden.or(used[i]);
+        }
+      }
+      int color = forbidden.nextClearBit(0);
+      for (int i : stencil) {
+        if (used[i] == null) {
+          used[i] = new BitSet();
+        }
+        used[i].set(color);
+      }
+      if (color == colors.size()) {
+        colors.add(new ArrayList<Integer>());
+      }
+      colors.get(color).add(c);
+    }
+
+    int[][] result = new int[colors.size()][];
+    for (int color = 0; color < result.length; color++) {
+      List<Integer> members = colors.get(color);
+      result[color] = new int[members.size()];
+      for (int k = 0; k < members.size(); k++) {
+        result[color][k] = members.get(k);
+      }
+    }
+    return result;
+  }
+}
@@ -0,0 +1,178 @@
+package particles;
+
+import java.util.IdentityHashMap;
+import java.util.concurrent.ForkJoinPool;
+
+import forces.JacobiConstraint;
+import forces.Residual;
+
+/**
+ * Jacobi projection of constraints with averaged deltas. The elements of a
+ * constraint are split into one chunk per worker thread; each chunk adds its
+ * corrections and per-particle counts to its own buffers, so the chunks need no
+ * colouring and no synchronisation. The buffers are then reduced and every
+ * particle is moved by omega times the average of its corrections. Each chunk
+ * also records violations into a Residual and projects with scratch of its
+ * own; like the buffers, they are kept from pass to pass, so a pass does not
+ * allocate once every constraint has been projected.
+ *
+ * Averaging converges more slowly than Gauss-Seidel per iteration, but every
+ * pass is embarrassingly parallel. omega > 1 (successive over-relaxation)
+ * recovers some of the lost convergence; values of 1 to 2 are sensible.
+ */
+public class JacobiSolver {
+
+  /** Elements per chunk below which no further chunk is made. */
+  private static final int MIN_CHUNK = 64;
+
+  private double omega = 1.0;
+  /** Most chunks per pass: one per thread of the common pool by default. */
+  private int maxChunks = ForkJoinPool.getCommonPoolParallelism();
+
+  private final ParallelRange range = new ParallelRange();
+
+  /** Per-chunk corrections (three per particle) and counts (one per particle). */
+  private double[][] dx = new double[0][];
+  private int[][] count = new int[0][];
+  private int capacity = 0;
+  /** Per-chunk violations, merged into the constraint's after each pass. */
+  private Residual[] residuals = new Residual[0];
+  /** Per-chunk scratch of each constraint; see JacobiConstraint.newScratch(). */
+  private IdentityHashMap<JacobiConstraint, Object>[] scratch = newScratch(0);
+
+  /** State of the current pass, read by the loop bodies. */
+  private JacobiConstraint constraint;
+  private ParticleStore store;
+  private int numElements, numChunks;
+
+  private final ParallelRange.Body accumulateChunks = new ParallelRange.Body() {
+    @Override
+    public void apply(int from, int to) {
+      for (int c = from; c < to; c++) {
+        int begin = (int) ((long) numElements * c / numChunks);
+        int end = (int) ((long) numElements * (c + 1) / numChunks);
+        constraint.accumulate(begin, end, store.x, store.w, dx[c], count[c], scratch(c), residuals[c]);
+      }
+    }
+  };
+
+  private final ParallelRange.Body reduce = new ParallelRange.Body() {
+    @Override
+    public void apply(int from, int to) {
+      double[] x = store.x;
+      for (int i = from; i < to; i++) {
+        int n = 0;
+        double sx = 0, sy = 0, sz = 0;
+        for (int c = 0; c < numChunks; c++) {
+          int[] cc = count[c];
+          if (cc[i] == 0) {
+            continue;
+          }
+          double[] d = dx[c];
+          n += cc[i];
+          sx += d[3 * i];
+          sy += d[3 * i + 1];
+          sz += d[3 * i + 2];
+          cc[i] = 0;
+          d[3 * i] = 0;
+          d[3 * i + 1] = 0;
+          d[3 * i + 2] = 0;
+        }
+        if (n > 0) {
+          double scale = omega / n;
+          x[3 * i] += sx * scale;
+          x[3 * i + 1] += sy * scale;
+          x[3 * i + 2] += sz * scale;
+        }
+      }
+    }
+  };
+
+  /** Sets the over-relaxation factor applied to the averaged corrections. */
+  public void setRelaxation(double omega) {
+    this.omega = omega;
+  }
+
+  public double getRelaxation() {
+    return omega;
+  }
+
+  /** Sets the most chunks a pass is split into; for tests. */
+  void setMaxChunks(int chunks) {
+    if (chunks < 1) {
+      throw new IllegalArgumentException("need at least one chunk");
+    }
+    maxChunks = chunks;
+  }
+
+  /**
+   * Projects every element of constraint once against the current positions of
+   * store, then moves the particles by their relaxed average corrections.
+   */
+  public void project(JacobiConstraint constraint, ParticleStore store) {
+    int n = store.size();
+    numElements = constraint.numElements();
+    if (numElements == 0 || n == 0) {
+      return;
+    }
+    numChunks = Math.max(1, Math.min(maxChunks, numElements / MIN_CHUNK));
+    ensureCapacity(numChunks, n);
+
+    this.constraint = constraint;
+    this.store = store;
+    range.forEach(numChunks, 1, accumulateChunks);
+    range.forEach(n, reduce);
+    Residual residual = constraint.getResidual();
+    for (int c = 0; c < numChunks; c++) {
+      residual.merge(residuals[c]);
+      residuals[c].reset();
+    }
+    this.constraint = null;
+    this.store = null;
+  }
+
+  /** Buffers are kept zeroed between passes, so growing is the only allocation. */
+  private void ensureCapacity(int chunks, int n) {
+    if (n > capacity) {
+      capacity = Math.max(n, 2 * capacity);
+      dx = new double[0][];
+      count = new int[0][];
+    }
+    if (chunks > dx.length) {
+      double[][] newDx = new double[chunks][];
+      int[][] newCount = new int[chunks][];
+      for (int c = 0; c < chunks; c++) {
+        newDx[c] = c < dx.length ? dx[c] : new double[3 * capacity];
+        newCount[c] = c < count.length ? count[c] : new int[capacity];
+      }
+      dx = newDx;
+      count = newCount;
+    }
+    if (chunks > residuals.length) {
+      Residual[] newResiduals = new Residual[chunks];
+      IdentityHashMap<JacobiConstraint, Object>[] newScratch = newScratch(chunks);
+      for (int c = 0; c < chunks; c++) {
+        newResiduals[c] = c < residuals.length ? residuals[c] : new Residual();
+        newScratch[c] = c < scratch.length ? scratch[c] : new IdentityHashMap<>();
+      }
+      residuals = newResiduals;
+      scratch = newScratch;
+    }
+  }
+
+  /** @return the scratch of the current constraint for chunk c, created on its first pass */
+  private Object scratch(int c) {
+    IdentityHashMap<JacobiConstraint, Object> chunk = scratch[c];
+    Object t = chunk.get(constraint);
+    if (t == null && !chunk.containsKey(constraint)) {
+      t = constraint.newScratch();
+      chunk.put(constraint, t);
+    }
+    return t;
+  }
+
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  private static IdentityHashMap<JacobiConstraint, Object>[] newScratch(int chunks) {
+    return new IdentityHashMap[chunks];
+  }
+}
@@ -1,25 +1,33 @@
 package particles;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import javax.vecmath.Matrix3d;
 import javax.vecmath.Point3d;
-import javax.vecmath.Point3i;
-import javax.vecmath.Tuple2i;
-import javax.vecmath.Tuple3i;
 import javax.vecmath.Vector3d;
 
 import com.jogamp.opengl.*;
 import com.jogamp.opengl.util.glsl.*;
 
+import bvh.AabbTree;
+import colliders.BoxCollider;
+import colliders.Collider;
 import forces.CollisionConstraint;
 import particles.Collision;
 import particles.Mesh;
+import pqp.ContactPairs;
+import pqp.DeformableModel;
 import pqp.PQP;
 import pqp.PQPHelper;
 import pqp.PQP_Model;
+import pqp.ProximityQuery;
+import pqp.SegmentQuery;
+import sdf.SignedDistanceField;
 
 /**
  * A mesh data structure which may be displayed to the screen. The mesh is
@@ -36,13 +44,31 @@ import pqp.PQP_Model;
  */
 public class Mesh {
 
+  /** Whether libPQP could be loaded; without it only the BVH backend works. */
+  public static final boolean PQP_AVAILABLE;
+
   static {
     /*
      * Need the library (libPQP.so in Linux, PQP.dll in Windows) to be put into
      * java library path. In Linux, it is the LD_LIBRARY_PATH; in Windows, it is
      * the PATH variable. Check using: System.getProperty("java.library.path");
      */
-    System.loadLibrary("PQP");
+    boolean loaded;
+    try {
+      System.loadLibrary("PQP");
+      loaded = true;
+    } catch (UnsatisfiedLinkError e) {
+      loaded = false;
+    }
+    PQP_AVAILABLE = loaded;
+  }
+
+  /** The structure collision queries against a mesh go through. */
+  public enum CollisionBackend {
+    /** Native OBB tree of PQP; needs libPQP. */
+    PQP,
+    /** Pure-Java AABB tree (bvh.AabbTree); runs without native code. */
+    BVH
   }
 
   private boolean init = false;
@@ -76,8 +102,44 @@ public class Mesh {
 
   private PQP_Model pqpModel;
 
+  /** Owner of pqpModel, and the topologyVersion it was built for. */
+  private DeformableModel deformable;
+  private int collisionVersion;
+
+  private CollisionBackend backend = PQP_AVAILABLE ? CollisionBackend.PQP : CollisionBackend.BVH;
+  private AabbTree bvh;
+  /** Scratch of BVH queries, and the pair buffer of collideWithStaticMesh. */
+  private final AabbTree.Hit hit = new AabbTree.Hit();
+  private int[] pairs = new int[64];
+  /** The single segment of segmentIntersects() and segmentIntersectsPQP(). */
+  private final SegmentQuery pathQuery = new SegmentQuery(1);
+  /** Triangle pairs of collideWithStaticMesh with the PQP backend; created on first use. */
+  private ContactPairs contactPairs;
+  /**
+   * Placement of a kinematic obstacle, see setTransform(): the rotation
+   * (row-major) and translation from the rest positions x0 to the world; null
+   * for meshes that have none. Never written once assigned: setTransform()
+   * replaces both, so a query that has read them is not disturbed by the
+   * next placement.
+   */
+  private double[] rotation;
+  private double[] translation;
+  /**
+   * Signed distance that replaces the path queries of particles against this
+   * mesh, in its rest frame if it is placed: the field of
+   * buildDistanceField(), or an analytic shape as set by setCollider().
+   */
+  private Collider collider;
+  private SignedDistanceField distanceField;
+  private final double[] colliderGradient = new double[3];
+  /** Scratch of the box test of collideWithStaticMesh. */
+  private final double[] bounds = new double[6];
+
   private double damp = 0.8;
 
+  /** Incremented by topologyChanged(), so that compiled constraints can tell they are stale. */
+  private int topologyVersion = 0;
+
   /** Gets ready to display the mesh; compiles programs, etc. */
   private void initDisplay(GL2 gl) {
     if (init || !useGLSL)
@@ -114,13 +176,17 @@ public class Mesh {
       gl.glLightModeli(GL2.GL_LIGHT_MODEL_TWO_SIDE, GL2.GL_TRUE);
     }
 
+    Point3d x = new Point3d();
     for (Triangle t : triangles) {
       javax.vecmath.Vector3d n = t.getNormal();
       gl.glNormal3d(n.x, n.y, n.z);
       gl.glBegin(GL2.GL_TRIANGLES);
-      gl.glVertex3d(t.v0.x.x, t.v0.x.y, t.v0.x.z);
-      gl.glVertex3d(t.v1.x.x, t.v1.x.y, t.v1.x.z);
-      gl.glVertex3d(t.v2.x.x, t.v2.x.y, t.v2.x.z);
+      t.v0.getX(x);
+      gl.glVertex3d(x.x, x.y, x.z);
+      t.v1.getX(x);
+      gl.glVertex3d(x.x, x.y, x.z);
+      t.v2.getX(x);
+      gl.glVertex3d(x.x, x.y, x.z);
       gl.glEnd();
     }
 
@@ -138,53 +204,311 @@ public class Mesh {
      */
   }
 
-  private PQP_Model buildPQPModel(List<Vertex> vertices, List<Triangle> triangles) {
-    PQP_Model model = new PQP_Model();
-    model.BeginModel();
+  /**
+   * Must be called after vertices, edges or triangles are added, removed or
+   * reconnected, so that cached topology-derived data (e.g. the constraint
+   * batches of ParticleSystem) is rebuilt.
+   */
+  public void topologyChanged() {
+    topologyVersion++;
+  }
+
+  int getTopologyVersion() {
+    return topologyVersion;
+  }
 
-    List<Point3d> pts = new ArrayList<>();
-    List<Tuple3i> faces = new ArrayList<>();
+  /**
+   * Build internal structures for collision detection after updating vertices
+   * and triangular faces. After the first call, only vertex motion refits the
+   * existing hierarchy (see DeformableModel), so deforming meshes can call this
+   * every step; a topology change rebuilds it.
+   */
+  public void update() {
+    build(collisionVersion != topologyVersion, null);
+  }
+
+  /**
+   * As update(); if that builds a new PQP hierarchy, it is read from
+   * cacheFile when that was saved for the same triangles (see
+   * DeformableModel.save()), and written to it otherwise. Meant for large
+   * static meshes, whose build would dominate startup; the BVH backend
+   * ignores cacheFile.
+   */
+  public void update(File cacheFile) {
+    build(collisionVersion != topologyVersion, cacheFile);
+  }
+
+  private void build(boolean stale) {
+    build(stale, null);
+  }
+
+  private void build(boolean stale, File cacheFile) {
+    if (triangles.isEmpty()) {
+      return;
+    }
+    // a placed PQP hierarchy stays over the rest positions, see setTransform()
+    ParticleStore store = triangles.get(0).v0.getStore();
+    double[] x = rotation != null && backend == CollisionBackend.PQP ? store.x0 : store.x;
+    if (backend == CollisionBackend.BVH) {
+      if (bvh == null || stale) {
+        bvh = new AabbTree(x, faceIndices());
+      } else {
+        bvh.refit(x);
+      }
+    } else {
+      if (deformable == null || stale) {
+        if (deformable != null) {
+          deformable.close();
+        }
+        deformable = buildDeformable(x, faceIndices(), cacheFile);
+      } else {
+        deformable.update(x);
+      }
+      pqpModel = deformable.getModel();
+    }
+    collisionVersion = topologyVersion;
+  }
+
+  /** A new model of faces over x, through cacheFile if it is not null. */
+  private static DeformableModel buildDeformable(double[] x, int[] faces, File cacheFile) {
+    if (cacheFile == null) {
+      return new DeformableModel(x, faces);
+    }
+    long key = DeformableModel.key(x, faces);
+    try {
+      DeformableModel model = DeformableModel.load(cacheFile, key, faces);
+      if (model != null) {
+        return model;
+      }
+    } catch (IOException e) {
+      System.err.println("Cannot read collision hierarchy " + cacheFile + ": " + e);
+    }
+    DeformableModel model = new DeformableModel(x, faces);
+    try {
+      model.save(cacheFile, key);
+    } catch (IOException e) {
+      System.err.println("Cannot write collision hierarchy " + cacheFile + ": " + e);
+    }
+    return model;
+  }
+
+  /**
+   * Places the mesh rigidly at R x0 + T, for obstacles moved by animation
+   * rather than simulated; call it every step they move. The vertices are
+   * moved, so contacts, bounds and display follow, but the PQP hierarchy is
+   * built once over the rest positions x0 and then left alone: every query
+   * carries R and T instead. The axis-aligned boxes of the BVH backend cannot
+   * be rotated, so it refits them, which is linear in the triangles.
+   */
+  public void setTransform(Matrix3d R, Vector3d T) {
+    boolean first = rotation == null;
+    // fresh arrays rather than writes into the old ones, so that rotation and
+    // translation are immutable once published; see segmentsIntersect()
+    double[] q = new double[9];
+    for (int r = 0; r < 3; r++) {
+      for (int c = 0; c < 3; c++) {
+        q[3 * r + c] = R.getElement(r, c);
+      }
+    }
+    rotation = q;
+    translation = new double[] { T.x, T.y, T.z };
+
+    for (int k = 0; k < vertices.size(); k++) {
+      Vertex v = vertices.get(k);
+      double[] x = v.getStore().x;
+      double[] x0 = v.getStore().x0;
+      int i = 3 * v.getIndex();
+      double px = x0[i], py = x0[i + 1], pz = x0[i + 2];
+      x[i] = q[0] * px + q[1] * py + q[2] * pz + T.x;
+      x[i + 1] = q[3] * px + q[4] * py + q[5] * pz + T.y;
+      x[i + 2] = q[6] * px + q[7] * py + q[8] * pz + T.z;
+    }
 
-    for (Vertex vertex : vertices) {
-      pts.add(vertex.x);
+    if (first && pqpModel != null) {
+      // the hierarchy was built over the positions at that time
+      build(true);
+    } else if (bvh != null) {
+      build(false);
     }
+  }
+
+  /** @return whether setTransform() placed this mesh */
+  public boolean hasTransform() {
+    return rotation != null;
+  }
 
-    for (Triangle triangle : triangles) {
-      faces.add(new Point3i(triangle.v0.getIndex(), triangle.v1.getIndex(), triangle.v2.getIndex()));
+  /**
+   * Switches the contacts of particles with this mesh from path queries to a
+   * signed distance field of cellSize cells, exact within bandCells cells of
+   * the surface (see SignedDistanceField). If cacheFile is not null, the field
+   * is read from it when it was saved for the same triangles and settings, and
+   * written to it otherwise. The field follows setTransform(), but not
+   * deformations: rebuild it if the vertices move.
+   */
+  public void buildDistanceField(double cellSize, int bandCells, File cacheFile) {
+    ParticleStore store = triangles.get(0).v0.getStore();
+    double[] x = rotation != null ? store.x0 : store.x;
+    int[] faces = faceIndices();
+    SignedDistanceField field = null;
+    if (cacheFile != null) {
+      try {
+        field = SignedDistanceField.load(cacheFile, SignedDistanceField.key(x, faces, cellSize, bandCells));
+      } catch (IOException e) {
+        System.err.println("Cannot read distance field " + cacheFile + ": " + e);
+      }
+    }
+    if (field == null) {
+      field = SignedDistanceField.build(x, faces, cellSize, bandCells);
+      if (cacheFile != null) {
+        try {
+          field.save(cacheFile);
+        } catch (IOException e) {
+          System.err.println("Cannot write distance field " + cacheFile + ": " + e);
+        }
+      }
     }
+    distanceField = field;
+    collider = field;
+  }
 
-    return PQPHelper.buildPQPModel(pts, faces);
+  /** @return the field set by buildDistanceField(), or null */
+  public SignedDistanceField getDistanceField() {
+    return distanceField;
   }
 
   /**
-   * Build internal structures for collision detection after updating vertices
-   * and triangular faces
+   * Switches the contacts of particles with this mesh from path queries to
+   * collider, which must describe the same solid in the frame of the mesh's
+   * vertices (its rest frame if it is placed by setTransform()); null
+   * switches back.
    */
-  public void update() {
-    pqpModel = buildPQPModel(vertices, triangles);
+  public void setCollider(Collider collider) {
+    this.collider = collider;
+    distanceField = collider instanceof SignedDistanceField ? (SignedDistanceField) collider : null;
   }
 
-  public Collision segmentIntersectsPQP(Point3d p1, Point3d p2) {
-    List<Point3d> tmpV = new ArrayList<>();
-    tmpV.add(p1);
-    tmpV.add(p1);
-    tmpV.add(p2);
-    List<Tuple3i> tmpF = new ArrayList<>();
-    tmpF.add(new Point3i(0, 1, 2));
+  /** @return the collider that replaces the path queries, or null if there is none */
+  public Collider getCollider() {
+    return collider;
+  }
+
+  /**
+   * Looks particle up in the collider, and if it is closer to the surface
+   * than tolerance, fills out with a contact that keeps it thickness outside.
+   *
+   * @return whether out was filled
+   */
+  public boolean colliderContact(Particle particle, double tolerance, double thickness, CollisionConstraint out) {
+    return colliderContact(particle, tolerance, thickness, colliderGradient, out);
+  }
+
+  /**
+   * As colliderContact(particle, tolerance, thickness, out), with g as
+   * scratch for the gradient; colliders are immutable, so several threads may
+   * look particles up at once, each with its own g.
+   */
+  public boolean colliderContact(Particle particle, double tolerance, double thickness, double[] g,
+      CollisionConstraint out) {
+    return colliderContact(collider, rotation, translation, particle, tolerance, thickness, g, out);
+  }
+
+  /**
+   * As colliderContact(), for collider placed by R and T (both may be null),
+   * with g as scratch for the gradient.
+   */
+  static boolean colliderContact(Collider collider, double[] R, double[] T, Particle particle, double tolerance,
+      double thickness, double[] g, CollisionConstraint out) {
+    double[] x = particle.getStore().x;
+    int i = 3 * particle.getIndex();
+    double px = x[i], py = x[i + 1], pz = x[i + 2];
+    double[] q = R;
+    double lx = px, ly = py, lz = pz;
+    if (q != null) {
+      double dx = px - T[0], dy = py - T[1], dz = pz - T[2];
+      lx = q[0] * dx + q[3] * dy + q[6] * dz;
+      ly = q[1] * dx + q[4] * dy + q[7] * dz;
+      lz = q[2] * dx + q[5] * dy + q[8] * dz;
+    }
+    double phi = collider.distance(lx, ly, lz, g);
+    if (phi >= tolerance) {
+      return false;
+    }
+    double length = Math.sqrt(g[0] * g[0] + g[1] * g[1] + g[2] * g[2]);
+    if (length == 0) {
+      return false;
+    }
+    Vector3d n = out.contactNormal;
+    n.set(g[0] / length, g[1] / length, g[2] / length);
+    if (q != null) {
+      n.set(q[0] * n.x + q[1] * n.y + q[2] * n.z, q[3] * n.x + q[4] * n.y + q[5] * n.z,
+          q[6] * n.x + q[7] * n.y + q[8] * n.z);
+    }
+    out.particle = particle;
+    out.triangle = null;
+    out.thickness = thickness;
+    out.hasEntryPoint = true;
+    out.entryPoint.set(px - phi * n.x, py - phi * n.y, pz - phi * n.z);
+    return true;
+  }
+
+  /** Three store indices per triangle. */
+  private int[] faceIndices() {
+    int[] faces = new int[3 * triangles.size()];
+    for (int t = 0; t < triangles.size(); t++) {
+      Triangle triangle = triangles.get(t);
+      faces[3 * t] = triangle.v0.getIndex();
+      faces[3 * t + 1] = triangle.v1.getIndex();
+      faces[3 * t + 2] = triangle.v2.getIndex();
+    }
+    return faces;
+  }
+
+  /**
+   * Selects the structure collision queries go through, and rebuilds it if
+   * the mesh has already been built. Meshes collided with each other through
+   * collideWithStaticMesh() must use the same backend.
+   */
+  public void setCollisionBackend(CollisionBackend backend) {
+    if (backend == this.backend) {
+      return;
+    }
+    if (backend == CollisionBackend.PQP && !PQP_AVAILABLE) {
+      throw new IllegalStateException("libPQP is not on java.library.path");
+    }
+    boolean built = pqpModel != null || bvh != null;
+    if (deformable != null) {
+      deformable.close();
+    }
+    deformable = null;
+    pqpModel = null;
+    bvh = null;
+    this.backend = backend;
+    if (built) {
+      update();
+    }
+  }
 
-    Tuple2i faceIdxPair = PQPHelper.simpleCollide(pqpModel, PQPHelper.buildPQPModel(tmpV, tmpF));
+  public CollisionBackend getCollisionBackend() {
+    return backend;
+  }
 
-    if (faceIdxPair == null) {
+  public Collision segmentIntersectsPQP(Point3d p1, Point3d p2) {
+    if (!intersectPath(p1, p2)) {
       return null;
-    } else {
-      // index does not make sense
-      if (faceIdxPair.x >= triangles.size() || faceIdxPair.x < 0) {
-        System.out.println("index");
-        // return null;
-        return new Collision(p1, p2, 0, new Vector3d());
-      }
-      return new Collision(p1, p2, 0, triangles.get(faceIdxPair.x).getNormal());
     }
+    return new Collision(p1, p2, 0, triangles.get(pathQuery.getTriangle(0)).getNormal());
+  }
+
+  /**
+   * Intersects the segment from p1 to p2 with this mesh as the one segment of
+   * pathQuery, through segmentsIntersect() on either backend.
+   *
+   * @return true iff the segment hits this mesh
+   */
+  private boolean intersectPath(Point3d p1, Point3d p2) {
+    pathQuery.clear();
+    pathQuery.add(p1.x, p1.y, p1.z, p2.x, p2.y, p2.z);
+    return segmentsIntersect(pathQuery, 0, 1, hit) > 0;
   }
 
   /**
@@ -194,14 +518,45 @@ public class Mesh {
    * @return
    */
   public Map<Vertex, Triangle> collideWithStaticMesh(Mesh staticMesh) {
-    List<Tuple2i> faceIdxPairs = PQPHelper.simpleCollideAll(pqpModel, staticMesh.pqpModel);
-    if (faceIdxPairs.isEmpty()) {
+    if (backend != staticMesh.backend) {
+      throw new IllegalStateException("meshes use different collision backends");
+    }
+    // broad phase: skip the traversal of meshes whose boxes are apart
+    getBounds(bounds);
+    staticMesh.getBounds(staticMesh.bounds);
+    for (int axis = 0; axis < 3; axis++) {
+      if (bounds[axis] > staticMesh.bounds[axis + 3] || staticMesh.bounds[axis] > bounds[axis + 3]) {
+        return new HashMap<>();
+      }
+    }
+    if (backend == CollisionBackend.BVH) {
+      int count = bvh.collide(staticMesh.bvh, pairs, hit);
+      if (2 * count > pairs.length) {
+        pairs = new int[4 * count];
+        count = bvh.collide(staticMesh.bvh, pairs, hit);
+      }
+      Map<Vertex, Triangle> potentialCollisions = new HashMap<>();
+      for (int k = 0; k < count; k++) {
+        Triangle f1 = triangles.get(pairs[2 * k]);
+        Triangle f2 = staticMesh.triangles.get(pairs[2 * k + 1]);
+        potentialCollisions.put(f1.v0, f2);
+        potentialCollisions.put(f1.v1, f2);
+        potentialCollisions.put(f1.v2, f2);
+      }
+      return potentialCollisions;
+    }
+    if (contactPairs == null) {
+      contactPairs = new ContactPairs();
+    }
+    PQPHelper.collideAll(rotation, translation, pqpModel, staticMesh.rotation, staticMesh.translation,
+        staticMesh.pqpModel, contactPairs);
+    if (contactPairs.size() == 0) {
       return new HashMap<>();
     }
     Map<Vertex, Triangle> potentialCollisions = new HashMap<>();
-    for (Tuple2i faceIdxPair : faceIdxPairs) {
-      Triangle f1 = triangles.get(faceIdxPair.x);
-      Triangle f2 = staticMesh.triangles.get(faceIdxPair.y);
+    for (int k = 0; k < contactPairs.size(); k++) {
+      Triangle f1 = triangles.get(contactPairs.id1(k));
+      Triangle f2 = staticMesh.triangles.get(contactPairs.id2(k));
       potentialCollisions.put(f1.v0, f2);
       potentialCollisions.put(f1.v1, f2);
       potentialCollisions.put(f1.v2, f2);
@@ -209,69 +564,266 @@ public class Mesh {
     return potentialCollisions;
   }
 
+  /**
+   * Writes the axis-aligned bounding box of the triangles into out, as minX,
+   * minY, minZ, maxX, maxY, maxZ; an empty mesh gets an inverted box.
+   */
+  public void getBounds(double[] out) {
+    for (int axis = 0; axis < 3; axis++) {
+      out[axis] = Double.POSITIVE_INFINITY;
+      out[axis + 3] = Double.NEGATIVE_INFINITY;
+    }
+    for (int t = 0; t < triangles.size(); t++) {
+      Triangle triangle = triangles.get(t);
+      addToBounds(triangle.v0, out);
+      addToBounds(triangle.v1, out);
+      addToBounds(triangle.v2, out);
+    }
+  }
+
+  private static void addToBounds(Vertex v, double[] out) {
+    double[] x = v.getStore().x;
+    int i = 3 * v.getIndex();
+    for (int axis = 0; axis < 3; axis++) {
+      out[axis] = Math.min(out[axis], x[i + axis]);
+      out[axis + 3] = Math.max(out[axis + 3], x[i + axis]);
+    }
+  }
+
+  /**
+   * Conservative broad phase: false guarantees that no path staying within
+   * distance r of p (per axis) can touch this mesh.
+   */
+  public boolean mayCollide(Point3d p, double r) {
+    for (int t = 0; t < triangles.size(); t++) {
+      if (triangles.get(t).boundsOverlap(p, r)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   /**
    * Update particle velocity if it collides with this mesh.
    */
   public CollisionConstraint segmentIntersects(Point3d p1, Particle particle) {
+    CollisionConstraint constraint = new CollisionConstraint();
+    return segmentIntersects(p1, particle, constraint) ? constraint : null;
+  }
+
+  /**
+   * Reusable-slot variant of segmentIntersects(Point3d, Particle): fills in the
+   * given constraint instead of allocating a new one.
+   * 
+   * @return true iff the particle's path from p1 hits this mesh.
+   */
+  public boolean segmentIntersects(Point3d p1, Particle particle, CollisionConstraint out) {
+    Point3d x = particle.getX();
+    if (!intersectPath(p1, x)) {
+      return false;
+    }
+    out.particle = particle;
+    out.triangle = triangles.get(pathQuery.getTriangle(0));
+    out.thickness = 0;
+    out.hasEntryPoint = true;
+    out.entryPoint.interpolate(p1, x, pathQuery.getParameter(0));
+    return true;
+  }
+
+  /**
+   * Intersects every segment of query with this mesh, in one native call with
+   * the PQP backend. The triangle ids reported by the query are indices into
+   * triangles.
+   *
+   * @return the number of segments that hit this mesh
+   */
+  public int segmentsIntersect(SegmentQuery query) {
+    return segmentsIntersect(query, 0, query.size(), hit);
+  }
+
+  /**
+   * As segmentsIntersect(query), for segments [from, to) only, with scratch
+   * for the BVH backend. Ranges that do not overlap may be intersected from
+   * several threads at once, each with its own scratch: both backends only
+   * read the hierarchy and the placement, which setTransform() replaces
+   * rather than writes. Nothing may update or place this mesh meanwhile.
+   *
+   * @return the number of segments in the range that hit this mesh
+   */
+  public int segmentsIntersect(SegmentQuery query, int from, int to, AabbTree.Hit scratch) {
+    if (backend == CollisionBackend.PQP) {
+      return query.intersect(pqpModel, rotation, translation, from, to);
+    }
+    int hits = 0;
+    for (int k = from; k < to; k++) {
+      if (bvh.intersectSegment(query.getCoordinate(k, 0), query.getCoordinate(k, 1), query.getCoordinate(k, 2),
+          query.getCoordinate(k, 3), query.getCoordinate(k, 4), query.getCoordinate(k, 5), scratch)) {
+        query.setResult(k, scratch.triangle, scratch.s);
+        hits++;
+      } else {
+        query.setResult(k, -1, 1);
+      }
+    }
+    return hits;
+  }
+
+  /**
+   * As segmentsIntersect(query), where segment k is the path of particle
+   * particles[k], and leaves holds per particle the AABB tree leaf of its last
+   * crossing (-1 for none). With the BVH backend, a path that stays within
+   * its cached leaf grown by margin is only tested against the leaves near it
+   * (see AabbTree.intersectSegment()), and leaves is updated for the next
+   * query. The PQP backend ignores leaves and intersects all segments
+   * natively.
+   *
+   * @return the number of segments that hit this mesh
+   */
+  public int segmentsIntersect(SegmentQuery query, int[] particles, int[] leaves, double margin) {
+    setContactCacheMargin(margin);
+    return segmentsIntersect(query, 0, query.size(), particles, leaves, hit);
+  }
+
+  /**
+   * Sets the margin of the cached leaves of segmentsIntersect(); the ranged
+   * variant, which may run on several threads, expects it set beforehand.
+   */
+  public void setContactCacheMargin(double margin) {
+    if (backend == CollisionBackend.BVH && bvh.getLeafMargin() != margin) {
+      bvh.setLeafMargin(margin);
+    }
+  }
 
-    List<Point3d> tmpV = new ArrayList<>();
-    tmpV.add(p1);
-    tmpV.add(p1);
-    tmpV.add(particle.x);
-    List<Tuple3i> tmpF = new ArrayList<>();
-    tmpF.add(new Point3i(0, 1, 2));
-
-    Tuple2i faceIdxPair = PQPHelper.simpleCollide(pqpModel, PQPHelper.buildPQPModel(tmpV, tmpF));
-    if (faceIdxPair != null) {
-      if (faceIdxPair.x >= triangles.size() || faceIdxPair.x < 0) {
-        System.out.println("index");
-        // return null;
+  /**
+   * As segmentsIntersect(query, particles, leaves, margin), for segments
+   * [from, to) only and with the margin of setContactCacheMargin(). Threads
+   * may share leaves as long as their ranges hold distinct particles.
+   *
+   * @return the number of segments in the range that hit this mesh
+   */
+  public int segmentsIntersect(SegmentQuery query, int from, int to, int[] particles, int[] leaves,
+      AabbTree.Hit scratch) {
+    if (backend == CollisionBackend.PQP) {
+      return segmentsIntersect(query, from, to, scratch);
+    }
+    int hits = 0;
+    for (int k = from; k < to; k++) {
+      int i = particles[k];
+      if (bvh.intersectSegment(query.getCoordinate(k, 0), query.getCoordinate(k, 1), query.getCoordinate(k, 2),
+          query.getCoordinate(k, 3), query.getCoordinate(k, 4), query.getCoordinate(k, 5), leaves[i], scratch)) {
+        query.setResult(k, scratch.triangle, scratch.s);
+        hits++;
+      } else {
+        query.setResult(k, -1, 1);
       }
-      /*
-       * // index does not make sense if (faceIdxPair.x >= vertices.size() ||
-       * faceIdxPair.x < 0) { System.out.println("index"); particle.v.negate();
-       * particle.v.scale(damp); } else { Vector3d direction = new Vector3d();
-       * direction.sub(particle.x, p1); direction.normalize(); Vector3d normal =
-       * triangles.get(faceIdxPair.x).getNormal(); Vector3d v = new
-       * Vector3d(normal); v.scale(direction.dot(normal) * 2); Vector3d
-       * reflectedDirection = new Vector3d(); reflectedDirection.sub(direction,
-       * v); reflectedDirection.normalize();
-       * particle.v.scale(particle.v.length() * damp, reflectedDirection);
-       * particle.x = new Point3d(p1); }
-       */
-      Triangle triangle = triangles.get(faceIdxPair.x);
-      return new CollisionConstraint(particle, triangle.intersectRay(p1, particle.x), triangle);
-    } else {
-      return null;
+      leaves[i] = scratch.leaf;
     }
+    return hits;
+  }
+
+  /**
+   * Finds, for every point of query, the nearest triangle of this mesh within
+   * tolerance, in one native call with the PQP backend. The triangle ids
+   * reported by the query are indices into triangles.
+   *
+   * @return the number of points within tolerance of this mesh
+   */
+  public int pointsNear(ProximityQuery query, double tolerance) {
+    return pointsNear(query, tolerance, 0, query.size(), hit);
+  }
+
+  /**
+   * As pointsNear(query, tolerance), for points [from, to) only, with scratch
+   * for the BVH backend; safe on several threads for ranges that do not
+   * overlap, as segmentsIntersect(query, from, to, scratch) is.
+   *
+   * @return the number of points in the range within tolerance of this mesh
+   */
+  public int pointsNear(ProximityQuery query, double tolerance, int from, int to, AabbTree.Hit scratch) {
+    if (backend == CollisionBackend.PQP) {
+      return query.query(pqpModel, tolerance, rotation, translation, from, to);
+    }
+    int hits = 0;
+    for (int k = from; k < to; k++) {
+      if (bvh.closestTriangle(query.getCoordinate(k, 0), query.getCoordinate(k, 1), query.getCoordinate(k, 2),
+          tolerance, scratch)) {
+        query.setResult(k, scratch.triangle, scratch.distance, scratch.x, scratch.y, scratch.z);
+        hits++;
+      } else {
+        query.setResult(k, -1, tolerance, 0, 0, 0);
+      }
+    }
+    return hits;
+  }
+
+  /**
+   * Fills out with a contact that keeps particle thickness away from triangle
+   * t, whose point closest to the particle is c, as reported by pointsNear().
+   */
+  public void setContact(Particle particle, int t, double cx, double cy, double cz, double thickness,
+      CollisionConstraint out) {
+    out.particle = particle;
+    out.triangle = triangles.get(t);
+    out.thickness = thickness;
+    out.hasEntryPoint = true;
+    out.entryPoint.set(cx, cy, cz);
+  }
+
+  /**
+   * Fills out with the contact of particle, whose path from its previous
+   * position entered triangle t at parameter s, as reported by
+   * segmentsIntersect().
+   */
+  public void setCollision(Particle particle, int t, double s, CollisionConstraint out) {
+    double[] x = particle.getStore().x;
+    double[] xPrev = particle.getStore().xPrev;
+    int i = 3 * particle.getIndex();
+    out.particle = particle;
+    out.triangle = triangles.get(t);
+    out.thickness = 0;
+    out.hasEntryPoint = true;
+    out.entryPoint.set(xPrev[i] + s * (x[i] - xPrev[i]), xPrev[i + 1] + s * (x[i + 1] - xPrev[i + 1]),
+        xPrev[i + 2] + s * (x[i + 2] - xPrev[i + 2]));
   }
 
   public void updateMass() {
 
-    for (Vertex vertex : vertices) {
+    for (int i = 0; i < vertices.size(); i++) {
+      Vertex vertex = vertices.get(i);
       if (vertex.getHighlight()) {
-        vertex.m = 0;
+        vertex.setMass(0);
       }
     }
 
-    for (Triangle triangle : triangles) {
+    for (int i = 0; i < triangles.size(); i++) {
+      Triangle triangle = triangles.get(i);
       double area = triangle.area();
-      triangle.v0.m += area / 3 * Constants.CLOTH_DENSITY;
-      triangle.v1.m += area / 3 * Constants.CLOTH_DENSITY;
-      triangle.v2.m += area / 3 * Constants.CLOTH_DENSITY;
+      triangle.v0.addMass(area / 3 * Constants.CLOTH_DENSITY);
+      triangle.v1.addMass(area / 3 * Constants.CLOTH_DENSITY);
+      triangle.v2.addMass(area / 3 * Constants.CLOTH_DENSITY);
     }
   }
 
+  /** Adds a vertex to the given store; its index is its position in the store. */
+  private static Vertex newVertex(ParticleStore store, Point3d x0) {
+    return new Vertex(store, store.add(x0));
+  }
+
+  /**
+   * The axis-aligned box from lowV to highV, with normals pointing into it if
+   * inward. Particles collide with it through a BoxCollider, i.e. analytically
+   * against the face planes; setCollider(null) reverts to the triangles.
+   */
   public static Mesh CubeMesh(Point3d lowV, Point3d highV, boolean inward) {
+    ParticleStore store = new ParticleStore(8);
     List<Vertex> verts = new ArrayList<>();
-    verts.add(new Vertex(new Point3d(lowV), 0));
-    verts.add(new Vertex(new Point3d(lowV.x, lowV.y, highV.z), 1));
-    verts.add(new Vertex(new Point3d(lowV.x, highV.y, lowV.z), 2));
-    verts.add(new Vertex(new Point3d(lowV.x, highV.y, highV.z), 3));
-    verts.add(new Vertex(new Point3d(highV.x, lowV.y, lowV.z), 4));
-    verts.add(new Vertex(new Point3d(highV.x, lowV.y, highV.z), 5));
-    verts.add(new Vertex(new Point3d(highV.x, highV.y, lowV.z), 6));
-    verts.add(new Vertex(new Point3d(highV), 7));
+    verts.add(newVertex(store, new Point3d(lowV)));
+    verts.add(newVertex(store, new Point3d(lowV.x, lowV.y, highV.z)));
+    verts.add(newVertex(store, new Point3d(lowV.x, highV.y, lowV.z)));
+    verts.add(newVertex(store, new Point3d(lowV.x, highV.y, highV.z)));
+    verts.add(newVertex(store, new Point3d(highV.x, lowV.y, lowV.z)));
+    verts.add(newVertex(store, new Point3d(highV.x, lowV.y, highV.z)));
+    verts.add(newVertex(store, new Point3d(highV.x, highV.y, lowV.z)));
+    verts.add(newVertex(store, new Point3d(highV)));
 
     List<Triangle> faces = new ArrayList<>();
     if (inward) {
@@ -306,14 +858,17 @@ public class Mesh {
     mesh.vertices = verts;
     mesh.triangles = faces;
     mesh.update();
+    // particles only need the planes of the faces, not the triangles
+    mesh.collider = new BoxCollider(lowV, highV, inward);
     return mesh;
   }
 
   public static Mesh singleFaceMesh(Point3d v1, Point3d v2, Point3d v3) {
+    ParticleStore store = new ParticleStore(3);
     List<Vertex> verts = new ArrayList<>();
-    verts.add(new Vertex(v1, 0));
-    verts.add(new Vertex(v2, 1));
-    verts.add(new Vertex(v3, 2));
+    verts.add(newVertex(store, v1));
+    verts.add(newVertex(store, v2));
+    verts.add(newVertex(store, v3));
 
     List<Triangle> faces = new ArrayList<>();
     faces.add(new Triangle(verts.get(0), verts.get(1), verts.get(2)));
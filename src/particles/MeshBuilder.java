@@ -57,8 +57,7 @@ public class MeshBuilder {
         x0.x = Double.parseDouble(tokens[1]);
         x0.y = Double.parseDouble(tokens[2]);
         x0.z = Double.parseDouble(tokens[3]);
-        Vertex p = new Vertex(x0);
-        ps.P.add(p);
+        Vertex p = ps.createVertex(x0);
         result.vertices.add(p);
 
       } else if (tokens[0].equals("f")) {
@@ -0,0 +1,160 @@
+package particles;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Parallel loop over an index range, split into chunks of grain consecutive
+ * indices: chunk c is [c * grain, min(n, (c + 1) * grain)), and every call of
+ * the body covers exactly one chunk, so from / grain indexes per-chunk state
+ * such as residuals or scratch (see numChunks()). The calling thread and
+ * helper tasks on the common ForkJoinPool claim chunks from a shared counter
+ * until none are left; forEach() returns once every chunk has finished, and
+ * all writes made by the chunks are visible to the caller afterwards.
+ *
+ * A ParallelRange keeps its helper tasks from call to call, and the caller
+ * waits for the helpers by spinning rather than by joining, so forEach()
+ * does not allocate once the helpers exist. Calls of one instance must not
+ * overlap: give every loop, or every owner of loops, an instance of its own.
+ */
+public class ParallelRange {
+
+  /** Default number of loop iterations below which a range is not split. */
+  public static final int DEFAULT_GRAIN = 256;
+
+  /** Loop body over the half-open index range [from, to). */
+  public interface Body {
+    void apply(int from, int to);
+  }
+
+  /**
+   * Chunks are numbered on from call to call, and chunk k of the whole
+   * sequence is claimed by moving next from k to k + 1; the chunks of the
+   * current call are [limit - numChunks, limit). next never passes limit, so
+   * a helper left over from an earlier call can only claim chunks of the
+   * current one.
+   */
+  private final AtomicLong next = new AtomicLong();
+  private volatile long limit;
+  private final AtomicInteger remaining = new AtomicInteger();
+
+  /** The current call, published by the write of limit. */
+  private int n, grain;
+  private Body body;
+  private volatile Throwable failure;
+
+  private Helper[] helpers = new Helper[0];
+
+  /** @return the number of chunks of forEach(n, grain, body) */
+  public static int numChunks(int n, int grain) {
+    return n == 0 ? 0 : (n - 1) / grain + 1;
+  }
+
+  /**
+   * Runs body over [0, n) in chunks of grain, in parallel if there is more
+   * than one chunk and the common pool has more than one thread.
+   */
+  public void forEach(int n, int grain, Body body) {
+    if (grain < 1) {
+      throw new IllegalArgumentException("grain must be at least 1");
+    }
+    int numChunks = numChunks(n, grain);
+    int parallelism = ForkJoinPool.getCommonPoolParallelism();
+    if (numChunks <= 1 || parallelism <= 1) {
+      for (int c = 0; c < numChunks; c++) {
+        body.apply(c * grain, c * grain + Math.min(grain, n - c * grain));
+      }
+      return;
+    }
+
+    this.n = n;
+    this.grain = grain;
+    this.body = body;
+    remaining.set(numChunks);
+    limit += numChunks;
+
+    int numHelpers = Math.min(parallelism, numChunks - 1);
+    if (helpers.length < numHelpers) {
+      Helper[] grown = new Helper[numHelpers];
+      System.arraycopy(helpers, 0, grown, 0, helpers.length);
+      for (int h = helpers.length; h < numHelpers; h++) {
+        grown[h] = new Helper();
+      }
+      helpers = grown;
+    }
+    for (int h = 0; h < numHelpers; h++) {
+      helpers[h].submit();
+    }
+
+    runChunks();
+    while (remaining.get() > 0) {
+      Thread.onSpinWait();
+    }
+    this.body = null;
+    Throwable t = failure;
+    if (t != null) {
+      failure = null;
+      if (t instanceof RuntimeException) {
+        throw (RuntimeException) t;
+      }
+      if (t instanceof Error) {
+        throw (Error) t;
+      }
+      throw new RuntimeException(t);
+    }
+  }
+
+  /** forEach(n, DEFAULT_GRAIN, body) */
+  public void forEach(int n, Body body) {
+    forEach(n, DEFAULT_GRAIN, body);
+  }
+
+  /** Claims and runs chunks of the current call until there are none left. */
+  private void runChunks() {
+    while (true) {
+      long end = limit;
+      long k = next.get();
+      if (k >= end) {
+        return;
+      }
+      if (!next.compareAndSet(k, k + 1)) {
+        continue;
+      }
+      // chunk k is unfinished, so the current call is the one that ends at end
+      int c = (int) (k - (end - numChunks(n, grain)));
+      try {
+        body.apply(c * grain, c * grain + Math.min(grain, n - c * grain));
+      } catch (Throwable t) {
+        failure = t;
+      }
+      remaining.decrementAndGet();
+    }
+  }
+
+  /** Runs chunks on a pool thread; resubmitted once the pool is done with it. */
+  private final class Helper extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private boolean submitted;
+
+    void submit() {
+      if (submitted) {
+        if (!isDone()) {
+          // still queued or running from an earlier call; it will claim
+          // chunks of this one if any are left when it gets to run
+          return;
+        }
+        reinitialize();
+      }
+      submitted = true;
+      ForkJoinPool.commonPool().execute(this);
+    }
+
+    @Override
+    protected void compute() {
+      runChunks();
+    }
+  }
+}
@@ -5,7 +5,9 @@ import com.jogamp.opengl.*;
 import com.jogamp.opengl.glu.*;
 
 /**
- * Simple particle implementation, with miscellaneous adornments.
+ * Simple particle implementation, with miscellaneous adornments. A Particle
+ * is a lightweight view of one index in a ParticleStore, which holds the
+ * actual state.
  *
  * @author Doug James, January 2007
  * @author Eston Schweickart, February 2014
@@ -18,52 +20,35 @@ public class Particle
     /** Display list index. */
     private static int PARTICLE_DISPLAY_LIST = -1;
 
-    /** Highlighted appearance if true, otherwise white. */
-    private boolean highlight = false;
+    /** The store holding this particle's state. */
+    private final ParticleStore store;
 
-    /** Default mass. */
-    public double m = Constants.PARTICLE_MASS;
-    
-    /** The index of this particle in its particle system. */
+    /** The index of this particle in its store (and particle system). */
     private final int index;
 
-    /** Deformed Position. */
-    public Point3d  x = new Point3d();
-    
-    public Point3d  xPrev = new Point3d();
-
-    /** Change in position to be applied */
-    private Vector3d dx = new Vector3d();
-
-    /** Undeformed/material Position. */
-    Point3d  x0 = new Point3d();
-
-    /** Velocity. */
-    public Vector3d v = new Vector3d();
-    
-    /** Change in velocity to be applied */
-    private Vector3d dv = new Vector3d();
-
-    /** Force accumulator. */
-    Vector3d f = new Vector3d();
-    
-    /** Change in force to be applied */
-    private Vector3d df = new Vector3d();
-
     /**
-    * Constructs particle with the specified material/undeformed
-    * coordinate, x0.
+    * Constructs a view of particle <code>index</code> in the given store.
     */
-   public Particle(Point3d x0, int index)
+   public Particle(ParticleStore store, int index)
    {
-       this.x0.set(x0);
-       x.set(x0);
+       this.store = store;
        this.index = index;
    }
-   
+
+   /**
+    * Constructs a standalone particle, backed by its own single-element
+    * store, with the specified material/undeformed coordinate, x0.
+    */
    public Particle(Point3d x0)
    {
-       this(x0, 0);
+       this(singletonStore(x0), 0);
+   }
+
+   private static ParticleStore singletonStore(Point3d x0)
+   {
+       ParticleStore store = new ParticleStore(1);
+       store.add(x0);
+       return store;
    }
 
     /** Draws spherical particle using a display list. */
@@ -87,29 +72,32 @@ public class Particle
 
         /// COLOR: DEFAULT CYAN; GREEN IF HIGHLIGHTED
         float[] c = {0f, 1f, 1f, 1f};//default: cyan
-        if(highlight) {
+        if(getHighlight()) {
             c[2] = 0;
         }
 
+        double[] x = store.x;
+        int k = 3 * index;
+
         // Hack to make things more colorful/interesting
-        c[1] = (float)x.y;
+        c[1] = (float)x[k + 1];
 
         gl.glMaterialfv(GL2.GL_FRONT, GL2.GL_DIFFUSE, c, 0); // Color used by shader
 
         /// DRAW ORIGIN-CIRCLE TRANSLATED TO "p":
         gl.glPushMatrix();
-        gl.glTranslated(x.x, x.y, x.z);
+        gl.glTranslated(x[k], x[k + 1], x[k + 2]);
         gl.glCallList(PARTICLE_DISPLAY_LIST); // Draw the particle
         gl.glPopMatrix();
     }
 
-    /** Specifies whether particle should be drawn highlighted. */
+    /** Specifies whether particle should be drawn highlighted. Highlighted particles are pinned. */
     public void setHighlight(boolean highlight) {
-        this.highlight = highlight;
+        store.setPinned(index, highlight);
     }
     /** True if particle should be drawn highlighted. */
     public boolean getHighlight() {
-        return highlight;
+        return store.pinned[index];
     }
     
     /**
@@ -119,33 +107,108 @@ public class Particle
       return index;
     }
     
+    /**
+     * @return the store holding the state of this particle.
+     */
+    public ParticleStore getStore() {
+      return store;
+    }
+    
+    /** Deformed position. */
+    public Point3d getX() {
+      Point3d x = new Point3d();
+      getX(x);
+      return x;
+    }
+    
+    public void getX(Tuple3d out) {
+      ParticleStore.get(store.x, index, out);
+    }
+    
+    public void setX(Tuple3d x) {
+      ParticleStore.set(store.x, index, x);
+    }
+    
+    public void addX(Tuple3d dx) {
+      ParticleStore.accumulate(store.x, index, dx);
+    }
+    
+    /** Position at the beginning of the current time step. */
+    public Point3d getXPrev() {
+      Point3d xPrev = new Point3d();
+      ParticleStore.get(store.xPrev, index, xPrev);
+      return xPrev;
+    }
+    
+    public void getXPrev(Tuple3d out) {
+      ParticleStore.get(store.xPrev, index, out);
+    }
+    
+    public void setXPrev(Tuple3d xPrev) {
+      ParticleStore.set(store.xPrev, index, xPrev);
+    }
+    
+    /** Undeformed/material position. */
+    public Point3d getX0() {
+      Point3d x0 = new Point3d();
+      ParticleStore.get(store.x0, index, x0);
+      return x0;
+    }
+    
+    /** Velocity. */
+    public Vector3d getV() {
+      Vector3d v = new Vector3d();
+      ParticleStore.get(store.v, index, v);
+      return v;
+    }
+    
+    public void setV(Tuple3d v) {
+      ParticleStore.set(store.v, index, v);
+    }
+    
+    /** Force accumulator. */
+    public Vector3d getF() {
+      Vector3d f = new Vector3d();
+      ParticleStore.get(store.f, index, f);
+      return f;
+    }
+    
+    public double getMass() {
+      return store.m[index];
+    }
+    
+    public void setMass(double m) {
+      store.setMass(index, m);
+    }
+    
+    public void addMass(double dm) {
+      store.setMass(index, store.m[index] + dm);
+    }
+    
     public void addPos(Vector3d dx) {
-      this.dx.add(dx);
+      ParticleStore.accumulate(store.dx, index, dx);
     }
     
     public void addVelocity(Vector3d dv) {
-      this.dv.add(dv);
+      ParticleStore.accumulate(store.dv, index, dv);
     }
     
     public void addForce(Vector3d df) {
-      this.df.add(df);
+      ParticleStore.accumulate(store.df, index, df);
     }
     
     public void applyChanges() {
-      x.add(dx);
-      v.add(dv);
-      f.add(df);
-      
-      dx = new Vector3d();
-      dv = new Vector3d();
-      df = new Vector3d();
+      for (int k = 3 * index; k < 3 * index + 3; k++) {
+        store.x[k] += store.dx[k];
+        store.v[k] += store.dv[k];
+        store.f[k] += store.df[k];
+        store.dx[k] = 0;
+        store.dv[k] = 0;
+        store.df[k] = 0;
+      }
     }
     
     public double getPositionUpdateInvMass() {
-      if (highlight) {
-        return 0;
-      } else {
-        return 1 / m;
-      }
+      return store.w[index];
     }
 }
@@ -0,0 +1,173 @@
+package particles;
+
+import java.util.Arrays;
+
+import javax.vecmath.Tuple3d;
+
+/**
+ * Structure-of-arrays storage for particle state. Every per-particle quantity
+ * lives in one contiguous primitive array, with vector quantities packed as
+ * (x, y, z) triples, so that particle i occupies [3*i, 3*i+3). Particle and
+ * Vertex objects are lightweight index views into a store; solver loops should
+ * read and write the arrays directly.
+ *
+ * The arrays are reallocated when the store grows, so never cache an array
+ * reference across a call to add().
+ */
+public class ParticleStore {
+
+  private static final int DEFAULT_CAPACITY = 16;
+
+  /** Number of particles in the store. */
+  private int size = 0;
+
+  /** Deformed (predicted, during a step) positions. */
+  public double[] x;
+
+  /** Positions at the beginning of the current step. */
+  public double[] xPrev;
+
+  /** Undeformed/material positions. */
+  public double[] x0;
+
+  /** Velocities. */
+  public double[] v;
+
+  /** Force accumulators. */
+  public double[] f;
+
+  /** Pending position changes, see Particle.addPos(). */
+  public double[] dx;
+
+  /** Pending velocity changes, see Particle.addVelocity(). */
+  public double[] dv;
+
+  /** Pending force changes, see Particle.addForce(). */
+  public double[] df;
+
+  /** Masses. */
+  public double[] m;
+
+  /** Inverse masses used by position updates; 0 for pinned particles. */
+  public double[] w;
+
+  /**
+   * Inverse masses repeated for each component, (1/m, 1/m, 1/m) per particle,
+   * so that integration can run over the vector arrays with unit stride.
+   */
+  public double[] invMass3;
+
+  /** Pin flags. Pinned particles are highlighted and never moved by constraints. */
+  public boolean[] pinned;
+
+  public ParticleStore() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  public ParticleStore(int capacity) {
+    allocate(Math.max(capacity, 1));
+  }
+
+  private void allocate(int capacity) {
+    x = Arrays.copyOf(orEmpty(x), 3 * capacity);
+    xPrev = Arrays.copyOf(orEmpty(xPrev), 3 * capacity);
+    x0 = Arrays.copyOf(orEmpty(x0), 3 * capacity);
+    v = Arrays.copyOf(orEmpty(v), 3 * capacity);
+    f = Arrays.copyOf(orEmpty(f), 3 * capacity);
+    dx = Arrays.copyOf(orEmpty(dx), 3 * capacity);
+    dv = Arrays.copyOf(orEmpty(dv), 3 * capacity);
+    df = Arrays.copyOf(orEmpty(df), 3 * capacity);
+    m = Arrays.copyOf(orEmpty(m), capacity);
+    w = Arrays.copyOf(orEmpty(w), capacity);
+    invMass3 = Arrays.copyOf(orEmpty(invMass3), 3 * capacity);
+    pinned = pinned == null ? new boolean[capacity] : Arrays.copyOf(pinned, capacity);
+  }
+
+  private static double[] orEmpty(double[] a) {
+    return a == null ? new double[0] : a;
+  }
+
+  /** @return the number of particles in the store. */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Appends a particle at rest at the given material position.
+   *
+   * @return the index of the new particle.
+   */
+  public int add(Tuple3d p0) {
+    if (size == m.length) {
+      allocate(2 * m.length);
+    }
+    int i = size++;
+    set(x0, i, p0);
+    set(x, i, p0);
+    set(xPrev, i, p0);
+    setMass(i, Constants.PARTICLE_MASS);
+    return i;
+  }
+
+  /** Removes all particles. */
+  public void clear() {
+    Arrays.fill(x, 0);
+    Arrays.fill(xPrev, 0);
+    Arrays.fill(x0, 0);
+    Arrays.fill(v, 0);
+    Arrays.fill(f, 0);
+    Arrays.fill(dx, 0);
+    Arrays.fill(dv, 0);
+    Arrays.fill(df, 0);
+    Arrays.fill(m, 0);
+    Arrays.fill(w, 0);
+    Arrays.fill(invMass3, 0);
+    Arrays.fill(pinned, false);
+    size = 0;
+  }
+
+  public void setMass(int i, double mass) {
+    m[i] = mass;
+    w[i] = pinned[i] ? 0 : 1 / mass;
+    invMass3[3 * i] = invMass3[3 * i + 1] = invMass3[3 * i + 2] = 1 / mass;
+  }
+
+  public void setPinned(int i, boolean pin) {
+    pinned[i] = pin;
+    w[i] = pin ? 0 : 1 / m[i];
+  }
+
+  /** Adds the pending dx, dv and df changes of every particle and clears them. */
+  public void applyChanges() {
+    int n = 3 * size;
+    for (int k = 0; k < n; k++) {
+      x[k] += dx[k];
+      v[k] += dv[k];
+      f[k] += df[k];
+    }
+    Arrays.fill(dx, 0, n, 0);
+    Arrays.fill(dv, 0, n, 0);
+    Arrays.fill(df, 0, n, 0);
+  }
+
+  /** a[i] = t */
+  static void set(double[] a, int i, Tuple3d t) {
+    a[3 * i] = t.x;
+    a[3 * i + 1] = t.y;
+    a[3 * i + 2] = t.z;
+  }
+
+  /** t = a[i] */
+  static void get(double[] a, int i, Tuple3d t) {
+    t.x = a[3 * i];
+    t.y = a[3 * i + 1];
+    t.z = a[3 * i + 2];
+  }
+
+  /** a[i] += t */
+  static void accumulate(double[] a, int i, Tuple3d t) {
+    a[3 * i] += t.x;
+    a[3 * i + 1] += t.y;
+    a[3 * i + 2] += t.z;
+  }
+}
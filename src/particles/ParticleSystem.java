@@ -5,9 +5,18 @@ import javax.vecmath.*;
 import com.jogamp.opengl.*;
 import com.jogamp.opengl.util.glsl.*;
 
+import bvh.AabbTree;
+import colliders.Collider;
 import forces.CollisionConstraint;
+import forces.CompliantConstraint;
 import forces.Force;
+import forces.JacobiConstraint;
+import forces.Residual;
+import forces.ResidualConstraint;
 import particles.Particle;
+import pqp.PQPHelper;
+import pqp.ProximityQuery;
+import pqp.SegmentQuery;
 
 import java.io.*;
 
@@ -23,6 +32,9 @@ public class ParticleSystem // implements Serializable
   /** Current simulation time. */
   public double time = 0;
 
+  /** Structure-of-arrays state of all particles; P holds index views into it. */
+  public final ParticleStore store = new ParticleStore();
+
   /** List of Particle objects. */
   public ArrayList<Particle> P = new ArrayList<Particle>();
 
@@ -31,12 +43,123 @@ public class ParticleSystem // implements Serializable
 
   /** Static meshes for collision detection only */
   private List<Mesh> staticMeshes = new ArrayList<>();
+  /** Solids without a mesh; see addCollider(). */
+  private final List<Collider> colliders = new ArrayList<>();
+  private final double[] colliderGradient = new double[3];
 
   /** List of Force objects. */
   public ArrayList<Force> F = new ArrayList<Force>();
 
   public List<Force> constraints = new ArrayList<>();
 
+  /**
+   * The contacts of the current step, gathered from the slots of the
+   * detection chunks; the first numCollisions are active.
+   */
+  private CollisionConstraint[] activeCollisions = new CollisionConstraint[16];
+  private int numCollisions = 0;
+
+  /**
+   * Particles per chunk of the contact detection, see detectCollisions(); a
+   * constant, so that the contact order does not depend on the thread count.
+   */
+  private static final int DETECTION_CHUNK = 256;
+  private int detectionChunk = DETECTION_CHUNK;
+  private final List<ContactChunk> contactChunks = new ArrayList<>();
+  private final ParallelRange detectionRange = new ParallelRange();
+  /** Whether the chunks query the static meshes in the current detection. */
+  private boolean detectMeshes;
+  private final ParallelRange.Body detectChunks = (from, to) -> {
+    for (int c = from; c < to; c++) {
+      int first = c * detectionChunk;
+      contactChunks.get(c).detect(first, first + Math.min(detectionChunk, P.size() - first));
+    }
+  };
+
+  /** Scratch storage for a particle's position. */
+  private final Point3d pointScratch = new Point3d();
+
+  /** How constraints are projected in each solver iteration. */
+  public enum SolverMode {
+    /** Sequential projection; each constraint sees the previous one's result. */
+    GAUSS_SEIDEL,
+    /**
+     * Parallel projection with averaged deltas (see JacobiSolver). Constraints
+     * that do not implement JacobiConstraint are still applied sequentially.
+     */
+    JACOBI
+  }
+
+  /** Substeps per frame of advanceFrame(), and solver iterations per substep. */
+  private int numSubsteps = 1;
+  private int numIterations = (int) Constants.NUM_SOLVER_ITERATIONS;
+
+  /** Velocities are scaled by DAMPING every DAMPING_DT seconds. */
+  private static final double DAMPING = 0.95;
+  private static final double DAMPING_DT = 0.01;
+
+  /**
+   * Broad phase: sweep and prune over the boxes of the static meshes (ids 0
+   * to staticMeshes.size() - 1) and of clusters of BROAD_PHASE_CLUSTER
+   * consecutive particles (the following ids), each grown by the reach of its
+   * particles within the frame.
+   */
+  private final SweepAndPrune broadPhase = new SweepAndPrune();
+  private static final int BROAD_PHASE_CLUSTER = 16;
+  private static final int GROUP_STATIC = 0;
+  private static final int GROUP_CLUSTER = 1;
+  private int broadPhaseMeshes = -1;
+  private int broadPhaseClusters = -1;
+  private double[] reach = new double[0];
+  private final double[] meshBounds = new double[6];
+  /** Per static mesh, which clusters overlap it in the current frame. */
+  private boolean[][] clusterOverlaps = new boolean[0][];
+
+  /**
+   * Per static mesh, the particles that may reach it during the current frame,
+   * in ascending order, and one batched segment query holding their paths:
+   * meshCandidates[j][k] is the particle of segment k of query j.
+   */
+  private final List<SegmentQuery> segmentQueries = new ArrayList<>();
+  private int[][] meshCandidates = new int[0][];
+  private int[] numMeshCandidates = new int[0];
+
+  /**
+   * Skin distance particles keep from static meshes; 0 only stops paths
+   * through the meshes. See setContactThickness().
+   */
+  private double contactThickness = 0;
+  /** Per static mesh, the candidates' positions for the thickness contacts. */
+  private final List<ProximityQuery> proximityQueries = new ArrayList<>();
+
+  /**
+   * Per static mesh and particle, the AABB tree leaf of the last crossing of
+   * the particle's path, or -1; used if contactCache. See setContactCache().
+   */
+  private boolean contactCache = false;
+  private int[][] cachedLeaves = new int[0][];
+
+  /**
+   * Constraints compiled from the meshes M; stale once meshes are added or
+   * removed or their topology changes, see compileIfStale().
+   */
+  private StretchBatch stretchBatch;
+  private BendBatch bendBatch;
+  private Mesh[] compiledMeshes = new Mesh[0];
+  private int[] compiledVersions = new int[0];
+
+  /** Early termination of the solver iterations; null runs numIterations. */
+  private ConvergencePolicy convergence = null;
+  private int lastIterationCount = 0;
+  private final Residual collisionResidual = new Residual();
+
+  /** SIMD kernels for the integration loops, or null for the scalar loops. */
+  private SimdKernels simd = Boolean.getBoolean("pbd.simd") ? SimdKernels.load() : null;
+
+  private SolverMode solverMode = SolverMode.GAUSS_SEIDEL;
+  private final JacobiSolver jacobiSolver = new JacobiSolver();
+  private final CollisionPass collisionPass = new CollisionPass();
+
   /**
    * true iff prog has been initialized. This cannot be done in the constructor
    * because it requires a GL2 reference.
@@ -108,6 +231,36 @@ public class ParticleSystem // implements Serializable
     M.add(objmesh);
   }
 
+  /** The stretch constraints of all meshes, recompiled if stale. */
+  public StretchBatch getStretchBatch() {
+    compileIfStale();
+    return stretchBatch;
+  }
+
+  /** The bend constraints of all meshes, recompiled if stale. */
+  public BendBatch getBendBatch() {
+    compileIfStale();
+    return bendBatch;
+  }
+
+  /** Recompiles the constraint batches if M or the topology of a mesh changed. */
+  private void compileIfStale() {
+    boolean stale = stretchBatch == null || compiledMeshes.length != M.size();
+    for (int m = 0; m < M.size() && !stale; m++) {
+      stale = compiledMeshes[m] != M.get(m) || compiledVersions[m] != M.get(m).getTopologyVersion();
+    }
+    if (!stale) {
+      return;
+    }
+    compiledMeshes = M.toArray(new Mesh[M.size()]);
+    compiledVersions = new int[M.size()];
+    for (int m = 0; m < M.size(); m++) {
+      compiledVersions[m] = M.get(m).getTopologyVersion();
+    }
+    stretchBatch = StretchBatch.compile(M);
+    bendBatch = BendBatch.compile(M);
+  }
+
   /**
    * Useful for removing temporary forces, such as user-interaction spring
    * forces.
@@ -124,11 +277,30 @@ public class ParticleSystem // implements Serializable
    * @return Reference to new Particle.
    */
   public synchronized Particle createParticle(Point3d p0) {
-    Particle newP = new Particle(p0, P.size());
+    Particle newP = new Particle(store, store.add(p0));
     P.add(newP);
     return newP;
   }
 
+  /**
+   * Creates a mesh vertex and adds it to the particle system.
+   * 
+   * @param p0
+   *          Undeformed/material position.
+   * @return Reference to new Vertex.
+   */
+  public synchronized Vertex createVertex(Point3d p0) {
+    Vertex newV = new Vertex(store, store.add(p0));
+    P.add(newV);
+    return newV;
+  }
+
+  /** Removes all particles. */
+  public synchronized void clearParticles() {
+    P.clear();
+    store.clear();
+  }
+
   /**
    * Helper-function that computes the nearest particle to the specified
    * (deformed) position.
@@ -138,11 +310,15 @@ public class ParticleSystem // implements Serializable
   public synchronized Particle getNearestParticle(Point3d x) {
     Particle minP = null;
     double minDistSq = Double.MAX_VALUE;
-    for (Particle particle : P) {
-      double distSq = x.distanceSquared(particle.x);
+    double[] px = store.x;
+    for (int i = 0; i < P.size(); i++) {
+      double dx = px[3 * i] - x.x;
+      double dy = px[3 * i + 1] - x.y;
+      double dz = px[3 * i + 2] - x.z;
+      double distSq = dx * dx + dy * dy + dz * dz;
       if (distSq < minDistSq) {
         minDistSq = distSq;
-        minP = particle;
+        minP = P.get(i);
       }
     }
     return minP;
@@ -152,7 +328,7 @@ public class ParticleSystem // implements Serializable
     double minDist = Double.MAX_VALUE;
     Particle minP = null;
     for (Particle particle : P) {
-      double dist = Utils.pointLineDistance(particle.x, l1, l2);
+      double dist = Utils.pointLineDistance(particle.getX(), l1, l2);
       if (dist < minDist) {
         minDist = dist;
         minP = particle;
@@ -167,90 +343,671 @@ public class ParticleSystem // implements Serializable
    * to advanceTime().
    */
   public synchronized void reset() {
-    for (Particle p : P) {
-      p.x.set(p.x0);
-      p.v.set(0, 0, 0);
-      p.f.set(0, 0, 0);
-      p.setHighlight(false);
+    int n = store.size();
+    System.arraycopy(store.x0, 0, store.x, 0, 3 * n);
+    Arrays.fill(store.v, 0, 3 * n, 0);
+    Arrays.fill(store.f, 0, 3 * n, 0);
+    for (int i = 0; i < n; i++) {
+      store.setPinned(i, false);
     }
     time = 0;
   }
 
+  /**
+   * Advances by one frame of length frameDt, split into getSubsteps() substeps
+   * of getIterations() solver iterations each. The collision broad phase runs
+   * once per frame and is shared by all substeps.
+   */
+  public synchronized void advanceFrame(double frameDt) {
+    updateBroadPhase(frameDt);
+    double dt = frameDt / numSubsteps;
+    for (int i = 0; i < numSubsteps; i++) {
+      step(dt);
+    }
+  }
+
+  /** Advances by a single step of length dt, with getIterations() solver iterations. */
+  public synchronized void advanceTime(double dt) {
+    updateBroadPhase(dt);
+    step(dt);
+  }
+
+  /**
+   * Sets how advanceFrame() splits a frame. With PBD stiffness, constraints
+   * get softer as iterations are cut; use compliant (XPBD) constraints to keep
+   * the material independent of the split.
+   */
+  public synchronized void setSubsteps(int substeps, int iterationsPerSubstep) {
+    if (substeps < 1 || iterationsPerSubstep < 1) {
+      throw new IllegalArgumentException("substeps and iterations must be positive");
+    }
+    numSubsteps = substeps;
+    numIterations = iterationsPerSubstep;
+  }
+
+  /**
+   * Makes particles keep thickness away from the static meshes. With a
+   * positive thickness, particles within twice the thickness of a mesh after
+   * the prediction get a contact against the plane of the nearest triangle,
+   * which stays inactive until the solver moves them closer than thickness.
+   * These contacts are found once per step, so the paths are no longer
+   * intersected again on every solver iteration; this requires that the
+   * solver moves particles less than thickness within one step.
+   */
+  public synchronized void setContactThickness(double thickness) {
+    if (thickness < 0) {
+      throw new IllegalArgumentException("thickness must not be negative");
+    }
+    contactThickness = thickness;
+  }
+
+  public double getContactThickness() {
+    return contactThickness;
+  }
+
+  /**
+   * Makes the path queries against static meshes with the BVH backend
+   * temporally coherent: each particle keeps the tree leaf of its last
+   * crossing, and as long as its path stays within the leaf's box (grown by
+   * Constants.CONTACT_CACHE_MARGIN) only that leaf and the few leaves
+   * overlapping it are tested, after the prediction and on every solver
+   * iteration. The tree is only traversed again once the particle leaves the
+   * box, so cloth resting on a mesh costs next to nothing in collision. The
+   * contacts found are the same as without the cache.
+   */
+  public synchronized void setContactCache(boolean enabled) {
+    contactCache = enabled;
+    cachedLeaves = new int[0][];
+  }
+
+  public boolean getContactCache() {
+    return contactCache;
+  }
+
+  public int getSubsteps() {
+    return numSubsteps;
+  }
+
+  public int getIterations() {
+    return numIterations;
+  }
+
   /**
    * Simple implementation of a first-order time step. TODO: Implement the
    * "Position Based Fluids" integrator here
    */
-  public synchronized void advanceTime(double dt) {
-    for (Mesh mesh : M) {
-      mesh.updateMass();
+  private void step(double dt) {
+    // Indexed loops throughout: a step must not allocate, not even iterators.
+    if (Mesh.PQP_AVAILABLE) {
+      PQPHelper.resetScratch();
+    }
+    for (int i = 0; i < M.size(); i++) {
+      M.get(i).updateMass();
     }
 
 
+    ParticleStore s = store;
+    int n = s.size();
+
     /// Clear force accumulators:
-    for (Particle p : P) {
-      p.f.set(0, 0, 0);
-      p.xPrev = new Point3d(p.x);
+    Arrays.fill(s.f, 0, 3 * n, 0);
+    System.arraycopy(s.x, 0, s.xPrev, 0, 3 * n);
+
+    for (int i = 0; i < F.size(); i++) {
+      F.get(i).applyForce();
     }
 
-    for (Force force : F) {
-      force.applyForce();
+    s.applyChanges();
+    double[] x = s.x;
+    double[] v = s.v;
+    double[] f = s.f;
+    double[] m = s.m;
+    if (simd != null) {
+      simd.predict(x, v, f, s.invMass3, dt, 3 * n);
+    } else {
+      for (int i = 0; i < n; i++) {
+        double dtOverM = dt / m[i];
+        for (int k = 3 * i; k < 3 * i + 3; k++) {
+          v[k] += dtOverM * f[k]; // p.v += dt * p.f / p.m;
+          x[k] += dt * v[k]; // p.x += dt * p.v;
+        }
+      }
     }
 
-    List<Force> collisionConstraints = new ArrayList<>();
+    detectCollisions();
 
-    for (Particle p : P) {
-      p.applyChanges();
-      Vector3d acc = new Vector3d(p.f);
-      acc.scale(1.0 / p.m);
-      p.v.scaleAdd(dt, acc, p.v); // p.v += dt * p.f;
-      p.x.scaleAdd(dt, p.v, p.x); // p.x += dt * p.v;
+    for (int j = 0; j < constraints.size(); j++) {
+      if (constraints.get(j) instanceof CompliantConstraint) {
+        ((CompliantConstraint) constraints.get(j)).beginStep(dt);
+      }
+    }
+
+    int maxIterations = convergence == null ? numIterations : convergence.maxIterations;
+    int iteration = 0;
+    while (iteration < maxIterations) {
+      resetResiduals();
+      if (solverMode == SolverMode.JACOBI) {
+        for (int j = 0; j < constraints.size(); j++) {
+          Force c = constraints.get(j);
+          if (c instanceof JacobiConstraint) {
+            jacobiSolver.project((JacobiConstraint) c, s);
+          } else {
+            c.applyForce();
+          }
+        }
+
+        if (contactThickness == 0) {
+          detectCollisions();
+        }
+        jacobiSolver.project(collisionPass, s);
+      } else {
+        for (int j = 0; j < constraints.size(); j++) {
+          constraints.get(j).applyForce();
+        }
 
-      for (Mesh mesh : staticMeshes) {
-        CollisionConstraint collisionConstraint = mesh.segmentIntersects(p.xPrev, p);
-        if (collisionConstraint != null) {
-          collisionConstraints.add(collisionConstraint);
+        if (contactThickness == 0) {
+          detectCollisions();
         }
+        for (int j = 0; j < numCollisions; j++) {
+          activeCollisions[j].applyForce(collisionResidual);
+        }
+      }
+
+      iteration++;
+      if (convergence != null && iteration >= convergence.minIterations && isConverged()) {
+        break;
       }
     }
+    lastIterationCount = iteration;
 
-    for (int i = 0; i < Constants.NUM_SOLVER_ITERATIONS; i++) {
-      for (Force c : constraints) {
-        c.applyForce();
+    double[] xPrev = s.xPrev;
+    double damp = Math.pow(DAMPING, dt / DAMPING_DT) / dt;
+    if (simd != null) {
+      simd.updateVelocity(x, xPrev, v, damp, 3 * n);
+    } else {
+      for (int k = 0; k < 3 * n; k++) {
+        v[k] = (x[k] - xPrev[k]) * damp;
       }
+    }
+
+    time += dt;
+  }
+
+  /**
+   * Finds, per static mesh, the particles that may reach it within the next
+   * frameDt seconds. A particle can move about |v| frameDt; twice that plus
+   * Constants.BROAD_PHASE_MARGIN, which covers the accelerations within one
+   * frame, bounds its reach; twice the contact thickness is added to it.
+   * Sweep and prune pairs the boxes of the static meshes with those of
+   * particle clusters; only the particles of clusters that overlap a mesh
+   * are tested against its triangles.
+   */
+  private void updateBroadPhase(double frameDt) {
+    int n = P.size();
+    int numMeshes = staticMeshes.size();
+    int numClusters = (n + BROAD_PHASE_CLUSTER - 1) / BROAD_PHASE_CLUSTER;
+    if (numMeshes != broadPhaseMeshes || numClusters != broadPhaseClusters) {
+      layoutBroadPhase(numMeshes, numClusters);
+    }
+    if (reach.length < n) {
+      reach = new double[Math.max(n, 2 * reach.length)];
+    }
+    for (int j = 0; j < numMeshes; j++) {
+      numMeshCandidates[j] = 0;
+      if (meshCandidates[j].length < n) {
+        meshCandidates[j] = new int[Math.max(n, 2 * meshCandidates[j].length)];
+      }
+    }
+    if (numMeshes == 0) {
+      return;
+    }
 
-      collisionConstraints = new ArrayList<>();
-      for (Particle p : P) {
-        for (Mesh mesh : staticMeshes) {
-          CollisionConstraint collisionConstraint = mesh.segmentIntersects(p.xPrev, p);
-          if (collisionConstraint != null) {
-            collisionConstraints.add(collisionConstraint);
+    double[] x = store.x;
+    double[] v = store.v;
+    for (int j = 0; j < numMeshes; j++) {
+      staticMeshes.get(j).getBounds(meshBounds);
+      double[] b = meshBounds;
+      broadPhase.setBounds(j, b[0], b[1], b[2], b[3], b[4], b[5]);
+    }
+    for (int c = 0; c < numClusters; c++) {
+      double minX = Double.POSITIVE_INFINITY, minY = minX, minZ = minX;
+      double maxX = Double.NEGATIVE_INFINITY, maxY = maxX, maxZ = maxX;
+      for (int i = c * BROAD_PHASE_CLUSTER; i < Math.min(n, (c + 1) * BROAD_PHASE_CLUSTER); i++) {
+        double speed = Math.sqrt(v[3 * i] * v[3 * i] + v[3 * i + 1] * v[3 * i + 1] + v[3 * i + 2] * v[3 * i + 2]);
+        double r = reach[i] = 2 * speed * frameDt + Constants.BROAD_PHASE_MARGIN + 2 * contactThickness;
+        minX = Math.min(minX, x[3 * i] - r);
+        minY = Math.min(minY, x[3 * i + 1] - r);
+        minZ = Math.min(minZ, x[3 * i + 2] - r);
+        maxX = Math.max(maxX, x[3 * i] + r);
+        maxY = Math.max(maxY, x[3 * i + 1] + r);
+        maxZ = Math.max(maxZ, x[3 * i + 2] + r);
+      }
+      broadPhase.setBounds(numMeshes + c, minX, minY, minZ, maxX, maxY, maxZ);
+    }
+
+    int numPairs = broadPhase.update();
+    for (int k = 0; k < numPairs; k++) {
+      // static meshes have the lower ids
+      clusterOverlaps[broadPhase.pairFirst(k)][broadPhase.pairSecond(k) - numMeshes] = true;
+    }
+    // visit clusters in order, so that the candidates come out ascending
+    for (int j = 0; j < numMeshes; j++) {
+      Mesh mesh = staticMeshes.get(j);
+      boolean[] overlaps = clusterOverlaps[j];
+      for (int c = 0; c < numClusters; c++) {
+        if (!overlaps[c]) {
+          continue;
+        }
+        overlaps[c] = false;
+        for (int i = c * BROAD_PHASE_CLUSTER; i < Math.min(n, (c + 1) * BROAD_PHASE_CLUSTER); i++) {
+          pointScratch.set(x[3 * i], x[3 * i + 1], x[3 * i + 2]);
+          if (mesh.mayCollide(pointScratch, reach[i])) {
+            meshCandidates[j][numMeshCandidates[j]++] = i;
           }
         }
       }
+    }
+  }
 
-      for (Force c : collisionConstraints) {
-        c.applyForce();
+  /** Recreates the broad phase boxes after static meshes or particles were added. */
+  private void layoutBroadPhase(int numMeshes, int numClusters) {
+    broadPhase.clear();
+    for (int j = 0; j < numMeshes; j++) {
+      broadPhase.add(GROUP_STATIC, 1 << GROUP_CLUSTER);
+    }
+    for (int c = 0; c < numClusters; c++) {
+      broadPhase.add(GROUP_CLUSTER, 1 << GROUP_STATIC);
+    }
+    clusterOverlaps = new boolean[numMeshes][numClusters];
+    if (meshCandidates.length != numMeshes) {
+      meshCandidates = Arrays.copyOf(meshCandidates, numMeshes);
+      for (int j = 0; j < numMeshes; j++) {
+        if (meshCandidates[j] == null) {
+          meshCandidates[j] = new int[0];
+        }
       }
+      numMeshCandidates = new int[numMeshes];
     }
+    broadPhaseMeshes = numMeshes;
+    broadPhaseClusters = numClusters;
+  }
 
-    for (Particle p : P) {
-      Vector3d dp = new Vector3d();
-      dp.sub(p.x, p.xPrev);
-      dp.scale(0.95 / dt);
-      p.v = dp;
+  /**
+   * Fills activeCollisions with the contacts between the particles and the
+   * static meshes and colliders in this step. The queries of all candidates
+   * of a static mesh are filled here, then the particles are split into
+   * chunks of detectionChunk that run in parallel (see ContactChunk), each
+   * querying its own range of every query with its own scratch. The contacts
+   * are gathered in chunk order; chunks depend on the number of particles
+   * only, so the order, and with it the solve, is the same on any number of
+   * threads, and with a single chunk it is the order of one serial pass.
+   * Without static meshes in the broad phase and without colliders there is
+   * nothing to detect, and no chunks are run.
+   */
+  private void detectCollisions() {
+    numCollisions = 0;
+    int numMeshes = staticMeshes.size();
+    boolean meshes = numMeshes > 0 && numMeshes == broadPhaseMeshes;
+    if (meshes) {
+      fillQueries();
+    }
+    detectMeshes = meshes;
+    if (!meshes && colliders.isEmpty()) {
+      return;
     }
 
-    time += dt;
+    int n = P.size();
+    int numChunks = n == 0 ? 0 : (n - 1) / detectionChunk + 1;
+    while (contactChunks.size() < numChunks) {
+      contactChunks.add(new ContactChunk());
+    }
+    detectionRange.forEach(numChunks, 1, detectChunks);
+
+    for (int c = 0; c < numChunks; c++) {
+      ContactChunk chunk = contactChunks.get(c);
+      if (activeCollisions.length < numCollisions + chunk.size) {
+        activeCollisions = Arrays.copyOf(activeCollisions,
+            Math.max(numCollisions + chunk.size, 2 * activeCollisions.length));
+      }
+      for (int k = 0; k < chunk.size; k++) {
+        activeCollisions[numCollisions++] = chunk.slots.get(k);
+      }
+    }
   }
-  
+
+  /**
+   * Fills, per static mesh, the segment query with the candidates' paths, or,
+   * for meshes with a collider, leaves it empty; likewise the proximity
+   * queries with their positions if the contact thickness is positive.
+   */
+  private void fillQueries() {
+    double[] x = store.x;
+    double[] xPrev = store.xPrev;
+    for (int j = 0; j < staticMeshes.size(); j++) {
+      Mesh mesh = staticMeshes.get(j);
+      SegmentQuery segments = segmentQueries.get(j);
+      ProximityQuery points = proximityQueries.get(j);
+      segments.clear();
+      points.clear();
+      if (mesh.getCollider() != null) {
+        continue;
+      }
+      int[] candidates = meshCandidates[j];
+      for (int k = 0; k < numMeshCandidates[j]; k++) {
+        int i = candidates[k];
+        segments.add(xPrev[3 * i], xPrev[3 * i + 1], xPrev[3 * i + 2], x[3 * i], x[3 * i + 1], x[3 * i + 2]);
+        if (contactThickness > 0) {
+          points.add(x[3 * i], x[3 * i + 1], x[3 * i + 2]);
+        }
+      }
+      if (contactCache && segments.size() > 0) {
+        cachedLeaves(j);
+        mesh.setContactCacheMargin(Constants.CONTACT_CACHE_MARGIN);
+      }
+    }
+  }
+
+  /** Sets the particles per detection chunk; for tests, default DETECTION_CHUNK. */
+  void setDetectionChunk(int particles) {
+    if (particles < 1) {
+      throw new IllegalArgumentException("chunks need at least one particle");
+    }
+    detectionChunk = particles;
+  }
+
+  /** @return the number of contacts of the last step; for tests */
+  int getNumCollisions() {
+    return numCollisions;
+  }
+
+  /** @return the cached leaves of static mesh j, one per particle */
+  private int[] cachedLeaves(int j) {
+    if (cachedLeaves.length != staticMeshes.size()) {
+      cachedLeaves = Arrays.copyOf(cachedLeaves, staticMeshes.size());
+    }
+    int[] leaves = cachedLeaves[j];
+    if (leaves == null || leaves.length < P.size()) {
+      int old = leaves == null ? 0 : leaves.length;
+      leaves = cachedLeaves[j] = leaves == null ? new int[P.size()] : Arrays.copyOf(leaves, P.size());
+      Arrays.fill(leaves, old, leaves.length, -1);
+    }
+    return leaves;
+  }
+
+  /**
+   * The contacts of the particles [first, last) of one detection chunk, in
+   * slots of its own that are reused from step to step and only allocated
+   * when the chunk meets more contacts than ever before. The queries are
+   * shared, but a chunk only touches the entries of its particles; the
+   * candidates of every mesh are ascending, so those are one range per mesh.
+   * Contacts are appended in this order: the paths through the static meshes
+   * without a collider, per particle in mesh order; the collider contacts of
+   * the meshes with one, and of the colliders without a mesh; the thickness
+   * contacts, if the contact thickness is positive.
+   */
+  private class ContactChunk {
+    final List<CollisionConstraint> slots = new ArrayList<>();
+    int size;
+    private final AabbTree.Hit hit = new AabbTree.Hit();
+    private final double[] gradient = new double[3];
+    /** Per static mesh, the range [from, to) of its candidates within the chunk. */
+    private int[] from = new int[0];
+    private int[] to = new int[0];
+    private int[] cursor = new int[0];
+
+    void detect(int first, int last) {
+      size = 0;
+      int numMeshes = detectMeshes ? staticMeshes.size() : 0;
+      if (from.length < numMeshes) {
+        from = new int[numMeshes];
+        to = new int[numMeshes];
+        cursor = new int[numMeshes];
+      }
+      for (int j = 0; j < numMeshes; j++) {
+        from[j] = lowerBound(meshCandidates[j], numMeshCandidates[j], first);
+        to[j] = lowerBound(meshCandidates[j], numMeshCandidates[j], last);
+      }
+      detectPaths(numMeshes);
+      detectColliders(numMeshes, first, last);
+      if (contactThickness > 0) {
+        detectThickness(numMeshes);
+      }
+    }
+
+    private void detectPaths(int numMeshes) {
+      int hits = 0;
+      for (int j = 0; j < numMeshes; j++) {
+        Mesh mesh = staticMeshes.get(j);
+        if (mesh.getCollider() != null || from[j] == to[j]) {
+          continue;
+        }
+        if (contactCache) {
+          hits += mesh.segmentsIntersect(segmentQueries.get(j), from[j], to[j], meshCandidates[j], cachedLeaves[j],
+              hit);
+        } else {
+          hits += mesh.segmentsIntersect(segmentQueries.get(j), from[j], to[j], hit);
+        }
+      }
+      if (hits == 0) {
+        return;
+      }
+
+      // merge the ascending candidate ranges of all meshes
+      for (int j = 0; j < numMeshes; j++) {
+        cursor[j] = staticMeshes.get(j).getCollider() != null ? to[j] : from[j];
+      }
+      while (true) {
+        int i = Integer.MAX_VALUE;
+        for (int j = 0; j < numMeshes; j++) {
+          if (cursor[j] < to[j]) {
+            i = Math.min(i, meshCandidates[j][cursor[j]]);
+          }
+        }
+        if (i == Integer.MAX_VALUE) {
+          return;
+        }
+        Particle p = P.get(i);
+        for (int j = 0; j < numMeshes; j++) {
+          int k = cursor[j];
+          if (k == to[j] || meshCandidates[j][k] != i) {
+            continue;
+          }
+          cursor[j]++;
+          SegmentQuery query = segmentQueries.get(j);
+          int triangle = query.getTriangle(k);
+          if (triangle >= 0) {
+            staticMeshes.get(j).setCollision(p, triangle, query.getParameter(k), next());
+            size++;
+          }
+        }
+      }
+    }
+
+    private void detectColliders(int numMeshes, int first, int last) {
+      double tolerance = 2 * contactThickness;
+      for (int j = 0; j < numMeshes; j++) {
+        Mesh mesh = staticMeshes.get(j);
+        if (mesh.getCollider() == null) {
+          continue;
+        }
+        int[] candidates = meshCandidates[j];
+        for (int k = from[j]; k < to[j]; k++) {
+          if (mesh.colliderContact(P.get(candidates[k]), tolerance, contactThickness, gradient, next())) {
+            size++;
+          }
+        }
+      }
+      for (int c = 0; c < colliders.size(); c++) {
+        Collider collider = colliders.get(c);
+        for (int i = first; i < last; i++) {
+          if (Mesh.colliderContact(collider, null, null, P.get(i), tolerance, contactThickness, gradient, next())) {
+            size++;
+          }
+        }
+      }
+    }
+
+    private void detectThickness(int numMeshes) {
+      double tolerance = 2 * contactThickness;
+      for (int j = 0; j < numMeshes; j++) {
+        Mesh mesh = staticMeshes.get(j);
+        if (mesh.getCollider() != null || from[j] == to[j]) {
+          continue;
+        }
+        ProximityQuery query = proximityQueries.get(j);
+        if (mesh.pointsNear(query, tolerance, from[j], to[j], hit) == 0) {
+          continue;
+        }
+        for (int k = from[j]; k < to[j]; k++) {
+          int triangle = query.getTriangle(k);
+          if (triangle >= 0) {
+            mesh.setContact(P.get(meshCandidates[j][k]), triangle, query.getClosest(k, 0), query.getClosest(k, 1),
+                query.getClosest(k, 2), contactThickness, next());
+            size++;
+          }
+        }
+      }
+    }
+
+    /** @return the slot after the filled ones, to be kept by size++ */
+    private CollisionConstraint next() {
+      if (size == slots.size()) {
+        slots.add(new CollisionConstraint());
+      }
+      return slots.get(size);
+    }
+  }
+
+  /** @return the first k < n with a[k] >= value, for ascending a */
+  private static int lowerBound(int[] a, int n, int value) {
+    int low = 0, high = n;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (a[mid] < value) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  /** The active collision slots, as one Jacobi constraint. */
+  private class CollisionPass implements JacobiConstraint {
+    @Override
+    public int numElements() {
+      return numCollisions;
+    }
+
+    @Override
+    public void accumulate(int from, int to, double[] x, double[] w, double[] dx, int[] count, Object scratch,
+        Residual r) {
+      for (int j = from; j < to; j++) {
+        activeCollisions[j].accumulate(dx, count, r);
+      }
+    }
+
+    @Override
+    public Residual getResidual() {
+      return collisionResidual;
+    }
+
+    @Override
+    public void applyForce() {
+      for (int j = 0; j < numCollisions; j++) {
+        activeCollisions[j].applyForce();
+      }
+    }
+
+    @Override
+    public void display(GL2 gl) {
+    }
+
+    @Override
+    public ParticleSystem getParticleSystem() {
+      return ParticleSystem.this;
+    }
+  }
+
+  private void resetResiduals() {
+    collisionResidual.reset();
+    for (int j = 0; j < constraints.size(); j++) {
+      if (constraints.get(j) instanceof ResidualConstraint) {
+        ((ResidualConstraint) constraints.get(j)).getResidual().reset();
+      }
+    }
+  }
+
+  /** @return true iff the residuals of the last iteration satisfy the convergence policy */
+  private boolean isConverged() {
+    if (!convergence.isConverged(collisionResidual)) {
+      return false;
+    }
+    for (int j = 0; j < constraints.size(); j++) {
+      Force c = constraints.get(j);
+      if (c instanceof ResidualConstraint && !convergence.isConverged(((ResidualConstraint) c).getResidual())) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Stops the solver iterations of each step early once converged; null
+   * restores the fixed getIterations() iterations.
+   */
+  public synchronized void setConvergencePolicy(ConvergencePolicy policy) {
+    convergence = policy;
+  }
+
+  public ConvergencePolicy getConvergencePolicy() {
+    return convergence;
+  }
+
+  /** @return the number of solver iterations the last step ran */
+  public int getLastIterationCount() {
+    return lastIterationCount;
+  }
+
+  /**
+   * Switches the SIMD kernels on or off (they are also switched on by
+   * -Dpbd.simd=true).
+   * 
+   * @return true iff the SIMD kernels are now in use; false if they were
+   *         requested but are unavailable, see SimdKernels.
+   */
+  public synchronized boolean setSimd(boolean enable) {
+    simd = enable ? SimdKernels.load() : null;
+    return simd != null;
+  }
+
+  /** @return the SIMD kernels in use, or null if the scalar loops are used */
+  public SimdKernels getSimdKernels() {
+    return simd;
+  }
+
+  public synchronized void setSolverMode(SolverMode mode) {
+    solverMode = mode;
+  }
+
+  public SolverMode getSolverMode() {
+    return solverMode;
+  }
+
+  /** Over-relaxation factor of the Jacobi solver mode; 1 is plain averaging. */
+  public synchronized void setJacobiRelaxation(double omega) {
+    jacobiSolver.setRelaxation(omega);
+  }
+
   public void globalVelocityDamping(double dampCoeff, Mesh mesh) {
     double sumMass = 0;
     Vector3d xcm = new Vector3d();
     Vector3d vcm = new Vector3d();
     for (Particle p : mesh.vertices) {
-      sumMass += p.m;
-      vcm.scaleAdd(p.m, p.v);
-      xcm.scaleAdd(p.m, p.x);
+      double m = p.getMass();
+      sumMass += m;
+      Utils.acc(vcm, m, p.getV());
+      Utils.acc(xcm, m, p.getX());
     }
     xcm.scale(1 / sumMass);
     vcm.scale(1 / sumMass);
@@ -258,10 +1015,10 @@ public class ParticleSystem // implements Serializable
     Vector3d l = new Vector3d();
     GMatrix i = Utils.zeroMat(3, 3);
     for (Particle p : mesh.vertices) {
-      Vector3d r = new Vector3d(p.x);
+      Vector3d r = new Vector3d(p.getX());
       r.sub(xcm);
-      Vector3d mivi = new Vector3d(p.v);
-      mivi.scale(p.m);
+      Vector3d mivi = p.getV();
+      mivi.scale(p.getMass());
       Vector3d li = new Vector3d();
       li.cross(r, mivi);
       l.add(li);
@@ -271,7 +1028,7 @@ public class ParticleSystem // implements Serializable
       rmtrsp.transpose();
       GMatrix ii = new GMatrix(rm); 
       ii.mul(rmtrsp);
-      GMatrix idScaled = Utils.identityMatScaled(3, p.m);
+      GMatrix idScaled = Utils.identityMatScaled(3, p.getMass());
       ii.mul(idScaled);
       i.add(ii);
     }
@@ -286,14 +1043,16 @@ public class ParticleSystem // implements Serializable
       Vector3d dv = new Vector3d(vcm);
       Vector3d omegaCr = new Vector3d();
       
-      Vector3d r = new Vector3d(p.x);
+      Vector3d r = new Vector3d(p.getX());
       r.sub(xcm);
       omegaCr.cross(omega3, r);
       dv.add(omegaCr);
-      dv.sub(p.v);
+      Vector3d v = p.getV();
+      dv.sub(v);
       dv.scale(dampCoeff);
       
-      p.v.add(dv);
+      v.add(dv);
+      p.setV(v);
     }
   }
   
@@ -318,14 +1077,44 @@ public class ParticleSystem // implements Serializable
     prog.useProgram(gl, false);
   }
 
+  /**
+   * Adds a static mesh, e.g. one just read by MeshBuilder, and builds its
+   * collision hierarchy, or reads it from cacheFile if that was saved for the
+   * same triangles; see Mesh.update(File).
+   */
+  public void addStaticMesh(Mesh m, File cacheFile) {
+    m.update(cacheFile);
+    addStaticMesh(m);
+  }
+
+  /**
+   * Adds a static mesh whose contacts with the particles are looked up in a
+   * signed distance field of cells of sdfCellSize, built now or read from
+   * cacheFile (which may be null); see Mesh.buildDistanceField().
+   */
+  public void addStaticMesh(Mesh m, double sdfCellSize, File cacheFile) {
+    m.buildDistanceField(sdfCellSize, Constants.SDF_BAND_CELLS, cacheFile);
+    addStaticMesh(m);
+  }
+
+  /**
+   * Adds a solid the particles collide with that has no mesh, e.g. a
+   * PlaneCollider as a floor. Every particle queries it every time contacts
+   * are detected; there is no broad phase, as a query of an analytic shape
+   * costs less than one.
+   */
+  public void addCollider(Collider collider) {
+    colliders.add(collider);
+  }
+
   public void addStaticMesh(Mesh m) {
     staticMeshes.add(m);
+    segmentQueries.add(new SegmentQuery());
+    proximityQueries.add(new ProximityQuery());
   }
 
   public void applyChanges() {
-    for (Particle p : P) {
-      p.applyChanges();
-    }
+    store.applyChanges();
   }
 
 }
@@ -33,7 +33,10 @@ import forces.StretchConstraint;
 public class ParticleSystemBuilder implements GLEventListener {
   private FrameExporter frameExporter;
 
-  private static int N_STEPS_PER_FRAME = 10;
+  private static int N_STEPS_PER_FRAME = 1;
+
+  /** Solver iterations per substep. */
+  private static int N_ITERATIONS_PER_STEP = (int) Constants.NUM_SOLVER_ITERATIONS;
 
   private GLU glu;
 
@@ -69,6 +72,10 @@ public class ParticleSystemBuilder implements GLEventListener {
   private int viewport[] = new int[4];
   
   private Mesh obstacle;
+
+  private StretchConstraint stretch;
+  private BendConstraint bend;
+  private boolean xpbd = false;
   
   /** Main constructor. Call start() to begin simulation. */
   ParticleSystemBuilder() {
@@ -80,8 +87,10 @@ public class ParticleSystemBuilder implements GLEventListener {
 
     PS.addForce(new Gravity(PS));
     
-    PS.addConstraint(new StretchConstraint(PS, Constants.STRETCH_DIST, Constants.STRETCH_STIFF, Constants.NUM_ITERATIONS));
-    PS.addConstraint(new BendConstraint(PS, Constants.BEND_STIFF, Constants.NUM_ITERATIONS));
+    stretch = new StretchConstraint(PS, Constants.STRETCH_DIST, Constants.STRETCH_STIFF, Constants.NUM_ITERATIONS);
+    bend = new BendConstraint(PS, Constants.BEND_STIFF, Constants.NUM_ITERATIONS);
+    PS.addConstraint(stretch);
+    PS.addConstraint(bend);
   }
 
   /**
@@ -238,12 +247,16 @@ public class ParticleSystemBuilder implements GLEventListener {
   }
   
   public void drawMesh(Mesh mesh, GL2 gl) {
+    Point3d x = new Point3d();
     for (Triangle triangle : mesh.triangles) {
       gl.glBegin(GL2.GL_LINE_LOOP);
       
-      gl.glVertex3d(triangle.v0.x.x, triangle.v0.x.y, triangle.v0.x.z);
-      gl.glVertex3d(triangle.v1.x.x, triangle.v1.x.y, triangle.v1.x.z);
-      gl.glVertex3d(triangle.v2.x.x, triangle.v2.x.y, triangle.v2.x.z);
+      triangle.v0.getX(x);
+      gl.glVertex3d(x.x, x.y, x.z);
+      triangle.v1.getX(x);
+      gl.glVertex3d(x.x, x.y, x.z);
+      triangle.v2.getX(x);
+      gl.glVertex3d(x.x, x.y, x.z);
       gl.glEnd();
     }
   }
@@ -290,7 +303,7 @@ public class ParticleSystemBuilder implements GLEventListener {
      */
     void simulateAndDisplayScene(GL2 gl) {
       if (simulate) {
-        PS.advanceTime(DT);
+        PS.advanceFrame(DT);
       }
 
       // Draw particles, forces, etc.
@@ -424,15 +437,45 @@ public class ParticleSystemBuilder implements GLEventListener {
         case KeyEvent.VK_L:
           loadFrameFromFile();
           break;
+        case KeyEvent.VK_J:
+          PS.setSolverMode(PS.getSolverMode() == ParticleSystem.SolverMode.JACOBI
+              ? ParticleSystem.SolverMode.GAUSS_SEIDEL : ParticleSystem.SolverMode.JACOBI);
+          System.out.println("'j' : solverMode = " + PS.getSolverMode());
+          break;
+        case KeyEvent.VK_X:
+          synchronized (PS) {
+            xpbd = !xpbd;
+            if (xpbd) {
+              stretch.setCompliance(Constants.STRETCH_COMPLIANCE);
+              bend.setCompliance(Constants.BEND_COMPLIANCE);
+            } else {
+              stretch.setStiffness(Constants.STRETCH_STIFF, Constants.NUM_ITERATIONS);
+              bend.setStiffness(Constants.BEND_STIFF, Constants.NUM_ITERATIONS);
+            }
+          }
+          System.out.println("'x' : xpbd = " + xpbd);
+          break;
         case KeyEvent.VK_EQUALS:
           N_STEPS_PER_FRAME = Math.max((int) (1.05 * N_STEPS_PER_FRAME), N_STEPS_PER_FRAME + 1);
+          PS.setSubsteps(N_STEPS_PER_FRAME, N_ITERATIONS_PER_STEP);
           System.out.println("N_STEPS_PER_FRAME=" + N_STEPS_PER_FRAME + ";  dt=" + (DT / (double) N_STEPS_PER_FRAME));
           break;
         case KeyEvent.VK_MINUS:
           int n = Math.min((int) (0.95 * N_STEPS_PER_FRAME), N_STEPS_PER_FRAME - 1);
           N_STEPS_PER_FRAME = Math.max(1, n);
+          PS.setSubsteps(N_STEPS_PER_FRAME, N_ITERATIONS_PER_STEP);
           System.out.println("N_STEPS_PER_FRAME=" + N_STEPS_PER_FRAME + ";  dt=" + (DT / (double) N_STEPS_PER_FRAME));
           break;
+        case KeyEvent.VK_CLOSE_BRACKET:
+          N_ITERATIONS_PER_STEP++;
+          PS.setSubsteps(N_STEPS_PER_FRAME, N_ITERATIONS_PER_STEP);
+          System.out.println("N_ITERATIONS_PER_STEP=" + N_ITERATIONS_PER_STEP);
+          break;
+        case KeyEvent.VK_OPEN_BRACKET:
+          N_ITERATIONS_PER_STEP = Math.max(1, N_ITERATIONS_PER_STEP - 1);
+          PS.setSubsteps(N_STEPS_PER_FRAME, N_ITERATIONS_PER_STEP);
+          System.out.println("N_ITERATIONS_PER_STEP=" + N_ITERATIONS_PER_STEP);
+          break;
         case KeyEvent.VK_LEFT:
           Vector2d vec = new Vector2d(eyePos.x - targetPos.x, eyePos.z - targetPos.z);
           eyePos.x = vec.x * Constants.CAM_COS_THETA - vec.y * Constants.CAM_SIN_THETA + targetPos.x;
@@ -544,11 +587,11 @@ public class ParticleSystemBuilder implements GLEventListener {
           return;
         } 
         Vector3d moveDir = Utils.perpVectorFromPointToLine(
-            p.x, 
+            p.getX(), 
             worldCoordsFromWindowCoords(winX, winY, 0.0), 
             worldCoordsFromWindowCoords(winX, winY, 1.0));
         p.setHighlight(true);
-        p.x.add(moveDir);
+        p.addX(moveDir);
         
       }
 
@@ -599,7 +642,7 @@ public class ParticleSystemBuilder implements GLEventListener {
       java.util.Scanner s = new java.util.Scanner(file);
       int numParticles = s.nextInt();
       PS.reset();
-      PS.P.clear();
+      PS.clearParticles();
       for (int i = 0; i < numParticles; i++) {
         double x = s.nextDouble();
         double y = s.nextDouble();
@@ -630,7 +673,7 @@ public class ParticleSystemBuilder implements GLEventListener {
     }
     try {
       PS.reset();
-      PS.P.clear();
+      PS.clearParticles();
       PS.M.clear();
       PS.addMesh(file);
     } catch (Exception e) {
@@ -689,7 +732,8 @@ public class ParticleSystemBuilder implements GLEventListener {
 
           output.write("" + PS.P.size() + "\n");
           for (Particle p : PS.P) {
-            output.write("" + p.x.x + " " + p.x.y + " " + p.x.z + "\n");
+            Point3d x = p.getX();
+            output.write("" + x.x + " " + x.y + " " + x.z + "\n");
           }
           output.close();
         }
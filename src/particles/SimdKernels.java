@@ -0,0 +1,39 @@
+package particles;
+
+import forces.Residual;
+
+/**
+ * SIMD versions of the bulk loops of a step. The implementation,
+ * particles.simd.VectorApiKernels, uses the incubating Vector API
+ * (jdk.incubator.vector); it is only compiled by the "simd" Maven profile and
+ * only runs with --add-modules jdk.incubator.vector. Without either, load()
+ * returns null and callers keep their scalar loops.
+ */
+public abstract class SimdKernels {
+
+  private static final String IMPLEMENTATION = "particles.simd.VectorApiKernels";
+
+  /** v += dt * f * invMass3; x += dt * v, for components [0, length). */
+  public abstract void predict(double[] x, double[] v, double[] f, double[] invMass3, double dt, int length);
+
+  /** v = (x - xPrev) * scale, for components [0, length). */
+  public abstract void updateVelocity(double[] x, double[] xPrev, double[] v, double scale, int length);
+
+  /**
+   * Projects the constraints batch.colors[color][from, to) of one colour in
+   * place, with the same update as StretchConstraint: PBD with stiffness kIter
+   * if lambda is null, otherwise XPBD with compliance alphaTilde / dt^2 and
+   * multipliers lambda. Violations are recorded in r.
+   */
+  public abstract void projectStretch(double[] x, double[] w, StretchBatch batch, int color, int from, int to,
+      double kIter, double alphaTilde, double[] lambda, Residual r);
+
+  /** @return the Vector API kernels, or null if they are not built or the module is missing. */
+  public static SimdKernels load() {
+    try {
+      return (SimdKernels) Class.forName(IMPLEMENTATION).getDeclaredConstructor().newInstance();
+    } catch (ReflectiveOperationException | LinkageError e) {
+      return null;
+    }
+  }
+}
@@ -0,0 +1,54 @@
+package particles;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The stretch constraints of all meshes, one per edge, compiled into flat
+ * arrays: constraint e joins particles i[e] and j[e] at rest length
+ * restLength[e]. Meshes share no particles, so the colouring is computed over
+ * all of them at once and each colour spans every mesh.
+ *
+ * @see ParticleSystem#getStretchBatch()
+ */
+public class StretchBatch {
+
+  public final int size;
+  public final int[] i;
+  public final int[] j;
+  public final double[] restLength;
+
+  /** For each colour, the constraints of that colour; see GraphColoring. */
+  public final int[][] colors;
+
+  private StretchBatch(int[] i, int[] j, double[] restLength, int[][] colors) {
+    this.size = i.length;
+    this.i = i;
+    this.j = j;
+    this.restLength = restLength;
+    this.colors = colors;
+  }
+
+  /** Compiles the edges of meshes, in mesh and edge order. */
+  public static StretchBatch compile(List<Mesh> meshes) {
+    int size = 0;
+    for (Mesh mesh : meshes) {
+      size += mesh.edges.size();
+    }
+    int[] i = new int[size];
+    int[] j = new int[size];
+    double[] restLength = new double[size];
+    List<int[]> stencils = new ArrayList<>(size);
+    int e = 0;
+    for (Mesh mesh : meshes) {
+      for (Edge edge : mesh.edges) {
+        i[e] = edge.v0.getIndex();
+        j[e] = edge.v1.getIndex();
+        restLength[e] = edge.restLength;
+        stencils.add(new int[] { i[e], j[e] });
+        e++;
+      }
+    }
+    return new StretchBatch(i, j, restLength, GraphColoring.color(stencils));
+  }
+}
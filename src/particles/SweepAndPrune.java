@@ -0,0 +1,184 @@
+package particles;
+
+import java.util.Arrays;
+
+/**
+ * Sweep-and-prune broad phase over axis-aligned boxes. The box endpoints
+ * along x stay sorted from one update() to the next; as boxes move little
+ * between steps, the insertion sort that restores the order is close to
+ * linear. The sweep then reports every pair of boxes that overlap on all
+ * three axes and whose groups are allowed to collide.
+ *
+ * Each box belongs to one group (0 to 31) and carries a mask of the groups it
+ * collides with; a pair is reported iff the mask of the box that starts later
+ * along x contains the group of the other, so masks should be symmetric.
+ * Boxes in the sweep are kept per group, so boxes of groups that never
+ * collide, e.g. the many particle clusters of one cloth, cost nothing when
+ * they overlap. Nothing is allocated per update, except when the pair buffer
+ * has to grow.
+ */
+final class SweepAndPrune {
+
+  private int numBoxes = 0;
+  /** minX, minY, minZ, maxX, maxY, maxZ per box. */
+  private double[] bounds = new double[6 * 16];
+  private int[] groups = new int[16];
+  private int[] masks = new int[16];
+
+  /** Endpoints sorted along x: 2 * box for a minimum, 2 * box + 1 for a maximum. */
+  private int[] endpoints = new int[32];
+
+  /** Per group, the boxes whose x interval contains the sweep position. */
+  private final int[][] active = new int[32][];
+  private final int[] numActive = new int[32];
+  /** Position of each box in its active list. */
+  private int[] activeSlot = new int[16];
+
+  /** Box pairs of the last update(), two ints per pair. */
+  private int[] pairs = new int[64];
+  private int numPairs = 0;
+
+  /** Removes all boxes. */
+  void clear() {
+    numBoxes = 0;
+    numPairs = 0;
+  }
+
+  int numBoxes() {
+    return numBoxes;
+  }
+
+  /**
+   * Adds an empty box; set its bounds before the next update().
+   *
+   * @return the id of the box; ids are consecutive from 0
+   */
+  int add(int group, int mask) {
+    if (numBoxes == groups.length) {
+      int capacity = 2 * numBoxes;
+      bounds = Arrays.copyOf(bounds, 6 * capacity);
+      groups = Arrays.copyOf(groups, capacity);
+      masks = Arrays.copyOf(masks, capacity);
+      endpoints = Arrays.copyOf(endpoints, 2 * capacity);
+      activeSlot = new int[capacity];
+    }
+    if (group < 0 || group >= 32) {
+      throw new IllegalArgumentException("group must be in [0, 32)");
+    }
+    if (active[group] == null) {
+      active[group] = new int[16];
+    }
+    int id = numBoxes++;
+    groups[id] = group;
+    masks[id] = mask;
+    Arrays.fill(bounds, 6 * id, 6 * id + 6, 0);
+    // a zero box sorts anywhere; append both endpoints and let update() sort
+    endpoints[2 * id] = 2 * id;
+    endpoints[2 * id + 1] = 2 * id + 1;
+    return id;
+  }
+
+  void setBounds(int id, double minX, double minY, double minZ, double maxX, double maxY, double maxZ) {
+    double[] b = bounds;
+    int i = 6 * id;
+    b[i] = minX;
+    b[i + 1] = minY;
+    b[i + 2] = minZ;
+    b[i + 3] = maxX;
+    b[i + 4] = maxY;
+    b[i + 5] = maxZ;
+  }
+
+  /**
+   * Re-sorts the endpoints and collects the overlapping pairs.
+   *
+   * @return the number of pairs
+   */
+  int update() {
+    sortEndpoints();
+    numPairs = 0;
+    Arrays.fill(numActive, 0);
+    for (int e = 0; e < 2 * numBoxes; e++) {
+      int endpoint = endpoints[e];
+      int box = endpoint >> 1;
+      int group = groups[box];
+      int[] own = active[group];
+      if ((endpoint & 1) != 0) {
+        // maximum: box leaves the sweep
+        int slot = activeSlot[box];
+        int last = own[--numActive[group]];
+        own[slot] = last;
+        activeSlot[last] = slot;
+        continue;
+      }
+      for (int mask = masks[box]; mask != 0; mask &= mask - 1) {
+        int other = Integer.numberOfTrailingZeros(mask);
+        for (int k = 0; k < numActive[other]; k++) {
+          int b = active[other][k];
+          if (overlapsYZ(box, b)) {
+            addPair(Math.min(box, b), Math.max(box, b));
+          }
+        }
+      }
+      if (numActive[group] == own.length) {
+        own = active[group] = Arrays.copyOf(own, 2 * own.length);
+      }
+      own[numActive[group]] = box;
+      activeSlot[box] = numActive[group]++;
+    }
+    return numPairs;
+  }
+
+  int numPairs() {
+    return numPairs;
+  }
+
+  /** @return the lower box id of pair k */
+  int pairFirst(int k) {
+    return pairs[2 * k];
+  }
+
+  /** @return the higher box id of pair k */
+  int pairSecond(int k) {
+    return pairs[2 * k + 1];
+  }
+
+  /** Insertion sort by coordinate, minima before maxima at equal coordinates. */
+  private void sortEndpoints() {
+    int[] e = endpoints;
+    for (int i = 1; i < 2 * numBoxes; i++) {
+      int endpoint = e[i];
+      double key = value(endpoint);
+      int j = i - 1;
+      while (j >= 0 && before(endpoint, key, e[j])) {
+        e[j + 1] = e[j];
+        j--;
+      }
+      e[j + 1] = endpoint;
+    }
+  }
+
+  private boolean before(int endpoint, double key, int other) {
+    double otherKey = value(other);
+    return key < otherKey || (key == otherKey && (endpoint & 1) < (other & 1));
+  }
+
+  private double value(int endpoint) {
+    return bounds[6 * (endpoint >> 1) + 3 * (endpoint & 1)];
+  }
+
+  private boolean overlapsYZ(int a, int b) {
+    double[] bd = bounds;
+    int i = 6 * a, j = 6 * b;
+    return bd[i + 1] <= bd[j + 4] && bd[j + 1] <= bd[i + 4] && bd[i + 2] <= bd[j + 5] && bd[j + 2] <= bd[i + 5];
+  }
+
+  private void addPair(int a, int b) {
+    if (2 * numPairs == pairs.length) {
+      pairs = Arrays.copyOf(pairs, 2 * pairs.length);
+    }
+    pairs[2 * numPairs] = a;
+    pairs[2 * numPairs + 1] = b;
+    numPairs++;
+  }
+}
@@ -30,15 +30,26 @@ public class Triangle {
 
   /** Computes the unit-length normal associated with this triangle. */
   public Vector3d getNormal() {
-    Vector3d e0 = new Vector3d();
-    Vector3d e1 = new Vector3d();
-    e0.sub(v1.x, v0.x);
-    e1.sub(v2.x, v1.x);
     Vector3d normal = new Vector3d();
-    normal.cross(e1, e0);
-    normal.normalize();
+    getNormal(normal);
     return normal;
   }
+
+  /** Computes the unit-length normal into out, without allocating. */
+  public void getNormal(Vector3d out) {
+    double e0x = c(v1, 0) - c(v0, 0), e0y = c(v1, 1) - c(v0, 1), e0z = c(v1, 2) - c(v0, 2);
+    double e1x = c(v2, 0) - c(v1, 0), e1y = c(v2, 1) - c(v1, 1), e1z = c(v2, 2) - c(v1, 2);
+    // normal = e1 x e0
+    out.x = e1y * e0z - e1z * e0y;
+    out.y = e1z * e0x - e1x * e0z;
+    out.z = e1x * e0y - e1y * e0x;
+    out.normalize();
+  }
+
+  /** Component axis of the deformed position of v. */
+  private static double c(Vertex v, int axis) {
+    return v.getStore().x[3 * v.getIndex() + axis];
+  }
   
   /**
    * @return the vertex of this triangle that is neither of the parameters
@@ -55,55 +66,73 @@ public class Triangle {
     }
   }
   
+  /**
+   * @return true iff the bounding box of this triangle overlaps the cube of
+   *         half-width r around p
+   */
+  public boolean boundsOverlap(Point3d p, double r) {
+    for (int axis = 0; axis < 3; axis++) {
+      double a = c(v0, axis), b = c(v1, axis), d = c(v2, axis);
+      double pc = axis == 0 ? p.x : axis == 1 ? p.y : p.z;
+      if (Math.min(a, Math.min(b, d)) > pc + r || Math.max(a, Math.max(b, d)) < pc - r) {
+        return false;
+      }
+    }
+    return true;
+  }
+
   public double area() {
-    Vector3d u0 = new Vector3d();
-    u0.sub(v1.x, v0.x);
-    Vector3d u1 = new Vector3d();
-    u1.sub(v2.x, v0.x);
-    Vector3d a = new Vector3d();
-    a.cross(u0, u1);
-    return a.length() / 2;
+    double u0x = c(v1, 0) - c(v0, 0), u0y = c(v1, 1) - c(v0, 1), u0z = c(v1, 2) - c(v0, 2);
+    double u1x = c(v2, 0) - c(v0, 0), u1y = c(v2, 1) - c(v0, 1), u1z = c(v2, 2) - c(v0, 2);
+    // a = u0 x u1
+    double ax = u0y * u1z - u0z * u1y;
+    double ay = u0z * u1x - u0x * u1z;
+    double az = u0x * u1y - u0y * u1x;
+    return Math.sqrt(ax * ax + ay * ay + az * az) / 2;
   }
   
   public Point3d intersectRay(Point3d p0, Point3d p1) {
     Point3d I = new Point3d();
-    Vector3d    u, v, n;
-    Vector3d    dir, w0, w;
-    double     r, a, b;
-    
-    u = new Vector3d(v1.x);
-    u.sub(v0.x);
-    v = new Vector3d(v2.x);
-    v.sub(v0.x);
-    n = new Vector3d(); // cross product
-    n.cross(u, v);
-    
-    if (n.length() == 0) {
-        return null;
+    return intersectRay(p0, p1, I) ? I : null;
+  }
+
+  /**
+   * Intersects the ray from p0 through p1 with the plane of this triangle,
+   * without allocating.
+   * 
+   * @return false if the ray is parallel to or points away from the plane;
+   *         otherwise the intersection is written to out.
+   */
+  public boolean intersectRay(Point3d p0, Point3d p1, Point3d out) {
+    double ux = c(v1, 0) - c(v0, 0), uy = c(v1, 1) - c(v0, 1), uz = c(v1, 2) - c(v0, 2);
+    double vx = c(v2, 0) - c(v0, 0), vy = c(v2, 1) - c(v0, 1), vz = c(v2, 2) - c(v0, 2);
+    // n = u x v
+    double nx = uy * vz - uz * vy;
+    double ny = uz * vx - ux * vz;
+    double nz = ux * vy - uy * vx;
+
+    if (nx == 0 && ny == 0 && nz == 0) {
+      return false;
     }
-    
-    dir = new Vector3d();
-    dir.sub(p1, p0);
-    w0 = new Vector3d(p0);
-    w0.sub(v0.x);
-    a = -(new Vector3d(n).dot(w0));
-    b = new Vector3d(n).dot(dir);
-    
-    if ((float)Math.abs(b) < EPS) {
-        return null;
+
+    double dirx = p1.x - p0.x, diry = p1.y - p0.y, dirz = p1.z - p0.z;
+    double w0x = p0.x - c(v0, 0), w0y = p0.y - c(v0, 1), w0z = p0.z - c(v0, 2);
+    double a = -(nx * w0x + ny * w0y + nz * w0z);
+    double b = nx * dirx + ny * diry + nz * dirz;
+
+    if ((float) Math.abs(b) < EPS) {
+      return false;
     }
-    
-    r = a / b;
+
+    double r = a / b;
     if (r < 0.0) {
-        return null;
+      return false;
     }
-    
-    I = new Point3d(p0);
-    I.x += r * dir.x;
-    I.y += r * dir.y;
-    I.z += r * dir.z;
-    
-    return I;
-}
+
+    out.x = p0.x + r * dirx;
+    out.y = p0.y + r * diry;
+    out.z = p0.z + r * dirz;
+    return true;
+  }
 
 }
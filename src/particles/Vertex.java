@@ -23,8 +23,11 @@ public class Vertex extends Particle {
     super(x0);
   }
   
-  public Vertex(Point3d x0, int index) {
-    super(x0, index);
+  /**
+   * Constructs a view of vertex <code>index</code> in the given store.
+   */
+  public Vertex(ParticleStore store, int index) {
+    super(store, index);
   }
 
 }
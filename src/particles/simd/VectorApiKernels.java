@@ -0,0 +1,158 @@
+package particles.simd;
+
+import forces.Residual;
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+import particles.SimdKernels;
+import particles.StretchBatch;
+
+/**
+ * SimdKernels on the Vector API, using the preferred vector width of the
+ * platform. The integration loops run unmasked full vectors and finish with
+ * one masked vector. Gathers and scatters through index maps are not
+ * intrinsified on JDK 17, so the stretch kernel packs the edge vectors, inverse
+ * masses and rest lengths of a colour range into contiguous lanes with scalar
+ * loads, projects the lanes as vectors, and scatters the corrections back.
+ * Constraints of a colour share no particle, so the scatters never collide.
+ *
+ * Requires --add-modules jdk.incubator.vector at compile and run time.
+ */
+public class VectorApiKernels extends SimdKernels {
+
+  private static final VectorSpecies<Double> S = DoubleVector.SPECIES_PREFERRED;
+
+  @Override
+  public void predict(double[] x, double[] v, double[] f, double[] invMass3, double dt, int length) {
+    int k = 0;
+    for (int bound = S.loopBound(length); k < bound; k += S.length()) {
+      DoubleVector vk = DoubleVector.fromArray(S, f, k).mul(DoubleVector.fromArray(S, invMass3, k)).mul(dt)
+          .add(DoubleVector.fromArray(S, v, k));
+      vk.intoArray(v, k);
+      vk.mul(dt).add(DoubleVector.fromArray(S, x, k)).intoArray(x, k);
+    }
+    if (k < length) {
+      VectorMask<Double> m = S.indexInRange(k, length);
+      DoubleVector vk = DoubleVector.fromArray(S, f, k, m).mul(DoubleVector.fromArray(S, invMass3, k, m)).mul(dt)
+          .add(DoubleVector.fromArray(S, v, k, m));
+      vk.intoArray(v, k, m);
+      vk.mul(dt).add(DoubleVector.fromArray(S, x, k, m)).intoArray(x, k, m);
+    }
+  }
+
+  @Override
+  public void updateVelocity(double[] x, double[] xPrev, double[] v, double scale, int length) {
+    int k = 0;
+    for (int bound = S.loopBound(length); k < bound; k += S.length()) {
+      DoubleVector.fromArray(S, x, k).sub(DoubleVector.fromArray(S, xPrev, k)).mul(scale).intoArray(v, k);
+    }
+    if (k < length) {
+      VectorMask<Double> m = S.indexInRange(k, length);
+      DoubleVector.fromArray(S, x, k, m).sub(DoubleVector.fromArray(S, xPrev, k, m)).mul(scale).intoArray(v, k, m);
+    }
+  }
+
+  @Override
+  public void projectStretch(double[] x, double[] w, StretchBatch batch, int color, int from, int to, double kIter,
+      double alphaTilde, double[] lambda, Residual r) {
+    int[] e = batch.colors[color];
+    double[] rest = batch.restLength;
+    int n = to - from;
+    int padded = (n + S.length() - 1) / S.length() * S.length();
+    Packed p = PACKED.get();
+    p.ensureCapacity(padded);
+    double[] dx = p.dx, dy = p.dy, dz = p.dz, w0 = p.w0, w1 = p.w1, len = p.rest, lam = p.lambda;
+
+    // gather: pack the colour's constraints into contiguous lanes
+    for (int q = 0; q < n; q++) {
+      int c = e[from + q];
+      int i = 3 * batch.i[c], j = 3 * batch.j[c];
+      dx[q] = x[i] - x[j];
+      dy[q] = x[i + 1] - x[j + 1];
+      dz[q] = x[i + 2] - x[j + 2];
+      w0[q] = w[batch.i[c]];
+      w1[q] = w[batch.j[c]];
+      len[q] = rest[c];
+      lam[q] = lambda == null ? 0 : lambda[c];
+    }
+    // padding lanes are unit edges at rest: no violation, no correction
+    for (int q = n; q < padded; q++) {
+      dx[q] = 1;
+      dy[q] = dz[q] = lam[q] = 0;
+      w0[q] = w1[q] = len[q] = 1;
+    }
+
+    double max = 0, sumSquares = 0;
+    for (int q = 0; q < padded; q += S.length()) {
+      DoubleVector vx = DoubleVector.fromArray(S, dx, q);
+      DoubleVector vy = DoubleVector.fromArray(S, dy, q);
+      DoubleVector vz = DoubleVector.fromArray(S, dz, q);
+      DoubleVector vw0 = DoubleVector.fromArray(S, w0, q);
+      DoubleVector vw1 = DoubleVector.fromArray(S, w1, q);
+      DoubleVector restLength = DoubleVector.fromArray(S, len, q);
+      DoubleVector length = vx.mul(vx).add(vy.mul(vy)).add(vz.mul(vz)).sqrt();
+      DoubleVector c = length.sub(restLength);
+      DoubleVector s0, s1, violation;
+      if (lambda == null) {
+        violation = c.div(restLength).abs();
+        DoubleVector scale = c.div(length).mul(kIter).div(vw0.add(vw1));
+        s0 = vw0.neg().mul(scale);
+        s1 = vw1.mul(scale);
+      } else {
+        DoubleVector vlam = DoubleVector.fromArray(S, lam, q);
+        DoubleVector residual = vlam.mul(alphaTilde).add(c);
+        violation = residual.div(restLength).abs();
+        DoubleVector dLambda = residual.neg().div(vw0.add(vw1).add(alphaTilde));
+        vlam.add(dLambda).intoArray(lam, q);
+        DoubleVector scale = dLambda.div(length);
+        s0 = vw0.mul(scale);
+        s1 = vw1.neg().mul(scale);
+      }
+      max = Math.max(max, violation.reduceLanes(VectorOperators.MAX));
+      sumSquares += violation.mul(violation).reduceLanes(VectorOperators.ADD);
+      s0.intoArray(w0, q);
+      s1.intoArray(w1, q);
+    }
+    r.add(max, sumSquares, n);
+
+    // scatter: w0 and w1 now hold the scales of the two particles
+    for (int q = 0; q < n; q++) {
+      int c = e[from + q];
+      int i = 3 * batch.i[c], j = 3 * batch.j[c];
+      x[i] += w0[q] * dx[q];
+      x[i + 1] += w0[q] * dy[q];
+      x[i + 2] += w0[q] * dz[q];
+      x[j] += w1[q] * dx[q];
+      x[j + 1] += w1[q] * dy[q];
+      x[j + 2] += w1[q] * dz[q];
+      if (lambda != null) {
+        lambda[c] = lam[q];
+      }
+    }
+  }
+
+  /** Contiguous lanes of one colour range; one set per thread. */
+  private static class Packed {
+    double[] dx = new double[0], dy = dx, dz = dx, w0 = dx, w1 = dx, rest = dx, lambda = dx;
+
+    void ensureCapacity(int n) {
+      if (dx.length < n) {
+        dx = new double[n];
+        dy = new double[n];
+        dz = new double[n];
+        w0 = new double[n];
+        w1 = new double[n];
+        rest = new double[n];
+        lambda = new double[n];
+      }
+    }
+  }
+
+  private static final ThreadLocal<Packed> PACKED = new ThreadLocal<Packed>() {
+    @Override
+    protected Packed initialValue() {
+      return new Packed();
+    }
+  };
+}
@@ -8,20 +8,22 @@
 
 package pqp;
 
-public class BV {
+public class BV implements AutoCloseable {
   private transient long swigCPtr;
   protected transient boolean swigCMemOwn;
+  private transient java.lang.ref.Cleaner.Cleanable swigCleanable;
 
   protected BV(long cPtr, boolean cMemoryOwn) {
     swigCMemOwn = cMemoryOwn;
     swigCPtr = cPtr;
+    swigCleanable = cMemoryOwn ? NativeCleaner.register(this, cPtr, PQPJNI::delete_BV) : null;
   }
 
   protected static long getCPtr(BV obj) {
     return (obj == null) ? 0 : obj.swigCPtr;
   }
 
-  protected void finalize() {
+  public void close() {
     delete();
   }
 
@@ -29,7 +31,7 @@ public class BV {
     if (swigCPtr != 0) {
       if (swigCMemOwn) {
         swigCMemOwn = false;
-        PQPJNI.delete_BV(swigCPtr);
+        swigCleanable.clean();
       }
       swigCPtr = 0;
     }
@@ -8,20 +8,22 @@
 
 package pqp;
 
-public class BVT {
+public class BVT implements AutoCloseable {
   private transient long swigCPtr;
   protected transient boolean swigCMemOwn;
+  private transient java.lang.ref.Cleaner.Cleanable swigCleanable;
 
   protected BVT(long cPtr, boolean cMemoryOwn) {
     swigCMemOwn = cMemoryOwn;
     swigCPtr = cPtr;
+    swigCleanable = cMemoryOwn ? NativeCleaner.register(this, cPtr, PQPJNI::delete_BVT) : null;
   }
 
   protected static long getCPtr(BVT obj) {
     return (obj == null) ? 0 : obj.swigCPtr;
   }
 
-  protected void finalize() {
+  public void close() {
     delete();
   }
 
@@ -29,7 +31,7 @@ public class BVT {
     if (swigCPtr != 0) {
       if (swigCMemOwn) {
         swigCMemOwn = false;
-        PQPJNI.delete_BVT(swigCPtr);
+        swigCleanable.clean();
       }
       swigCPtr = 0;
     }
@@ -8,20 +8,22 @@
 
 package pqp;
 
-public class CollisionPair {
+public class CollisionPair implements AutoCloseable {
   private transient long swigCPtr;
   protected transient boolean swigCMemOwn;
+  private transient java.lang.ref.Cleaner.Cleanable swigCleanable;
 
   protected CollisionPair(long cPtr, boolean cMemoryOwn) {
     swigCMemOwn = cMemoryOwn;
     swigCPtr = cPtr;
+    swigCleanable = cMemoryOwn ? NativeCleaner.register(this, cPtr, PQPJNI::delete_CollisionPair) : null;
   }
 
   protected static long getCPtr(CollisionPair obj) {
     return (obj == null) ? 0 : obj.swigCPtr;
   }
 
-  protected void finalize() {
+  public void close() {
     delete();
   }
 
@@ -29,7 +31,7 @@ public class CollisionPair {
     if (swigCPtr != 0) {
       if (swigCMemOwn) {
         swigCMemOwn = false;
-        PQPJNI.delete_CollisionPair(swigCPtr);
+        swigCleanable.clean();
       }
       swigCPtr = 0;
     }
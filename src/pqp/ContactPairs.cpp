@@ -0,0 +1,41 @@
+#include <jni.h>
+#include <string.h>
+
+#include "PQP.h"
+
+/*
+ * Native half of pqp.ContactPairs: copies the pair list of a
+ * PQP_CollideResult to Java in one call. CollisionPair is two ints, so the
+ * list copies as it is, as (id1, id2) per pair.
+ */
+
+/* Copies the first min(NumPairs(), capacity) pairs of the result into pairs;
+ * returns NumPairs(). */
+extern "C" JNIEXPORT jint JNICALL
+Java_pqp_ContactPairs_copyToArray(JNIEnv *env, jclass, jlong resultPtr,
+                                  jintArray pairs)
+{
+  PQP_CollideResult *result = reinterpret_cast<PQP_CollideResult *>(resultPtr);
+  jint capacity = env->GetArrayLength(pairs) / 2;
+  jint n = result->NumPairs() < capacity ? result->NumPairs() : capacity;
+  if (n > 0)
+    env->SetIntArrayRegion(pairs, 0, 2 * n, reinterpret_cast<jint *>(result->pairs));
+  return result->NumPairs();
+}
+
+/* Same into a direct buffer, from index 0 regardless of its position;
+ * returns -1 if the buffer is not direct. */
+extern "C" JNIEXPORT jint JNICALL
+Java_pqp_ContactPairs_copyToBuffer(JNIEnv *env, jclass, jlong resultPtr,
+                                   jobject pairs)
+{
+  PQP_CollideResult *result = reinterpret_cast<PQP_CollideResult *>(resultPtr);
+  jint *dst = static_cast<jint *>(env->GetDirectBufferAddress(pairs));
+  if (dst == 0)
+    return -1;
+  jlong capacity = env->GetDirectBufferCapacity(pairs) / 2;
+  jint n = result->NumPairs() < capacity ? result->NumPairs() : (jint) capacity;
+  if (n > 0)
+    memcpy(dst, result->pairs, n * sizeof(CollisionPair));
+  return result->NumPairs();
+}
@@ -0,0 +1,93 @@
+package pqp;
+
+import java.nio.IntBuffer;
+
+/**
+ * Reusable result of PQPHelper.collideAll(): the ids of the colliding
+ * triangle pairs, as id1, id2 per pair in one int array. The pairs are read
+ * out of the native result in a single JNI call rather than two calls per
+ * pair, and neither the native pair list nor the array shrink between
+ * queries, so a result reused every step stops allocating once it has seen
+ * its largest contact.
+ *
+ * Not thread safe; close() frees the native result.
+ */
+public final class ContactPairs implements AutoCloseable {
+
+  final PQP_CollideResult result = new PQP_CollideResult();
+  private int[] pairs;
+  private int size = 0;
+
+  public ContactPairs() {
+    this(64);
+  }
+
+  /** @param capacity the number of pairs held without growing */
+  public ContactPairs(int capacity) {
+    pairs = new int[2 * Math.max(1, capacity)];
+  }
+
+  /** @return the number of pairs of the last query */
+  public int size() {
+    return size;
+  }
+
+  /** @return the id of the triangle of the first model in pair k */
+  public int id1(int k) {
+    return pairs[2 * k];
+  }
+
+  /** @return the id of the triangle of the second model in pair k */
+  public int id2(int k) {
+    return pairs[2 * k + 1];
+  }
+
+  /**
+   * @return the pairs, as id1, id2 for pair k at 2 k and 2 k + 1; valid for
+   *         the first size() pairs, until the next query
+   */
+  public int[] array() {
+    return pairs;
+  }
+
+  /** Reads the pairs out of result, after a PQP_Collide() into it. */
+  void readOut() {
+    size = copyToArray(PQP_CollideResult.getCPtr(result), pairs);
+    if (2 * size > pairs.length) {
+      pairs = new int[Math.max(2 * size, 2 * pairs.length)];
+      copyToArray(PQP_CollideResult.getCPtr(result), pairs);
+    }
+  }
+
+  @Override
+  public void close() {
+    result.close();
+  }
+
+  /**
+   * Copies as many pairs of result as fit into pairs, as id1, id2 per pair.
+   *
+   * @return the number of pairs of result, which may exceed pairs.length / 2
+   */
+  public static int copyPairs(PQP_CollideResult result, int[] pairs) {
+    return copyToArray(PQP_CollideResult.getCPtr(result), pairs);
+  }
+
+  /**
+   * Copies as many pairs of result as fit into the direct buffer pairs, from
+   * index 0 on, regardless of its position and limit.
+   *
+   * @return the number of pairs of result, which may exceed capacity / 2
+   */
+  public static int copyPairs(PQP_CollideResult result, IntBuffer pairs) {
+    int n = copyToBuffer(PQP_CollideResult.getCPtr(result), pairs);
+    if (n < 0) {
+      throw new IllegalArgumentException("pairs must be a direct buffer");
+    }
+    return n;
+  }
+
+  private static native int copyToArray(long result, int[] pairs);
+
+  private static native int copyToBuffer(long result, IntBuffer pairs);
+}
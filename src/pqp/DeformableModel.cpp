@@ -0,0 +1,375 @@
+#include <jni.h>
+#include <string.h>
+
+#include "PQP.h"
+#include "MatVec.h"
+
+/*
+ * Native half of pqp.DeformableModel: builds a PQP_Model straight from
+ * position and face arrays, and refits its bounding volumes to moved
+ * vertices without changing the tree.
+ *
+ * A refit keeps the orientation of every BV and only refits its extents,
+ * children before parents: leaves to their triangle, inner nodes to the
+ * corners of their children's OBBs, which contain everything below them.
+ * That is linear in the size of the tree, at the price of BVs a little
+ * looser than those of a build. BVs are stored relative to their parent
+ * (see make_parent_relative in Build.cpp), so each node is first refit in
+ * model space and turned parent-relative again once its parent has been
+ * refit. The model-space orientations are computed once per build and kept
+ * in a side array: recomposing them from the parent-relative ones on every
+ * refit lets round-off compound from refit to refit.
+ *
+ * A built model, orientations included, can also be copied to and from a
+ * buffer field by field, for the cache files of DeformableModel.save() and
+ * load().
+ */
+
+/* Copies the current positions of the vertices of every triangle; faces
+ * holds three vertex indices per triangle id, x three coordinates per vertex. */
+static void
+UpdateTris(PQP_Model *m, const jdouble *x, const jint *faces)
+{
+  for (int i = 0; i < m->num_tris; i++)
+  {
+    Tri *t = &m->tris[i];
+    const jint *f = faces + 3 * t->id;
+    VcV(t->p1, x + 3 * f[0]);
+    VcV(t->p2, x + 3 * f[1]);
+    VcV(t->p3, x + 3 * f[2]);
+  }
+}
+
+/* Turns the model-space BV c into one relative to its (model-space) parent p. */
+static void
+MakeRelative(BV *c, const BV *p)
+{
+  PQP_REAL R[3][3], T[3];
+  MTxM(R, p->R, c->R);
+  McM(c->R, R);
+#if PQP_BV_TYPE & RSS_TYPE
+  VmV(T, c->Tr, p->Tr);
+  MTxV(c->Tr, p->R, T);
+#endif
+#if PQP_BV_TYPE & OBB_TYPE
+  VmV(T, c->To, p->To);
+  MTxV(c->To, p->R, T);
+#endif
+}
+
+/* Fits b, with model-space orientation R, to the n points p: the OBB to
+ * their extents along R, and the RSS to the rectangle through the middle of
+ * that OBB swept by a sphere of its half thickness, which contains the OBB.
+ * Looser than BV::FitToTris, but cheap and free of allocation. */
+static void
+FitToPoints(BV *b, const PQP_REAL R[3][3], const PQP_REAL (*p)[3], int n)
+{
+  PQP_REAL lo[3], hi[3], q[3], c[3];
+  MTxV(lo, R, p[0]);
+  VcV(hi, lo);
+  for (int i = 1; i < n; i++)
+  {
+    MTxV(q, R, p[i]);
+    for (int k = 0; k < 3; k++)
+    {
+      if (q[k] < lo[k]) lo[k] = q[k];
+      else if (q[k] > hi[k]) hi[k] = q[k];
+    }
+  }
+  McM(b->R, R);
+  for (int k = 0; k < 3; k++)
+  {
+    c[k] = (PQP_REAL)0.5 * (lo[k] + hi[k]);
+    b->d[k] = (PQP_REAL)0.5 * (hi[k] - lo[k]);
+  }
+  MxV(b->To, R, c);
+#if PQP_BV_TYPE & RSS_TYPE
+  c[0] = lo[0];
+  c[1] = lo[1];
+  MxV(b->Tr, R, c);
+  b->l[0] = hi[0] - lo[0];
+  b->l[1] = hi[1] - lo[1];
+  b->r = b->d[2];
+#endif
+}
+
+/* Writes the 8 corners of the model-space OBB of b into p. */
+static void
+OBBCorners(const BV *b, PQP_REAL (*p)[3])
+{
+  for (int i = 0; i < 8; i++)
+  {
+    PQP_REAL local[3];
+    local[0] = (i & 1) ? b->d[0] : -b->d[0];
+    local[1] = (i & 2) ? b->d[1] : -b->d[1];
+    local[2] = (i & 4) ? b->d[2] : -b->d[2];
+    MxVpV(p[i], b->R, local, b->To);
+  }
+}
+
+/* Stores the model-space orientation of m->child(bn) and its descendants in
+ * Rw, given the model-space orientation Rp of its parent. */
+static void
+OrientRecurse(PQP_Model *m, int bn, const PQP_REAL Rp[3][3],
+              PQP_REAL (*Rw)[3][3])
+{
+  BV *b = m->child(bn);
+  MxM(Rw[bn], Rp, b->R);
+  if (!b->Leaf())
+  {
+    OrientRecurse(m, b->first_child, Rw[bn], Rw);
+    OrientRecurse(m, b->first_child + 1, Rw[bn], Rw);
+  }
+}
+
+/* Refits m->child(bn), whose model-space orientation is Rw[bn], and leaves
+ * the BV in model space. */
+static void
+RefitRecurse(PQP_Model *m, int bn, PQP_REAL (*Rw)[3][3])
+{
+  BV *b = m->child(bn);
+  const PQP_REAL (*R)[3] = Rw[bn];
+
+  if (b->Leaf())
+  {
+    Tri *t = &m->tris[-b->first_child - 1];
+    PQP_REAL p[3][3];
+    VcV(p[0], t->p1);
+    VcV(p[1], t->p2);
+    VcV(p[2], t->p3);
+    FitToPoints(b, R, p, 3);
+    return;
+  }
+
+  int c = b->first_child;
+  RefitRecurse(m, c, Rw);
+  RefitRecurse(m, c + 1, Rw);
+
+  PQP_REAL corners[16][3];
+  OBBCorners(m->child(c), corners);
+  OBBCorners(m->child(c + 1), corners + 8);
+  FitToPoints(b, R, corners, 16);
+  MakeRelative(m->child(c), b);
+  MakeRelative(m->child(c + 1), b);
+}
+
+/* Sum of BV sizes (BV::GetSize) over the tree; grows as a refit tree loosens. */
+static jdouble
+TotalSize(PQP_Model *m)
+{
+  jdouble size = 0;
+  for (int i = 0; i < m->num_bvs; i++)
+    size += m->child(i)->GetSize();
+  return size;
+}
+
+/* Returns the new model, or 0 if it could not be built. The model-space
+ * orientations of its BVs are written to a new array, returned in
+ * orientations[0], to be freed with freeOrientations. */
+extern "C" JNIEXPORT jlong JNICALL
+Java_pqp_DeformableModel_build(JNIEnv *env, jclass, jdoubleArray xArray,
+                               jintArray facesArray, jint numTris,
+                               jlongArray orientations)
+{
+  if (numTris <= 0) return 0;
+  jdouble *x = static_cast<jdouble *>(env->GetPrimitiveArrayCritical(xArray, 0));
+  jint *faces = static_cast<jint *>(env->GetPrimitiveArrayCritical(facesArray, 0));
+  PQP_Model *m = new PQP_Model();
+  m->BeginModel(numTris);
+  for (int i = 0; i < numTris; i++)
+  {
+    const jint *f = faces + 3 * i;
+    m->AddTri(x + 3 * f[0], x + 3 * f[1], x + 3 * f[2], i);
+  }
+  env->ReleasePrimitiveArrayCritical(facesArray, faces, JNI_ABORT);
+  env->ReleasePrimitiveArrayCritical(xArray, x, JNI_ABORT);
+  if (m->EndModel() != PQP_OK)
+  {
+    delete m;
+    return 0;
+  }
+
+  PQP_REAL (*Rw)[3][3] = new PQP_REAL[m->num_bvs][3][3];
+  PQP_REAL I[3][3];
+  Midentity(I);
+  OrientRecurse(m, 0, I, Rw);
+  jlong RwPtr = reinterpret_cast<jlong>(Rw);
+  env->SetLongArrayRegion(orientations, 0, 1, &RwPtr);
+  return reinterpret_cast<jlong>(m);
+}
+
+extern "C" JNIEXPORT void JNICALL
+Java_pqp_DeformableModel_freeOrientations(JNIEnv *, jclass, jlong RwPtr)
+{
+  delete [] reinterpret_cast<PQP_REAL (*)[3][3]>(RwPtr);
+}
+
+/* Returns the total BV size after the refit. */
+extern "C" JNIEXPORT jdouble JNICALL
+Java_pqp_DeformableModel_refit(JNIEnv *env, jclass, jlong modelPtr,
+                               jlong RwPtr, jdoubleArray xArray,
+                               jintArray facesArray)
+{
+  PQP_Model *m = reinterpret_cast<PQP_Model *>(modelPtr);
+  jdouble *x = static_cast<jdouble *>(env->GetPrimitiveArrayCritical(xArray, 0));
+  jint *faces = static_cast<jint *>(env->GetPrimitiveArrayCritical(facesArray, 0));
+  UpdateTris(m, x, faces);
+  env->ReleasePrimitiveArrayCritical(facesArray, faces, JNI_ABORT);
+  env->ReleasePrimitiveArrayCritical(xArray, x, JNI_ABORT);
+
+  RefitRecurse(m, 0, reinterpret_cast<PQP_REAL (*)[3][3]>(RwPtr));
+  return TotalSize(m);
+}
+
+/* BUILD_STATE of a model after EndModel(); the enum is private to PQP.cpp. */
+static const int BUILD_STATE_PROCESSED = 2;
+
+/* The fields of a BV that are in the cache file: R, then Tr, l and r if the
+ * BVs are RSSs, then To and d if they are OBBs, then first_child. */
+static const size_t BV_REALS = 9
+#if PQP_BV_TYPE & RSS_TYPE
+  + 3 + 2 + 1
+#endif
+#if PQP_BV_TYPE & OBB_TYPE
+  + 3 + 3
+#endif
+  ;
+static const size_t TRI_BYTES = sizeof(PQP_REAL) * 9 + sizeof(int);
+static const size_t BV_BYTES = sizeof(PQP_REAL) * BV_REALS + sizeof(int);
+
+/* Copies size bytes of a field to out and returns the byte after them. */
+static char *
+Put(char *out, const void *field, size_t size)
+{
+  memcpy(out, field, size);
+  return out + size;
+}
+
+/* Copies size bytes at in to a field and returns the byte after them. */
+static const char *
+Get(const char *in, void *field, size_t size)
+{
+  memcpy(field, in, size);
+  return in + size;
+}
+
+/* A Tri is written as p1, p2, p3 and id, without padding. */
+static char *
+PutTri(char *out, const Tri &t)
+{
+  out = Put(out, t.p1, sizeof(t.p1));
+  out = Put(out, t.p2, sizeof(t.p2));
+  out = Put(out, t.p3, sizeof(t.p3));
+  return Put(out, &t.id, sizeof(t.id));
+}
+
+static const char *
+GetTri(const char *in, Tri &t)
+{
+  in = Get(in, t.p1, sizeof(t.p1));
+  in = Get(in, t.p2, sizeof(t.p2));
+  in = Get(in, t.p3, sizeof(t.p3));
+  return Get(in, &t.id, sizeof(t.id));
+}
+
+/* A BV is written as the fields of BV_REALS, without padding; BV has a
+ * constructor and destructor, so it is not copied as a whole. */
+static char *
+PutBV(char *out, const BV &b)
+{
+  out = Put(out, b.R, sizeof(b.R));
+#if PQP_BV_TYPE & RSS_TYPE
+  out = Put(out, b.Tr, sizeof(b.Tr));
+  out = Put(out, b.l, sizeof(b.l));
+  out = Put(out, &b.r, sizeof(b.r));
+#endif
+#if PQP_BV_TYPE & OBB_TYPE
+  out = Put(out, b.To, sizeof(b.To));
+  out = Put(out, b.d, sizeof(b.d));
+#endif
+  return Put(out, &b.first_child, sizeof(b.first_child));
+}
+
+static const char *
+GetBV(const char *in, BV &b)
+{
+  in = Get(in, b.R, sizeof(b.R));
+#if PQP_BV_TYPE & RSS_TYPE
+  in = Get(in, b.Tr, sizeof(b.Tr));
+  in = Get(in, b.l, sizeof(b.l));
+  in = Get(in, &b.r, sizeof(b.r));
+#endif
+#if PQP_BV_TYPE & OBB_TYPE
+  in = Get(in, b.To, sizeof(b.To));
+  in = Get(in, b.d, sizeof(b.d));
+#endif
+  return Get(in, &b.first_child, sizeof(b.first_child));
+}
+
+/* The byte sizes of a triangle, a BV and an orientation as written by write,
+ * which fix the layout of the cache file. */
+extern "C" JNIEXPORT void JNICALL
+Java_pqp_DeformableModel_layout(JNIEnv *env, jclass, jintArray sizes)
+{
+  jint s[3] = { (jint) TRI_BYTES, (jint) BV_BYTES,
+                (jint) sizeof(PQP_REAL[3][3]) };
+  env->SetIntArrayRegion(sizes, 0, 3, s);
+}
+
+extern "C" JNIEXPORT jint JNICALL
+Java_pqp_DeformableModel_numBVs(JNIEnv *, jclass, jlong modelPtr)
+{
+  return reinterpret_cast<PQP_Model *>(modelPtr)->num_bvs;
+}
+
+/* Writes the triangles, the BVs and the orientations of the model, in this
+ * order and field by field (see PutTri and PutBV), into the direct buffer
+ * from offset on. Returns the number of bytes written, or -1 if the buffer
+ * is not direct. */
+extern "C" JNIEXPORT jlong JNICALL
+Java_pqp_DeformableModel_write(JNIEnv *env, jclass, jlong modelPtr,
+                               jlong RwPtr, jobject buffer, jlong offset)
+{
+  PQP_Model *m = reinterpret_cast<PQP_Model *>(modelPtr);
+  char *out = static_cast<char *>(env->GetDirectBufferAddress(buffer));
+  if (out == 0) return -1;
+  char *start = out += offset;
+  for (int i = 0; i < m->num_tris; i++)
+    out = PutTri(out, m->tris[i]);
+  for (int i = 0; i < m->num_bvs; i++)
+    out = PutBV(out, m->b[i]);
+  out = Put(out, reinterpret_cast<void *>(RwPtr),
+            sizeof(PQP_REAL[3][3]) * m->num_bvs);
+  return (jlong) (out - start);
+}
+
+/* Returns a new model, ready to query, from the arrays write wrote to the
+ * direct buffer at offset, or 0 if the buffer is not direct. As for build,
+ * the orientations are returned in a new array in orientations[0]. The
+ * arrays are copied out, since the model frees its own. */
+extern "C" JNIEXPORT jlong JNICALL
+Java_pqp_DeformableModel_read(JNIEnv *env, jclass, jobject buffer,
+                              jlong offset, jint numTris, jint numBVs,
+                              jlongArray orientations)
+{
+  const char *in = static_cast<const char *>(env->GetDirectBufferAddress(buffer));
+  if (in == 0 || numTris <= 0 || numBVs <= 0) return 0;
+  in += offset;
+  PQP_Model *m = new PQP_Model();
+  m->tris = new Tri[numTris];
+  m->num_tris = m->num_tris_alloced = numTris;
+  for (int i = 0; i < numTris; i++)
+    in = GetTri(in, m->tris[i]);
+  m->b = new BV[numBVs];
+  m->num_bvs = m->num_bvs_alloced = numBVs;
+  for (int i = 0; i < numBVs; i++)
+    in = GetBV(in, m->b[i]);
+  m->last_tri = m->tris;
+  m->build_state = BUILD_STATE_PROCESSED;
+
+  PQP_REAL (*Rw)[3][3] = new PQP_REAL[numBVs][3][3];
+  Get(in, Rw, sizeof(PQP_REAL[3][3]) * numBVs);
+  jlong RwPtr = reinterpret_cast<jlong>(Rw);
+  env->SetLongArrayRegion(orientations, 0, 1, &RwPtr);
+  return reinterpret_cast<jlong>(m);
+}
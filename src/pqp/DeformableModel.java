@@ -0,0 +1,297 @@
+package pqp;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A PQP_Model over a triangle mesh whose vertices move but whose connectivity
+ * does not, e.g. cloth. update() refits the bounding volumes of the existing
+ * tree to the new positions, which is much cheaper than a rebuild: no points
+ * are allocated and no covariance or split is recomputed. Refit trees loosen
+ * as the mesh deforms away from the shape they were built for, so the tree is
+ * rebuilt once the total size of its bounding volumes exceeds the size right
+ * after the last build by more than the rebuild threshold. Every build is
+ * followed by one refit in place, so that the threshold measures loosening by
+ * deformation only, not the difference between built and refit bounds.
+ *
+ * Positions are read straight from a flat array holding three coordinates per
+ * vertex, e.g. ParticleStore.x; faces hold three vertex indices per triangle,
+ * and the triangle ids of the model are the indices of the faces.
+ *
+ * close() frees the native model and orientations; a Cleaner frees them if a
+ * DeformableModel is dropped unclosed.
+ *
+ * Building the tree is by far the slowest part for large static meshes, so
+ * save() writes a built model to a cache file that load() reads back on later
+ * runs. The file holds the triangles, BVs and orientations field by field in
+ * native byte order, behind a header with a version, the byte sizes of those
+ * records and a key of the mesh (see key()); load() maps it and copies the
+ * records straight into a new model, and rejects files of another version,
+ * layout or mesh.
+ */
+public class DeformableModel implements AutoCloseable {
+
+  /** Default ratio of total BV size to its size after a build that triggers a rebuild. */
+  public static final double DEFAULT_REBUILD_THRESHOLD = 1.5;
+
+  private static final int MAGIC = 0x50424456; // "PBDV"
+  private static final int VERSION = 2;
+  /** Bytes before the native arrays in a cache file; a multiple of 8. */
+  private static final int HEADER_BYTES = 48;
+
+  private final int[] faces;
+  private final int numTriangles;
+  private PQP_Model model;
+  /** Native array of the model-space orientations of the BVs of model. */
+  private final Orientations orientations = new Orientations();
+  private final Cleaner.Cleanable cleanable;
+  private double builtSize;
+  private double size;
+  private double rebuildThreshold = DEFAULT_REBUILD_THRESHOLD;
+  private int numRebuilds = 0;
+
+  /**
+   * Builds the model.
+   *
+   * @param x
+   *          three coordinates per vertex
+   * @param faces
+   *          three vertex indices per triangle; copied
+   */
+  public DeformableModel(double[] x, int[] faces) {
+    this(faces);
+    build(x);
+  }
+
+  private DeformableModel(int[] faces) {
+    if (faces.length == 0 || faces.length % 3 != 0) {
+      throw new IllegalArgumentException("faces must hold three indices per triangle");
+    }
+    this.faces = faces.clone();
+    this.numTriangles = faces.length / 3;
+    cleanable = NativeCleaner.register(this, orientations);
+  }
+
+  /**
+   * A key of the positions x and faces a model is built over, for save() and
+   * load(): a hash of their raw bits, which changes with any vertex or face.
+   */
+  public static long key(double[] x, int[] faces) {
+    // FNV-1a over 64-bit words rather than bytes, which is eight times faster
+    // on large meshes; the shift folds the high bits back into the low ones
+    long h = 0xcbf29ce484222325L;
+    for (int f : faces) {
+      h = mix(h, f);
+      for (int k = 0; k < 3; k++) {
+        h = mix(h, Double.doubleToLongBits(x[3 * f + k]));
+      }
+    }
+    return h;
+  }
+
+  private static long mix(long h, long value) {
+    h = (h ^ value) * 0x100000001b3L;
+    return h ^ (h >>> 29);
+  }
+
+  /**
+   * Writes the tree to file under key, which should be key(x, faces) of the
+   * positions x it was built over; meant for a model that has not been
+   * updated since. The file is written beside file first and then moved over
+   * it, so a reader never sees half of it.
+   */
+  public void save(File file, long key) throws IOException {
+    int[] sizes = layout();
+    long cPtr = PQP_Model.getCPtr(model);
+    int numBVs = numBVs(cPtr);
+    long bytes = HEADER_BYTES + (long) sizes[0] * numTriangles + (long) (sizes[1] + sizes[2]) * numBVs;
+    Path target = file.toPath();
+    Path temporary = target.resolveSibling(target.getFileName() + ".tmp");
+    if (bytes > Integer.MAX_VALUE) {
+      throw new IOException("PQP_Model too large to save");
+    }
+    ByteBuffer out = ByteBuffer.allocateDirect((int) bytes);
+    out.putInt(MAGIC);
+    out.putInt(VERSION);
+    out.putLong(key);
+    out.putInt(ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN ? 1 : 0);
+    out.putInt(sizes[0]);
+    out.putInt(sizes[1]);
+    out.putInt(sizes[2]);
+    out.putInt(numTriangles);
+    out.putInt(numBVs);
+    out.putDouble(builtSize);
+    if (write(cPtr, orientations.address, out, HEADER_BYTES) != bytes - HEADER_BYTES) {
+      throw new IOException("could not write PQP_Model");
+    }
+    out.clear();
+    try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+        StandardOpenOption.TRUNCATE_EXISTING)) {
+      while (out.hasRemaining()) {
+        channel.write(out);
+      }
+    }
+    Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * Reads a model written by save() for the given faces, whose triangle ids
+   * must again be the indices of the faces. The file is mapped rather than
+   * read, so its pages go straight from the page cache into the model.
+   *
+   * @return the model, or null if file is missing, of another version or
+   *         native layout, or was saved under another key or face count
+   */
+  public static DeformableModel load(File file, long key, int[] faces) throws IOException {
+    if (!file.isFile()) {
+      return null;
+    }
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      long bytes = channel.size();
+      if (bytes < HEADER_BYTES) {
+        return null;
+      }
+      MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, bytes);
+      int[] sizes = layout();
+      if (in.getInt() != MAGIC || in.getInt() != VERSION || in.getLong() != key
+          || in.getInt() != (ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN ? 1 : 0)
+          || in.getInt() != sizes[0] || in.getInt() != sizes[1] || in.getInt() != sizes[2]
+          || in.getInt() != faces.length / 3) {
+        return null;
+      }
+      int numBVs = in.getInt();
+      double builtSize = in.getDouble();
+      if (numBVs <= 0
+          || bytes != HEADER_BYTES + (long) sizes[0] * (faces.length / 3) + (long) (sizes[1] + sizes[2]) * numBVs) {
+        return null;
+      }
+      DeformableModel result = new DeformableModel(faces);
+      long[] orientations = new long[1];
+      long cPtr = read(in, HEADER_BYTES, result.numTriangles, numBVs, orientations);
+      if (cPtr == 0) {
+        throw new IOException("could not read PQP_Model");
+      }
+      result.model = new PQP_Model(cPtr, true);
+      result.orientations.address = orientations[0];
+      result.builtSize = builtSize;
+      result.size = builtSize;
+      return result;
+    }
+  }
+
+  public PQP_Model getModel() {
+    return model;
+  }
+
+  /**
+   * Moves the model to the positions x: refits the tree, or rebuilds it if the
+   * refit tree has become too loose.
+   *
+   * @return true iff the tree was rebuilt
+   */
+  public boolean update(double[] x) {
+    size = refit(PQP_Model.getCPtr(model), orientations.address, x, faces);
+    if (size > rebuildThreshold * builtSize) {
+      model.delete();
+      orientations.run();
+      build(x);
+      numRebuilds++;
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Sets the ratio of total BV size after a refit to the size after the last
+   * build above which update() rebuilds. Must be at least 1;
+   * Double.POSITIVE_INFINITY never rebuilds.
+   */
+  public void setRebuildThreshold(double threshold) {
+    if (!(threshold >= 1)) {
+      throw new IllegalArgumentException("rebuild threshold must be at least 1");
+    }
+    rebuildThreshold = threshold;
+  }
+
+  public double getRebuildThreshold() {
+    return rebuildThreshold;
+  }
+
+  /** @return the total BV size relative to its size after the last build */
+  public double getQuality() {
+    return size / builtSize;
+  }
+
+  /** @return how often update() has rebuilt the tree */
+  public int getRebuildCount() {
+    return numRebuilds;
+  }
+
+  /** Frees the native model and orientations; getModel() is invalid afterwards. */
+  public synchronized void delete() {
+    if (model != null) {
+      model.delete();
+      model = null;
+    }
+    cleanable.clean();
+  }
+
+  public void close() {
+    delete();
+  }
+
+  private void build(double[] x) {
+    long[] orientations = new long[1];
+    long cPtr = build(x, faces, numTriangles, orientations);
+    if (cPtr == 0) {
+      throw new IllegalStateException("could not build PQP_Model");
+    }
+    model = new PQP_Model(cPtr, true);
+    this.orientations.address = orientations[0];
+    builtSize = refit(cPtr, this.orientations.address, x, faces);
+    size = builtSize;
+  }
+
+  /** Frees the native orientations; run by delete() or the Cleaner. */
+  private static final class Orientations implements Runnable {
+    long address;
+
+    @Override
+    public void run() {
+      if (address != 0) {
+        freeOrientations(address);
+        address = 0;
+      }
+    }
+  }
+
+  private static native long build(double[] x, int[] faces, int numTriangles, long[] orientations);
+
+  private static native double refit(long model, long orientations, double[] x, int[] faces);
+
+  private static native void freeOrientations(long orientations);
+
+  /** @return the byte sizes of a Tri, a BV and an orientation in a cache file */
+  private static int[] layout() {
+    int[] sizes = new int[3];
+    layout(sizes);
+    return sizes;
+  }
+
+  private static native void layout(int[] sizes);
+
+  private static native int numBVs(long model);
+
+  private static native long write(long model, long orientations, ByteBuffer out, long offset);
+
+  private static native long read(ByteBuffer in, long offset, int numTriangles, int numBVs, long[] orientations);
+}
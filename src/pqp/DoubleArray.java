@@ -8,20 +8,22 @@
 
 package pqp;
 
-public class DoubleArray {
+public class DoubleArray implements AutoCloseable {
   private transient long swigCPtr;
   protected transient boolean swigCMemOwn;
+  private transient java.lang.ref.Cleaner.Cleanable swigCleanable;
 
   protected DoubleArray(long cPtr, boolean cMemoryOwn) {
     swigCMemOwn = cMemoryOwn;
     swigCPtr = cPtr;
+    swigCleanable = cMemoryOwn ? NativeCleaner.register(this, cPtr, PQPJNI::delete_DoubleArray) : null;
   }
 
   protected static long getCPtr(DoubleArray obj) {
     return (obj == null) ? 0 : obj.swigCPtr;
   }
 
-  protected void finalize() {
+  public void close() {
     delete();
   }
 
@@ -29,7 +31,7 @@ public class DoubleArray {
     if (swigCPtr != 0) {
       if (swigCMemOwn) {
         swigCMemOwn = false;
-        PQPJNI.delete_DoubleArray(swigCPtr);
+        swigCleanable.clean();
       }
       swigCPtr = 0;
     }
@@ -0,0 +1,44 @@
+#include <string.h>
+
+#include "PQP.h"
+
+/*
+ * Plain C entry points for the java.lang.foreign binding (pqp.ffm). Unlike
+ * the JNI functions these take raw pointers to memory shared with Java:
+ * transforms as row-major 3x3 matrices and translations, and a buffer that
+ * receives the colliding triangle id pairs in bulk.
+ *
+ * Each thread collides into its own PQP_CollideResult, so that the pair
+ * list is reused from query to query without Java managing its lifetime.
+ */
+
+static thread_local PQP_CollideResult result;
+
+/* Copies the first capacity pairs of the last query of this thread into
+ * pairs; returns how many were copied. */
+extern "C" int
+pqp_copy_pairs(int *pairs, int capacity)
+{
+  int n = result.NumPairs() < capacity ? result.NumPairs() : capacity;
+  // CollisionPair is two ints, so the pair list copies as it is
+  memcpy(pairs, result.pairs, n * sizeof(CollisionPair));
+  return n;
+}
+
+/* Collides o1 and o2, placed by R1, T1 and R2, T2, and copies the first
+ * capacity pairs (id1, id2) into pairs. Returns the number of pairs, which
+ * may exceed capacity, or the negative PQP error code. */
+extern "C" int
+pqp_collide_pairs(const PQP_REAL *R1, const PQP_REAL *T1, PQP_Model *o1,
+                  const PQP_REAL *R2, const PQP_REAL *T2, PQP_Model *o2,
+                  int flag, int *pairs, int capacity)
+{
+  PQP_REAL *R1rows[3] = { (PQP_REAL *)R1, (PQP_REAL *)R1 + 3, (PQP_REAL *)R1 + 6 };
+  PQP_REAL *R2rows[3] = { (PQP_REAL *)R2, (PQP_REAL *)R2 + 3, (PQP_REAL *)R2 + 6 };
+  int err = PQP_Collide(&result, R1rows, (PQP_REAL *)T1, o1,
+                        R2rows, (PQP_REAL *)T2, o2, flag);
+  if (err != PQP_OK) return err;
+
+  pqp_copy_pairs(pairs, capacity);
+  return result.NumPairs();
+}
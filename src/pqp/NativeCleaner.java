@@ -0,0 +1,70 @@
+package pqp;
+
+import java.lang.ref.Cleaner;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
+
+/**
+ * Frees the native objects of the SWIG proxies (see the typemaps in
+ * swig_PQP.i) and of DeformableModel. Owners free them deterministically
+ * with close() or delete(), which runs the registered action right away;
+ * the Cleaner only runs it for owners that became unreachable unclosed.
+ * Unlike finalize(), neither path keeps the owner alive for an extra GC
+ * cycle or queues it for a finalizer thread.
+ */
+final class NativeCleaner {
+
+  private static volatile Thread cleanerThread;
+
+  private static final Cleaner CLEANER = Cleaner.create(runnable -> {
+    cleanerThread = new Thread(runnable, "pqp-cleaner");
+    return cleanerThread;
+  });
+
+  /** Registered actions that have not run yet. */
+  private static final AtomicLong live = new AtomicLong();
+  /** Actions run by the Cleaner, i.e. owners dropped without close(). */
+  private static final AtomicLong leaked = new AtomicLong();
+
+  private NativeCleaner() {
+  }
+
+  /**
+   * Registers delete(cPtr) to run once, by Cleanable.clean() or after owner
+   * becomes unreachable.
+   */
+  static Cleaner.Cleanable register(Object owner, long cPtr, LongConsumer delete) {
+    return register(owner, () -> delete.accept(cPtr));
+  }
+
+  /** Registers action, which must not refer to owner, to run once. */
+  static Cleaner.Cleanable register(Object owner, Runnable action) {
+    live.incrementAndGet();
+    return CLEANER.register(owner, new Action(action));
+  }
+
+  static long liveCount() {
+    return live.get();
+  }
+
+  static long leakedCount() {
+    return leaked.get();
+  }
+
+  private static final class Action implements Runnable {
+    private final Runnable action;
+
+    Action(Runnable action) {
+      this.action = action;
+    }
+
+    @Override
+    public void run() {
+      live.decrementAndGet();
+      if (Thread.currentThread() == cleanerThread) {
+        leaked.incrementAndGet();
+      }
+      action.run();
+    }
+  }
+}
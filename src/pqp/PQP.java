@@ -45,6 +45,22 @@ public class PQP implements PQPConstants {
     return PQPJNI.PQP_Collide(PQP_CollideResult.getCPtr(result), result, SWIGTYPE_p_p_double.getCPtr(R1), SWIGTYPE_p_double.getCPtr(T1), PQP_Model.getCPtr(o1), o1, SWIGTYPE_p_p_double.getCPtr(R2), SWIGTYPE_p_double.getCPtr(T2), PQP_Model.getCPtr(o2), o2, flag);
   }
 
+  public static int PQP_Distance(PQP_DistanceResult result, SWIGTYPE_p_p_double R1, SWIGTYPE_p_double T1, PQP_Model o1, SWIGTYPE_p_p_double R2, SWIGTYPE_p_double T2, PQP_Model o2, double rel_err, double abs_err, int qsize) {
+    return PQPJNI.PQP_Distance__SWIG_0(PQP_DistanceResult.getCPtr(result), result, SWIGTYPE_p_p_double.getCPtr(R1), SWIGTYPE_p_double.getCPtr(T1), PQP_Model.getCPtr(o1), o1, SWIGTYPE_p_p_double.getCPtr(R2), SWIGTYPE_p_double.getCPtr(T2), PQP_Model.getCPtr(o2), o2, rel_err, abs_err, qsize);
+  }
+
+  public static int PQP_Distance(PQP_DistanceResult result, SWIGTYPE_p_p_double R1, SWIGTYPE_p_double T1, PQP_Model o1, SWIGTYPE_p_p_double R2, SWIGTYPE_p_double T2, PQP_Model o2, double rel_err, double abs_err) {
+    return PQPJNI.PQP_Distance__SWIG_1(PQP_DistanceResult.getCPtr(result), result, SWIGTYPE_p_p_double.getCPtr(R1), SWIGTYPE_p_double.getCPtr(T1), PQP_Model.getCPtr(o1), o1, SWIGTYPE_p_p_double.getCPtr(R2), SWIGTYPE_p_double.getCPtr(T2), PQP_Model.getCPtr(o2), o2, rel_err, abs_err);
+  }
+
+  public static int PQP_Tolerance(PQP_ToleranceResult res, SWIGTYPE_p_p_double R1, SWIGTYPE_p_double T1, PQP_Model o1, SWIGTYPE_p_p_double R2, SWIGTYPE_p_double T2, PQP_Model o2, double tolerance, int qsize) {
+    return PQPJNI.PQP_Tolerance__SWIG_0(PQP_ToleranceResult.getCPtr(res), res, SWIGTYPE_p_p_double.getCPtr(R1), SWIGTYPE_p_double.getCPtr(T1), PQP_Model.getCPtr(o1), o1, SWIGTYPE_p_p_double.getCPtr(R2), SWIGTYPE_p_double.getCPtr(T2), PQP_Model.getCPtr(o2), o2, tolerance, qsize);
+  }
+
+  public static int PQP_Tolerance(PQP_ToleranceResult res, SWIGTYPE_p_p_double R1, SWIGTYPE_p_double T1, PQP_Model o1, SWIGTYPE_p_p_double R2, SWIGTYPE_p_double T2, PQP_Model o2, double tolerance) {
+    return PQPJNI.PQP_Tolerance__SWIG_1(PQP_ToleranceResult.getCPtr(res), res, SWIGTYPE_p_p_double.getCPtr(R1), SWIGTYPE_p_double.getCPtr(T1), PQP_Model.getCPtr(o1), o1, SWIGTYPE_p_p_double.getCPtr(R2), SWIGTYPE_p_double.getCPtr(T2), PQP_Model.getCPtr(o2), o2, tolerance);
+  }
+
   public static int build_model(PQP_Model m) {
     return PQPJNI.build_model(PQP_Model.getCPtr(m), m);
   }
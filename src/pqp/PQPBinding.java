@@ -0,0 +1,65 @@
+package pqp;
+
+/**
+ * How collision queries reach PQP_Collide. The SWIG binding (swig()) works
+ * on any JDK but crosses JNI once per transform row and once per contact
+ * read back through PQP_CollideResult.Id1/Id2. The java.lang.foreign binding,
+ * pqp.ffm.ForeignBinding, passes transforms and the pair buffer as memory
+ * shared with Java and reads all contacts in one copy; it is only compiled
+ * by the "panama" Maven profile (JDK 21, --enable-preview) and only runs
+ * with --enable-preview. Without either, load() returns null.
+ *
+ * A binding keeps scratch state between queries; use one per thread.
+ */
+public abstract class PQPBinding {
+
+  private static final String FOREIGN = "pqp.ffm.ForeignBinding";
+
+  /** Row-major identity rotation, shared by all threads; never write it. */
+  public static final double[] IDENTITY = { 1, 0, 0, 0, 1, 0, 0, 0, 1 };
+  /** Zero translation, shared by all threads; never write it. */
+  public static final double[] ZERO = { 0, 0, 0 };
+
+  /**
+   * Collides m1 and m2, placed by the row-major rotations R1, R2 and the
+   * translations T1, T2, and writes the triangle ids of the first
+   * pairs.length / 2 contacts into pairs, as (id in m1, id in m2).
+   *
+   * @param flag
+   *          PQP.getPQP_ALL_CONTACTS() or PQP.getPQP_FIRST_CONTACT()
+   * @return the number of contacts, which may exceed pairs.length / 2
+   */
+  public abstract int collide(double[] R1, double[] T1, PQP_Model m1, double[] R2, double[] T2, PQP_Model m2,
+      int flag, int[] pairs);
+
+  /** @return the native address of model, for bindings outside this package */
+  protected static long address(PQP_Model model) {
+    return PQP_Model.getCPtr(model);
+  }
+
+  protected static void checkResult(int result) {
+    if (result < 0) {
+      throw new IllegalStateException("PQP_Collide failed with error " + result);
+    }
+  }
+
+  /** @return a new SWIG binding */
+  public static PQPBinding swig() {
+    return new SwigBinding();
+  }
+
+  /** @return a new java.lang.foreign binding, or null if it is not built or preview features are off. */
+  public static PQPBinding load() {
+    try {
+      return (PQPBinding) Class.forName(FOREIGN).getDeclaredConstructor().newInstance();
+    } catch (ReflectiveOperationException | LinkageError | UnsupportedOperationException e) {
+      return null;
+    }
+  }
+
+  /** @return load() if requested with -Dpbd.ffm=true and available, swig() otherwise */
+  public static PQPBinding get() {
+    PQPBinding foreign = Boolean.getBoolean("pbd.ffm") ? load() : null;
+    return foreign != null ? foreign : swig();
+  }
+}
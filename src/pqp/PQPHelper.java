@@ -13,16 +13,54 @@ import particles.Triangle;
 
 /** 
  * Provide static helper methods for simple construction and usage of PQP 
+ *
+ * The helpers may be called from any number of threads at once: results,
+ * arenas and the binding are per thread, and the identity transform they
+ * share is never written after class initialisation. The models passed in
+ * are another matter. A built PQP_Model is only read by PQP_Collide and by
+ * SegmentQuery and ProximityQuery, so concurrent queries of one model are
+ * safe; PQP_Distance and PQP_Tolerance cache the last closest triangles in
+ * the model, so distance queries of one model must not run concurrently.
+ * Nothing may query a model while it is built or updated, e.g. by
+ * DeformableModel.update().
  * @author rexy
  *
  */
 public class PQPHelper {
   
-  private static WrapperUtil util = new WrapperUtil();
+  /** Arena of the constants below; never reset. */
+  private static final WrapperUtil util = new WrapperUtil();
   
-  private static SWIGTYPE_p_p_double I3 = util.newI3();
-  private static SWIGTYPE_p_double vec0 = util.newPoint(0, 0, 0);
+  /** The identity transform, shared by all threads and never written. */
+  private static final SWIGTYPE_p_p_double I3 = util.newI3();
+  private static final SWIGTYPE_p_double vec0 = util.newPoint(0, 0, 0);
+
+  /** Per-thread state of the helpers; see Scratch. */
+  private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+  static {
+    // the thread loading the class, usually the simulation thread, gets its
+    // state now rather than in its first query
+    SCRATCH.get();
+  }
+
+  /** Results and arenas of one thread, reused between its queries. */
+  private static final class Scratch {
+    /** Arena of the points handed out by newPoint(); see resetScratch(). */
+    final WrapperUtil points = new WrapperUtil();
+    /** Arena of the transforms of the current collideAll(); reset by every call. */
+    final WrapperUtil transforms = new WrapperUtil();
+    /** Binding of simpleCollideAll(); see PQPBinding.get(). */
+    final PQPBinding binding = PQPBinding.get();
+    int[] pairs = new int[128];
+    /** Result of simpleCollide(). */
+    final PQP_CollideResult firstContact = new PQP_CollideResult();
+    /** Results of simpleDistance() and simpleTolerance(). */
+    final PQP_DistanceResult distanceResult = new PQP_DistanceResult();
+    final PQP_ToleranceResult toleranceResult = new PQP_ToleranceResult();
+  }
 
+  /** A new model of the faces; the caller owns it and should close() it. */
   public static PQP_Model buildPQPModel(List<Point3d> vertices, List<Tuple3i> faces) {
     PQP_Model model = new PQP_Model();
     model.BeginModel();
@@ -41,8 +79,40 @@ public class PQPHelper {
     return model;
   }
   
+  /**
+   * A native copy of pt, valid until the next resetScratch() of the calling
+   * thread. PQP_Model.AddTri copies its vertices, so points only passed to it
+   * may be reset right after.
+   */
   public static SWIGTYPE_p_double newPoint(Point3d pt) {
-    return util.newPoint(pt.x, pt.y, pt.z);
+    return SCRATCH.get().points.newPoint(pt.x, pt.y, pt.z);
+  }
+
+  /**
+   * Releases every point returned by newPoint() (and used by buildPQPModel())
+   * on the calling thread at once. ParticleSystem calls this at the start of
+   * every step.
+   */
+  public static void resetScratch() {
+    SCRATCH.get().points.reset();
+  }
+
+  /** @return native bytes taken by the points and matrices of all WrapperUtils */
+  public static long nativeBytesInUse() {
+    return WrapperUtil.totalBytesInUse();
+  }
+
+  /** @return native objects of proxies and DeformableModels not freed yet */
+  public static long nativeObjectsAlive() {
+    return NativeCleaner.liveCount();
+  }
+
+  /**
+   * @return native objects freed by the Cleaner because their owner was
+   *         dropped without close()
+   */
+  public static long nativeObjectsLeaked() {
+    return NativeCleaner.leakedCount();
   }
   
   /**
@@ -50,31 +120,109 @@ public class PQPHelper {
    * @return the indices of first 2 triangles in each model that collide
    */
   public static Tuple2i simpleCollide(PQP_Model m1, PQP_Model m2) {
-    PQP_CollideResult collideResult = new PQP_CollideResult();
-    PQP.PQP_Collide(collideResult, I3, vec0, m1, I3, vec0, m2, PQP.getPQP_FIRST_CONTACT());
-    if (collideResult.Colliding() == 0) {
+    PQP_CollideResult firstContact = SCRATCH.get().firstContact;
+    PQP.PQP_Collide(firstContact, I3, vec0, m1, I3, vec0, m2, PQP.getPQP_FIRST_CONTACT());
+    if (firstContact.Colliding() == 0) {
       return null;
     } else {
-      return new Point2i(collideResult.Id1(0), collideResult.Id2(0));
+      return new Point2i(firstContact.Id1(0), firstContact.Id2(0));
     }
   }
   
   /**
    * Collision assuming no rotation and translation.
    * @return the indices of all triangles in each model that collide
+   * @see #collideAll(PQP_Model, PQP_Model, ContactPairs), which does not
+   *      allocate per pair
    */
   public static List<Tuple2i> simpleCollideAll(PQP_Model m1, PQP_Model m2) {
-    PQP_CollideResult collideResult = new PQP_CollideResult();
-    PQP.PQP_Collide(collideResult, I3, vec0, m1, I3, vec0, m2, PQP.getPQP_ALL_CONTACTS());
-    if (collideResult.Colliding() == 0) {
-      return new ArrayList<Tuple2i>();
-    } else {
-      List<Tuple2i> collideList = new ArrayList<>();
-      for (int i = 0; i < collideResult.NumPairs(); i++) {
-        collideList.add(new Point2i(collideResult.Id1(i), collideResult.Id2(i)));
-      }
-      return collideList;
+    Scratch scratch = SCRATCH.get();
+    PQPBinding binding = scratch.binding;
+    int[] pairs = scratch.pairs;
+    int n = binding.collide(PQPBinding.IDENTITY, PQPBinding.ZERO, m1, PQPBinding.IDENTITY, PQPBinding.ZERO, m2,
+        PQP.getPQP_ALL_CONTACTS(), pairs);
+    if (2 * n > pairs.length) {
+      pairs = scratch.pairs = new int[4 * n];
+      n = binding.collide(PQPBinding.IDENTITY, PQPBinding.ZERO, m1, PQPBinding.IDENTITY, PQPBinding.ZERO, m2,
+          PQP.getPQP_ALL_CONTACTS(), pairs);
     }
+    List<Tuple2i> collideList = new ArrayList<>(n);
+    for (int i = 0; i < n; i++) {
+      collideList.add(new Point2i(pairs[2 * i], pairs[2 * i + 1]));
+    }
+    return collideList;
   }
-  
+
+  /**
+   * Collision assuming no rotation and translation, into a result reused
+   * between queries.
+   * @return out, holding the indices of all triangles in each model that collide
+   */
+  public static ContactPairs collideAll(PQP_Model m1, PQP_Model m2, ContactPairs out) {
+    PQPBinding.checkResult(PQP.PQP_Collide(out.result, I3, vec0, m1, I3, vec0, m2, PQP.getPQP_ALL_CONTACTS()));
+    out.readOut();
+    return out;
+  }
+
+  /**
+   * Collision of m1 placed by R1 and T1 with m2 placed by R2 and T2, into a
+   * result reused between queries. Rotations are row-major; any of the
+   * transforms may be null for the identity.
+   * @return out, holding the indices of all triangles in each model that collide
+   */
+  public static ContactPairs collideAll(double[] R1, double[] T1, PQP_Model m1, double[] R2, double[] T2,
+      PQP_Model m2, ContactPairs out) {
+    WrapperUtil transforms = SCRATCH.get().transforms;
+    transforms.reset();
+    PQPBinding.checkResult(PQP.PQP_Collide(out.result, rotation(transforms, R1), translation(transforms, T1), m1,
+        rotation(transforms, R2), translation(transforms, T2), m2, PQP.getPQP_ALL_CONTACTS()));
+    out.readOut();
+    return out;
+  }
+
+  private static SWIGTYPE_p_p_double rotation(WrapperUtil transforms, double[] R) {
+    return R == null ? I3 : transforms.new3x3Mat(R[0], R[1], R[2], R[3], R[4], R[5], R[6], R[7], R[8]);
+  }
+
+  private static SWIGTYPE_p_double translation(WrapperUtil transforms, double[] T) {
+    return T == null ? vec0 : transforms.newPoint(T[0], T[1], T[2]);
+  }
+
+  /**
+   * Distance between the models, assuming no rotation and translation. If p1
+   * and p2 are not null, they receive the closest points of m1 and m2.
+   */
+  public static double simpleDistance(PQP_Model m1, PQP_Model m2, Point3d p1, Point3d p2) {
+    PQP_DistanceResult distanceResult = SCRATCH.get().distanceResult;
+    PQP.PQP_Distance(distanceResult, I3, vec0, m1, I3, vec0, m2, 0, 0);
+    getPoint(distanceResult.P1(), p1);
+    getPoint(distanceResult.P2(), p2);
+    return distanceResult.Distance();
+  }
+
+  /**
+   * Whether the models come within tolerance of each other, assuming no
+   * rotation and translation. Cheaper than simpleDistance(): the search stops
+   * at the first pair of triangles closer than tolerance, and prunes boxes
+   * farther apart. If the models are that close and p1 and p2 are not null,
+   * they receive the points of m1 and m2 that showed it.
+   */
+  public static boolean simpleTolerance(PQP_Model m1, PQP_Model m2, double tolerance, Point3d p1, Point3d p2) {
+    PQP_ToleranceResult toleranceResult = SCRATCH.get().toleranceResult;
+    PQP.PQP_Tolerance(toleranceResult, I3, vec0, m1, I3, vec0, m2, tolerance);
+    if (toleranceResult.CloserThanTolerance() == 0) {
+      return false;
+    }
+    getPoint(toleranceResult.P1(), p1);
+    getPoint(toleranceResult.P2(), p2);
+    return true;
+  }
+
+  private static void getPoint(SWIGTYPE_p_double pt, Point3d out) {
+    if (out != null) {
+      DoubleArray a = DoubleArray.frompointer(pt);
+      out.set(a.getitem(0), a.getitem(1), a.getitem(2));
+    }
+  }
+
 }
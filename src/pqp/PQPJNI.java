@@ -18,6 +18,10 @@ public class PQPJNI {
   public final static native int PQP_ALL_CONTACTS_get();
   public final static native int PQP_FIRST_CONTACT_get();
   public final static native int PQP_Collide(long jarg1, PQP_CollideResult jarg1_, long jarg2, long jarg3, long jarg4, PQP_Model jarg4_, long jarg5, long jarg6, long jarg7, PQP_Model jarg7_, int jarg8);
+  public final static native int PQP_Distance__SWIG_0(long jarg1, PQP_DistanceResult jarg1_, long jarg2, long jarg3, long jarg4, PQP_Model jarg4_, long jarg5, long jarg6, long jarg7, PQP_Model jarg7_, double jarg8, double jarg9, int jarg10);
+  public final static native int PQP_Distance__SWIG_1(long jarg1, PQP_DistanceResult jarg1_, long jarg2, long jarg3, long jarg4, PQP_Model jarg4_, long jarg5, long jarg6, long jarg7, PQP_Model jarg7_, double jarg8, double jarg9);
+  public final static native int PQP_Tolerance__SWIG_0(long jarg1, PQP_ToleranceResult jarg1_, long jarg2, long jarg3, long jarg4, PQP_Model jarg4_, long jarg5, long jarg6, long jarg7, PQP_Model jarg7_, double jarg8, int jarg9);
+  public final static native int PQP_Tolerance__SWIG_1(long jarg1, PQP_ToleranceResult jarg1_, long jarg2, long jarg3, long jarg4, PQP_Model jarg4_, long jarg5, long jarg6, long jarg7, PQP_Model jarg7_, double jarg8);
   public final static native int build_model(long jarg1, PQP_Model jarg1_);
   public final static native void BV_R_set(long jarg1, BV jarg1_, long jarg2);
   public final static native long BV_R_get(long jarg1, BV jarg1_);
@@ -245,6 +249,11 @@ public class PQPJNI {
   public final static native long WrapperUtil_newPoint(long jarg1, WrapperUtil jarg1_, double jarg2, double jarg3, double jarg4);
   public final static native long WrapperUtil_new3x3Mat(long jarg1, WrapperUtil jarg1_, double jarg2, double jarg3, double jarg4, double jarg5, double jarg6, double jarg7, double jarg8, double jarg9, double jarg10);
   public final static native long WrapperUtil_newI3(long jarg1, WrapperUtil jarg1_);
+  public final static native void WrapperUtil_reset(long jarg1, WrapperUtil jarg1_);
+  public final static native long WrapperUtil_bytesInUse(long jarg1, WrapperUtil jarg1_);
+  public final static native long WrapperUtil_bytesReserved(long jarg1, WrapperUtil jarg1_);
+  public final static native long WrapperUtil_totalBytesInUse();
+  public final static native long WrapperUtil_totalBytesReserved();
   public final static native long new_WrapperUtil();
   public final static native void delete_WrapperUtil(long jarg1);
   public final static native long new_DoubleArray(int jarg1);
@@ -8,20 +8,22 @@
 
 package pqp;
 
-public class PQP_CollideResult {
+public class PQP_CollideResult implements AutoCloseable {
   private transient long swigCPtr;
   protected transient boolean swigCMemOwn;
+  private transient java.lang.ref.Cleaner.Cleanable swigCleanable;
 
   protected PQP_CollideResult(long cPtr, boolean cMemoryOwn) {
     swigCMemOwn = cMemoryOwn;
     swigCPtr = cPtr;
+    swigCleanable = cMemoryOwn ? NativeCleaner.register(this, cPtr, PQPJNI::delete_PQP_CollideResult) : null;
   }
 
   protected static long getCPtr(PQP_CollideResult obj) {
     return (obj == null) ? 0 : obj.swigCPtr;
   }
 
-  protected void finalize() {
+  public void close() {
     delete();
   }
 
@@ -29,7 +31,7 @@ public class PQP_CollideResult {
     if (swigCPtr != 0) {
       if (swigCMemOwn) {
         swigCMemOwn = false;
-        PQPJNI.delete_PQP_CollideResult(swigCPtr);
+        swigCleanable.clean();
       }
       swigCPtr = 0;
     }
@@ -8,20 +8,22 @@
 
 package pqp;
 
-public class PQP_DistanceResult {
+public class PQP_DistanceResult implements AutoCloseable {
   private transient long swigCPtr;
   protected transient boolean swigCMemOwn;
+  private transient java.lang.ref.Cleaner.Cleanable swigCleanable;
 
   protected PQP_DistanceResult(long cPtr, boolean cMemoryOwn) {
     swigCMemOwn = cMemoryOwn;
     swigCPtr = cPtr;
+    swigCleanable = cMemoryOwn ? NativeCleaner.register(this, cPtr, PQPJNI::delete_PQP_DistanceResult) : null;
   }
 
   protected static long getCPtr(PQP_DistanceResult obj) {
     return (obj == null) ? 0 : obj.swigCPtr;
   }
 
-  protected void finalize() {
+  public void close() {
     delete();
   }
 
@@ -29,7 +31,7 @@ public class PQP_DistanceResult {
     if (swigCPtr != 0) {
       if (swigCMemOwn) {
         swigCMemOwn = false;
-        PQPJNI.delete_PQP_DistanceResult(swigCPtr);
+        swigCleanable.clean();
       }
       swigCPtr = 0;
     }
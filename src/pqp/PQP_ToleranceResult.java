@@ -8,20 +8,22 @@
 
 package pqp;
 
-public class PQP_ToleranceResult {
+public class PQP_ToleranceResult implements AutoCloseable {
   private transient long swigCPtr;
   protected transient boolean swigCMemOwn;
+  private transient java.lang.ref.Cleaner.Cleanable swigCleanable;
 
   protected PQP_ToleranceResult(long cPtr, boolean cMemoryOwn) {
     swigCMemOwn = cMemoryOwn;
     swigCPtr = cPtr;
+    swigCleanable = cMemoryOwn ? NativeCleaner.register(this, cPtr, PQPJNI::delete_PQP_ToleranceResult) : null;
   }
 
   protected static long getCPtr(PQP_ToleranceResult obj) {
     return (obj == null) ? 0 : obj.swigCPtr;
   }
 
-  protected void finalize() {
+  public void close() {
     delete();
   }
 
@@ -29,7 +31,7 @@ public class PQP_ToleranceResult {
     if (swigCPtr != 0) {
       if (swigCMemOwn) {
         swigCMemOwn = false;
-        PQPJNI.delete_PQP_ToleranceResult(swigCPtr);
+        swigCleanable.clean();
       }
       swigCPtr = 0;
     }
@@ -0,0 +1,202 @@
+#include <jni.h>
+
+#include "PQP.h"
+#include "MatVec.h"
+
+/*
+ * Native half of pqp.ProximityQuery: finds, for a batch of points, the
+ * nearest triangle of one PQP_Model within a tolerance, in a single JNI call.
+ *
+ * Like PQP_Tolerance(), the traversal only descends into boxes closer than
+ * the tolerance, or than the nearest triangle found so far, so points far
+ * from the model are rejected at the top of the tree. Points are carried
+ * down in the frame of the current box, as in SegmentQuery.cpp.
+ */
+
+/* BUILD_STATE of a model after EndModel(); the enum is private to PQP.cpp. */
+static const int BUILD_STATE_PROCESSED = 2;
+
+/* Squared distance from p to the box [-d, d] in its own frame. */
+static inline PQP_REAL
+PointBoxDistance2(const PQP_REAL p[3], const PQP_REAL d[3])
+{
+  PQP_REAL d2 = 0;
+  for (int k = 0; k < 3; k++)
+  {
+    PQP_REAL e = (p[k] < 0 ? -p[k] : p[k]) - d[k];
+    if (e > 0) d2 += e * e;
+  }
+  return d2;
+}
+
+/* Closest point c on triangle t to p (Ericson, Real-Time Collision
+ * Detection 5.1.5). */
+static void
+ClosestPointTriangle(const PQP_REAL p[3], const Tri *t, PQP_REAL c[3])
+{
+  PQP_REAL ab[3], ac[3], ap[3], bp[3], cp[3];
+  VmV(ab, t->p2, t->p1);
+  VmV(ac, t->p3, t->p1);
+  VmV(ap, p, t->p1);
+  PQP_REAL d1 = VdotV(ab, ap), d2 = VdotV(ac, ap);
+  if (d1 <= 0 && d2 <= 0) { VcV(c, t->p1); return; }
+
+  VmV(bp, p, t->p2);
+  PQP_REAL d3 = VdotV(ab, bp), d4 = VdotV(ac, bp);
+  if (d3 >= 0 && d4 <= d3) { VcV(c, t->p2); return; }
+
+  PQP_REAL vc = d1 * d4 - d3 * d2;
+  if (vc <= 0 && d1 >= 0 && d3 <= 0)
+  {
+    VpVxS(c, t->p1, ab, d1 / (d1 - d3));
+    return;
+  }
+
+  VmV(cp, p, t->p3);
+  PQP_REAL d5 = VdotV(ab, cp), d6 = VdotV(ac, cp);
+  if (d6 >= 0 && d5 <= d6) { VcV(c, t->p3); return; }
+
+  PQP_REAL vb = d5 * d2 - d1 * d6;
+  if (vb <= 0 && d2 >= 0 && d6 <= 0)
+  {
+    VpVxS(c, t->p1, ac, d2 / (d2 - d6));
+    return;
+  }
+
+  PQP_REAL va = d3 * d6 - d5 * d4;
+  if (va <= 0 && d4 - d3 >= 0 && d5 - d6 >= 0)
+  {
+    PQP_REAL bc[3];
+    VmV(bc, t->p3, t->p2);
+    VpVxS(c, t->p2, bc, (d4 - d3) / ((d4 - d3) + (d5 - d6)));
+    return;
+  }
+
+  PQP_REAL denom = 1 / (va + vb + vc);
+  PQP_REAL v = vb * denom, w = vc * denom;
+  for (int k = 0; k < 3; k++)
+    c[k] = t->p1[k] + ab[k] * v + ac[k] * w;
+}
+
+/* Point a of the parent's frame in the frame of box bn. */
+static inline void
+ToBox(PQP_Model *m, int bn, const PQP_REAL a[3], PQP_REAL la[3])
+{
+  BV *bv = m->child(bn);
+  PQP_REAL tmp[3];
+  VmV(tmp, a, bv->To);
+  MTxV(la, bv->R, tmp);
+}
+
+static void
+ProximityRecurse(PQP_Model *m, int bn,
+                 const PQP_REAL la[3], // in the frame of box bn
+                 const PQP_REAL p[3],  // in model space
+                 int *hit, PQP_REAL *best2, PQP_REAL closest[3])
+{
+  BV *bv = m->child(bn);
+  if (bv->Leaf())
+  {
+    Tri *t = &m->tris[-bv->first_child - 1];
+    PQP_REAL c[3], e[3];
+    ClosestPointTriangle(p, t, c);
+    VmV(e, c, p);
+    PQP_REAL d2 = VdotV(e, e);
+    if (d2 <= *best2)
+    {
+      *hit = t->id;
+      *best2 = d2;
+      VcV(closest, c);
+    }
+    return;
+  }
+
+  // visit the nearer child first, so that it can prune the other
+  int near = bv->first_child, far = near + 1;
+  PQP_REAL lNear[3], lFar[3];
+  ToBox(m, near, la, lNear);
+  ToBox(m, far, la, lFar);
+  PQP_REAL dNear = PointBoxDistance2(lNear, m->child(near)->d);
+  PQP_REAL dFar = PointBoxDistance2(lFar, m->child(far)->d);
+  if (dFar < dNear)
+  {
+    int n = near; near = far; far = n;
+    PQP_REAL d = dNear; dNear = dFar; dFar = d;
+    PQP_REAL l[3];
+    VcV(l, lNear); VcV(lNear, lFar); VcV(lFar, l);
+  }
+  if (dNear <= *best2)
+    ProximityRecurse(m, near, lNear, p, hit, best2, closest);
+  if (dFar <= *best2)
+    ProximityRecurse(m, far, lFar, p, hit, best2, closest);
+}
+
+/*
+ * points: 3 doubles per point; triangles, distances and closest receive the
+ * id of the nearest triangle within tolerance (-1 if none), its distance
+ * (tolerance if none) and the closest point on it (3 doubles). If rotation
+ * (row-major) and translation are not null, the model is placed by them:
+ * points are moved into its frame, and closest points back. Only the points
+ * from to from + count - 1 are queried. Returns the number of them near the
+ * model, or -1 if the model has not been built or a buffer is not direct.
+ *
+ * The model is only read (unlike PQP_Distance, which caches the last closest
+ * triangles in it), so any number of threads may query disjoint ranges of
+ * points against it at once.
+ */
+extern "C" JNIEXPORT jint JNICALL
+Java_pqp_ProximityQuery_query(JNIEnv *env, jclass, jlong modelPtr,
+                              jobject points, jdouble tolerance,
+                              jobject triangles, jobject distances,
+                              jobject closest, jint from, jint count,
+                              jdoubleArray rotation, jdoubleArray translation)
+{
+  PQP_Model *m = reinterpret_cast<PQP_Model *>(modelPtr);
+  PQP_REAL *pts = static_cast<PQP_REAL *>(env->GetDirectBufferAddress(points));
+  jint *tri = static_cast<jint *>(env->GetDirectBufferAddress(triangles));
+  PQP_REAL *dist = static_cast<PQP_REAL *>(env->GetDirectBufferAddress(distances));
+  PQP_REAL *c = static_cast<PQP_REAL *>(env->GetDirectBufferAddress(closest));
+  if (m == 0 || m->build_state != BUILD_STATE_PROCESSED
+      || pts == 0 || tri == 0 || dist == 0 || c == 0)
+    return -1;
+
+  PQP_REAL R[3][3], T[3], lp[3];
+  bool placed = rotation != 0 && translation != 0;
+  if (placed)
+  {
+    env->GetDoubleArrayRegion(rotation, 0, 9, &R[0][0]);
+    env->GetDoubleArrayRegion(translation, 0, 3, T);
+  }
+
+  jint hits = 0;
+  for (jint k = from; k < from + count; k++)
+  {
+    const PQP_REAL *p = pts + 3 * k;
+    if (placed)
+    {
+      PQP_REAL tmp[3];
+      VmV(tmp, p, T);
+      MTxV(lp, R, tmp);
+      p = lp;
+    }
+    int hit = -1;
+    PQP_REAL best2 = tolerance * tolerance;
+    if (m->num_tris > 0)
+    {
+      PQP_REAL la[3];
+      ToBox(m, 0, p, la);
+      if (PointBoxDistance2(la, m->child(0)->d) <= best2)
+        ProximityRecurse(m, 0, la, p, &hit, &best2, c + 3 * k);
+    }
+    if (placed && hit >= 0)
+    {
+      PQP_REAL tmp[3];
+      MxVpV(tmp, R, c + 3 * k, T);
+      VcV(c + 3 * k, tmp);
+    }
+    tri[k] = hit;
+    dist[k] = hit < 0 ? tolerance : sqrt(best2);
+    if (hit >= 0) hits++;
+  }
+  return hits;
+}
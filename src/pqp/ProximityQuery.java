@@ -0,0 +1,155 @@
+package pqp;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * Batched proximity queries against one PQP_Model: for every point, the
+ * nearest triangle closer than a tolerance, found natively in a single JNI
+ * call. This is the per-point counterpart of PQP_Tolerance(), which only
+ * answers for a pair of models; the traversal prunes the same way, so points
+ * farther than the tolerance from the model cost a few box tests.
+ *
+ * The buffers grow as needed and are reused between queries. add() and
+ * clear() are not thread safe; once the points are added, any number of
+ * threads may query disjoint ranges of them, see query(PQP_Model, double,
+ * double[], double[], int, int).
+ */
+public class ProximityQuery {
+
+  private DoubleBuffer points;
+  private IntBuffer triangles;
+  private DoubleBuffer distances;
+  private DoubleBuffer closest;
+  private int capacity = 0;
+  private int size = 0;
+
+  public ProximityQuery() {
+    this(64);
+  }
+
+  public ProximityQuery(int capacity) {
+    ensureCapacity(Math.max(1, capacity));
+  }
+
+  /** Removes all points; the results of the last query become invalid. */
+  public void clear() {
+    size = 0;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Appends the point (x, y, z).
+   *
+   * @return the index of the point
+   */
+  public int add(double x, double y, double z) {
+    if (size == capacity) {
+      ensureCapacity(Math.max(1, 2 * capacity));
+    }
+    points.put(3 * size, x);
+    points.put(3 * size + 1, y);
+    points.put(3 * size + 2, z);
+    return size++;
+  }
+
+  /**
+   * Finds the triangles of model, which must have been built with EndModel(),
+   * within tolerance of each point. Results are read with getTriangle(),
+   * getDistance() and getClosest().
+   *
+   * @return the number of points within tolerance of model
+   */
+  public int query(PQP_Model model, double tolerance) {
+    return query(model, tolerance, null, null);
+  }
+
+  /**
+   * Like query(PQP_Model, double), with model placed by the rotation R
+   * (row-major) and translation T, i.e. at R x + T for its vertices x; the
+   * closest points are reported in the same world frame as the points. R and
+   * T may both be null for no placement.
+   *
+   * @return the number of points within tolerance of model
+   */
+  public int query(PQP_Model model, double tolerance, double[] R, double[] T) {
+    return query(model, tolerance, R, T, 0, size);
+  }
+
+  /**
+   * Like query(PQP_Model, double, double[], double[]), for the points from to
+   * to - 1 only; the results of the other points are left untouched. The
+   * model is only read, so calls for disjoint ranges may run concurrently.
+   *
+   * @return the number of those points within tolerance of model
+   */
+  public int query(PQP_Model model, double tolerance, double[] R, double[] T, int from, int to) {
+    if (from < 0 || to > size || from > to) {
+      throw new IndexOutOfBoundsException("range [" + from + ", " + to + ") of " + size + " points");
+    }
+    int hits = query(PQP_Model.getCPtr(model), points, tolerance, triangles, distances, closest, from, to - from,
+        R, T);
+    if (hits < 0) {
+      throw new IllegalStateException("PQP_Model has not been built");
+    }
+    return hits;
+  }
+
+  /** @return coordinate i (0 to 2) of point k */
+  public double getCoordinate(int k, int i) {
+    return points.get(3 * k + i);
+  }
+
+  /**
+   * Stores the result of point k, for backends that search in Java instead of
+   * calling query(PQP_Model, double).
+   */
+  public void setResult(int k, int triangle, double distance, double x, double y, double z) {
+    triangles.put(k, triangle);
+    distances.put(k, distance);
+    closest.put(3 * k, x);
+    closest.put(3 * k + 1, y);
+    closest.put(3 * k + 2, z);
+  }
+
+  /**
+   * @return the id (as passed to AddTri) of the nearest triangle within the
+   *         tolerance of point k in the last query, or -1 if there was none
+   */
+  public int getTriangle(int k) {
+    return triangles.get(k);
+  }
+
+  /** @return the distance from point k to its triangle, or the tolerance if it has none */
+  public double getDistance(int k) {
+    return distances.get(k);
+  }
+
+  /** @return coordinate i (0 to 2) of the point of the triangle closest to point k */
+  public double getClosest(int k, int i) {
+    return closest.get(3 * k + i);
+  }
+
+  private void ensureCapacity(int n) {
+    if (n <= capacity) {
+      return;
+    }
+    DoubleBuffer newPoints = ByteBuffer.allocateDirect(8 * 3 * n).order(ByteOrder.nativeOrder()).asDoubleBuffer();
+    for (int k = 0; k < 3 * size; k++) {
+      newPoints.put(k, points.get(k));
+    }
+    points = newPoints;
+    triangles = ByteBuffer.allocateDirect(4 * n).order(ByteOrder.nativeOrder()).asIntBuffer();
+    distances = ByteBuffer.allocateDirect(8 * n).order(ByteOrder.nativeOrder()).asDoubleBuffer();
+    closest = ByteBuffer.allocateDirect(8 * 3 * n).order(ByteOrder.nativeOrder()).asDoubleBuffer();
+    capacity = n;
+  }
+
+  private static native int query(long model, DoubleBuffer points, double tolerance, IntBuffer triangles,
+      DoubleBuffer distances, DoubleBuffer closest, int from, int count, double[] R, double[] T);
+}
@@ -0,0 +1,174 @@
+#include <jni.h>
+
+#include "PQP.h"
+#include "MatVec.h"
+
+/*
+ * Native half of pqp.SegmentQuery: intersects a batch of segments with the
+ * OBB tree of one PQP_Model in a single JNI call.
+ *
+ * BVs are stored relative to their parent (see make_parent_relative in
+ * Build.cpp), so each segment is carried down the tree in the frame of the
+ * current box, while the triangles are tested in model space. Affine maps
+ * keep segment parameters, so the nearest hit found so far also clips the
+ * slab tests of the remaining boxes.
+ */
+
+/* Boxes are inflated by this much, so that flat boxes of planar faces do not
+ * lose contacts to round-off in the parent-relative transforms. */
+static const PQP_REAL BOX_EPS = 1e-9;
+
+/* BUILD_STATE of a model after EndModel(); the enum is private to PQP.cpp. */
+static const int BUILD_STATE_PROCESSED = 2;
+
+/* Determinant below which a segment counts as parallel to a triangle. */
+static const PQP_REAL PARALLEL_EPS = 1e-14;
+
+/* Slab test of segment a + s (b - a), s in [0, sMax], against the box
+ * [-d, d] in its own frame. */
+static inline bool
+SegmentOverlapsBox(const PQP_REAL a[3], const PQP_REAL b[3],
+                   const PQP_REAL d[3], PQP_REAL sMax)
+{
+  PQP_REAL lo = 0, hi = sMax;
+  for (int k = 0; k < 3; k++)
+  {
+    PQP_REAL e = d[k] + BOX_EPS;
+    PQP_REAL dir = b[k] - a[k];
+    if (dir == 0)
+    {
+      if (a[k] < -e || a[k] > e) return false;
+      continue;
+    }
+    PQP_REAL s0 = (-e - a[k]) / dir;
+    PQP_REAL s1 = (e - a[k]) / dir;
+    if (s0 > s1) { PQP_REAL tmp = s0; s0 = s1; s1 = tmp; }
+    if (s0 > lo) lo = s0;
+    if (s1 < hi) hi = s1;
+    if (lo > hi) return false;
+  }
+  return true;
+}
+
+/* Moller-Trumbore: on a hit, stores the segment parameter of the crossing
+ * in s. Segments parallel to the triangle do not hit. */
+static inline bool
+SegmentTriangle(const PQP_REAL p[3], const PQP_REAL q[3], const Tri *t,
+                PQP_REAL *s)
+{
+  PQP_REAL dir[3], e1[3], e2[3], h[3], w[3], g[3];
+  VmV(dir, q, p);
+  VmV(e1, t->p2, t->p1);
+  VmV(e2, t->p3, t->p1);
+  VcrossV(h, dir, e2);
+  PQP_REAL det = VdotV(e1, h);
+  if (det > -PARALLEL_EPS && det < PARALLEL_EPS) return false;
+  PQP_REAL inv = 1 / det;
+  VmV(w, p, t->p1);
+  PQP_REAL u = VdotV(w, h) * inv;
+  if (u < 0 || u > 1) return false;
+  VcrossV(g, w, e1);
+  PQP_REAL v = VdotV(dir, g) * inv;
+  if (v < 0 || u + v > 1) return false;
+  PQP_REAL r = VdotV(e2, g) * inv;
+  if (r < 0 || r > 1) return false;
+  *s = r;
+  return true;
+}
+
+/* Point p of world space in the frame of a model placed by R and T. */
+static inline void
+ToModel(const PQP_REAL R[3][3], const PQP_REAL T[3], const PQP_REAL p[3],
+        PQP_REAL out[3])
+{
+  PQP_REAL tmp[3];
+  VmV(tmp, p, T);
+  MTxV(out, R, tmp);
+}
+
+static void
+SegmentRecurse(PQP_Model *m, int bn,
+               const PQP_REAL a[3], const PQP_REAL b[3], // in the parent's frame
+               const PQP_REAL p[3], const PQP_REAL q[3], // in model space
+               int *hit, PQP_REAL *sHit)
+{
+  BV *bv = m->child(bn);
+  PQP_REAL tmp[3], la[3], lb[3];
+  VmV(tmp, a, bv->To);
+  MTxV(la, bv->R, tmp);
+  VmV(tmp, b, bv->To);
+  MTxV(lb, bv->R, tmp);
+  if (!SegmentOverlapsBox(la, lb, bv->d, *sHit)) return;
+
+  if (bv->Leaf())
+  {
+    Tri *t = &m->tris[-bv->first_child - 1];
+    PQP_REAL s;
+    if (SegmentTriangle(p, q, t, &s) && (*hit < 0 || s < *sHit))
+    {
+      *hit = t->id;
+      *sHit = s;
+    }
+    return;
+  }
+
+  SegmentRecurse(m, bv->first_child, la, lb, p, q, hit, sHit);
+  SegmentRecurse(m, bv->first_child + 1, la, lb, p, q, hit, sHit);
+}
+
+/*
+ * segments: 6 doubles (p, q) per segment; triangles and params receive the id
+ * of the nearest triangle crossed (-1 if none) and the segment parameter of
+ * the crossing. If rotation (row-major) and translation are not null, the
+ * model is placed by them, and segments are moved into its frame; rigid maps
+ * keep segment parameters. Only the segments from to from + count - 1 are
+ * intersected. Returns the number of them that hit, or -1 if the model has
+ * not been built or a buffer is not direct.
+ *
+ * The model is only read, so any number of threads may intersect disjoint
+ * ranges of segments with it at once.
+ */
+extern "C" JNIEXPORT jint JNICALL
+Java_pqp_SegmentQuery_intersect(JNIEnv *env, jclass, jlong modelPtr,
+                                jobject segments, jobject triangles,
+                                jobject params, jint from, jint count,
+                                jdoubleArray rotation, jdoubleArray translation)
+{
+  PQP_Model *m = reinterpret_cast<PQP_Model *>(modelPtr);
+  PQP_REAL *seg = static_cast<PQP_REAL *>(env->GetDirectBufferAddress(segments));
+  jint *tri = static_cast<jint *>(env->GetDirectBufferAddress(triangles));
+  PQP_REAL *s = static_cast<PQP_REAL *>(env->GetDirectBufferAddress(params));
+  if (m == 0 || m->build_state != BUILD_STATE_PROCESSED
+      || seg == 0 || tri == 0 || s == 0)
+    return -1;
+
+  PQP_REAL R[3][3], T[3], lp[3], lq[3];
+  bool placed = rotation != 0 && translation != 0;
+  if (placed)
+  {
+    env->GetDoubleArrayRegion(rotation, 0, 9, &R[0][0]);
+    env->GetDoubleArrayRegion(translation, 0, 3, T);
+  }
+
+  jint hits = 0;
+  for (jint k = from; k < from + count; k++)
+  {
+    const PQP_REAL *p = seg + 6 * k;
+    const PQP_REAL *q = p + 3;
+    if (placed)
+    {
+      ToModel(R, T, p, lp);
+      ToModel(R, T, q, lq);
+      p = lp;
+      q = lq;
+    }
+    int hit = -1;
+    PQP_REAL sHit = 1;
+    if (m->num_tris > 0)
+      SegmentRecurse(m, 0, p, q, p, q, &hit, &sHit);
+    tri[k] = hit;
+    s[k] = hit < 0 ? 1 : sHit;
+    if (hit >= 0) hits++;
+  }
+  return hits;
+}
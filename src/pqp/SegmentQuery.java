@@ -0,0 +1,154 @@
+package pqp;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * Batched segment queries against one PQP_Model. Segments are written into a
+ * direct buffer and intersected natively in a single JNI call; for every
+ * segment the call reports the nearest triangle it crosses and the segment
+ * parameter of the crossing. Unlike a PQP_Collide with a degenerate triangle
+ * per segment, no native model is built and no point is allocated per query.
+ *
+ * The buffers grow as needed and are reused between queries. add() and
+ * clear() are not thread safe; once the segments are added, any number of
+ * threads may intersect disjoint ranges of them, see intersect(PQP_Model,
+ * double[], double[], int, int).
+ */
+public class SegmentQuery {
+
+  private static final int DOUBLES_PER_SEGMENT = 6;
+
+  private DoubleBuffer segments;
+  private IntBuffer triangles;
+  private DoubleBuffer params;
+  private int capacity = 0;
+  private int size = 0;
+
+  public SegmentQuery() {
+    this(64);
+  }
+
+  public SegmentQuery(int capacity) {
+    ensureCapacity(Math.max(1, capacity));
+  }
+
+  /** Removes all segments; the results of the last query become invalid. */
+  public void clear() {
+    size = 0;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Appends the segment from (x0, y0, z0) to (x1, y1, z1).
+   *
+   * @return the index of the segment
+   */
+  public int add(double x0, double y0, double z0, double x1, double y1, double z1) {
+    if (size == capacity) {
+      ensureCapacity(Math.max(1, 2 * capacity));
+    }
+    int k = DOUBLES_PER_SEGMENT * size;
+    segments.put(k, x0);
+    segments.put(k + 1, y0);
+    segments.put(k + 2, z0);
+    segments.put(k + 3, x1);
+    segments.put(k + 4, y1);
+    segments.put(k + 5, z1);
+    return size++;
+  }
+
+  /**
+   * Intersects all segments with model, which must have been built with
+   * EndModel(). Results are read with getTriangle() and getParameter().
+   *
+   * @return the number of segments that hit model
+   */
+  public int intersect(PQP_Model model) {
+    return intersect(model, null, null);
+  }
+
+  /**
+   * Intersects all segments with model placed by the rotation R (row-major)
+   * and translation T, i.e. at R x + T for its vertices x; the hierarchy of
+   * model is not touched. R and T may both be null for no placement.
+   *
+   * @return the number of segments that hit model
+   */
+  public int intersect(PQP_Model model, double[] R, double[] T) {
+    return intersect(model, R, T, 0, size);
+  }
+
+  /**
+   * Like intersect(PQP_Model, double[], double[]), for the segments from to
+   * to - 1 only; the results of the other segments are left untouched. The
+   * model is only read, so calls for disjoint ranges may run concurrently.
+   *
+   * @return the number of those segments that hit model
+   */
+  public int intersect(PQP_Model model, double[] R, double[] T, int from, int to) {
+    if (from < 0 || to > size || from > to) {
+      throw new IndexOutOfBoundsException("range [" + from + ", " + to + ") of " + size + " segments");
+    }
+    int hits = intersect(PQP_Model.getCPtr(model), segments, triangles, params, from, to - from, R, T);
+    if (hits < 0) {
+      throw new IllegalStateException("PQP_Model has not been built");
+    }
+    return hits;
+  }
+
+  /**
+   * @return coordinate i of segment k: 0 to 2 are the start, 3 to 5 the end
+   */
+  public double getCoordinate(int k, int i) {
+    return segments.get(DOUBLES_PER_SEGMENT * k + i);
+  }
+
+  /**
+   * Stores the result of segment k, for backends that intersect the segments
+   * in Java instead of calling intersect(PQP_Model).
+   */
+  public void setResult(int k, int triangle, double s) {
+    triangles.put(k, triangle);
+    params.put(k, s);
+  }
+
+  /**
+   * @return the id (as passed to AddTri) of the nearest triangle crossed by
+   *         segment k in the last query, or -1 if it crossed none
+   */
+  public int getTriangle(int k) {
+    return triangles.get(k);
+  }
+
+  /**
+   * @return the parameter s in [0, 1] at which segment k entered its triangle,
+   *         i.e. the crossing is at p + s (q - p)
+   */
+  public double getParameter(int k) {
+    return params.get(k);
+  }
+
+  private void ensureCapacity(int n) {
+    if (n <= capacity) {
+      return;
+    }
+    DoubleBuffer newSegments = ByteBuffer.allocateDirect(8 * DOUBLES_PER_SEGMENT * n).order(ByteOrder.nativeOrder())
+        .asDoubleBuffer();
+    for (int k = 0; k < DOUBLES_PER_SEGMENT * size; k++) {
+      newSegments.put(k, segments.get(k));
+    }
+    segments = newSegments;
+    triangles = ByteBuffer.allocateDirect(4 * n).order(ByteOrder.nativeOrder()).asIntBuffer();
+    params = ByteBuffer.allocateDirect(8 * n).order(ByteOrder.nativeOrder()).asDoubleBuffer();
+    capacity = n;
+  }
+
+  private static native int intersect(long model, DoubleBuffer segments, IntBuffer triangles, DoubleBuffer params,
+      int from, int count, double[] R, double[] T);
+}
@@ -0,0 +1,22 @@
+package pqp;
+
+/** PQPBinding through the SWIG proxies; the fallback of the foreign binding. */
+class SwigBinding extends PQPBinding {
+
+  /** Holds the transforms of the current query; reset by every query. */
+  private final WrapperUtil transforms = new WrapperUtil();
+  private final PQP_CollideResult result = new PQP_CollideResult();
+
+  @Override
+  public int collide(double[] R1, double[] T1, PQP_Model m1, double[] R2, double[] T2, PQP_Model m2, int flag,
+      int[] pairs) {
+    transforms.reset();
+    checkResult(PQP.PQP_Collide(result, matrix(R1), transforms.newPoint(T1[0], T1[1], T1[2]), m1, matrix(R2),
+        transforms.newPoint(T2[0], T2[1], T2[2]), m2, flag));
+    return ContactPairs.copyPairs(result, pairs);
+  }
+
+  private SWIGTYPE_p_p_double matrix(double[] R) {
+    return transforms.new3x3Mat(R[0], R[1], R[2], R[3], R[4], R[5], R[6], R[7], R[8]);
+  }
+}
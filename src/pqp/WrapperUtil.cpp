@@ -1,7 +1,72 @@
 #include "WrapperUtil.h"
 
+#include <atomic>
+
+/* Bytes per arena block; a few thousand points. */
+static const size_t BLOCK_SIZE = 64 * 1024;
+
+/* Every allocation is rounded up to keep the next one aligned for PQP_REAL
+ * and pointers alike. */
+static const size_t ALIGN = sizeof(PQP_REAL) > sizeof(void*) ? sizeof(PQP_REAL) : sizeof(void*);
+
+static std::atomic<long long> totalInUse(0);
+static std::atomic<long long> totalReserved(0);
+
+struct WrapperUtil::Block {
+  Block* next;
+  size_t size;
+  char* data;
+};
+
+WrapperUtil::WrapperUtil() : first(0), current(0), used(0), inUse(0), reserved(0) {
+}
+
+WrapperUtil::~WrapperUtil() {
+  reset();
+  while (first) {
+    Block* next = first->next;
+    delete [] first->data;
+    delete first;
+    first = next;
+  }
+  totalReserved -= reserved;
+}
+
+void* WrapperUtil::allocate(size_t bytes) {
+  bytes = (bytes + ALIGN - 1) / ALIGN * ALIGN;
+  if (!current || used + bytes > current->size) {
+    // move on to the next kept block that is large enough, or add one
+    Block* next = current ? current->next : first;
+    while (next && bytes > next->size) {
+      next = next->next;
+    }
+    if (!next) {
+      next = new Block;
+      next->size = bytes > BLOCK_SIZE ? bytes : BLOCK_SIZE;
+      next->data = new char[next->size];
+      next->next = 0;
+      if (current) {
+        next->next = current->next;
+        current->next = next;
+      } else {
+        next->next = first;
+        first = next;
+      }
+      reserved += next->size;
+      totalReserved += next->size;
+    }
+    current = next;
+    used = 0;
+  }
+  void* p = current->data + used;
+  used += bytes;
+  inUse += bytes;
+  totalInUse += bytes;
+  return p;
+}
+
 PQP_REAL* WrapperUtil::newPoint(double x, double y, double z) {
-  PQP_REAL* pt = new PQP_REAL[3];
+  PQP_REAL* pt = static_cast<PQP_REAL*>(allocate(3 * sizeof(PQP_REAL)));
   pt[0] = x;
   pt[1] = y;
   pt[2] = z;
@@ -12,19 +77,37 @@ PQP_REAL** WrapperUtil::new3x3Mat(
     double a11, double a12, double a13,
     double a21, double a22, double a23,
     double a31, double a32, double a33) {
-  PQP_REAL** mat = new PQP_REAL*[3];
-  mat[0] = new PQP_REAL[3] {a11, a12, a13};
-  mat[1] = new PQP_REAL[3] {a21, a22, a23};
-  mat[2] = new PQP_REAL[3] {a31, a32, a33};
+  PQP_REAL** mat = static_cast<PQP_REAL**>(allocate(3 * sizeof(PQP_REAL*)));
+  mat[0] = newPoint(a11, a12, a13);
+  mat[1] = newPoint(a21, a22, a23);
+  mat[2] = newPoint(a31, a32, a33);
   return mat;
 }
 
 
 PQP_REAL** WrapperUtil::newI3() {
-  PQP_REAL** mat = new PQP_REAL*[3];
-  mat[0] = new PQP_REAL[3] {1, 0, 0};
-  mat[1] = new PQP_REAL[3] {0, 1, 0};
-  mat[2] = new PQP_REAL[3] {0, 0, 1};
-  return mat;
+  return new3x3Mat(1, 0, 0, 0, 1, 0, 0, 0, 1);
+}
+
+void WrapperUtil::reset() {
+  current = first;
+  used = 0;
+  totalInUse -= inUse;
+  inUse = 0;
+}
+
+long long WrapperUtil::bytesInUse() {
+  return inUse;
 }
 
+long long WrapperUtil::bytesReserved() {
+  return reserved;
+}
+
+long long WrapperUtil::totalBytesInUse() {
+  return totalInUse;
+}
+
+long long WrapperUtil::totalBytesReserved() {
+  return totalReserved;
+}
@@ -1,7 +1,21 @@
 #include "PQP_Internal.h"
 
+#include <cstddef>
+
+/*
+ * Points and matrices handed out by WrapperUtil live in an arena owned by the
+ * WrapperUtil: they are carved out of large blocks and never freed one by
+ * one. reset() releases all of them at once (the blocks are kept for reuse),
+ * and deleting the WrapperUtil frees the blocks. Use one WrapperUtil for
+ * values that must outlive a step and another, reset every step, for
+ * temporaries such as the vertices passed to PQP_Model::AddTri, which copies
+ * them.
+ */
 class WrapperUtil {
 public:
+  WrapperUtil();
+  ~WrapperUtil();
+
   PQP_REAL* newPoint(double x, double y, double z);
 
   PQP_REAL** new3x3Mat(double a11, double a12, double a13,
@@ -12,6 +26,33 @@ public:
   PQP_REAL** newI3();
 
   /* New 3x3 matrix whose column vectors are specified by points (PQP_REAL*). */
-  
-};
 
+  /* Invalidates every point and matrix of this WrapperUtil. */
+  void reset();
+
+  /* Bytes handed out since the last reset. */
+  long long bytesInUse();
+
+  /* Bytes of the blocks held by this WrapperUtil. */
+  long long bytesReserved();
+
+  /* bytesInUse() summed over all live WrapperUtils. */
+  static long long totalBytesInUse();
+
+  /* bytesReserved() summed over all live WrapperUtils. */
+  static long long totalBytesReserved();
+
+private:
+  struct Block;
+
+  WrapperUtil(const WrapperUtil&);
+  WrapperUtil& operator=(const WrapperUtil&);
+
+  void* allocate(size_t bytes);
+
+  Block* first;
+  Block* current;
+  size_t used;
+  long long inUse;
+  long long reserved;
+};
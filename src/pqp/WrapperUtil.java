@@ -8,20 +8,22 @@
 
 package pqp;
 
-public class WrapperUtil {
+public class WrapperUtil implements AutoCloseable {
   private transient long swigCPtr;
   protected transient boolean swigCMemOwn;
+  private transient java.lang.ref.Cleaner.Cleanable swigCleanable;
 
   protected WrapperUtil(long cPtr, boolean cMemoryOwn) {
     swigCMemOwn = cMemoryOwn;
     swigCPtr = cPtr;
+    swigCleanable = cMemoryOwn ? NativeCleaner.register(this, cPtr, PQPJNI::delete_WrapperUtil) : null;
   }
 
   protected static long getCPtr(WrapperUtil obj) {
     return (obj == null) ? 0 : obj.swigCPtr;
   }
 
-  protected void finalize() {
+  public void close() {
     delete();
   }
 
@@ -29,7 +31,7 @@ public class WrapperUtil {
     if (swigCPtr != 0) {
       if (swigCMemOwn) {
         swigCMemOwn = false;
-        PQPJNI.delete_WrapperUtil(swigCPtr);
+        swigCleanable.clean();
       }
       swigCPtr = 0;
     }
@@ -50,6 +52,26 @@ public class WrapperUtil {
     return (cPtr == 0) ? null : new SWIGTYPE_p_p_double(cPtr, false);
   }
 
+  public void reset() {
+    PQPJNI.WrapperUtil_reset(swigCPtr, this);
+  }
+
+  public long bytesInUse() {
+    return PQPJNI.WrapperUtil_bytesInUse(swigCPtr, this);
+  }
+
+  public long bytesReserved() {
+    return PQPJNI.WrapperUtil_bytesReserved(swigCPtr, this);
+  }
+
+  public static long totalBytesInUse() {
+    return PQPJNI.WrapperUtil_totalBytesInUse();
+  }
+
+  public static long totalBytesReserved() {
+    return PQPJNI.WrapperUtil_totalBytesReserved();
+  }
+
   public WrapperUtil() {
     this(PQPJNI.new_WrapperUtil(), true);
   }
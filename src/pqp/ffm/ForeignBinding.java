@@ -0,0 +1,94 @@
+package pqp.ffm;
+
+import static java.lang.foreign.ValueLayout.ADDRESS;
+import static java.lang.foreign.ValueLayout.JAVA_DOUBLE;
+import static java.lang.foreign.ValueLayout.JAVA_INT;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.SymbolLookup;
+import java.lang.invoke.MethodHandle;
+
+import pqp.PQPBinding;
+import pqp.PQP_Model;
+
+/**
+ * PQPBinding on java.lang.foreign (preview in JDK 21). Calls
+ * pqp_collide_pairs of ForeignPQP.cpp with the transforms and the pair buffer
+ * in segments of an automatic arena, so the contacts are written straight
+ * into memory Java reads, and copies them into the caller's array in one bulk
+ * copy. Obtain instances through PQPBinding.load().
+ */
+public class ForeignBinding extends PQPBinding {
+
+  private static final MethodHandle COLLIDE_PAIRS;
+  private static final MethodHandle COPY_PAIRS;
+
+  static {
+    System.loadLibrary("PQP");
+    Linker linker = Linker.nativeLinker();
+    SymbolLookup lookup = SymbolLookup.loaderLookup();
+    COLLIDE_PAIRS = linker.downcallHandle(lookup.find("pqp_collide_pairs").orElseThrow(),
+        FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS, ADDRESS, ADDRESS, ADDRESS, ADDRESS, JAVA_INT, ADDRESS,
+            JAVA_INT));
+    COPY_PAIRS = linker.downcallHandle(lookup.find("pqp_copy_pairs").orElseThrow(),
+        FunctionDescriptor.of(JAVA_INT, ADDRESS, JAVA_INT));
+  }
+
+  private final Arena arena = Arena.ofAuto();
+  private final MemorySegment R1 = arena.allocateArray(JAVA_DOUBLE, 9);
+  private final MemorySegment T1 = arena.allocateArray(JAVA_DOUBLE, 3);
+  private final MemorySegment R2 = arena.allocateArray(JAVA_DOUBLE, 9);
+  private final MemorySegment T2 = arena.allocateArray(JAVA_DOUBLE, 3);
+  /** Pairs of the last query, two ints each; grows to the largest query asked for. */
+  private MemorySegment shared = arena.allocateArray(JAVA_INT, 2 * 64);
+
+  @Override
+  public int collide(double[] R1, double[] T1, PQP_Model m1, double[] R2, double[] T2, PQP_Model m2, int flag,
+      int[] pairs) {
+    MemorySegment.copy(R1, 0, this.R1, JAVA_DOUBLE, 0, 9);
+    MemorySegment.copy(T1, 0, this.T1, JAVA_DOUBLE, 0, 3);
+    MemorySegment.copy(R2, 0, this.R2, JAVA_DOUBLE, 0, 9);
+    MemorySegment.copy(T2, 0, this.T2, JAVA_DOUBLE, 0, 3);
+    int n = call(m1, m2, flag);
+    int wanted = Math.min(n, pairs.length / 2);
+    int available = Math.min(n, capacity());
+    if (wanted > available) {
+      // more contacts than ever before: grow and fetch them from the same result
+      shared = arena.allocateArray(JAVA_INT, 2L * Math.max(wanted, 2 * capacity()));
+      try {
+        available = (int) COPY_PAIRS.invokeExact(shared, capacity());
+      } catch (Throwable t) {
+        throw new IllegalStateException(t);
+      }
+    }
+    MemorySegment.copy(shared, JAVA_INT, 0, pairs, 0, 2 * Math.min(wanted, available));
+    return n;
+  }
+
+  /**
+   * @return the pairs of the last query as consecutive (id1, id2) ints, as
+   *         many as fit, without copying them
+   */
+  public MemorySegment pairs() {
+    return shared;
+  }
+
+  private int capacity() {
+    return (int) (shared.byteSize() / (2 * Integer.BYTES));
+  }
+
+  private int call(PQP_Model m1, PQP_Model m2, int flag) {
+    int n;
+    try {
+      n = (int) COLLIDE_PAIRS.invokeExact(R1, T1, MemorySegment.ofAddress(address(m1)), R2, T2,
+          MemorySegment.ofAddress(address(m2)), flag, shared, capacity());
+    } catch (Throwable t) {
+      throw new IllegalStateException(t);
+    }
+    checkResult(n);
+    return n;
+  }
+}
@@ -16,6 +16,47 @@
 #include "WrapperUtil.h"
 %}
 
+/*
+ * Proxies free their native object through NativeCleaner instead of
+ * finalize(): close() (or delete()) frees it right away, and a Cleaner frees
+ * it if the proxy is dropped unclosed.
+ */
+%typemap(javainterfaces) SWIGTYPE "AutoCloseable"
+%typemap(javafinalize) SWIGTYPE ""
+%typemap(javabody) SWIGTYPE %{
+  private transient long swigCPtr;
+  protected transient boolean swigCMemOwn;
+  private transient java.lang.ref.Cleaner.Cleanable swigCleanable;
+
+  protected $javaclassname(long cPtr, boolean cMemoryOwn) {
+    swigCMemOwn = cMemoryOwn;
+    swigCPtr = cPtr;
+    swigCleanable = cMemoryOwn ? NativeCleaner.register(this, cPtr, $imclassname::delete_$javaclassname) : null;
+  }
+
+  protected static long getCPtr($javaclassname obj) {
+    return (obj == null) ? 0 : obj.swigCPtr;
+  }
+
+  public void close() {
+    delete();
+  }
+%}
+%typemap(javadestruct, methodname="delete", methodmodifiers="public synchronized") SWIGTYPE {
+    if (swigCPtr != 0) {
+      if (swigCMemOwn) {
+        swigCMemOwn = false;
+        swigCleanable.clean();
+      }
+      swigCPtr = 0;
+    }
+  }
+
+/*
+ * SWIG does not follow the #include of PQP.h; without the BV type macros the
+ * #if around PQP_Distance() and PQP_Tolerance() would hide them.
+ */
+%include "PQP_Compile.h"
 %include "PQP.h"
 %include "Build.h"
 %include "BV.h"
@@ -23,7 +64,6 @@
 %include "GetTime.h"
 %include "MatVec.h"
 %include "OBB_Disjoint.h"
-%include "PQP_Compile.h"
 %include "PQP_Internal.h"
 %include "RectDist.h"
 %include "Tri.h"
@@ -33,3 +73,4 @@
 
 %array_class(PQP_REAL, DoubleArray);
 
+
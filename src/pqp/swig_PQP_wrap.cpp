@@ -395,6 +395,154 @@ SWIGEXPORT jint JNICALL Java_pqp_PQPJNI_PQP_1Collide(JNIEnv *jenv, jclass jcls,
   
   
   
+  return jresult;
+}
+
+
+SWIGEXPORT jint JNICALL Java_pqp_PQPJNI_PQP_1Distance_1_1SWIG_10(JNIEnv *jenv, jclass jcls, jlong jarg1, jobject jarg1_, jlong jarg2, jlong jarg3, jlong jarg4, jobject jarg4_, jlong jarg5, jlong jarg6, jlong jarg7, jobject jarg7_, jdouble jarg8, jdouble jarg9, jint jarg10) {
+  jint jresult = 0 ;
+  PQP_DistanceResult *arg1 = (PQP_DistanceResult *) 0 ;
+  PQP_REAL **arg2 ;
+  PQP_REAL *arg3 ;
+  PQP_Model *arg4 = (PQP_Model *) 0 ;
+  PQP_REAL **arg5 ;
+  PQP_REAL *arg6 ;
+  PQP_Model *arg7 = (PQP_Model *) 0 ;
+  PQP_REAL arg8 ;
+  PQP_REAL arg9 ;
+  int arg10 ;
+  int result;
+  
+  (void)jenv;
+  (void)jcls;
+  (void)jarg1_;
+  (void)jarg4_;
+  (void)jarg7_;
+  arg1 = *(PQP_DistanceResult **)&jarg1; 
+  arg2 = *(PQP_REAL ***)&jarg2; 
+  arg3 = *(PQP_REAL **)&jarg3; 
+  arg4 = *(PQP_Model **)&jarg4; 
+  arg5 = *(PQP_REAL ***)&jarg5; 
+  arg6 = *(PQP_REAL **)&jarg6; 
+  arg7 = *(PQP_Model **)&jarg7; 
+  arg8 = (PQP_REAL)jarg8; 
+  arg9 = (PQP_REAL)jarg9; 
+  arg10 = (int)jarg10; 
+  result = (int)PQP_Distance(arg1,arg2,arg3,arg4,arg5,arg6,arg7,arg8,arg9,arg10);
+  jresult = (jint)result; 
+  
+  
+  
+  
+  return jresult;
+}
+
+
+SWIGEXPORT jint JNICALL Java_pqp_PQPJNI_PQP_1Distance_1_1SWIG_11(JNIEnv *jenv, jclass jcls, jlong jarg1, jobject jarg1_, jlong jarg2, jlong jarg3, jlong jarg4, jobject jarg4_, jlong jarg5, jlong jarg6, jlong jarg7, jobject jarg7_, jdouble jarg8, jdouble jarg9) {
+  jint jresult = 0 ;
+  PQP_DistanceResult *arg1 = (PQP_DistanceResult *) 0 ;
+  PQP_REAL **arg2 ;
+  PQP_REAL *arg3 ;
+  PQP_Model *arg4 = (PQP_Model *) 0 ;
+  PQP_REAL **arg5 ;
+  PQP_REAL *arg6 ;
+  PQP_Model *arg7 = (PQP_Model *) 0 ;
+  PQP_REAL arg8 ;
+  PQP_REAL arg9 ;
+  int result;
+  
+  (void)jenv;
+  (void)jcls;
+  (void)jarg1_;
+  (void)jarg4_;
+  (void)jarg7_;
+  arg1 = *(PQP_DistanceResult **)&jarg1; 
+  arg2 = *(PQP_REAL ***)&jarg2; 
+  arg3 = *(PQP_REAL **)&jarg3; 
+  arg4 = *(PQP_Model **)&jarg4; 
+  arg5 = *(PQP_REAL ***)&jarg5; 
+  arg6 = *(PQP_REAL **)&jarg6; 
+  arg7 = *(PQP_Model **)&jarg7; 
+  arg8 = (PQP_REAL)jarg8; 
+  arg9 = (PQP_REAL)jarg9; 
+  result = (int)PQP_Distance(arg1,arg2,arg3,arg4,arg5,arg6,arg7,arg8,arg9);
+  jresult = (jint)result; 
+  
+  
+  
+  
+  return jresult;
+}
+
+
+SWIGEXPORT jint JNICALL Java_pqp_PQPJNI_PQP_1Tolerance_1_1SWIG_10(JNIEnv *jenv, jclass jcls, jlong jarg1, jobject jarg1_, jlong jarg2, jlong jarg3, jlong jarg4, jobject jarg4_, jlong jarg5, jlong jarg6, jlong jarg7, jobject jarg7_, jdouble jarg8, jint jarg9) {
+  jint jresult = 0 ;
+  PQP_ToleranceResult *arg1 = (PQP_ToleranceResult *) 0 ;
+  PQP_REAL **arg2 ;
+  PQP_REAL *arg3 ;
+  PQP_Model *arg4 = (PQP_Model *) 0 ;
+  PQP_REAL **arg5 ;
+  PQP_REAL *arg6 ;
+  PQP_Model *arg7 = (PQP_Model *) 0 ;
+  PQP_REAL arg8 ;
+  int arg9 ;
+  int result;
+  
+  (void)jenv;
+  (void)jcls;
+  (void)jarg1_;
+  (void)jarg4_;
+  (void)jarg7_;
+  arg1 = *(PQP_ToleranceResult **)&jarg1; 
+  arg2 = *(PQP_REAL ***)&jarg2; 
+  arg3 = *(PQP_REAL **)&jarg3; 
+  arg4 = *(PQP_Model **)&jarg4; 
+  arg5 = *(PQP_REAL ***)&jarg5; 
+  arg6 = *(PQP_REAL **)&jarg6; 
+  arg7 = *(PQP_Model **)&jarg7; 
+  arg8 = (PQP_REAL)jarg8; 
+  arg9 = (int)jarg9; 
+  result = (int)PQP_Tolerance(arg1,arg2,arg3,arg4,arg5,arg6,arg7,arg8,arg9);
+  jresult = (jint)result; 
+  
+  
+  
+  
+  return jresult;
+}
+
+
+SWIGEXPORT jint JNICALL Java_pqp_PQPJNI_PQP_1Tolerance_1_1SWIG_11(JNIEnv *jenv, jclass jcls, jlong jarg1, jobject jarg1_, jlong jarg2, jlong jarg3, jlong jarg4, jobject jarg4_, jlong jarg5, jlong jarg6, jlong jarg7, jobject jarg7_, jdouble jarg8) {
+  jint jresult = 0 ;
+  PQP_ToleranceResult *arg1 = (PQP_ToleranceResult *) 0 ;
+  PQP_REAL **arg2 ;
+  PQP_REAL *arg3 ;
+  PQP_Model *arg4 = (PQP_Model *) 0 ;
+  PQP_REAL **arg5 ;
+  PQP_REAL *arg6 ;
+  PQP_Model *arg7 = (PQP_Model *) 0 ;
+  PQP_REAL arg8 ;
+  int result;
+  
+  (void)jenv;
+  (void)jcls;
+  (void)jarg1_;
+  (void)jarg4_;
+  (void)jarg7_;
+  arg1 = *(PQP_ToleranceResult **)&jarg1; 
+  arg2 = *(PQP_REAL ***)&jarg2; 
+  arg3 = *(PQP_REAL **)&jarg3; 
+  arg4 = *(PQP_Model **)&jarg4; 
+  arg5 = *(PQP_REAL ***)&jarg5; 
+  arg6 = *(PQP_REAL **)&jarg6; 
+  arg7 = *(PQP_Model **)&jarg7; 
+  arg8 = (PQP_REAL)jarg8; 
+  result = (int)PQP_Tolerance(arg1,arg2,arg3,arg4,arg5,arg6,arg7,arg8);
+  jresult = (jint)result; 
+  
+  
+  
+  
   return jresult;
 }
 
@@ -3865,6 +4013,71 @@ SWIGEXPORT jlong JNICALL Java_pqp_PQPJNI_WrapperUtil_1newI3(JNIEnv *jenv, jclass
 }
 
 
+SWIGEXPORT void JNICALL Java_pqp_PQPJNI_WrapperUtil_1reset(JNIEnv *jenv, jclass jcls, jlong jarg1, jobject jarg1_) {
+  WrapperUtil *arg1 = (WrapperUtil *) 0 ;
+  
+  (void)jenv;
+  (void)jcls;
+  (void)jarg1_;
+  arg1 = *(WrapperUtil **)&jarg1; 
+  (arg1)->reset();
+}
+
+
+SWIGEXPORT jlong JNICALL Java_pqp_PQPJNI_WrapperUtil_1bytesInUse(JNIEnv *jenv, jclass jcls, jlong jarg1, jobject jarg1_) {
+  jlong jresult = 0 ;
+  WrapperUtil *arg1 = (WrapperUtil *) 0 ;
+  long long result;
+  
+  (void)jenv;
+  (void)jcls;
+  (void)jarg1_;
+  arg1 = *(WrapperUtil **)&jarg1; 
+  result = (long long)(arg1)->bytesInUse();
+  jresult = (jlong)result; 
+  return jresult;
+}
+
+
+SWIGEXPORT jlong JNICALL Java_pqp_PQPJNI_WrapperUtil_1bytesReserved(JNIEnv *jenv, jclass jcls, jlong jarg1, jobject jarg1_) {
+  jlong jresult = 0 ;
+  WrapperUtil *arg1 = (WrapperUtil *) 0 ;
+  long long result;
+  
+  (void)jenv;
+  (void)jcls;
+  (void)jarg1_;
+  arg1 = *(WrapperUtil **)&jarg1; 
+  result = (long long)(arg1)->bytesReserved();
+  jresult = (jlong)result; 
+  return jresult;
+}
+
+
+SWIGEXPORT jlong JNICALL Java_pqp_PQPJNI_WrapperUtil_1totalBytesInUse(JNIEnv *jenv, jclass jcls) {
+  jlong jresult = 0 ;
+  long long result;
+  
+  (void)jenv;
+  (void)jcls;
+  result = (long long)WrapperUtil::totalBytesInUse();
+  jresult = (jlong)result; 
+  return jresult;
+}
+
+
+SWIGEXPORT jlong JNICALL Java_pqp_PQPJNI_WrapperUtil_1totalBytesReserved(JNIEnv *jenv, jclass jcls) {
+  jlong jresult = 0 ;
+  long long result;
+  
+  (void)jenv;
+  (void)jcls;
+  result = (long long)WrapperUtil::totalBytesReserved();
+  jresult = (jlong)result; 
+  return jresult;
+}
+
+
 SWIGEXPORT jlong JNICALL Java_pqp_PQPJNI_new_1WrapperUtil(JNIEnv *jenv, jclass jcls) {
   jlong jresult = 0 ;
   WrapperUtil *result = 0 ;
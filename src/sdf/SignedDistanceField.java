@@ -0,0 +1,417 @@
+package sdf;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+import bvh.AabbTree;
+import colliders.Collider;
+
+/**
+ * Narrow-band signed distance field of a triangle mesh, sampled on a regular
+ * grid of nodes. Distances are exact within bandCells cells of the surface
+ * and clamped to the band beyond it. They are positive on the side the
+ * triangle normals point to, oriented as by particles.Triangle.getNormal(),
+ * i.e. (c - a) x (b - a) for the triangle (a, b, c). A query is a trilinear
+ * lookup of the eight surrounding nodes, so contacts against a mesh of any
+ * size cost the same.
+ *
+ * The band nodes are found by rasterizing the triangles' boxes and each is
+ * resolved by a closest-triangle query of an AabbTree. Signs come from the
+ * angle-weighted pseudo-normal of the closest feature (face, edge or vertex),
+ * which is exact for closed, consistently oriented meshes; nodes beyond the
+ * band take the sign of the band they are connected to.
+ */
+public class SignedDistanceField implements Collider {
+
+  /** First int of a saved field, and the version of its layout. */
+  private static final int MAGIC = 0x50424453; // "PBDS"
+  private static final int VERSION = 1;
+
+  /** Barycentric coordinate below which a closest point lies on an edge. */
+  private static final double FEATURE_EPS = 1e-9;
+
+  private final long key;
+  private final double cellSize;
+  private final int bandCells;
+  private final double originX, originY, originZ;
+  private final int nx, ny, nz;
+  /** Node values, x fastest. */
+  private final double[] phi;
+
+  private SignedDistanceField(long key, double cellSize, int bandCells, double originX, double originY,
+      double originZ, int nx, int ny, int nz, double[] phi) {
+    this.key = key;
+    this.cellSize = cellSize;
+    this.bandCells = bandCells;
+    this.originX = originX;
+    this.originY = originY;
+    this.originZ = originZ;
+    this.nx = nx;
+    this.ny = ny;
+    this.nz = nz;
+    this.phi = phi;
+  }
+
+  /**
+   * Builds the field of a mesh.
+   *
+   * @param x
+   *          three coordinates per vertex
+   * @param faces
+   *          three vertex indices per triangle
+   * @param cellSize
+   *          the spacing of the grid nodes
+   * @param bandCells
+   *          the width of the band of exact distances, in cells
+   */
+  public static SignedDistanceField build(double[] x, int[] faces, double cellSize, int bandCells) {
+    if (cellSize <= 0 || bandCells < 1) {
+      throw new IllegalArgumentException("cellSize and bandCells must be positive");
+    }
+    double band = bandCells * cellSize;
+    double[] min = { Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY };
+    double[] max = { Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY };
+    for (int f : faces) {
+      for (int k = 0; k < 3; k++) {
+        min[k] = Math.min(min[k], x[3 * f + k]);
+        max[k] = Math.max(max[k], x[3 * f + k]);
+      }
+    }
+    int[] n = new int[3];
+    for (int k = 0; k < 3; k++) {
+      min[k] -= band;
+      n[k] = (int) Math.ceil((max[k] + band - min[k]) / cellSize) + 1;
+    }
+    double[] phi = new double[n[0] * n[1] * n[2]];
+    SignedDistanceField field = new SignedDistanceField(key(x, faces, cellSize, bandCells), cellSize, bandCells,
+        min[0], min[1], min[2], n[0], n[1], n[2], phi);
+    field.fill(x, faces);
+    return field;
+  }
+
+  private void fill(double[] x, int[] faces) {
+    double band = bandCells * cellSize;
+    AabbTree tree = new AabbTree(x, faces);
+    AabbTree.Hit hit = new AabbTree.Hit();
+    PseudoNormals normals = new PseudoNormals(x, faces);
+
+    // band nodes: within the band-grown box of some triangle
+    boolean[] inBand = new boolean[phi.length];
+    for (int t = 0; t < faces.length / 3; t++) {
+      int[] lo = new int[3], hi = new int[3];
+      for (int k = 0; k < 3; k++) {
+        double a = x[3 * faces[3 * t] + k], b = x[3 * faces[3 * t + 1] + k], c = x[3 * faces[3 * t + 2] + k];
+        double o = origin(k);
+        lo[k] = Math.max(0, (int) Math.floor((Math.min(a, Math.min(b, c)) - band - o) / cellSize));
+        hi[k] = Math.min(size(k) - 1, (int) Math.ceil((Math.max(a, Math.max(b, c)) + band - o) / cellSize));
+      }
+      for (int k = lo[2]; k <= hi[2]; k++) {
+        for (int j = lo[1]; j <= hi[1]; j++) {
+          for (int i = lo[0]; i <= hi[0]; i++) {
+            inBand[index(i, j, k)] = true;
+          }
+        }
+      }
+    }
+
+    double[] normal = new double[3];
+    // 0: unknown, +-1: sign settled
+    byte[] sign = new byte[phi.length];
+    ArrayDeque<Integer> settled = new ArrayDeque<>();
+    for (int k = 0; k < nz; k++) {
+      for (int j = 0; j < ny; j++) {
+        for (int i = 0; i < nx; i++) {
+          int v = index(i, j, k);
+          double px = originX + i * cellSize, py = originY + j * cellSize, pz = originZ + k * cellSize;
+          if (!inBand[v] || !tree.closestTriangle(px, py, pz, band, hit)) {
+            phi[v] = band;
+            continue;
+          }
+          normals.at(hit.triangle, hit.x, hit.y, hit.z, normal);
+          double side = (px - hit.x) * normal[0] + (py - hit.y) * normal[1] + (pz - hit.z) * normal[2];
+          sign[v] = (byte) (side < 0 ? -1 : 1);
+          phi[v] = sign[v] * hit.distance;
+          settled.add(v);
+        }
+      }
+    }
+
+    // the nodes beyond the band take the sign of the band around them
+    while (!settled.isEmpty()) {
+      int v = settled.poll();
+      int i = v % nx, j = (v / nx) % ny, k = v / (nx * ny);
+      for (int d = 0; d < 6; d++) {
+        int a = i + (d == 0 ? -1 : d == 1 ? 1 : 0);
+        int b = j + (d == 2 ? -1 : d == 3 ? 1 : 0);
+        int c = k + (d == 4 ? -1 : d == 5 ? 1 : 0);
+        if (a < 0 || b < 0 || c < 0 || a >= nx || b >= ny || c >= nz) {
+          continue;
+        }
+        int w = index(a, b, c);
+        if (sign[w] == 0) {
+          sign[w] = sign[v];
+          phi[w] = sign[v] * band;
+          settled.add(w);
+        }
+      }
+    }
+  }
+
+  /**
+   * Samples the field at (x, y, z). Beyond the grid, which covers the mesh
+   * and its band, the distance is the band width and the gradient zero.
+   *
+   * @param gradient
+   *          if not null, receives the gradient of the interpolated field;
+   *          within the band it approximates the unit normal
+   * @return the signed distance, clamped to the band
+   */
+  @Override
+  public double distance(double x, double y, double z, double[] gradient) {
+    double fx = (x - originX) / cellSize, fy = (y - originY) / cellSize, fz = (z - originZ) / cellSize;
+    int i = (int) Math.floor(fx), j = (int) Math.floor(fy), k = (int) Math.floor(fz);
+    if (i < 0 || j < 0 || k < 0 || i >= nx - 1 || j >= ny - 1 || k >= nz - 1) {
+      if (gradient != null) {
+        gradient[0] = gradient[1] = gradient[2] = 0;
+      }
+      return bandCells * cellSize;
+    }
+    double u = fx - i, v = fy - j, w = fz - k;
+    int p = index(i, j, k);
+    int sy = nx, sz = nx * ny;
+    double c000 = phi[p], c100 = phi[p + 1], c010 = phi[p + sy], c110 = phi[p + sy + 1];
+    double c001 = phi[p + sz], c101 = phi[p + sz + 1], c011 = phi[p + sz + sy], c111 = phi[p + sz + sy + 1];
+    // interpolate along x, then y, then z
+    double c00 = c000 + u * (c100 - c000), c10 = c010 + u * (c110 - c010);
+    double c01 = c001 + u * (c101 - c001), c11 = c011 + u * (c111 - c011);
+    double c0 = c00 + v * (c10 - c00), c1 = c01 + v * (c11 - c01);
+    if (gradient != null) {
+      double dx0 = (1 - v) * (c100 - c000) + v * (c110 - c010);
+      double dx1 = (1 - v) * (c101 - c001) + v * (c111 - c011);
+      gradient[0] = ((1 - w) * dx0 + w * dx1) / cellSize;
+      gradient[1] = ((1 - w) * (c10 - c00) + w * (c11 - c01)) / cellSize;
+      gradient[2] = (c1 - c0) / cellSize;
+    }
+    return c0 + w * (c1 - c0);
+  }
+
+  public double getCellSize() {
+    return cellSize;
+  }
+
+  public int getBandCells() {
+    return bandCells;
+  }
+
+  /** @return the number of grid nodes along axis (0 to 2) */
+  public int size(int axis) {
+    return axis == 0 ? nx : axis == 1 ? ny : nz;
+  }
+
+  /** @return the key of the mesh and settings the field was built for; see key() */
+  public long getKey() {
+    return key;
+  }
+
+  private double origin(int axis) {
+    return axis == 0 ? originX : axis == 1 ? originY : originZ;
+  }
+
+  private int index(int i, int j, int k) {
+    return (k * ny + j) * nx + i;
+  }
+
+  /**
+   * A hash of the triangles' vertex positions and the grid settings, stored
+   * with a saved field so that a cache file can tell it is stale.
+   */
+  public static long key(double[] x, int[] faces, double cellSize, int bandCells) {
+    // FNV-1a over the raw bits
+    long h = 0xcbf29ce484222325L;
+    h = mix(h, Double.doubleToLongBits(cellSize));
+    h = mix(h, bandCells);
+    for (int f : faces) {
+      h = mix(h, f);
+      for (int k = 0; k < 3; k++) {
+        h = mix(h, Double.doubleToLongBits(x[3 * f + k]));
+      }
+    }
+    return h;
+  }
+
+  private static long mix(long h, long value) {
+    for (int b = 0; b < 8; b++) {
+      h ^= (value >>> (8 * b)) & 0xff;
+      h *= 0x100000001b3L;
+    }
+    return h;
+  }
+
+  /** Writes the field to file, in a versioned binary layout. */
+  public void save(File file) throws IOException {
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeLong(key);
+      out.writeDouble(cellSize);
+      out.writeInt(bandCells);
+      out.writeDouble(originX);
+      out.writeDouble(originY);
+      out.writeDouble(originZ);
+      out.writeInt(nx);
+      out.writeInt(ny);
+      out.writeInt(nz);
+      for (double value : phi) {
+        out.writeDouble(value);
+      }
+    }
+  }
+
+  /**
+   * Reads a field written by save().
+   *
+   * @return the field, or null if file is missing, of another version, or
+   *         was built for another key
+   */
+  public static SignedDistanceField load(File file, long key) throws IOException {
+    if (!file.isFile()) {
+      return null;
+    }
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readLong() != key) {
+        return null;
+      }
+      double cellSize = in.readDouble();
+      int bandCells = in.readInt();
+      double ox = in.readDouble(), oy = in.readDouble(), oz = in.readDouble();
+      int nx = in.readInt(), ny = in.readInt(), nz = in.readInt();
+      double[] phi = new double[nx * ny * nz];
+      for (int v = 0; v < phi.length; v++) {
+        phi[v] = in.readDouble();
+      }
+      return new SignedDistanceField(key, cellSize, bandCells, ox, oy, oz, nx, ny, nz, phi);
+    }
+  }
+
+  /**
+   * Angle-weighted pseudo-normals (Baerentzen and Aanaes 2005) of the faces,
+   * edges and vertices of a mesh. The sign of (p - c) . n, with c the point
+   * of the mesh closest to p and n the pseudo-normal of the feature c lies
+   * on, tells the side of p even where c is on an edge or a vertex.
+   */
+  private static final class PseudoNormals {
+    private final double[] x;
+    private final int[] faces;
+    private final double[] faceNormals;
+    private final double[] vertexNormals;
+    /** Per edge (ordered vertex pair), the sum of the normals of its faces. */
+    private final Map<Long, double[]> edgeNormals = new HashMap<>();
+
+    PseudoNormals(double[] x, int[] faces) {
+      this.x = x;
+      this.faces = faces;
+      int numTriangles = faces.length / 3;
+      faceNormals = new double[3 * numTriangles];
+      int maxVertex = 0;
+      for (int f : faces) {
+        maxVertex = Math.max(maxVertex, f);
+      }
+      vertexNormals = new double[3 * (maxVertex + 1)];
+      for (int t = 0; t < numTriangles; t++) {
+        int a = faces[3 * t], b = faces[3 * t + 1], c = faces[3 * t + 2];
+        double[] n = new double[3];
+        cross(x, a, c, b, n);
+        double length = Math.sqrt(n[0] * n[0] + n[1] * n[1] + n[2] * n[2]);
+        if (length == 0) {
+          continue;
+        }
+        for (int k = 0; k < 3; k++) {
+          faceNormals[3 * t + k] = n[k] / length;
+        }
+        int[] corners = { a, b, c };
+        for (int m = 0; m < 3; m++) {
+          int v = corners[m], v1 = corners[(m + 1) % 3], v2 = corners[(m + 2) % 3];
+          double angle = angle(x, v, v1, v2);
+          double[] e = edgeNormals.computeIfAbsent(edgeKey(v, v1), key -> new double[3]);
+          for (int k = 0; k < 3; k++) {
+            vertexNormals[3 * v + k] += angle * faceNormals[3 * t + k];
+            e[k] += faceNormals[3 * t + k];
+          }
+        }
+      }
+    }
+
+    /** The pseudo-normal at the point (cx, cy, cz) of triangle t into out. */
+    void at(int t, double cx, double cy, double cz, double[] out) {
+      int[] v = { faces[3 * t], faces[3 * t + 1], faces[3 * t + 2] };
+      double[] bary = new double[3];
+      barycentric(t, cx, cy, cz, bary);
+      int zeros = 0, nonZero = -1, zero = -1;
+      for (int m = 0; m < 3; m++) {
+        if (bary[m] < FEATURE_EPS) {
+          zeros++;
+          zero = m;
+        } else {
+          nonZero = m;
+        }
+      }
+      if (zeros == 2) {
+        // on a vertex
+        System.arraycopy(vertexNormals, 3 * v[nonZero], out, 0, 3);
+      } else if (zeros == 1) {
+        // on the edge opposite corner zero
+        double[] e = edgeNormals.get(edgeKey(v[(zero + 1) % 3], v[(zero + 2) % 3]));
+        System.arraycopy(e, 0, out, 0, 3);
+      } else {
+        System.arraycopy(faceNormals, 3 * t, out, 0, 3);
+      }
+    }
+
+    private void barycentric(int t, double px, double py, double pz, double[] out) {
+      int a = 3 * faces[3 * t], b = 3 * faces[3 * t + 1], c = 3 * faces[3 * t + 2];
+      double e0x = x[b] - x[a], e0y = x[b + 1] - x[a + 1], e0z = x[b + 2] - x[a + 2];
+      double e1x = x[c] - x[a], e1y = x[c + 1] - x[a + 1], e1z = x[c + 2] - x[a + 2];
+      double e2x = px - x[a], e2y = py - x[a + 1], e2z = pz - x[a + 2];
+      double d00 = e0x * e0x + e0y * e0y + e0z * e0z, d01 = e0x * e1x + e0y * e1y + e0z * e1z;
+      double d11 = e1x * e1x + e1y * e1y + e1z * e1z;
+      double d20 = e2x * e0x + e2y * e0y + e2z * e0z, d21 = e2x * e1x + e2y * e1y + e2z * e1z;
+      double denom = d00 * d11 - d01 * d01;
+      double v = (d11 * d20 - d01 * d21) / denom;
+      double w = (d00 * d21 - d01 * d20) / denom;
+      out[0] = 1 - v - w;
+      out[1] = v;
+      out[2] = w;
+    }
+
+    private static long edgeKey(int a, int b) {
+      return a < b ? (long) a << 32 | b : (long) b << 32 | a;
+    }
+
+    /** (x[b] - x[a]) x (x[c] - x[a]) into out. */
+    private static void cross(double[] x, int a, int b, int c, double[] out) {
+      double ux = x[3 * b] - x[3 * a], uy = x[3 * b + 1] - x[3 * a + 1], uz = x[3 * b + 2] - x[3 * a + 2];
+      double vx = x[3 * c] - x[3 * a], vy = x[3 * c + 1] - x[3 * a + 1], vz = x[3 * c + 2] - x[3 * a + 2];
+      out[0] = uy * vz - uz * vy;
+      out[1] = uz * vx - ux * vz;
+      out[2] = ux * vy - uy * vx;
+    }
+
+    /** The angle at corner v between the edges to v1 and v2. */
+    private static double angle(double[] x, int v, int v1, int v2) {
+      double ux = x[3 * v1] - x[3 * v], uy = x[3 * v1 + 1] - x[3 * v + 1], uz = x[3 * v1 + 2] - x[3 * v + 2];
+      double wx = x[3 * v2] - x[3 * v], wy = x[3 * v2 + 1] - x[3 * v + 1], wz = x[3 * v2 + 2] - x[3 * v + 2];
+      double cos = (ux * wx + uy * wy + uz * wz)
+          / Math.sqrt((ux * ux + uy * uy + uz * uz) * (wx * wx + wy * wy + wz * wz));
+      return Math.acos(Math.max(-1, Math.min(1, cos)));
+    }
+  }
+}
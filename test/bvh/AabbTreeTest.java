@@ -0,0 +1,252 @@
+package bvh;
+
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.ArrayList;
+
+import javax.vecmath.Point3d;
+import javax.vecmath.Point3i;
+import javax.vecmath.Tuple2i;
+import javax.vecmath.Tuple3i;
+
+import org.junit.Test;
+
+import particles.GridMeshes;
+import pqp.PQPHelper;
+import pqp.PQP_Model;
+
+public class AabbTreeTest {
+
+  private static final int N = 24;
+
+  /** A bumpy height field over the unit square, at height y0. */
+  private static double[] heightField(double y0, double phase) {
+    double[] x = new double[3 * N * N];
+    for (int i = 0; i < N; i++) {
+      for (int j = 0; j < N; j++) {
+        int v = 3 * (i * N + j);
+        double u = i / (double) (N - 1), w = j / (double) (N - 1);
+        x[v] = u;
+        x[v + 1] = y0 + 0.1 * Math.sin(7 * u + phase) * Math.cos(5 * w);
+        x[v + 2] = w;
+      }
+    }
+    return x;
+  }
+
+  /** Brute-force nearest crossing: { triangle, s }, triangle -1 if none. */
+  private static double[] bruteForceSegment(double[] x, int[] faces, double[] p, double[] q) {
+    double best = Double.POSITIVE_INFINITY;
+    int triangle = -1;
+    for (int t = 0; t < faces.length / 3; t++) {
+      AabbTree single = new AabbTree(x, new int[] { faces[3 * t], faces[3 * t + 1], faces[3 * t + 2] });
+      AabbTree.Hit hit = new AabbTree.Hit();
+      if (single.intersectSegment(p[0], p[1], p[2], q[0], q[1], q[2], hit) && hit.s < best) {
+        best = hit.s;
+        triangle = t;
+      }
+    }
+    return new double[] { triangle, best };
+  }
+
+  @Test
+  public void testSegmentMatchesBruteForce() {
+    int[] faces = GridMeshes.faces(N);
+    double[] x = heightField(0, 0);
+    AabbTree tree = new AabbTree(x, faces);
+    AabbTree.Hit hit = new AabbTree.Hit();
+    Random random = new Random(1);
+    int hits = 0;
+    for (int k = 0; k < 200; k++) {
+      double[] p = { random.nextDouble(), 0.4 * random.nextDouble() - 0.2, random.nextDouble() };
+      double[] q = { p[0] + 0.2 * random.nextGaussian(), 0.4 * random.nextDouble() - 0.2,
+          p[2] + 0.2 * random.nextGaussian() };
+      double[] expected = bruteForceSegment(x, faces, p, q);
+      boolean found = tree.intersectSegment(p[0], p[1], p[2], q[0], q[1], q[2], hit);
+      assertEquals(expected[0] >= 0, found);
+      if (found) {
+        hits++;
+        assertEquals(expected[1], hit.s, 1e-12);
+      }
+    }
+    assertTrue(hits > 20);
+  }
+
+  @Test
+  public void testCachedLeafFollowsCoherentSegments() {
+    int[] faces = GridMeshes.faces(N);
+    double[] x = heightField(0, 0);
+    AabbTree tree = new AabbTree(x, faces);
+    AabbTree.Hit hit = new AabbTree.Hit();
+    AabbTree.Hit full = new AabbTree.Hit();
+    tree.setLeafMargin(0.3);
+
+    // a particle pushed through the surface at the same spot on every step
+    assertTrue(tree.intersectSegment(0.31, 0.3, 0.57, 0.31, -0.3, 0.57, hit));
+    int leaf = hit.leaf;
+    double y = 0.3 - 0.6 * hit.s;
+    assertTrue(leaf >= 0);
+    for (int step = 0; step < 10; step++) {
+      double z = 0.57 + 0.0005 * step;
+      assertTrue(tree.intersectSegment(0.31, 0.2, z, 0.31, -0.2, z, leaf, hit));
+      assertTrue(tree.intersectSegment(0.31, 0.2, z, 0.31, -0.2, z, full));
+      assertEquals(full.triangle, hit.triangle);
+      assertEquals(full.s, hit.s, 0);
+      assertEquals(leaf, hit.leaf);
+    }
+
+    // a miss within the cached box keeps the leaf
+    assertFalse(tree.intersectSegment(0.31, y + 0.1, 0.57, 0.31, y + 0.05, 0.57, leaf, hit));
+    assertEquals(leaf, hit.leaf);
+
+    // leaving the box falls back to a full traversal, which finds another leaf
+    assertTrue(tree.intersectSegment(0.9, 0.3, 0.1, 0.9, -0.3, 0.1, leaf, hit));
+    assertTrue(tree.intersectSegment(0.9, 0.3, 0.1, 0.9, -0.3, 0.1, full));
+    assertEquals(full.triangle, hit.triangle);
+    assertNotEquals(leaf, hit.leaf);
+    assertFalse(tree.intersectSegment(0.9, 0.5, 0.1, 0.9, 0.4, 0.1, hit.leaf, hit));
+
+    // random walks: the cache never changes the result
+    Random random = new Random(3);
+    tree.setLeafMargin(0.02);
+    for (int walk = 0; walk < 20; walk++) {
+      double px = random.nextDouble(), pz = random.nextDouble();
+      leaf = -1;
+      for (int step = 0; step < 50; step++) {
+        px += 0.01 * random.nextGaussian();
+        pz += 0.01 * random.nextGaussian();
+        double y0 = 0.3 * random.nextDouble() - 0.15, y1 = 0.3 * random.nextDouble() - 0.15;
+        boolean found = tree.intersectSegment(px, y0, pz, px + 0.01, y1, pz, leaf, hit);
+        assertEquals(tree.intersectSegment(px, y0, pz, px + 0.01, y1, pz, full), found);
+        if (found) {
+          assertEquals(full.triangle, hit.triangle);
+          assertEquals(full.s, hit.s, 0);
+        }
+        leaf = hit.leaf;
+      }
+    }
+  }
+
+  @Test
+  public void testClosestTriangleMatchesBruteForce() {
+    int[] faces = GridMeshes.faces(N);
+    double[] x = heightField(0, 0);
+    AabbTree tree = new AabbTree(x, faces);
+    AabbTree.Hit hit = new AabbTree.Hit();
+    Random random = new Random(2);
+    for (int k = 0; k < 200; k++) {
+      double px = 1.4 * random.nextDouble() - 0.2, py = random.nextGaussian() * 0.3, pz = 1.4 * random.nextDouble() - 0.2;
+      // brute force: a single-triangle tree per face
+      double best = Double.POSITIVE_INFINITY;
+      for (int t = 0; t < faces.length / 3; t++) {
+        AabbTree single = new AabbTree(x, new int[] { faces[3 * t], faces[3 * t + 1], faces[3 * t + 2] });
+        AabbTree.Hit h = new AabbTree.Hit();
+        assertTrue(single.closestTriangle(px, py, pz, Double.POSITIVE_INFINITY, h));
+        best = Math.min(best, h.distance);
+      }
+      assertTrue(tree.closestTriangle(px, py, pz, Double.POSITIVE_INFINITY, hit));
+      assertEquals(best, hit.distance, 1e-12);
+      double dx = hit.x - px, dy = hit.y - py, dz = hit.z - pz;
+      assertEquals(hit.distance, Math.sqrt(dx * dx + dy * dy + dz * dz), 1e-12);
+
+      assertEquals(best <= 0.05, tree.closestTriangle(px, py, pz, 0.05, hit));
+    }
+  }
+
+  @Test
+  public void testCollideMatchesPQP() {
+    System.loadLibrary("PQP");
+    int[] faces = GridMeshes.faces(N);
+    double[] a = heightField(0, 0);
+    double[] b = heightField(0.02, 1.3);
+    AabbTree treeA = new AabbTree(a, faces);
+    AabbTree treeB = new AabbTree(b, faces);
+    int[] pairs = new int[2];
+    int count = treeA.collide(treeB, pairs, new AabbTree.Hit());
+    assertTrue(count > 1);
+    pairs = new int[2 * count];
+    assertEquals(count, treeA.collide(treeB, pairs, new AabbTree.Hit()));
+
+    Set<Long> found = new HashSet<>();
+    for (int k = 0; k < count; k++) {
+      assertTrue(found.add((long) pairs[2 * k] << 32 | pairs[2 * k + 1]));
+    }
+    Set<Long> expected = new HashSet<>();
+    for (Tuple2i pair : PQPHelper.simpleCollideAll(pqpModel(a, faces), pqpModel(b, faces))) {
+      expected.add((long) pair.x << 32 | pair.y);
+    }
+    assertEquals(expected, found);
+  }
+
+  private static PQP_Model pqpModel(double[] x, int[] faces) {
+    List<Point3d> vertices = new ArrayList<>();
+    for (int i = 0; i < x.length; i += 3) {
+      vertices.add(new Point3d(x[i], x[i + 1], x[i + 2]));
+    }
+    List<Tuple3i> triangles = new ArrayList<>();
+    for (int t = 0; t < faces.length; t += 3) {
+      triangles.add(new Point3i(faces[t], faces[t + 1], faces[t + 2]));
+    }
+    return PQPHelper.buildPQPModel(vertices, triangles);
+  }
+
+  @Test
+  public void testRefitMatchesRebuild() {
+    int[] faces = GridMeshes.faces(N);
+    AabbTree tree = new AabbTree(heightField(0, 0), faces);
+    double[] x = heightField(0.05, 2);
+    tree.refit(x);
+    AabbTree rebuilt = new AabbTree(x, faces);
+    AabbTree.Hit h1 = new AabbTree.Hit(), h2 = new AabbTree.Hit();
+    Random random = new Random(3);
+    for (int k = 0; k < 200; k++) {
+      double px = random.nextDouble(), pz = random.nextDouble();
+      double py = 0.5 * random.nextDouble() - 0.2, qy = 0.5 * random.nextDouble() - 0.2;
+      assertEquals(rebuilt.intersectSegment(px, py, pz, px, qy, pz, h2),
+          tree.intersectSegment(px, py, pz, px, qy, pz, h1));
+      assertEquals(h2.triangle, h1.triangle);
+      assertEquals(h2.s, h1.s, 1e-12);
+    }
+  }
+
+  @Test
+  public void testQueriesDoNotAllocate() {
+    int[] faces = GridMeshes.faces(N);
+    double[] x = heightField(0, 0);
+    AabbTree tree = new AabbTree(x, faces);
+    AabbTree other = new AabbTree(heightField(0.02, 1.3), faces);
+    AabbTree.Hit hit = new AabbTree.Hit();
+    int[] pairs = new int[4096];
+    Random random = new Random(4);
+    double[] points = new double[3000];
+    for (int i = 0; i < points.length; i++) {
+      points[i] = random.nextDouble() - 0.2;
+    }
+    for (int round = 0; round < 200; round++) {
+      queries(tree, other, hit, pairs, points, x);
+    }
+
+    com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long thread = Thread.currentThread().getId();
+    long calibrate = bean.getThreadAllocatedBytes(thread);
+    long overhead = bean.getThreadAllocatedBytes(thread) - calibrate;
+    long before = bean.getThreadAllocatedBytes(thread);
+    queries(tree, other, hit, pairs, points, x);
+    assertEquals(0, bean.getThreadAllocatedBytes(thread) - before - overhead);
+  }
+
+  private static void queries(AabbTree tree, AabbTree other, AabbTree.Hit hit, int[] pairs, double[] points,
+      double[] x) {
+    for (int i = 0; i + 5 < points.length; i += 6) {
+      tree.intersectSegment(points[i], points[i + 1], points[i + 2], points[i + 3], points[i + 4], points[i + 5], hit);
+      tree.closestTriangle(points[i], points[i + 1], points[i + 2], 0.1, hit);
+    }
+    tree.collide(other, pairs, hit);
+    tree.refit(x);
+  }
+}
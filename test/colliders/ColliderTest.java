@@ -0,0 +1,63 @@
+package colliders;
+
+import static org.junit.Assert.*;
+
+import javax.vecmath.Point3d;
+import javax.vecmath.Vector3d;
+
+import org.junit.Test;
+
+public class ColliderTest {
+
+  private static void assertGradient(double[] g, double x, double y, double z) {
+    assertEquals(x, g[0], 1e-12);
+    assertEquals(y, g[1], 1e-12);
+    assertEquals(z, g[2], 1e-12);
+  }
+
+  @Test
+  public void testBoxInwardAndOutward() {
+    double[] g = new double[3];
+    BoxCollider block = new BoxCollider(new Point3d(0, 0, 0), new Point3d(1, 2, 1), false);
+    // inside: to the nearest face
+    assertEquals(-0.1, block.distance(0.5, 0.1, 0.5, g), 1e-12);
+    assertGradient(g, 0, -1, 0);
+    // beside a face, and beyond an edge
+    assertEquals(0.5, block.distance(1.5, 1, 0.5, g), 1e-12);
+    assertGradient(g, 1, 0, 0);
+    assertEquals(0.5, block.distance(1.3, 2.4, 0.5, g), 1e-12);
+    assertGradient(g, 0.6, 0.8, 0);
+
+    // the room: free inside, the distance and normal are flipped
+    BoxCollider room = new BoxCollider(new Point3d(0, 0, 0), new Point3d(1, 2, 1), true);
+    assertEquals(0.1, room.distance(0.5, 0.1, 0.5, g), 1e-12);
+    assertGradient(g, 0, 1, 0);
+    assertEquals(-0.2, room.distance(0.5, 1, -0.2, g), 1e-12);
+    assertGradient(g, 0, 0, 1);
+  }
+
+  @Test
+  public void testPlaneSphereAndCapsule() {
+    double[] g = new double[3];
+    PlaneCollider floor = new PlaneCollider(new Point3d(0, 0.5, 0), new Vector3d(0, 2, 0));
+    assertEquals(-0.25, floor.distance(3, 0.25, -7, g), 1e-12);
+    assertGradient(g, 0, 1, 0);
+
+    SphereCollider ball = new SphereCollider(new Point3d(1, 1, 1), 0.5);
+    assertEquals(0.5, ball.distance(1, 1, 2, g), 1e-12);
+    assertGradient(g, 0, 0, 1);
+    assertEquals(-0.2, ball.distance(1.3, 1, 1, g), 1e-12);
+    assertGradient(g, 1, 0, 0);
+    assertEquals(-0.5, ball.distance(1, 1, 1, g), 1e-12);
+    assertGradient(g, 0, 0, 0);
+
+    CapsuleCollider capsule = new CapsuleCollider(new Point3d(0, 0, 0), new Point3d(0, 2, 0), 0.25);
+    // beside the cylinder, and beyond either cap
+    assertEquals(0.75, capsule.distance(1, 1.5, 0, g), 1e-12);
+    assertGradient(g, 1, 0, 0);
+    assertEquals(0.25, capsule.distance(0, 2.5, 0, g), 1e-12);
+    assertGradient(g, 0, 1, 0);
+    assertEquals(-0.15, capsule.distance(0, -0.1, 0, g), 1e-12);
+    assertGradient(g, 0, -1, 0);
+  }
+}
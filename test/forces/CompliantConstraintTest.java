@@ -0,0 +1,68 @@
+package forces;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+
+import org.junit.Test;
+
+import particles.Edge;
+import particles.ParticleStore;
+import particles.ParticleSystem;
+
+public class CompliantConstraintTest {
+
+  private static final double DT = 0.01;
+
+  /** The hanging mesh, stretched by 5% along x and z. */
+  private static ParticleSystem stretchedMesh() {
+    ParticleSystem ps = new ParticleSystem();
+    ps.addMesh(new File("meshes/hanging-mesh.obj"));
+    ParticleStore s = ps.store;
+    for (int i = 0; i < s.size(); i++) {
+      s.x[3 * i] *= 1.05;
+      s.x[3 * i + 2] *= 1.05;
+    }
+    return ps;
+  }
+
+  /** Solves one step of stretch and bend with the given compliance and iteration count. */
+  private static double[] solve(double compliance, int numIter) {
+    ParticleSystem ps = stretchedMesh();
+    StretchConstraint stretch = new StretchConstraint(ps, 0, 1, numIter);
+    BendConstraint bend = new BendConstraint(ps, 1, numIter);
+    stretch.setCompliance(compliance);
+    bend.setCompliance(compliance);
+    stretch.beginStep(DT);
+    bend.beginStep(DT);
+    for (int i = 0; i < numIter; i++) {
+      stretch.applyForce();
+      bend.applyForce();
+    }
+    return ps.store.x.clone();
+  }
+
+  @Test
+  public void testResultIndependentOfIterations() {
+    double[] few = solve(1e-2, 50);
+    double[] many = solve(1e-2, 200);
+    for (int k = 0; k < few.length; k++) {
+      assertEquals(many[k], few[k], 1e-5);
+    }
+  }
+
+  @Test
+  public void testZeroComplianceIsRigid() {
+    ParticleSystem ps = stretchedMesh();
+    StretchConstraint stretch = new StretchConstraint(ps, 0, 1, 1);
+    stretch.setCompliance(0);
+    stretch.beginStep(DT);
+    for (int i = 0; i < 2000; i++) {
+      stretch.applyForce();
+    }
+    for (Edge edge : ps.M.get(0).edges) {
+      double length = edge.v0.getX().distance(edge.v1.getX());
+      assertEquals(edge.restLength, length, 1e-5);
+    }
+  }
+}
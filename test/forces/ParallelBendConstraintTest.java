@@ -0,0 +1,81 @@
+package forces;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+import particles.BendBatch;
+import particles.GridMeshes;
+import particles.ParticleStore;
+import particles.ParticleSystem;
+
+public class ParallelBendConstraintTest {
+
+  /** A 60 x 60 grid, folded so that every bend is violated. */
+  private static ParticleSystem foldedGrid() throws IOException {
+    ParticleSystem ps = new ParticleSystem();
+    ps.addMesh(GridMeshes.write(60, 0.015, 0, 0, 0));
+    ParticleStore s = ps.store;
+    for (int i = 0; i < s.size(); i++) {
+      s.x[3 * i + 1] = 0.1 * Math.sin(20 * s.x[3 * i]) * Math.cos(15 * s.x[3 * i + 2]);
+    }
+    return ps;
+  }
+
+  /** BendConstraint projecting the bends one by one, in colour order. */
+  private static class SerialColorOrder extends BendConstraint {
+    private final Scratch scratch = new Scratch();
+
+    SerialColorOrder(ParticleSystem ps) {
+      super(ps, 1, 1);
+    }
+
+    @Override
+    public void applyForce() {
+      BendBatch batch = ps.getBendBatch();
+      for (int[] color : batch.colors) {
+        for (int e : color) {
+          project(ps.store.x, ps.store.w, batch, e, ps.store.x, null, scratch, residual);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testColorsShareNoStencilVertex() throws IOException {
+    BendBatch batch = foldedGrid().getBendBatch();
+    Set<Integer> seen = new HashSet<>();
+    for (int[] color : batch.colors) {
+      Set<Integer> particles = new HashSet<>();
+      for (int e : color) {
+        assertTrue("bend coloured twice", seen.add(e));
+        for (int p : new int[] { batch.i[e], batch.j[e], batch.k[e], batch.l[e] }) {
+          assertTrue("stencil vertex shared within a colour", particles.add(p));
+        }
+      }
+    }
+    assertEquals(batch.size, seen.size());
+  }
+
+  @Test
+  public void testParallelPassMatchesSerialPass() throws IOException {
+    ParticleSystem serial = foldedGrid();
+    ParticleSystem parallel = foldedGrid();
+    BendConstraint reference = new SerialColorOrder(serial);
+    BendConstraint bend = new ParallelBendConstraint(parallel, 1, 1);
+    // several chunks per colour, so that chunks run concurrently
+    assertTrue(parallel.getBendBatch().colors[0].length > 4 * 64);
+    for (int i = 0; i < 5; i++) {
+      reference.applyForce();
+      bend.applyForce();
+    }
+    // bends of one colour are independent, so any interleaving is exact
+    assertArrayEquals(serial.store.x, parallel.store.x, 0);
+    assertEquals(reference.getResidual().getCount(), bend.getResidual().getCount());
+    assertEquals(reference.getResidual().getMax(), bend.getResidual().getMax(), 0);
+  }
+}
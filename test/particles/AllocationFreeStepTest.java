@@ -0,0 +1,142 @@
+package particles;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+
+import javax.vecmath.Point3d;
+
+import org.junit.Test;
+
+import colliders.BoxCollider;
+import forces.BendConstraint;
+import forces.Gravity;
+import forces.ParallelBendConstraint;
+import forces.ParallelStretchConstraint;
+import forces.StretchConstraint;
+
+public class AllocationFreeStepTest {
+
+  private static final int WARMUP_STEPS = 3000;
+  private static final int MEASURED_STEPS = 100;
+
+  /**
+   * Steps ps until its buffers have grown, then asserts that further steps
+   * allocate nothing, on the calling thread or on the pool threads that run
+   * the parallel loops.
+   */
+  private static void assertStepsDoNotAllocate(ParticleSystem ps) {
+    for (int i = 0; i < WARMUP_STEPS; i++) {
+      ps.advanceTime(0.01);
+    }
+
+    com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long[] threads = bean.getAllThreadIds();
+    long[] start = new long[threads.length];
+    long[] end = new long[threads.length];
+    // the measurement itself may allocate; calibrate it away
+    long calibrate = bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    long overhead = bean.getThreadAllocatedBytes(Thread.currentThread().getId()) - calibrate;
+
+    long before = sum(bean, threads, start);
+    for (int i = 0; i < MEASURED_STEPS; i++) {
+      ps.advanceTime(0.01);
+    }
+    long allocated = sum(bean, threads, end) - before - overhead;
+    assertEquals("bytes allocated in " + MEASURED_STEPS + " steps", 0, allocated);
+  }
+
+  /** @return the bytes allocated so far by the given threads, filling bytes */
+  private static long sum(com.sun.management.ThreadMXBean bean, long[] threads, long[] bytes) {
+    long sum = 0;
+    for (int t = 0; t < threads.length; t++) {
+      // threads that have ended report -1
+      bytes[t] = Math.max(0, bean.getThreadAllocatedBytes(threads[t]));
+    }
+    for (long b : bytes) {
+      sum += b;
+    }
+    return sum;
+  }
+
+  private static ParticleSystem cloth(File mesh) {
+    ParticleSystem ps = new ParticleSystem();
+    ps.addForce(new Gravity(ps));
+    ps.addConstraint(new StretchConstraint(ps, Constants.STRETCH_DIST, Constants.STRETCH_STIFF, Constants.NUM_ITERATIONS));
+    ps.addConstraint(new BendConstraint(ps, Constants.BEND_STIFF, Constants.NUM_ITERATIONS));
+    ps.addMesh(mesh);
+    return ps;
+  }
+
+  /** @return a box around the unit cube, as triangles rather than a collider */
+  private static Mesh boxMesh() {
+    Mesh box = Mesh.CubeMesh(new Point3d(0, 0, 0), new Point3d(1, 1, 1), true);
+    box.setCollider(null);
+    box.setCollisionBackend(Mesh.CollisionBackend.BVH);
+    return box;
+  }
+
+  @Test
+  public void testStepDoesNotAllocate() {
+    ParticleSystem ps = cloth(new File("meshes/hanging-mesh.obj"));
+    ps.P.get(0).setHighlight(true);
+    assertStepsDoNotAllocate(ps);
+  }
+
+  /**
+   * 900 particles lying on the floor of a static mesh, within the contact
+   * thickness of it: several detection chunks, each with contacts, and
+   * constraint colours large enough to be split by the parallel passes.
+   */
+  private static ParticleSystem gridOnBox(boolean parallel) throws IOException {
+    ParticleSystem ps = new ParticleSystem();
+    ps.addStaticMesh(boxMesh());
+    ps.addForce(new Gravity(ps));
+    if (parallel) {
+      ps.addConstraint(new ParallelStretchConstraint(ps, Constants.STRETCH_DIST, Constants.STRETCH_STIFF,
+          Constants.NUM_ITERATIONS));
+      ps.addConstraint(new ParallelBendConstraint(ps, Constants.BEND_STIFF, Constants.NUM_ITERATIONS));
+    } else {
+      ps.addConstraint(new StretchConstraint(ps, Constants.STRETCH_DIST, Constants.STRETCH_STIFF,
+          Constants.NUM_ITERATIONS));
+      ps.addConstraint(new BendConstraint(ps, Constants.BEND_STIFF, Constants.NUM_ITERATIONS));
+    }
+    ps.addMesh(GridMeshes.write(30, 0.025, 0.1, 0.2, 0.1));
+    ps.setContactThickness(0.01);
+    assertTrue(ps.P.size() > 256);
+    return ps;
+  }
+
+  @Test
+  public void testBoxColliderContactsDoNotAllocate() {
+    ParticleSystem ps = cloth(new File("meshes/hanging-mesh.obj"));
+    ps.addCollider(new BoxCollider(new Point3d(0, 0, 0), new Point3d(1, 1, 1), true));
+    ps.setContactThickness(0.01);
+    assertStepsDoNotAllocate(ps);
+    assertTrue(ps.getNumCollisions() > 0);
+  }
+
+  @Test
+  public void testChunkedContactDetectionDoesNotAllocate() throws IOException {
+    ParticleSystem ps = gridOnBox(false);
+    assertStepsDoNotAllocate(ps);
+    assertTrue(ps.getNumCollisions() > 0);
+  }
+
+  @Test
+  public void testParallelConstraintsDoNotAllocate() throws IOException {
+    ParticleSystem ps = gridOnBox(true);
+    assertStepsDoNotAllocate(ps);
+    assertTrue(ps.getNumCollisions() > 0);
+  }
+
+  @Test
+  public void testJacobiModeDoesNotAllocate() throws IOException {
+    ParticleSystem ps = gridOnBox(false);
+    ps.setSolverMode(ParticleSystem.SolverMode.JACOBI);
+    assertStepsDoNotAllocate(ps);
+    assertTrue(ps.getNumCollisions() > 0);
+  }
+}
@@ -0,0 +1,174 @@
+package particles;
+
+import java.io.File;
+import java.util.List;
+import java.util.Random;
+
+import javax.vecmath.Tuple2i;
+
+import bvh.AabbTree;
+import pqp.DeformableModel;
+import pqp.PQPHelper;
+import pqp.SegmentQuery;
+
+/**
+ * Compares the PQP and BVH collision backends of Mesh on the meshes in
+ * meshes/ and on generated n x n grids. Not a unit test; run with
+ *
+ * <pre>
+ * java -Djava.library.path=... particles.CollisionBackendBenchmark [n...]
+ * </pre>
+ *
+ * For every mesh reports the time to build the hierarchy, to refit it, to
+ * intersect a batch of short segments (the particle paths of a step) and to
+ * collide the mesh with a slightly moved copy of itself. Grids are built
+ * straight from arrays, as MeshBuilder needs memory quadratic in the vertex
+ * count.
+ */
+public class CollisionBackendBenchmark {
+
+  private static final int NUM_SEGMENTS = 20000;
+  private static final int ROUNDS = 20;
+
+  public static void main(String[] args) throws Exception {
+    if (!Mesh.PQP_AVAILABLE) {
+      System.out.println("libPQP unavailable: put it on java.library.path");
+      return;
+    }
+    System.out.printf("%-20s %8s %7s %10s %10s %10s %10s%n", "mesh", "tris", "backend", "build ms", "refit ms",
+        "segs ms", "tri-tri ms");
+    File[] files = new File("meshes").listFiles((dir, name) -> name.endsWith(".obj"));
+    if (files != null) {
+      for (File file : files) {
+        ParticleSystem ps = new ParticleSystem();
+        Mesh mesh = MeshBuilder.buildMesh(file, ps);
+        int[] faces = new int[3 * mesh.triangles.size()];
+        for (int t = 0; t < mesh.triangles.size(); t++) {
+          Triangle triangle = mesh.triangles.get(t);
+          faces[3 * t] = triangle.v0.getIndex();
+          faces[3 * t + 1] = triangle.v1.getIndex();
+          faces[3 * t + 2] = triangle.v2.getIndex();
+        }
+        run(file.getName(), ps.store.x, faces);
+      }
+    }
+    int[] sizes = { 100, 300 };
+    if (args.length > 0) {
+      sizes = new int[args.length];
+      for (int i = 0; i < args.length; i++) {
+        sizes[i] = Integer.parseInt(args[i]);
+      }
+    }
+    for (int n : sizes) {
+      run("grid " + n + "x" + n, grid(n), GridMeshes.faces(n));
+    }
+  }
+
+  private static void run(String name, double[] x, int[] faces) {
+    double[] bounds = bounds(x);
+    double[] moved = x.clone();
+    double scale = Math.max(bounds[3] - bounds[0], Math.max(bounds[4] - bounds[1], bounds[5] - bounds[2]));
+    for (int i = 0; i < moved.length; i++) {
+      moved[i] += 0.01 * scale;
+    }
+    SegmentQuery query = segments(bounds, scale);
+    AabbTree.Hit hit = new AabbTree.Hit();
+    int[] pairs = new int[64];
+
+    for (int round = 0; round < 2; round++) {
+      long[] pqp = new long[4];
+      long[] bvh = new long[4];
+      int pqpHits = 0, bvhHits = 0, pqpPairs = 0, bvhPairs = 0;
+      for (int r = 0; r < ROUNDS; r++) {
+        long start = System.nanoTime();
+        DeformableModel model = new DeformableModel(x, faces);
+        DeformableModel other = new DeformableModel(moved, faces);
+        pqp[0] += System.nanoTime() - start;
+        start = System.nanoTime();
+        model.update(x);
+        pqp[1] += System.nanoTime() - start;
+        start = System.nanoTime();
+        pqpHits = query.intersect(model.getModel());
+        pqp[2] += System.nanoTime() - start;
+        start = System.nanoTime();
+        List<Tuple2i> found = PQPHelper.simpleCollideAll(model.getModel(), other.getModel());
+        pqp[3] += System.nanoTime() - start;
+        pqpPairs = found.size();
+        model.delete();
+        other.delete();
+
+        start = System.nanoTime();
+        AabbTree tree = new AabbTree(x, faces);
+        AabbTree otherTree = new AabbTree(moved, faces);
+        bvh[0] += System.nanoTime() - start;
+        start = System.nanoTime();
+        tree.refit(x);
+        bvh[1] += System.nanoTime() - start;
+        start = System.nanoTime();
+        bvhHits = 0;
+        for (int k = 0; k < query.size(); k++) {
+          if (tree.intersectSegment(query.getCoordinate(k, 0), query.getCoordinate(k, 1), query.getCoordinate(k, 2),
+              query.getCoordinate(k, 3), query.getCoordinate(k, 4), query.getCoordinate(k, 5), hit)) {
+            bvhHits++;
+          }
+        }
+        bvh[2] += System.nanoTime() - start;
+        start = System.nanoTime();
+        bvhPairs = tree.collide(otherTree, pairs, hit);
+        if (2 * bvhPairs > pairs.length) {
+          pairs = new int[4 * bvhPairs];
+        }
+        bvh[3] += System.nanoTime() - start;
+      }
+      if (round == 1) {
+        print(name, faces.length / 3, "PQP", pqp, pqpHits, pqpPairs);
+        print(name, faces.length / 3, "BVH", bvh, bvhHits, bvhPairs);
+      }
+    }
+  }
+
+  private static void print(String name, int tris, String backend, long[] nanos, int hits, int pairs) {
+    System.out.printf("%-20s %8d %7s %10.3f %10.3f %10.3f %10.3f   (%d hits, %d pairs)%n", name, tris, backend,
+        nanos[0] / 1e6 / ROUNDS / 2, nanos[1] / 1e6 / ROUNDS, nanos[2] / 1e6 / ROUNDS, nanos[3] / 1e6 / ROUNDS,
+        hits, pairs);
+  }
+
+  /** Short random segments in the bounding box, about the path of a particle in one step. */
+  private static SegmentQuery segments(double[] bounds, double scale) {
+    Random random = new Random(1);
+    SegmentQuery query = new SegmentQuery(NUM_SEGMENTS);
+    for (int k = 0; k < NUM_SEGMENTS; k++) {
+      double px = bounds[0] + random.nextDouble() * (bounds[3] - bounds[0]);
+      double py = bounds[1] + random.nextDouble() * (bounds[4] - bounds[1]);
+      double pz = bounds[2] + random.nextDouble() * (bounds[5] - bounds[2]);
+      query.add(px, py, pz, px + 0.02 * scale * random.nextGaussian(), py + 0.02 * scale * random.nextGaussian(),
+          pz + 0.02 * scale * random.nextGaussian());
+    }
+    return query;
+  }
+
+  private static double[] bounds(double[] x) {
+    double[] bounds = { Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE, -Double.MAX_VALUE,
+        -Double.MAX_VALUE, -Double.MAX_VALUE };
+    for (int i = 0; i < x.length; i++) {
+      bounds[i % 3] = Math.min(bounds[i % 3], x[i]);
+      bounds[3 + i % 3] = Math.max(bounds[3 + i % 3], x[i]);
+    }
+    return bounds;
+  }
+
+  /** An n x n grid over the unit square, crumpled so that the tree is not trivially flat. */
+  private static double[] grid(int n) {
+    double[] x = new double[3 * n * n];
+    for (int i = 0; i < n; i++) {
+      for (int j = 0; j < n; j++) {
+        int v = 3 * (i * n + j);
+        double u = i / (double) (n - 1), w = j / (double) (n - 1);
+        x[v] = u;
+        x[v + 1] = 0.1 * Math.sin(9 * u) * Math.cos(7 * w);
+        x[v + 2] = w;
+      }
+    }
+    return x;
+  }
+}
@@ -0,0 +1,58 @@
+package particles;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class ConstraintBatchTest {
+
+  private static ParticleSystem hangingMesh() {
+    ParticleSystem ps = new ParticleSystem();
+    ps.addMesh(new File("meshes/hanging-mesh.obj"));
+    return ps;
+  }
+
+  @Test
+  public void testBatchesMatchMesh() {
+    ParticleSystem ps = hangingMesh();
+    Mesh mesh = ps.M.get(0);
+    StretchBatch stretch = ps.getStretchBatch();
+    assertEquals(mesh.edges.size(), stretch.size);
+    for (int e = 0; e < stretch.size; e++) {
+      assertEquals(mesh.edges.get(e).v0.getIndex(), stretch.i[e]);
+      assertEquals(mesh.edges.get(e).restLength, stretch.restLength[e], 0);
+    }
+
+    int interior = 0;
+    for (Edge edge : mesh.edges) {
+      if (edge.t0 != null && edge.t1 != null) {
+        interior++;
+      }
+    }
+    BendBatch bend = ps.getBendBatch();
+    assertEquals(interior, bend.size);
+    for (int[] color : bend.colors) {
+      Set<Integer> particles = new HashSet<>();
+      for (int e : color) {
+        for (int p : new int[] { bend.i[e], bend.j[e], bend.k[e], bend.l[e] }) {
+          assertTrue("particle shared within a colour", particles.add(p));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testRecompiledWhenStale() {
+    ParticleSystem ps = hangingMesh();
+    StretchBatch before = ps.getStretchBatch();
+    assertSame(before, ps.getStretchBatch());
+    ps.M.get(0).topologyChanged();
+    assertNotSame(before, ps.getStretchBatch());
+    ps.addMesh(new File("meshes/flat-mesh.obj"));
+    assertEquals(2 * before.size, ps.getStretchBatch().size);
+  }
+}
@@ -0,0 +1,59 @@
+package particles;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+
+import javax.vecmath.Point3d;
+
+import org.junit.Test;
+
+import forces.BendConstraint;
+import forces.Gravity;
+import forces.StretchConstraint;
+
+public class ContactDetectionTest {
+
+  private static double[] drop(int detectionChunk, double thickness) {
+    ParticleSystem ps = new ParticleSystem();
+    Mesh box = Mesh.CubeMesh(new Point3d(0, 0, 0), new Point3d(1, 1, 1), true);
+    // the triangles rather than the box collider, for path and thickness queries
+    box.setCollider(null);
+    box.setCollisionBackend(Mesh.CollisionBackend.BVH);
+    ps.addStaticMesh(box);
+    ps.addForce(new Gravity(ps));
+    ps.addConstraint(new StretchConstraint(ps, Constants.STRETCH_DIST, Constants.STRETCH_STIFF, Constants.NUM_ITERATIONS));
+    ps.addConstraint(new BendConstraint(ps, Constants.BEND_STIFF, Constants.NUM_ITERATIONS));
+    ps.addMesh(new File("meshes/hanging-mesh.obj"));
+    ps.setContactThickness(thickness);
+    ps.setDetectionChunk(detectionChunk);
+    for (int i = 0; i < 200; i++) {
+      ps.advanceTime(0.01);
+    }
+    double[] x = new double[3 * ps.P.size()];
+    for (int i = 0; i < ps.P.size(); i++) {
+      Point3d p = ps.P.get(i).getX();
+      x[3 * i] = p.x;
+      x[3 * i + 1] = p.y;
+      x[3 * i + 2] = p.z;
+    }
+    return x;
+  }
+
+  @Test
+  public void testChunkedDetectionMatchesSerial() {
+    // path contacts come out in particle order however the particles are
+    // split, so the chunks, which may run in parallel, change nothing
+    assertArrayEquals(drop(Integer.MAX_VALUE, 0), drop(4, 0), 0);
+  }
+
+  @Test
+  public void testChunkedDetectionIsDeterministic() {
+    // thickness contacts come per chunk, but the chunks do not depend on the
+    // number of threads, nor on which finishes first
+    double[] first = drop(4, 0.01);
+    for (int run = 0; run < 3; run++) {
+      assertArrayEquals(first, drop(4, 0.01), 0);
+    }
+  }
+}
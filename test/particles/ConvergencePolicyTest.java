@@ -0,0 +1,49 @@
+package particles;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+
+import javax.vecmath.Point3d;
+
+import org.junit.Test;
+
+import forces.BendConstraint;
+import forces.Gravity;
+import forces.StretchConstraint;
+
+public class ConvergencePolicyTest {
+
+  /** A flat cloth dropped onto the floor of the unit box. */
+  private static ParticleSystem droppedCloth() {
+    ParticleSystem ps = new ParticleSystem();
+    ps.addStaticMesh(Mesh.CubeMesh(new Point3d(0, 0, 0), new Point3d(1, 1, 1), true));
+    ps.addForce(new Gravity(ps));
+    ps.addConstraint(new StretchConstraint(ps, Constants.STRETCH_DIST, Constants.STRETCH_STIFF, Constants.NUM_ITERATIONS));
+    ps.addConstraint(new BendConstraint(ps, Constants.BEND_STIFF, Constants.NUM_ITERATIONS));
+    ps.addMesh(new File("meshes/flat-mesh.obj"));
+    return ps;
+  }
+
+  @Test
+  public void testFixedIterationsWithoutPolicy() {
+    ParticleSystem ps = droppedCloth();
+    ps.advanceTime(0.01);
+    assertEquals((int) Constants.NUM_SOLVER_ITERATIONS, ps.getLastIterationCount());
+  }
+
+  @Test
+  public void testRestingClothStopsEarly() {
+    ParticleSystem ps = droppedCloth();
+    ps.setConvergencePolicy(new ConvergencePolicy(1e-3, 1e-4, 1, 10));
+    for (int i = 0; i < 400; i++) {
+      ps.advanceTime(0.01);
+    }
+    int iterations = 0;
+    for (int i = 0; i < 50; i++) {
+      ps.advanceTime(0.01);
+      iterations += ps.getLastIterationCount();
+    }
+    assertTrue("mean iterations " + iterations / 50.0, iterations <= 3 * 50);
+  }
+}
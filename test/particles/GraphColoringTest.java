@@ -0,0 +1,53 @@
+package particles;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class GraphColoringTest {
+
+  /** Edges of an n x n grid of particles, with one diagonal per cell. */
+  private static List<int[]> gridEdges(int n) {
+    List<int[]> edges = new ArrayList<>();
+    for (int i = 0; i < n; i++) {
+      for (int j = 0; j < n; j++) {
+        int v = i * n + j;
+        if (j + 1 < n) {
+          edges.add(new int[] { v, v + 1 });
+        }
+        if (i + 1 < n) {
+          edges.add(new int[] { v, v + n });
+        }
+        if (i + 1 < n && j + 1 < n) {
+          edges.add(new int[] { v, v + n + 1 });
+        }
+      }
+    }
+    return edges;
+  }
+
+  @Test
+  public void testColorsAreIndependent() {
+    List<int[]> edges = gridEdges(20);
+    int[][] colors = GraphColoring.color(edges);
+
+    Set<Integer> seen = new HashSet<>();
+    for (int[] color : colors) {
+      Set<Integer> particles = new HashSet<>();
+      for (int e : color) {
+        assertTrue("edge coloured twice", seen.add(e));
+        for (int p : edges.get(e)) {
+          assertTrue("particle shared within a colour", particles.add(p));
+        }
+      }
+    }
+    assertEquals(edges.size(), seen.size());
+    // interior vertices have degree 6; greedy never needs more than 2 * 6 - 1
+    assertTrue(colors.length <= 11);
+  }
+}
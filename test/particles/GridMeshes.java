@@ -0,0 +1,58 @@
+package particles;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * Square cloth grids, written to temporary OBJ files for meshes larger than
+ * those in meshes/, or as bare faces for tests that place the vertices.
+ */
+public final class GridMeshes {
+
+  private GridMeshes() {
+  }
+
+  /**
+   * An n x n grid of vertices spacing apart in the plane y = height, two
+   * triangles per cell, corner at (x0, height, z0).
+   */
+  public static File write(int n, double spacing, double x0, double height, double z0) throws IOException {
+    File file = File.createTempFile("grid" + n, ".obj");
+    file.deleteOnExit();
+    try (PrintWriter out = new PrintWriter(file)) {
+      for (int i = 0; i < n; i++) {
+        for (int j = 0; j < n; j++) {
+          out.println("v " + (x0 + i * spacing) + " " + height + " " + (z0 + j * spacing));
+        }
+      }
+      int[] faces = faces(n);
+      for (int k = 0; k < faces.length; k += 3) {
+        // OBJ indices start at 1
+        out.println("f " + (faces[k] + 1) + " " + (faces[k + 1] + 1) + " " + (faces[k + 2] + 1));
+      }
+    }
+    return file;
+  }
+
+  /**
+   * Faces of an n x n grid of vertices numbered row by row, two triangles per
+   * cell, three vertex indices per triangle.
+   */
+  public static int[] faces(int n) {
+    int[] faces = new int[6 * (n - 1) * (n - 1)];
+    int k = 0;
+    for (int i = 0; i + 1 < n; i++) {
+      for (int j = 0; j + 1 < n; j++) {
+        int v = i * n + j;
+        faces[k++] = v;
+        faces[k++] = v + 1;
+        faces[k++] = v + n;
+        faces[k++] = v + 1;
+        faces[k++] = v + n + 1;
+        faces[k++] = v + n;
+      }
+    }
+    return faces;
+  }
+}
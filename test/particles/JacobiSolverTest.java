@@ -0,0 +1,148 @@
+package particles;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+
+import javax.vecmath.Point3d;
+
+import org.junit.Test;
+
+import com.jogamp.opengl.GL2;
+
+import forces.JacobiConstraint;
+import forces.Residual;
+import forces.StretchConstraint;
+
+public class JacobiSolverTest {
+
+  /**
+   * Element e pulls particle e % n by e + 1 along x, and by the constant 1
+   * along y.
+   */
+  private static class Pulls implements JacobiConstraint {
+    private final int numElements, n;
+    private final Residual residual = new Residual();
+
+    Pulls(int numElements, int n) {
+      this.numElements = numElements;
+      this.n = n;
+    }
+
+    @Override
+    public int numElements() {
+      return numElements;
+    }
+
+    @Override
+    public void accumulate(int from, int to, double[] x, double[] w, double[] dx, int[] count, Object scratch,
+        Residual r) {
+      for (int e = from; e < to; e++) {
+        int i = e % n;
+        dx[3 * i] += e + 1;
+        dx[3 * i + 1] += 1;
+        count[i]++;
+        r.add(e + 1);
+      }
+    }
+
+    @Override
+    public Residual getResidual() {
+      return residual;
+    }
+
+    @Override
+    public void applyForce() {
+    }
+
+    @Override
+    public void display(GL2 gl) {
+    }
+
+    @Override
+    public ParticleSystem getParticleSystem() {
+      return null;
+    }
+  }
+
+  private static ParticleStore store(int n) {
+    ParticleStore store = new ParticleStore(n);
+    for (int i = 0; i < n; i++) {
+      store.add(new Point3d(i, 0, 0));
+    }
+    return store;
+  }
+
+  @Test
+  public void testParticlesMoveByTheRelaxedMeanCorrection() {
+    int n = 10;
+    for (double omega : new double[] { 1, 1.5 }) {
+      ParticleStore store = store(n);
+      JacobiSolver solver = new JacobiSolver();
+      solver.setRelaxation(omega);
+      Pulls pulls = new Pulls(1000, n);
+      solver.project(pulls, store);
+      for (int i = 0; i < n; i++) {
+        // elements i, i + n, ..., i + 990: the mean of e + 1 over them is i + 496
+        assertEquals(i + omega * (i + 496), store.x[3 * i], 1e-9);
+        assertEquals(omega, store.x[3 * i + 1], 1e-12);
+      }
+      assertEquals(1000, pulls.getResidual().getCount());
+      assertEquals(1000, pulls.getResidual().getMax(), 0);
+
+      // the buffers come back zeroed: a second pass moves by the same again
+      solver.project(pulls, store);
+      assertEquals(2 * omega, store.x[1], 1e-12);
+    }
+  }
+
+  /** A 40 x 40 grid, crumpled so that every stretch constraint is violated. */
+  private static ParticleSystem crumpledGrid() throws IOException {
+    ParticleSystem ps = new ParticleSystem();
+    ps.addMesh(GridMeshes.write(40, 0.02, 0, 0, 0));
+    double[] x = ps.store.x;
+    for (int i = 0; i < ps.store.size(); i++) {
+      x[3 * i] *= 0.9;
+      x[3 * i + 1] = 0.05 * Math.sin(7 * i);
+    }
+    return ps;
+  }
+
+  @Test
+  public void testChunkedPassMatchesSingleChunk() throws IOException {
+    double[][] results = new double[2][];
+    double[] rms = new double[2];
+    for (int run = 0; run < 2; run++) {
+      ParticleSystem ps = crumpledGrid();
+      StretchConstraint stretch = new StretchConstraint(ps, 0, 1, 1);
+      JacobiSolver solver = new JacobiSolver();
+      solver.setRelaxation(1.2);
+      solver.setMaxChunks(run == 0 ? 1 : 16);
+      for (int i = 0; i < 10; i++) {
+        stretch.getResidual().reset();
+        solver.project(stretch, ps.store);
+      }
+      results[run] = ps.store.x.clone();
+      rms[run] = stretch.getResidual().getRms();
+    }
+    // only the order of summing the chunks' corrections differs
+    assertArrayEquals(results[0], results[1], 1e-12);
+    assertEquals(rms[0], rms[1], 1e-12);
+  }
+
+  @Test
+  public void testJacobiModeSolvesTheStep() throws IOException {
+    ParticleSystem ps = crumpledGrid();
+    StretchConstraint stretch = new StretchConstraint(ps, 0, 1, 1);
+    ps.addConstraint(stretch);
+    ps.setSolverMode(ParticleSystem.SolverMode.JACOBI);
+    ps.setJacobiRelaxation(1.5);
+    ps.advanceTime(0.01);
+    double first = stretch.getResidual().getMax();
+    for (int i = 0; i < 50; i++) {
+      ps.advanceTime(0.01);
+    }
+    // the crumpled grid is pulled back to its rest lengths
+    assertTrue(stretch.getResidual().getMax() < 0.5 * first);
+  }
+}
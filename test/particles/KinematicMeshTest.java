@@ -0,0 +1,115 @@
+package particles;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.*;
+
+import java.util.Random;
+
+import javax.vecmath.AxisAngle4d;
+import javax.vecmath.Matrix3d;
+import javax.vecmath.Point3d;
+import javax.vecmath.Vector3d;
+
+import org.junit.Test;
+
+import pqp.ProximityQuery;
+import pqp.SegmentQuery;
+
+public class KinematicMeshTest {
+
+  private static Mesh placedCube(Mesh.CollisionBackend backend, Matrix3d R, Vector3d T) {
+    Mesh cube = Mesh.CubeMesh(new Point3d(-0.5, -0.5, -0.5), new Point3d(0.5, 0.5, 0.5), false);
+    cube.setCollisionBackend(backend);
+    cube.setTransform(R, T);
+    return cube;
+  }
+
+  @Test
+  public void testSingleFaceMovesWithTransform() {
+    assumeTrue(Mesh.PQP_AVAILABLE);
+    Mesh face = Mesh.singleFaceMesh(new Point3d(0, 0, 0), new Point3d(1, 0, 0), new Point3d(0, 0, 1));
+    SegmentQuery query = new SegmentQuery();
+    query.add(0.2, -0.2, -1, 0.2, -0.2, 1);
+    assertEquals(0, face.segmentsIntersect(query));
+
+    // a quarter turn about x puts the face into the plane z = 0
+    Matrix3d R = new Matrix3d();
+    R.set(new AxisAngle4d(1, 0, 0, Math.PI / 2));
+    face.setTransform(R, new Vector3d(0, 0.5, 0));
+    assertTrue(face.hasTransform());
+    assertEquals(1, face.segmentsIntersect(query));
+    assertEquals(0, query.getTriangle(0));
+    assertEquals(0.5, query.getParameter(0), 1e-12);
+
+    // moving on only changes the transform
+    face.setTransform(R, new Vector3d(5, 0.5, 0));
+    assertEquals(0, face.segmentsIntersect(query));
+  }
+
+  @Test
+  public void testBackendsAgreeOnPlacedMesh() {
+    assumeTrue(Mesh.PQP_AVAILABLE);
+    Random random = new Random(3);
+    for (int trial = 0; trial < 5; trial++) {
+      Matrix3d R = new Matrix3d();
+      R.set(new AxisAngle4d(random.nextGaussian(), random.nextGaussian(), random.nextGaussian(),
+          2 * Math.PI * random.nextDouble()));
+      Vector3d T = new Vector3d(random.nextGaussian(), random.nextGaussian(), random.nextGaussian());
+      Mesh pqp = placedCube(Mesh.CollisionBackend.PQP, R, T);
+      Mesh bvh = placedCube(Mesh.CollisionBackend.BVH, R, T);
+
+      SegmentQuery segments = new SegmentQuery();
+      ProximityQuery points = new ProximityQuery();
+      for (int k = 0; k < 200; k++) {
+        double x = T.x + 2 * random.nextDouble() - 1, y = T.y + 2 * random.nextDouble() - 1,
+            z = T.z + 2 * random.nextDouble() - 1;
+        segments.add(x, y, z, x + 0.5 * random.nextGaussian(), y + 0.5 * random.nextGaussian(),
+            z + 0.5 * random.nextGaussian());
+        points.add(x, y, z);
+      }
+      int hits = pqp.segmentsIntersect(segments);
+      int[] triangles = new int[segments.size()];
+      double[] params = new double[segments.size()];
+      for (int k = 0; k < segments.size(); k++) {
+        triangles[k] = segments.getTriangle(k);
+        params[k] = segments.getParameter(k);
+      }
+      assertEquals(hits, bvh.segmentsIntersect(segments));
+      for (int k = 0; k < segments.size(); k++) {
+        assertEquals(triangles[k] >= 0, segments.getTriangle(k) >= 0);
+        assertEquals(params[k], segments.getParameter(k), 1e-9);
+      }
+
+      int near = pqp.pointsNear(points, 0.2);
+      double[] distances = new double[points.size()];
+      double[] closest = new double[3 * points.size()];
+      for (int k = 0; k < points.size(); k++) {
+        distances[k] = points.getDistance(k);
+        for (int i = 0; i < 3; i++) {
+          closest[3 * k + i] = points.getClosest(k, i);
+        }
+      }
+      assertEquals(near, bvh.pointsNear(points, 0.2));
+      for (int k = 0; k < points.size(); k++) {
+        assertEquals(distances[k], points.getDistance(k), 1e-9);
+        if (points.getTriangle(k) >= 0) {
+          for (int i = 0; i < 3; i++) {
+            assertEquals(closest[3 * k + i], points.getClosest(k, i), 1e-9);
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testCollideWithPlacedStaticMesh() {
+    assumeTrue(Mesh.PQP_AVAILABLE);
+    Mesh cloth = Mesh.singleFaceMesh(new Point3d(-2, 0, -2), new Point3d(2, 0, -2), new Point3d(0, 0, 2));
+    Matrix3d R = new Matrix3d();
+    R.setIdentity();
+    Mesh obstacle = placedCube(Mesh.CollisionBackend.PQP, R, new Vector3d(0, 3, 0));
+    assertTrue(cloth.collideWithStaticMesh(obstacle).isEmpty());
+    obstacle.setTransform(R, new Vector3d(0, 0.25, 0));
+    assertEquals(3, cloth.collideWithStaticMesh(obstacle).size());
+  }
+}
@@ -0,0 +1,51 @@
+package particles;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.junit.Test;
+
+public class ParallelRangeTest {
+
+  @Test
+  public void testEveryIndexRunsOnceInItsChunk() {
+    ParallelRange range = new ParallelRange();
+    // one instance for many calls of different sizes, as owners use it
+    for (int n : new int[] { 0, 1, 7, 64, 65, 1000, 4096, 3 }) {
+      int grain = 64;
+      AtomicIntegerArray runs = new AtomicIntegerArray(Math.max(n, 1));
+      range.forEach(n, grain, (from, to) -> {
+        assertEquals(0, from % grain);
+        assertEquals(Math.min(n, from + grain), to);
+        for (int i = from; i < to; i++) {
+          runs.incrementAndGet(i);
+        }
+      });
+      for (int i = 0; i < n; i++) {
+        assertEquals("index " + i + " of " + n, 1, runs.get(i));
+      }
+    }
+    assertEquals(16, ParallelRange.numChunks(1000, 64));
+    assertEquals(0, ParallelRange.numChunks(0, 64));
+  }
+
+  @Test
+  public void testFailureOfAChunkReachesTheCaller() {
+    ParallelRange range = new ParallelRange();
+    try {
+      range.forEach(1000, 10, (from, to) -> {
+        if (from == 500) {
+          throw new IllegalStateException("chunk 50");
+        }
+      });
+      fail();
+    } catch (IllegalStateException e) {
+      assertEquals("chunk 50", e.getMessage());
+    }
+    // the instance is still usable
+    AtomicIntegerArray runs = new AtomicIntegerArray(1);
+    range.forEach(1000, 10, (from, to) -> runs.addAndGet(0, to - from));
+    assertEquals(1000, runs.get(0));
+  }
+}
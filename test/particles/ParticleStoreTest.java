@@ -0,0 +1,53 @@
+package particles;
+
+import static org.junit.Assert.*;
+
+import javax.vecmath.Point3d;
+import javax.vecmath.Vector3d;
+
+import org.junit.Test;
+
+public class ParticleStoreTest {
+
+  private static final double EPS = 1e-7;
+
+  @Test
+  public void testViewsWriteThrough() {
+    ParticleStore store = new ParticleStore();
+    Particle p = new Particle(store, store.add(new Point3d(1, 2, 3)));
+    p.addX(new Vector3d(1, 0, 0));
+    assertEquals(2, store.x[3 * p.getIndex()], EPS);
+    assertEquals(new Point3d(1, 2, 3), p.getX0());
+
+    p.addPos(new Vector3d(0, 1, 0));
+    store.applyChanges();
+    assertEquals(new Point3d(2, 3, 3), p.getX());
+    assertEquals(0, store.dx[3 * p.getIndex() + 1], EPS);
+  }
+
+  @Test
+  public void testGrowPreservesState() {
+    ParticleStore store = new ParticleStore(1);
+    Particle first = new Particle(store, store.add(new Point3d(0, 1, 0)));
+    first.setV(new Vector3d(4, 5, 6));
+    for (int i = 0; i < 100; i++) {
+      store.add(new Point3d(i, i, i));
+    }
+    assertEquals(101, store.size());
+    assertEquals(new Vector3d(4, 5, 6), first.getV());
+    assertEquals(new Point3d(99, 99, 99), new Particle(store, 100).getX());
+  }
+
+  @Test
+  public void testPinnedInverseMass() {
+    Particle p = new Particle(new Point3d());
+    p.setMass(2);
+    assertEquals(0.5, p.getPositionUpdateInvMass(), EPS);
+    p.setHighlight(true);
+    assertEquals(0, p.getPositionUpdateInvMass(), EPS);
+    p.addMass(2);
+    assertEquals(0, p.getPositionUpdateInvMass(), EPS);
+    p.setHighlight(false);
+    assertEquals(0.25, p.getPositionUpdateInvMass(), EPS);
+  }
+}
@@ -0,0 +1,60 @@
+package particles;
+
+import java.io.File;
+import java.io.IOException;
+
+import forces.Gravity;
+import forces.ParallelStretchConstraint;
+
+/**
+ * Compares the SIMD kernels with the scalar loops on a generated n x n cloth.
+ * Not a unit test; run with
+ *
+ * <pre>
+ * java --add-modules jdk.incubator.vector particles.SimdBenchmark [n] [steps]
+ * </pre>
+ *
+ * after building with the simd profile. Reports ms/step of a full step with
+ * gravity and ParallelStretchConstraint, which exercises all three kernels.
+ * MeshBuilder needs memory quadratic in the vertex count, so keep n modest.
+ */
+public class SimdBenchmark {
+
+  private static final int WARMUP_STEPS = 200;
+
+  public static void main(String[] args) throws IOException {
+    int n = args.length > 0 ? Integer.parseInt(args[0]) : 60;
+    int steps = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+    if (SimdKernels.load() == null) {
+      System.out.println("SIMD kernels unavailable: build with -Psimd and run with --add-modules jdk.incubator.vector");
+      return;
+    }
+    // a horizontal grid over the unit square
+    File grid = GridMeshes.write(n, 1.0 / (n - 1), 0, 0.9, 0);
+
+    System.out.printf("%d particles%n", n * n);
+    for (int round = 0; round < 2; round++) {
+      for (boolean simd : new boolean[] { false, true }) {
+        System.out.printf("%-6s %8.3f ms/step%n", simd ? "simd" : "scalar", run(grid, simd, steps));
+      }
+    }
+  }
+
+  private static double run(File grid, boolean simd, int steps) {
+    ParticleSystem ps = new ParticleSystem();
+    ps.setSimd(simd);
+    ps.addForce(new Gravity(ps));
+    ps.addConstraint(new ParallelStretchConstraint(ps, Constants.STRETCH_DIST, Constants.STRETCH_STIFF,
+        Constants.NUM_ITERATIONS));
+    ps.addMesh(grid);
+    ps.P.get(0).setHighlight(true);
+    for (int i = 0; i < WARMUP_STEPS; i++) {
+      ps.advanceTime(0.01);
+    }
+    long start = System.nanoTime();
+    for (int i = 0; i < steps; i++) {
+      ps.advanceTime(0.01);
+    }
+    return (System.nanoTime() - start) / 1e6 / steps;
+  }
+}
@@ -0,0 +1,48 @@
+package particles;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.*;
+
+import java.io.File;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import forces.Gravity;
+import forces.ParallelStretchConstraint;
+
+public class SimdKernelsTest {
+
+  private static final int STEPS = 20;
+
+  private static double[] simulate(boolean simd, boolean xpbd) {
+    ParticleSystem ps = new ParticleSystem();
+    assertEquals(simd, ps.setSimd(simd));
+    ps.addForce(new Gravity(ps));
+    ParallelStretchConstraint stretch = new ParallelStretchConstraint(ps, Constants.STRETCH_DIST,
+        Constants.STRETCH_STIFF, Constants.NUM_ITERATIONS);
+    if (xpbd) {
+      stretch.setCompliance(Constants.STRETCH_COMPLIANCE);
+    }
+    ps.addConstraint(stretch);
+    ps.addMesh(new File("meshes/hanging-mesh.obj"));
+    ps.P.get(0).setHighlight(true);
+    for (int i = 0; i < STEPS; i++) {
+      ps.advanceTime(0.01);
+    }
+    return Arrays.copyOf(ps.store.x, 3 * ps.store.size());
+  }
+
+  @Test
+  public void testMatchesScalar() {
+    // only built by the simd profile, and only runs with the incubator module
+    assumeNotNull(SimdKernels.load());
+    for (boolean xpbd : new boolean[] { false, true }) {
+      double[] scalar = simulate(false, xpbd);
+      double[] vector = simulate(true, xpbd);
+      for (int k = 0; k < scalar.length; k++) {
+        assertEquals(scalar[k], vector[k], 1e-9);
+      }
+    }
+  }
+}
@@ -0,0 +1,93 @@
+package particles;
+
+import java.io.File;
+
+import javax.vecmath.Point3d;
+
+import forces.BendConstraint;
+import forces.Gravity;
+import forces.StretchConstraint;
+
+/**
+ * Compares substep / iteration splits of a frame by stretch error per frame
+ * time. Not a unit test; run with
+ *
+ * <pre>
+ * java particles.SubstepBenchmark [mesh.obj] [frames]
+ * </pre>
+ *
+ * Every scheme spends about the same number of constraint projections per
+ * frame, so a lower error at a similar ms/frame is better convergence per
+ * millisecond.
+ */
+public class SubstepBenchmark {
+
+  private static final double FRAME_DT = 0.01;
+  private static final int WARMUP_FRAMES = 200;
+
+  /** { substeps, iterations per substep } */
+  private static final int[][] SCHEMES = { { 1, 10 }, { 2, 5 }, { 5, 2 }, { 10, 1 } };
+
+  public static void main(String[] args) {
+    File mesh = new File(args.length > 0 ? args[0] : "meshes/hanging-mesh.obj");
+    int frames = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+
+    System.out.printf("%-6s %-8s %10s %12s %12s%n", "solver", "scheme", "ms/frame", "mean strain", "max strain");
+    run(mesh, frames, 1, 10, false);
+    for (int[] scheme : SCHEMES) {
+      run(mesh, frames, scheme[0], scheme[1], true);
+    }
+  }
+
+  private static void run(File mesh, int frames, int substeps, int iterations, boolean xpbd) {
+    ParticleSystem ps = new ParticleSystem();
+    ps.addStaticMesh(Mesh.CubeMesh(new Point3d(0, 0, 0), new Point3d(1, 1, 1), true));
+    ps.addForce(new Gravity(ps));
+    StretchConstraint stretch = new StretchConstraint(ps, Constants.STRETCH_DIST, Constants.STRETCH_STIFF, iterations);
+    BendConstraint bend = new BendConstraint(ps, Constants.BEND_STIFF, iterations);
+    if (xpbd) {
+      stretch.setCompliance(Constants.STRETCH_COMPLIANCE);
+      bend.setCompliance(Constants.BEND_COMPLIANCE);
+    }
+    ps.addConstraint(stretch);
+    ps.addConstraint(bend);
+    ps.addMesh(mesh);
+    ps.P.get(0).setHighlight(true);
+    ps.setSubsteps(substeps, iterations);
+
+    for (int i = 0; i < WARMUP_FRAMES; i++) {
+      ps.advanceFrame(FRAME_DT);
+    }
+
+    long time = 0;
+    double sumStrain = 0, maxStrain = 0;
+    for (int i = 0; i < frames; i++) {
+      long start = System.nanoTime();
+      ps.advanceFrame(FRAME_DT);
+      time += System.nanoTime() - start;
+      double[] strain = strain(ps);
+      sumStrain += strain[0];
+      maxStrain = Math.max(maxStrain, strain[1]);
+    }
+    System.out.printf("%-6s %2dx%-5d %10.3f %12.3e %12.3e%n", xpbd ? "XPBD" : "PBD", substeps, iterations,
+        time / 1e6 / frames, sumStrain / frames, maxStrain);
+  }
+
+  /** @return the mean and maximum of |length / restLength - 1| over all edges */
+  private static double[] strain(ParticleSystem ps) {
+    double sum = 0, max = 0;
+    int n = 0;
+    double[] x = ps.store.x;
+    for (Mesh mesh : ps.M) {
+      for (Edge edge : mesh.edges) {
+        int i = 3 * edge.v0.getIndex(), j = 3 * edge.v1.getIndex();
+        double dx = x[i] - x[j], dy = x[i + 1] - x[j + 1], dz = x[i + 2] - x[j + 2];
+        double strain = Math.abs(Math.sqrt(dx * dx + dy * dy + dz * dz) / edge.restLength - 1);
+        sum += strain;
+        max = Math.max(max, strain);
+        n++;
+      }
+    }
+    return new double[] { sum / n, max };
+  }
+}
@@ -0,0 +1,117 @@
+package particles;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.Arrays;
+
+import javax.vecmath.Point3d;
+import javax.vecmath.Vector3d;
+
+import org.junit.Test;
+
+import forces.BendConstraint;
+import forces.Gravity;
+import forces.StretchConstraint;
+
+public class SubstepTest {
+
+  private static final double FRAME_DT = 0.01;
+
+  private static ParticleSystem hangingCloth() {
+    ParticleSystem ps = new ParticleSystem();
+    ps.addForce(new Gravity(ps));
+    ps.addConstraint(new StretchConstraint(ps, Constants.STRETCH_DIST, Constants.STRETCH_STIFF, Constants.NUM_ITERATIONS));
+    ps.addConstraint(new BendConstraint(ps, Constants.BEND_STIFF, Constants.NUM_ITERATIONS));
+    ps.addMesh(new File("meshes/hanging-mesh.obj"));
+    ps.P.get(0).setHighlight(true);
+    return ps;
+  }
+
+  /** @return a system of one particle at the origin moving at v, without forces */
+  private static ParticleSystem freeParticle(Vector3d v) {
+    ParticleSystem ps = new ParticleSystem();
+    ps.createParticle(new Point3d()).setV(v);
+    return ps;
+  }
+
+  private static double[] positions(ParticleSystem ps) {
+    return Arrays.copyOf(ps.store.x, 3 * ps.P.size());
+  }
+
+  @Test
+  public void testFrameIsSubstepsOfEqualLength() {
+    ParticleSystem frames = hangingCloth();
+    ParticleSystem steps = hangingCloth();
+    frames.setSubsteps(4, 3);
+    steps.setSubsteps(1, 3);
+    for (int frame = 0; frame < 50; frame++) {
+      frames.advanceFrame(FRAME_DT);
+      for (int i = 0; i < 4; i++) {
+        steps.advanceTime(FRAME_DT / 4);
+      }
+    }
+    assertArrayEquals(positions(steps), positions(frames), 0);
+    assertEquals(50 * FRAME_DT, frames.time, 1e-12);
+  }
+
+  @Test
+  public void testSetSubstepsTakesEffect() {
+    ParticleSystem ps = hangingCloth();
+    assertEquals(1, ps.getSubsteps());
+    assertEquals(10, ps.getIterations());
+    ps.setSubsteps(5, 2);
+    assertEquals(5, ps.getSubsteps());
+    assertEquals(2, ps.getIterations());
+    ps.advanceFrame(FRAME_DT);
+    assertEquals(2, ps.getLastIterationCount());
+
+    // a frame of 5 substeps moves the particles differently than one step
+    ParticleSystem single = hangingCloth();
+    single.setSubsteps(1, 2);
+    single.advanceFrame(FRAME_DT);
+    assertNotEquals(single.P.get(40).getX().y, ps.P.get(40).getX().y, 1e-9);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testSubstepsMustBePositive() {
+    new ParticleSystem().setSubsteps(0, 10);
+  }
+
+  @Test
+  public void testOneSubstepMatchesAdvanceTime() {
+    // the default 1 x 10 split is the step of advanceTime()
+    ParticleSystem frames = hangingCloth();
+    ParticleSystem steps = hangingCloth();
+    for (int frame = 0; frame < 100; frame++) {
+      frames.advanceFrame(FRAME_DT);
+      steps.advanceTime(FRAME_DT);
+    }
+    assertArrayEquals(positions(steps), positions(frames), 0);
+  }
+
+  @Test
+  public void testDampingAtOneHundredthOfASecondIsUnchanged() {
+    // advanceTime(0.01) used to set v = (x - xPrev) * 0.95 / dt
+    ParticleSystem ps = freeParticle(new Vector3d(1, -2, 0.5));
+    ps.advanceTime(FRAME_DT);
+    double[] x = ps.store.x, xPrev = ps.store.xPrev, v = ps.store.v;
+    for (int k = 0; k < 3; k++) {
+      assertEquals((x[k] - xPrev[k]) * (0.95 / FRAME_DT), v[k], 0);
+    }
+  }
+
+  @Test
+  public void testDampingDoesNotCompoundWithSubsteps() {
+    Vector3d v0 = new Vector3d(1, -2, 0.5);
+    ParticleSystem single = freeParticle(v0);
+    ParticleSystem split = freeParticle(v0);
+    split.setSubsteps(10, 1);
+    single.advanceFrame(FRAME_DT);
+    split.advanceFrame(FRAME_DT);
+    Vector3d expected = new Vector3d(v0);
+    expected.scale(0.95);
+    assertTrue(single.P.get(0).getV().epsilonEquals(expected, 1e-12));
+    assertTrue(split.P.get(0).getV().epsilonEquals(expected, 1e-12));
+  }
+}
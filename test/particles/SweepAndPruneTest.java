@@ -0,0 +1,103 @@
+package particles;
+
+import static org.junit.Assert.*;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class SweepAndPruneTest {
+
+  private static Set<Long> pairs(SweepAndPrune sap) {
+    Set<Long> pairs = new HashSet<>();
+    for (int k = 0; k < sap.numPairs(); k++) {
+      assertTrue(sap.pairFirst(k) < sap.pairSecond(k));
+      assertTrue("pair reported twice", pairs.add((long) sap.pairFirst(k) << 32 | sap.pairSecond(k)));
+    }
+    return pairs;
+  }
+
+  private static Set<Long> bruteForce(double[][] boxes, int[] groups, int[] masks) {
+    Set<Long> pairs = new HashSet<>();
+    for (int a = 0; a < boxes.length; a++) {
+      for (int b = a + 1; b < boxes.length; b++) {
+        if ((masks[a] & 1 << groups[b]) == 0) {
+          continue;
+        }
+        boolean overlap = true;
+        for (int axis = 0; axis < 3; axis++) {
+          overlap &= boxes[a][axis] <= boxes[b][axis + 3] && boxes[b][axis] <= boxes[a][axis + 3];
+        }
+        if (overlap) {
+          pairs.add((long) a << 32 | b);
+        }
+      }
+    }
+    return pairs;
+  }
+
+  private static void randomBox(Random random, double[] box, double size) {
+    for (int axis = 0; axis < 3; axis++) {
+      box[axis] = random.nextDouble() * 10;
+      box[axis + 3] = box[axis] + random.nextDouble() * size;
+    }
+  }
+
+  @Test
+  public void testMatchesBruteForceAcrossUpdates() {
+    Random random = new Random(7);
+    int n = 200;
+    double[][] boxes = new double[n][6];
+    int[] groups = new int[n];
+    int[] masks = new int[n];
+    SweepAndPrune sap = new SweepAndPrune();
+    for (int i = 0; i < n; i++) {
+      // groups 0 and 1 collide with each other, group 2 with everything
+      groups[i] = random.nextInt(3);
+      masks[i] = groups[i] == 2 ? 0b111 : 0b100 | 1 << (1 - groups[i]);
+      assertEquals(i, sap.add(groups[i], masks[i]));
+      randomBox(random, boxes[i], 2);
+    }
+
+    for (int step = 0; step < 20; step++) {
+      for (int i = 0; i < n; i++) {
+        sap.setBounds(i, boxes[i][0], boxes[i][1], boxes[i][2], boxes[i][3], boxes[i][4], boxes[i][5]);
+      }
+      int numPairs = sap.update();
+      Set<Long> expected = bruteForce(boxes, groups, masks);
+      assertEquals(expected.size(), numPairs);
+      assertEquals(expected, pairs(sap));
+
+      // small moves most steps, a reshuffle now and then
+      for (int i = 0; i < n; i++) {
+        if (step % 7 == 6) {
+          randomBox(random, boxes[i], 2);
+          continue;
+        }
+        double dx = random.nextGaussian() * 0.1;
+        boxes[i][0] += dx;
+        boxes[i][3] += dx;
+      }
+    }
+  }
+
+  @Test
+  public void testTouchingBoxesAndClear() {
+    SweepAndPrune sap = new SweepAndPrune();
+    sap.add(0, 0b10);
+    sap.add(1, 0b01);
+    sap.add(1, 0b01);
+    sap.setBounds(0, 0, 0, 0, 1, 1, 1);
+    sap.setBounds(1, 1, 1, 1, 2, 2, 2);
+    sap.setBounds(2, 0.5, 0.5, 1.5, 0.7, 0.7, 2);
+    assertEquals(1, sap.update());
+    assertEquals(0, sap.pairFirst(0));
+    assertEquals(1, sap.pairSecond(0));
+
+    sap.clear();
+    assertEquals(0, sap.numBoxes());
+    assertEquals(0, sap.update());
+  }
+}
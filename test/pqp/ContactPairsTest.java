@@ -0,0 +1,69 @@
+package pqp;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+import org.junit.Test;
+
+public class ContactPairsTest {
+  static {
+    System.loadLibrary("PQP");
+  }
+
+  @Test
+  public void testBulkCopyMatchesPerPairReadout() {
+    DeformableModel lower = PQPBindingTest.heightField(0, 0);
+    DeformableModel upper = PQPBindingTest.heightField(0.02, 1);
+    try (PQP_CollideResult result = new PQP_CollideResult()) {
+      WrapperUtil util = new WrapperUtil();
+      PQP.PQP_Collide(result, util.newI3(), util.newPoint(0, 0, 0), lower.getModel(), util.newI3(),
+          util.newPoint(0, 0, 0), upper.getModel(), PQP.getPQP_ALL_CONTACTS());
+      util.delete();
+      int n = result.NumPairs();
+      assertTrue(n > 10);
+
+      int[] pairs = new int[2 * n];
+      assertEquals(n, ContactPairs.copyPairs(result, pairs));
+      IntBuffer buffer = ByteBuffer.allocateDirect(8 * n).order(ByteOrder.nativeOrder()).asIntBuffer();
+      assertEquals(n, ContactPairs.copyPairs(result, buffer));
+      for (int k = 0; k < n; k++) {
+        assertEquals(result.Id1(k), pairs[2 * k]);
+        assertEquals(result.Id2(k), pairs[2 * k + 1]);
+        assertEquals(result.Id1(k), buffer.get(2 * k));
+        assertEquals(result.Id2(k), buffer.get(2 * k + 1));
+      }
+
+      // too small: copies what fits, still reports all
+      int[] few = new int[6];
+      assertEquals(n, ContactPairs.copyPairs(result, few));
+      assertEquals(pairs[5], few[5]);
+    }
+    lower.close();
+    upper.close();
+  }
+
+  @Test
+  public void testReusedResultGrowsAndKeepsCapacity() {
+    DeformableModel lower = PQPBindingTest.heightField(0, 0);
+    DeformableModel upper = PQPBindingTest.heightField(0.02, 1);
+    DeformableModel apart = PQPBindingTest.heightField(5, 1);
+    try (ContactPairs pairs = new ContactPairs(1)) {
+      PQPHelper.collideAll(lower.getModel(), upper.getModel(), pairs);
+      int n = pairs.size();
+      assertEquals(PQPHelper.simpleCollideAll(lower.getModel(), upper.getModel()).size(), n);
+      assertTrue(pairs.array().length >= 2 * n);
+      int[] array = pairs.array();
+
+      assertEquals(0, PQPHelper.collideAll(lower.getModel(), apart.getModel(), pairs).size());
+      PQPHelper.collideAll(lower.getModel(), upper.getModel(), pairs);
+      assertEquals(n, pairs.size());
+      assertSame(array, pairs.array());
+    }
+    lower.close();
+    upper.close();
+    apart.close();
+  }
+}
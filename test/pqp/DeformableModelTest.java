@@ -0,0 +1,130 @@
+package pqp;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import particles.GridMeshes;
+
+public class DeformableModelTest {
+  static {
+    System.loadLibrary("PQP");
+  }
+
+  private static final int N = 16;
+
+  /** The grid over the unit square, bent into a wave of the given amplitude. */
+  private static double[] wave(double amplitude) {
+    double[] x = new double[3 * N * N];
+    for (int i = 0; i < N; i++) {
+      for (int j = 0; j < N; j++) {
+        int v = 3 * (i * N + j);
+        double u = i / (double) (N - 1), w = j / (double) (N - 1);
+        x[v] = u;
+        x[v + 1] = amplitude * Math.sin(2 * Math.PI * u) * Math.cos(Math.PI * w);
+        x[v + 2] = w;
+      }
+    }
+    return x;
+  }
+
+  private static SegmentQuery randomSegments() {
+    Random random = new Random(3);
+    SegmentQuery query = new SegmentQuery();
+    for (int k = 0; k < 400; k++) {
+      double x = random.nextDouble(), z = random.nextDouble();
+      query.add(x, 0.6 * random.nextDouble() - 0.3, z, x + 0.05 * random.nextGaussian(),
+          0.6 * random.nextDouble() - 0.3, z + 0.05 * random.nextGaussian());
+    }
+    return query;
+  }
+
+  @Test
+  public void testRefitMatchesRebuild() {
+    int[] faces = GridMeshes.faces(N);
+    DeformableModel deformable = new DeformableModel(wave(0), faces);
+    deformable.setRebuildThreshold(Double.POSITIVE_INFINITY);
+    double[] x = wave(0.2);
+    assertFalse(deformable.update(x));
+    assertEquals(0, deformable.getRebuildCount());
+    assertTrue(deformable.getQuality() > 1);
+
+    SegmentQuery refit = randomSegments();
+    SegmentQuery rebuilt = randomSegments();
+    int hits = refit.intersect(deformable.getModel());
+    assertTrue(hits > 0);
+    assertEquals(hits, rebuilt.intersect(new DeformableModel(x, faces).getModel()));
+    for (int k = 0; k < refit.size(); k++) {
+      assertEquals(rebuilt.getTriangle(k), refit.getTriangle(k));
+      assertEquals(rebuilt.getParameter(k), refit.getParameter(k), 1e-12);
+    }
+  }
+
+  @Test
+  public void testRepeatedRefitsDoNotDrift() {
+    DeformableModel deformable = new DeformableModel(wave(0), GridMeshes.faces(N));
+    deformable.setRebuildThreshold(Double.POSITIVE_INFINITY);
+    deformable.update(wave(0.2));
+    double quality = deformable.getQuality();
+    for (int i = 0; i < 200; i++) {
+      deformable.update(wave(0.2 * Math.cos(i)));
+    }
+    deformable.update(wave(0.2));
+    assertEquals(quality, deformable.getQuality(), 1e-9);
+    deformable.delete();
+  }
+
+  @Test
+  public void testRebuildsWhenTreeDegrades() {
+    int[] faces = GridMeshes.faces(N);
+    DeformableModel deformable = new DeformableModel(wave(0), faces);
+    // a small motion keeps the tree
+    assertFalse(deformable.update(wave(0.01)));
+    // scrambling the vertices loosens every box
+    double[] x = wave(0);
+    Random random = new Random(5);
+    for (int k = 0; k < x.length; k++) {
+      x[k] = random.nextDouble();
+    }
+    assertTrue(deformable.update(x));
+    assertEquals(1, deformable.getRebuildCount());
+    assertEquals(1, deformable.getQuality(), 0);
+  }
+
+  @Test
+  public void testCacheRoundtrip() throws IOException {
+    File file = File.createTempFile("wave", ".pqp");
+    file.deleteOnExit();
+    int[] faces = GridMeshes.faces(N);
+    double[] x = wave(0.2);
+    long key = DeformableModel.key(x, faces);
+    try (DeformableModel built = new DeformableModel(x, faces)) {
+      built.save(file, key);
+      try (DeformableModel loaded = DeformableModel.load(file, key, faces)) {
+        assertNotNull(loaded);
+        assertEquals(1, loaded.getQuality(), 0);
+        SegmentQuery expected = randomSegments();
+        SegmentQuery actual = randomSegments();
+        assertEquals(expected.intersect(built.getModel()), actual.intersect(loaded.getModel()));
+        for (int k = 0; k < expected.size(); k++) {
+          assertEquals(expected.getTriangle(k), actual.getTriangle(k));
+          assertEquals(expected.getParameter(k), actual.getParameter(k), 0);
+        }
+        // the orientations came along: a refit of the loaded tree is the same
+        assertEquals(built.update(wave(0.1)), loaded.update(wave(0.1)));
+        assertEquals(built.getQuality(), loaded.getQuality(), 0);
+      }
+    }
+
+    // a model saved for other positions or faces is not read
+    assertNotEquals(key, DeformableModel.key(wave(0.3), faces));
+    assertNull(DeformableModel.load(file, DeformableModel.key(wave(0.3), faces), faces));
+    assertNull(DeformableModel.load(file, key, Arrays.copyOf(faces, faces.length - 3)));
+    assertNull(DeformableModel.load(new File(file.getPath() + ".missing"), key, faces));
+  }
+}
@@ -0,0 +1,30 @@
+package pqp;
+
+import java.util.List;
+
+import javax.vecmath.Point3d;
+import javax.vecmath.Point3i;
+import javax.vecmath.Tuple3i;
+
+import particles.GridMeshes;
+
+/** Triangle meshes shared by the query tests. */
+final class HeightFields {
+
+  private HeightFields() {
+  }
+
+  /** A bumpy n x n height field over the unit square. */
+  static void heightField(int n, List<Point3d> vertices, List<Tuple3i> faces) {
+    for (int i = 0; i < n; i++) {
+      for (int j = 0; j < n; j++) {
+        double u = i / (double) (n - 1), v = j / (double) (n - 1);
+        vertices.add(new Point3d(u, 0.1 * Math.sin(7 * u) * Math.cos(5 * v), v));
+      }
+    }
+    int[] grid = GridMeshes.faces(n);
+    for (int k = 0; k < grid.length; k += 3) {
+      faces.add(new Point3i(grid[k], grid[k + 1], grid[k + 2]));
+    }
+  }
+}
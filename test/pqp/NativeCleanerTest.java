@@ -0,0 +1,74 @@
+package pqp;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.vecmath.Point3d;
+import javax.vecmath.Point3i;
+import javax.vecmath.Tuple3i;
+
+import org.junit.Test;
+
+public class NativeCleanerTest {
+  static {
+    System.loadLibrary("PQP");
+  }
+
+  private static PQP_Model triangle(double y) {
+    List<Point3d> vertices = new ArrayList<>();
+    vertices.add(new Point3d(0, y, 0));
+    vertices.add(new Point3d(1, y, 0));
+    vertices.add(new Point3d(0, y, 1));
+    List<Tuple3i> faces = new ArrayList<>();
+    faces.add(new Point3i(0, 1, 2));
+    return PQPHelper.buildPQPModel(vertices, faces);
+  }
+
+  @Test
+  public void testCloseFreesDeterministically() {
+    long alive = PQPHelper.nativeObjectsAlive();
+    long leaked = PQPHelper.nativeObjectsLeaked();
+    try (PQP_Model ground = triangle(0)) {
+      for (int i = 0; i < 10000; i++) {
+        try (PQP_Model model = triangle(i % 2 == 0 ? 0 : 1)) {
+          assertEquals(i % 2 == 0, PQPHelper.simpleCollide(ground, model) != null);
+        }
+      }
+      assertEquals(alive + 1, PQPHelper.nativeObjectsAlive());
+    }
+    assertEquals(alive, PQPHelper.nativeObjectsAlive());
+    assertEquals(leaked, PQPHelper.nativeObjectsLeaked());
+  }
+
+  @Test
+  public void testCloseIsIdempotent() {
+    long alive = PQPHelper.nativeObjectsAlive();
+    PQP_CollideResult result = new PQP_CollideResult();
+    DeformableModel deformable = new DeformableModel(new double[] { 0, 0, 0, 1, 0, 0, 0, 0, 1 },
+        new int[] { 0, 1, 2 });
+    assertEquals(alive + 3, PQPHelper.nativeObjectsAlive());
+    result.close();
+    result.delete();
+    deformable.close();
+    deformable.close();
+    assertEquals(alive, PQPHelper.nativeObjectsAlive());
+  }
+
+  @Test
+  public void testCleanerFreesDroppedProxies() throws InterruptedException {
+    long alive = PQPHelper.nativeObjectsAlive();
+    long leaked = PQPHelper.nativeObjectsLeaked();
+    for (int i = 0; i < 100; i++) {
+      triangle(0);
+    }
+    // proxies dropped by earlier tests may be cleaned up meanwhile as well
+    for (int i = 0; i < 100 && PQPHelper.nativeObjectsLeaked() < leaked + 100; i++) {
+      System.gc();
+      Thread.sleep(20);
+    }
+    assertTrue(PQPHelper.nativeObjectsLeaked() >= leaked + 100);
+    assertTrue(PQPHelper.nativeObjectsAlive() <= alive);
+  }
+}
@@ -0,0 +1,59 @@
+package pqp;
+
+/**
+ * Compares the SWIG and java.lang.foreign bindings of PQP_Collide: on two
+ * overlapping height fields, where the query itself dominates, and on two
+ * crossing triangles, where the cost of the binding does. Not a unit test;
+ * run with
+ *
+ * <pre>
+ * java --enable-preview -Djava.library.path=... pqp.PQPBindingBenchmark [queries]
+ * </pre>
+ *
+ * after building with the panama profile. Reports the time per query,
+ * including passing the transforms and reading all contacts back into an
+ * int[].
+ */
+public class PQPBindingBenchmark {
+
+  public static void main(String[] args) {
+    int queries = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+    PQPBinding foreign = PQPBinding.load();
+    if (foreign == null) {
+      System.out.println("foreign binding unavailable: build with -Ppanama and run with --enable-preview");
+      return;
+    }
+    DeformableModel a = PQPBindingTest.heightField(0, 0);
+    DeformableModel b = PQPBindingTest.heightField(0, 1.3);
+    DeformableModel t1 = new DeformableModel(new double[] { 0, 0, 0, 1, 0, 0, 0, 0, 1 }, new int[] { 0, 1, 2 });
+    DeformableModel t2 = new DeformableModel(new double[] { 0.2, -1, 0.2, 0.2, 1, 0.2, 0.3, 1, 0.2 },
+        new int[] { 0, 1, 2 });
+    PQPBinding swig = PQPBinding.swig();
+    int[] pairs = new int[1 << 16];
+    for (int round = 0; round < 3; round++) {
+      for (PQPBinding binding : new PQPBinding[] { swig, foreign }) {
+        String name = binding == swig ? "swig" : "foreign";
+        run(name + " fields", binding, a, b, queries, pairs);
+        run(name + " triangles", binding, t1, t2, 1000 * queries, pairs);
+      }
+    }
+    t1.close();
+    t2.close();
+    a.close();
+    b.close();
+  }
+
+  private static void run(String name, PQPBinding binding, DeformableModel a, DeformableModel b, int queries,
+      int[] pairs) {
+    double[] R2 = { 0, 0, 1, 0, 1, 0, -1, 0, 0 };
+    double[] T2 = { 0, 0.02, 1 };
+    int n = 0;
+    long start = System.nanoTime();
+    for (int i = 0; i < queries; i++) {
+      n = binding.collide(PQPBinding.IDENTITY, PQPBinding.ZERO, a.getModel(), R2, T2, b.getModel(),
+          PQP.getPQP_ALL_CONTACTS(), pairs);
+    }
+    double us = (System.nanoTime() - start) / 1e3 / queries;
+    System.out.printf("%-18s %5d pairs %10.3f us/query%n", name, n, us);
+  }
+}
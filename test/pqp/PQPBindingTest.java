@@ -0,0 +1,95 @@
+package pqp;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.*;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+import particles.GridMeshes;
+
+public class PQPBindingTest {
+  static {
+    System.loadLibrary("PQP");
+  }
+
+  private static final int N = 20;
+
+  /** A bumpy n x n height field over the unit square at height y0. */
+  static DeformableModel heightField(double y0, double phase) {
+    double[] x = new double[3 * N * N];
+    for (int i = 0; i < N; i++) {
+      for (int j = 0; j < N; j++) {
+        int v = 3 * (i * N + j);
+        double u = i / (double) (N - 1), w = j / (double) (N - 1);
+        x[v] = u;
+        x[v + 1] = y0 + 0.1 * Math.sin(7 * u + phase) * Math.cos(5 * w);
+        x[v + 2] = w;
+      }
+    }
+    return new DeformableModel(x, GridMeshes.faces(N));
+  }
+
+  /** Pairs of PQP_Collide through the SWIG proxies, with R2 a quarter turn about y. */
+  private static Set<Long> reference(PQP_Model m1, PQP_Model m2) {
+    WrapperUtil util = new WrapperUtil();
+    try (PQP_CollideResult result = new PQP_CollideResult()) {
+      PQP.PQP_Collide(result, util.newI3(), util.newPoint(0, 0, 0), m1, util.new3x3Mat(0, 0, 1, 0, 1, 0, -1, 0, 0),
+          util.newPoint(0, 0.02, 1), m2, PQP.getPQP_ALL_CONTACTS());
+      Set<Long> pairs = new HashSet<>();
+      for (int k = 0; k < result.NumPairs(); k++) {
+        pairs.add((long) result.Id1(k) << 32 | result.Id2(k));
+      }
+      return pairs;
+    } finally {
+      util.delete();
+    }
+  }
+
+  private static void checkBinding(PQPBinding binding) {
+    DeformableModel a = heightField(0, 0);
+    DeformableModel b = heightField(0, 1.3);
+    Set<Long> expected = reference(a.getModel(), b.getModel());
+    assertTrue(expected.size() > 10);
+
+    double[] R2 = { 0, 0, 1, 0, 1, 0, -1, 0, 0 };
+    double[] T2 = { 0, 0.02, 1 };
+    // too small a buffer still reports the number of contacts
+    int[] pairs = new int[6];
+    int n = binding.collide(PQPBinding.IDENTITY, PQPBinding.ZERO, a.getModel(), R2, T2, b.getModel(),
+        PQP.getPQP_ALL_CONTACTS(), pairs);
+    assertEquals(expected.size(), n);
+    for (int k = 0; k < 3; k++) {
+      assertTrue(expected.contains((long) pairs[2 * k] << 32 | pairs[2 * k + 1]));
+    }
+
+    pairs = new int[2 * n];
+    assertEquals(n, binding.collide(PQPBinding.IDENTITY, PQPBinding.ZERO, a.getModel(), R2, T2, b.getModel(),
+        PQP.getPQP_ALL_CONTACTS(), pairs));
+    Set<Long> found = new HashSet<>();
+    for (int k = 0; k < n; k++) {
+      found.add((long) pairs[2 * k] << 32 | pairs[2 * k + 1]);
+    }
+    assertEquals(expected, found);
+
+    assertEquals(1, binding.collide(PQPBinding.IDENTITY, PQPBinding.ZERO, a.getModel(), R2, T2, b.getModel(),
+        PQP.getPQP_FIRST_CONTACT(), pairs));
+    a.close();
+    b.close();
+  }
+
+  @Test
+  public void testSwigBinding() {
+    checkBinding(PQPBinding.swig());
+  }
+
+  @Test
+  public void testForeignBinding() {
+    // only built by the panama profile, and only runs with --enable-preview
+    PQPBinding foreign = PQPBinding.load();
+    assumeNotNull(foreign);
+    checkBinding(foreign);
+  }
+}
@@ -0,0 +1,103 @@
+package pqp;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import javax.vecmath.Point3d;
+import javax.vecmath.Point3i;
+import javax.vecmath.Tuple3i;
+
+import org.junit.Test;
+
+import bvh.AabbTree;
+
+public class ProximityQueryTest {
+  static {
+    System.loadLibrary("PQP");
+  }
+
+  private static AabbTree aabbTree(List<Point3d> vertices, List<Tuple3i> faces) {
+    double[] x = new double[3 * vertices.size()];
+    for (int i = 0; i < vertices.size(); i++) {
+      x[3 * i] = vertices.get(i).x;
+      x[3 * i + 1] = vertices.get(i).y;
+      x[3 * i + 2] = vertices.get(i).z;
+    }
+    int[] f = new int[3 * faces.size()];
+    for (int t = 0; t < faces.size(); t++) {
+      f[3 * t] = faces.get(t).x;
+      f[3 * t + 1] = faces.get(t).y;
+      f[3 * t + 2] = faces.get(t).z;
+    }
+    return new AabbTree(x, f);
+  }
+
+  @Test
+  public void testAgreesWithAabbTree() {
+    List<Point3d> vertices = new ArrayList<>();
+    List<Tuple3i> faces = new ArrayList<>();
+    HeightFields.heightField(20, vertices, faces);
+    PQP_Model model = PQPHelper.buildPQPModel(vertices, faces);
+    AabbTree tree = aabbTree(vertices, faces);
+    AabbTree.Hit hit = new AabbTree.Hit();
+
+    Random random = new Random(11);
+    ProximityQuery query = new ProximityQuery(1);
+    double tolerance = 0.08;
+    for (int k = 0; k < 500; k++) {
+      assertEquals(k, query.add(1.2 * random.nextDouble() - 0.1, 0.5 * random.nextDouble() - 0.25,
+          1.2 * random.nextDouble() - 0.1));
+    }
+    int hits = query.query(model, tolerance);
+    assertTrue(hits > 0 && hits < query.size());
+
+    int count = 0;
+    for (int k = 0; k < query.size(); k++) {
+      boolean near = tree.closestTriangle(query.getCoordinate(k, 0), query.getCoordinate(k, 1),
+          query.getCoordinate(k, 2), tolerance, hit);
+      assertEquals("point " + k, near, query.getTriangle(k) >= 0);
+      if (!near) {
+        assertEquals(tolerance, query.getDistance(k), 0);
+        continue;
+      }
+      count++;
+      // the nearest triangle may differ at ties, the distance may not
+      assertEquals(hit.distance, query.getDistance(k), 1e-9);
+      double ex = query.getClosest(k, 0) - query.getCoordinate(k, 0);
+      double ey = query.getClosest(k, 1) - query.getCoordinate(k, 1);
+      double ez = query.getClosest(k, 2) - query.getCoordinate(k, 2);
+      assertEquals(query.getDistance(k), Math.sqrt(ex * ex + ey * ey + ez * ez), 1e-9);
+    }
+    assertEquals(hits, count);
+  }
+
+  @Test
+  public void testHelperDistanceAndTolerance() {
+    List<Point3d> vertices = new ArrayList<>();
+    vertices.add(new Point3d(0, 0, 0));
+    vertices.add(new Point3d(1, 0, 0));
+    vertices.add(new Point3d(0, 0, 1));
+    List<Tuple3i> faces = new ArrayList<>();
+    faces.add(new Point3i(0, 1, 2));
+    PQP_Model lower = PQPHelper.buildPQPModel(vertices, faces);
+    for (Point3d v : vertices) {
+      v.y = 0.3;
+    }
+    PQP_Model upper = PQPHelper.buildPQPModel(vertices, faces);
+
+    Point3d p1 = new Point3d(), p2 = new Point3d();
+    assertEquals(0.3, PQPHelper.simpleDistance(lower, upper, p1, p2), 1e-12);
+    assertEquals(0, p1.y, 1e-12);
+    assertEquals(0.3, p2.y, 1e-12);
+    assertEquals(0.3, p1.distance(p2), 1e-12);
+
+    assertFalse(PQPHelper.simpleTolerance(lower, upper, 0.25, null, null));
+    assertTrue(PQPHelper.simpleTolerance(lower, upper, 0.35, p1, p2));
+    assertEquals(0.3, p1.distance(p2), 1e-12);
+    lower.close();
+    upper.close();
+  }
+}
@@ -0,0 +1,105 @@
+package pqp;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import javax.vecmath.Point3d;
+import javax.vecmath.Point3i;
+import javax.vecmath.Tuple2i;
+import javax.vecmath.Tuple3i;
+import javax.vecmath.Vector3d;
+
+import org.junit.Test;
+
+public class SegmentQueryTest {
+  static {
+    System.loadLibrary("PQP");
+  }
+
+  @Test
+  public void testAgreesWithDegenerateTriangleCollide() {
+    List<Point3d> vertices = new ArrayList<>();
+    List<Tuple3i> faces = new ArrayList<>();
+    HeightFields.heightField(20, vertices, faces);
+    PQP_Model model = PQPHelper.buildPQPModel(vertices, faces);
+
+    Random random = new Random(7);
+    SegmentQuery query = new SegmentQuery(1);
+    List<Point3d[]> segments = new ArrayList<>();
+    for (int k = 0; k < 500; k++) {
+      Point3d p = new Point3d(random.nextDouble(), 0.3 * random.nextDouble() - 0.15, random.nextDouble());
+      Point3d q = new Point3d(p.x + 0.1 * random.nextGaussian(), 0.3 * random.nextDouble() - 0.15,
+          p.z + 0.1 * random.nextGaussian());
+      segments.add(new Point3d[] { p, q });
+      assertEquals(k, query.add(p.x, p.y, p.z, q.x, q.y, q.z));
+    }
+    int hits = query.intersect(model);
+    assertTrue(hits > 0 && hits < segments.size());
+
+    int count = 0;
+    for (int k = 0; k < segments.size(); k++) {
+      Point3d p = segments.get(k)[0], q = segments.get(k)[1];
+      List<Point3d> tmpV = new ArrayList<>();
+      tmpV.add(p);
+      tmpV.add(p);
+      tmpV.add(q);
+      List<Tuple3i> tmpF = new ArrayList<>();
+      tmpF.add(new Point3i(0, 1, 2));
+      Tuple2i pair = PQPHelper.simpleCollide(model, PQPHelper.buildPQPModel(tmpV, tmpF));
+
+      int t = query.getTriangle(k);
+      assertEquals("segment " + k, pair != null, t >= 0);
+      if (t < 0) {
+        continue;
+      }
+      count++;
+      // the crossing lies on the plane of the reported triangle
+      double s = query.getParameter(k);
+      Point3d x = new Point3d();
+      x.interpolate(p, q, s);
+      Tuple3i f = faces.get(t);
+      Vector3d u = new Vector3d(), v = new Vector3d(), n = new Vector3d();
+      u.sub(vertices.get(f.y), vertices.get(f.x));
+      v.sub(vertices.get(f.z), vertices.get(f.x));
+      n.cross(u, v);
+      n.normalize();
+      Vector3d d = new Vector3d();
+      d.sub(x, vertices.get(f.x));
+      assertEquals(0, d.dot(n), 1e-9);
+    }
+    assertEquals(hits, count);
+  }
+
+  @Test
+  public void testReportsNearestTriangle() {
+    List<Point3d> vertices = new ArrayList<>();
+    List<Tuple3i> faces = new ArrayList<>();
+    // two parallel squares at y = 0 and y = 1
+    for (int y = 0; y < 2; y++) {
+      vertices.add(new Point3d(0, y, 0));
+      vertices.add(new Point3d(1, y, 0));
+      vertices.add(new Point3d(0, y, 1));
+      vertices.add(new Point3d(1, y, 1));
+      faces.add(new Point3i(4 * y, 4 * y + 1, 4 * y + 2));
+      faces.add(new Point3i(4 * y + 1, 4 * y + 3, 4 * y + 2));
+    }
+    PQP_Model model = PQPHelper.buildPQPModel(vertices, faces);
+
+    SegmentQuery query = new SegmentQuery();
+    query.add(0.2, 2, 0.3, 0.2, -1, 0.3);
+    query.add(0.2, -1, 0.3, 0.2, 2, 0.3);
+    query.add(2, 2, 2, 3, -1, 3);
+    assertEquals(2, query.intersect(model));
+    assertEquals(2, query.getTriangle(0));
+    assertEquals(1 / 3.0, query.getParameter(0), 1e-12);
+    assertEquals(0, query.getTriangle(1));
+    assertEquals(1 / 3.0, query.getParameter(1), 1e-12);
+    assertEquals(-1, query.getTriangle(2));
+
+    query.clear();
+    assertEquals(0, query.intersect(model));
+  }
+}
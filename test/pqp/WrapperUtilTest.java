@@ -0,0 +1,75 @@
+package pqp;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.vecmath.Point3d;
+import javax.vecmath.Point3i;
+import javax.vecmath.Tuple3i;
+
+import org.junit.Test;
+
+public class WrapperUtilTest {
+  static {
+    System.loadLibrary("PQP");
+  }
+
+  @Test
+  public void testResetReleasesAndReusesBlocks() {
+    WrapperUtil util = new WrapperUtil();
+    long total = WrapperUtil.totalBytesInUse();
+    for (int i = 0; i < 10000; i++) {
+      util.newPoint(i, i, i);
+    }
+    long inUse = util.bytesInUse();
+    long reserved = util.bytesReserved();
+    assertTrue(inUse >= 10000 * 3 * 8);
+    assertTrue(reserved >= inUse);
+    assertEquals(total + inUse, WrapperUtil.totalBytesInUse());
+
+    for (int step = 0; step < 100; step++) {
+      util.reset();
+      assertEquals(0, util.bytesInUse());
+      for (int i = 0; i < 10000; i++) {
+        util.newPoint(i, i, i);
+      }
+    }
+    assertEquals(inUse, util.bytesInUse());
+    assertEquals(reserved, util.bytesReserved());
+
+    util.delete();
+    assertEquals(total, WrapperUtil.totalBytesInUse());
+  }
+
+  @Test
+  public void testMatricesAndModelsFromArena() {
+    WrapperUtil util = new WrapperUtil();
+    List<Point3d> vertices = new ArrayList<>();
+    vertices.add(new Point3d(0, 0, 0));
+    vertices.add(new Point3d(1, 0, 0));
+    vertices.add(new Point3d(0, 0, 1));
+    List<Tuple3i> faces = new ArrayList<>();
+    faces.add(new Point3i(0, 1, 2));
+    PQP_Model model = PQPHelper.buildPQPModel(vertices, faces);
+    // the model copied its vertices: resetting the points must not affect it
+    PQPHelper.resetScratch();
+    for (int i = 0; i < 100; i++) {
+      PQPHelper.newPoint(new Point3d(5, 5, 5));
+    }
+
+    // a vertical segment moved into the triangle by R and T
+    SWIGTYPE_p_p_double R = util.new3x3Mat(1, 0, 0, 0, 1, 0, 0, 0, 1);
+    SWIGTYPE_p_double T = util.newPoint(0.2, -0.5, 0.2);
+    PQP_Model segment = new PQP_Model();
+    segment.BeginModel();
+    segment.AddTri(util.newPoint(0, 0, 0), util.newPoint(0, 0, 0), util.newPoint(0, 1, 0), 0);
+    segment.EndModel();
+    PQP_CollideResult result = new PQP_CollideResult();
+    PQP.PQP_Collide(result, util.newI3(), util.newPoint(0, 0, 0), model, R, T, segment,
+        PQP.getPQP_ALL_CONTACTS());
+    assertEquals(1, result.NumPairs());
+    util.delete();
+  }
+}
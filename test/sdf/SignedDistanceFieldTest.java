@@ -0,0 +1,65 @@
+package sdf;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+
+import javax.vecmath.Point3d;
+
+import org.junit.Test;
+
+import particles.Mesh;
+
+public class SignedDistanceFieldTest {
+
+  private static SignedDistanceField unitCube(File cacheFile) {
+    Mesh cube = Mesh.CubeMesh(new Point3d(0, 0, 0), new Point3d(1, 1, 1), false);
+    // the field needs no native model; leave none behind for the Cleaner
+    cube.setCollisionBackend(Mesh.CollisionBackend.BVH);
+    cube.buildDistanceField(0.05, 4, cacheFile);
+    return cube.getDistanceField();
+  }
+
+  @Test
+  public void testDistancesAndGradientOfCube() {
+    SignedDistanceField field = unitCube(null);
+    double[] g = new double[3];
+
+    // outside, in the band: distance to the face x = 1, gradient along +x
+    assertEquals(0.1, field.distance(1.1, 0.5, 0.5, g), 1e-9);
+    assertEquals(1, g[0], 1e-9);
+    assertEquals(0, g[1], 1e-9);
+    assertEquals(0, g[2], 1e-9);
+
+    // inside, in the band: negative, gradient still pointing out
+    assertEquals(-0.07, field.distance(0.5, 0.07, 0.5, g), 1e-9);
+    assertEquals(-1, g[1], 1e-9);
+
+    // beyond the band the sign is flood filled and the distance clamped
+    double band = field.getBandCells() * field.getCellSize();
+    assertEquals(-band, field.distance(0.5, 0.5, 0.5, g), 1e-9);
+    assertEquals(band, field.distance(5, 5, 5, g), 1e-9);
+    assertEquals(0, g[0], 0);
+  }
+
+  @Test
+  public void testCacheRoundtrip() throws IOException {
+    File file = File.createTempFile("cube", ".sdf");
+    file.deleteOnExit();
+    file.delete();
+    SignedDistanceField built = unitCube(file);
+    assertTrue(file.length() > 0);
+
+    SignedDistanceField loaded = SignedDistanceField.load(file, built.getKey());
+    assertNotNull(loaded);
+    for (int axis = 0; axis < 3; axis++) {
+      assertEquals(built.size(axis), loaded.size(axis));
+    }
+    double[] g = new double[3];
+    assertEquals(built.distance(0.93, 0.31, 0.52, g), loaded.distance(0.93, 0.31, 0.52, g), 0);
+
+    // a field saved for other triangles or settings is not read
+    assertNull(SignedDistanceField.load(file, built.getKey() + 1));
+  }
+}